@@ -8,6 +8,8 @@
 // Required headers
 #include <jni.h>
 #include <stdbool.h>
+#include <stdlib.h>
+#include <string.h>
 #include "sodium.h"
 
 #define STODIUM_JNI(type, method) JNIEXPORT type JNICALL Java_eu_artemisc_stodium_StodiumJNI_##method
@@ -46,12 +48,250 @@
  * AS_INPUT, AS_OUTPUT, AS_INPUT_LEN and AS_OUTPUT_LEN are utility macros to
  * reduce the effort of writing casting code and buffer references in every
  * wrapper function.
+ *
+ * AS_OUTPUT_LEN is used for the optional length output pointers. The Java side
+ * already knows every output length up front, so NULL is passed instead of a
+ * pointer (casting the capacity to a pointer made libsodium write the length
+ * to an arbitrary address).
  */
 #define AS_INPUT(type, buffer)      ((const type *) (buffer.content + buffer.offset))
 #define AS_OUTPUT(type, buffer)     ((type *)       (buffer.content + buffer.offset))
 
 #define AS_INPUT_LEN(type, buffer)  ((type)   (buffer.capacity))
-#define AS_OUTPUT_LEN(type, buffer) ((type *) (buffer.capacity))
+#define AS_OUTPUT_LEN(type, buffer) ((type *) NULL)
+
+/**
+ * STODIUM_AUTH_BATCH generates the stodium_auth_<primitive>_batch wrapper. It
+ * computes the MAC of every input packed in src, as described by the offsets
+ * array, in a single native call. Every input starts from a stack copy of the
+ * keyed state, so the key pads are never processed more than once.
+ *
+ * @primitive: the name of the auth primitive (e.g. hmacsha256)
+ */
+#define STODIUM_AUTH_BATCH(primitive) \
+    STODIUM_JNI(jint, stodium_1auth_1##primitive##_1batch) (JNIEnv *jenv, jclass jcls, \
+            jobject    state, \
+            jobject    dst, \
+            jobject    src, \
+            jintArray  offsets) { \
+        stodium_buffer state_buffer, dst_buffer, src_buffer; \
+        crypto_auth_##primitive##_state tmp; \
+        const size_t bytes = crypto_auth_##primitive##_bytes(); \
+        const jsize  count = (*jenv)->GetArrayLength(jenv, offsets) - 1; \
+        jint        *offs; \
+        jint         result = 0; \
+        jsize        i; \
+        stodium_get_buffer(jenv, &state_buffer, state); \
+        stodium_get_buffer(jenv, &dst_buffer, dst); \
+        stodium_get_buffer(jenv, &src_buffer, src); \
+        offs = (*jenv)->GetIntArrayElements(jenv, offsets, NULL); \
+        for (i = 0; i < count && result == 0; i++) { \
+            memcpy(&tmp, AS_INPUT(crypto_auth_##primitive##_state, state_buffer), sizeof tmp); \
+            result = (jint) crypto_auth_##primitive##_update(&tmp, \
+                    AS_INPUT(unsigned char, src_buffer) + offs[i], \
+                    (unsigned long long) (offs[i + 1] - offs[i])); \
+            if (result == 0) { \
+                result = (jint) crypto_auth_##primitive##_final(&tmp, \
+                        AS_OUTPUT(unsigned char, dst_buffer) + (size_t) i * bytes); \
+            } \
+        } \
+        sodium_memzero(&tmp, sizeof tmp); \
+        (*jenv)->ReleaseIntArrayElements(jenv, offsets, offs, JNI_ABORT); \
+        stodium_release_input(jenv, state, &state_buffer); \
+        stodium_release_output(jenv, dst, &dst_buffer); \
+        stodium_release_input(jenv, src, &src_buffer); \
+        return result; }
+
+/**
+ * STODIUM_HASH_BATCH generates the stodium_hash_<primitive>_batch wrapper. It
+ * hashes the inputs [from, to) packed in src, as described by the offsets
+ * array, in a single native call. The digest of input i is written to dst at
+ * offset i * crypto_hash_<primitive>_BYTES.
+ *
+ * @primitive: the name of the hash primitive (e.g. sha256)
+ */
+#define STODIUM_HASH_BATCH(primitive) \
+    STODIUM_JNI(jint, stodium_1hash_1##primitive##_1batch) (JNIEnv *jenv, jclass jcls, \
+            jobject    dst, \
+            jobject    src, \
+            jintArray  offsets, \
+            jint       from, \
+            jint       to) { \
+        stodium_buffer dst_buffer, src_buffer; \
+        const size_t bytes = crypto_hash_##primitive##_bytes(); \
+        jint        *offs; \
+        jint         result = 0; \
+        jint         i; \
+        offs = (jint *) malloc(sizeof (jint) * (size_t) (to - from + 1)); \
+        if (offs == NULL) { \
+            return -1; \
+        } \
+        (*jenv)->GetIntArrayRegion(jenv, offsets, from, to - from + 1, offs); \
+        stodium_get_buffer(jenv, &dst_buffer, dst); \
+        stodium_get_buffer(jenv, &src_buffer, src); \
+        for (i = 0; i < to - from && result == 0; i++) { \
+            result = (jint) crypto_hash_##primitive( \
+                    AS_OUTPUT(unsigned char, dst_buffer) + (size_t) (from + i) * bytes, \
+                    AS_INPUT(unsigned char, src_buffer) + offs[i], \
+                    (unsigned long long) (offs[i + 1] - offs[i])); \
+        } \
+        free(offs); \
+        stodium_release_output(jenv, dst, &dst_buffer); \
+        stodium_release_input(jenv, src, &src_buffer); \
+        return result; }
+
+/**
+ * STODIUM_UPDATE_VECTOR generates the stodium_<group>_<primitive>_update_vector
+ * wrapper. It feeds every buffer in the srcs array into the state in a single
+ * native call, in order, stopping at the first update that fails.
+ *
+ * @group:     the name of the API group (e.g. hash)
+ * @primitive: the name of the primitive (e.g. sha256)
+ */
+#define STODIUM_UPDATE_VECTOR(group, primitive) \
+    STODIUM_JNI(jint, stodium_1##group##_1##primitive##_1update_1vector) (JNIEnv *jenv, jclass jcls, \
+            jobject      state, \
+            jobjectArray srcs) { \
+        stodium_buffer state_buffer, src_buffer; \
+        const jsize count = (*jenv)->GetArrayLength(jenv, srcs); \
+        jobject     src; \
+        jint        result = 0; \
+        jsize       i; \
+        stodium_get_buffer(jenv, &state_buffer, state); \
+        for (i = 0; i < count && result == 0; i++) { \
+            src = (*jenv)->GetObjectArrayElement(jenv, srcs, i); \
+            stodium_get_buffer(jenv, &src_buffer, src); \
+            result = (jint) crypto_##group##_##primitive##_update( \
+                    AS_OUTPUT(crypto_##group##_##primitive##_state, state_buffer), \
+                    AS_INPUT(unsigned char, src_buffer), \
+                    AS_INPUT_LEN(unsigned long long, src_buffer)); \
+            stodium_release_input(jenv, src, &src_buffer); \
+            (*jenv)->DeleteLocalRef(jenv, src); \
+        } \
+        stodium_release_output(jenv, state, &state_buffer); \
+        return result; }
+
+/**
+ * STODIUM_SHORTHASH_64 generates the stodium_shorthash_<primitive>_64 and
+ * stodium_shorthash_<primitive>_64_array wrappers, which return the first 8
+ * bytes of the hash as a little-endian jlong instead of writing them to a
+ * buffer. The array variant reads the input straight from a byte[] region.
+ *
+ * @primitive: the name of the shorthash primitive (e.g. siphash24)
+ */
+#define STODIUM_SHORTHASH_64(primitive) \
+    STODIUM_JNI(jlong, stodium_1shorthash_1##primitive##_164) (JNIEnv *jenv, jclass jcls, \
+            jobject src, \
+            jobject key) { \
+        stodium_buffer src_buffer, key_buffer; \
+        unsigned char  out[crypto_shorthash_##primitive##_BYTES]; \
+        stodium_get_buffer(jenv, &src_buffer, src); \
+        stodium_get_buffer(jenv, &key_buffer, key); \
+        crypto_shorthash_##primitive(out, \
+                AS_INPUT(unsigned char, src_buffer), \
+                AS_INPUT_LEN(unsigned long long, src_buffer), \
+                AS_INPUT(unsigned char, key_buffer)); \
+        stodium_release_input(jenv, src, &src_buffer); \
+        stodium_release_input(jenv, key, &key_buffer); \
+        return stodium_load64_le(out); } \
+    STODIUM_JNI(jlong, stodium_1shorthash_1##primitive##_164_1array) (JNIEnv *jenv, jclass jcls, \
+            jbyteArray src, \
+            jint       offset, \
+            jint       len, \
+            jobject    key) { \
+        stodium_buffer key_buffer; \
+        unsigned char  out[crypto_shorthash_##primitive##_BYTES]; \
+        unsigned char *in; \
+        stodium_get_buffer(jenv, &key_buffer, key); \
+        in = (unsigned char *) (*jenv)->GetPrimitiveArrayCritical(jenv, src, NULL); \
+        crypto_shorthash_##primitive(out, in + offset, (unsigned long long) len, \
+                AS_INPUT(unsigned char, key_buffer)); \
+        (*jenv)->ReleasePrimitiveArrayCritical(jenv, src, in, JNI_ABORT); \
+        stodium_release_input(jenv, key, &key_buffer); \
+        return stodium_load64_le(out); }
+
+/**
+ * STODIUM_SHORTHASH_BATCH generates the stodium_shorthash_<primitive>_batch and
+ * stodium_shorthash_<primitive>_batch_direct wrappers. They hash the inputs
+ * [from, to) packed in src, as described by the offsets array, in a single
+ * native call. The hash of input i is stored as crypto_shorthash_<primitive>_BYTES
+ * / 8 little-endian words at dst[dst_offset + i * words]. The batch variant
+ * takes a long[], the direct variant a direct LongBuffer in native byte order.
+ *
+ * @primitive: the name of the shorthash primitive (e.g. siphash24)
+ */
+#define STODIUM_SHORTHASH_BATCH_LOOP(primitive) \
+        for (i = from; i < to; i++) { \
+            crypto_shorthash_##primitive(out, \
+                    AS_INPUT(unsigned char, src_buffer) + offs[i - from], \
+                    (unsigned long long) (offs[i - from + 1] - offs[i - from]), \
+                    AS_INPUT(unsigned char, key_buffer)); \
+            for (w = 0; w < words; w++) { \
+                words_out[(size_t) dst_offset + (size_t) i * words + w] = stodium_load64_le(out + w * 8); \
+            } \
+        }
+
+#define STODIUM_SHORTHASH_BATCH(primitive) \
+    STODIUM_JNI(jint, stodium_1shorthash_1##primitive##_1batch) (JNIEnv *jenv, jclass jcls, \
+            jlongArray dst, \
+            jint       dst_offset, \
+            jobject    src, \
+            jintArray  offsets, \
+            jint       from, \
+            jint       to, \
+            jobject    key) { \
+        stodium_buffer src_buffer, key_buffer; \
+        unsigned char  out[crypto_shorthash_##primitive##_BYTES]; \
+        const size_t   words = crypto_shorthash_##primitive##_BYTES / 8; \
+        jlong         *words_out; \
+        jint          *offs; \
+        jint           i; \
+        size_t         w; \
+        offs = (jint *) malloc(sizeof (jint) * (size_t) (to - from + 1)); \
+        if (offs == NULL) { \
+            return -1; \
+        } \
+        (*jenv)->GetIntArrayRegion(jenv, offsets, from, to - from + 1, offs); \
+        stodium_get_buffer(jenv, &src_buffer, src); \
+        stodium_get_buffer(jenv, &key_buffer, key); \
+        words_out = (jlong *) (*jenv)->GetPrimitiveArrayCritical(jenv, dst, NULL); \
+        STODIUM_SHORTHASH_BATCH_LOOP(primitive) \
+        (*jenv)->ReleasePrimitiveArrayCritical(jenv, dst, words_out, 0); \
+        free(offs); \
+        stodium_release_input(jenv, src, &src_buffer); \
+        stodium_release_input(jenv, key, &key_buffer); \
+        return 0; } \
+    STODIUM_JNI(jint, stodium_1shorthash_1##primitive##_1batch_1direct) (JNIEnv *jenv, jclass jcls, \
+            jobject   dst, \
+            jint      dst_offset, \
+            jobject   src, \
+            jintArray offsets, \
+            jint      from, \
+            jint      to, \
+            jobject   key) { \
+        stodium_buffer src_buffer, key_buffer; \
+        unsigned char  out[crypto_shorthash_##primitive##_BYTES]; \
+        const size_t   words = crypto_shorthash_##primitive##_BYTES / 8; \
+        jlong         *words_out; \
+        jint          *offs; \
+        jint           i; \
+        size_t         w; \
+        words_out = (jlong *) (*jenv)->GetDirectBufferAddress(jenv, dst); \
+        if (words_out == NULL) { \
+            return -1; \
+        } \
+        offs = (jint *) malloc(sizeof (jint) * (size_t) (to - from + 1)); \
+        if (offs == NULL) { \
+            return -1; \
+        } \
+        (*jenv)->GetIntArrayRegion(jenv, offsets, from, to - from + 1, offs); \
+        stodium_get_buffer(jenv, &src_buffer, src); \
+        stodium_get_buffer(jenv, &key_buffer, key); \
+        STODIUM_SHORTHASH_BATCH_LOOP(primitive) \
+        free(offs); \
+        stodium_release_input(jenv, src, &src_buffer); \
+        stodium_release_input(jenv, key, &key_buffer); \
+        return 0; }
 
 /**
  * Beginning of the real C code.
@@ -196,6 +436,29 @@ STODIUM_JNI(jstring, sodium_1version_1string) (JNIEnv *jenv, jclass jcls) {
     return (*jenv)->NewStringUTF(jenv, sodium_version_string());
 }
 
+/**
+ * sodium_mlock and sodium_munlock only accept direct buffers, as the memory
+ * of a heap buffer may be moved by the garbage collector. sodium_munlock
+ * zeroes the memory before unlocking it.
+ */
+STODIUM_JNI(jint, sodium_1mlock) (JNIEnv *jenv, jclass jcls,
+        jobject buf) {
+    void *addr = (*jenv)->GetDirectBufferAddress(jenv, buf);
+    if (addr == NULL) {
+        return -1;
+    }
+    return (jint) sodium_mlock(addr, (size_t) (*jenv)->GetDirectBufferCapacity(jenv, buf));
+}
+
+STODIUM_JNI(jint, sodium_1munlock) (JNIEnv *jenv, jclass jcls,
+        jobject buf) {
+    void *addr = (*jenv)->GetDirectBufferAddress(jenv, buf);
+    if (addr == NULL) {
+        return -1;
+    }
+    return (jint) sodium_munlock(addr, (size_t) (*jenv)->GetDirectBufferCapacity(jenv, buf));
+}
+
 /** ****************************************************************************
  *
  * RANDOM DATA
@@ -226,6 +489,77 @@ STODIUM_JNI(jint, randombytes_1close) (JNIEnv *jenv, jclass jcls) {
     return (jint) randombytes_close();
 }
 
+STODIUM_JNI(jint, randombytes_1seedbytes) (JNIEnv *jenv, jclass jcls) {
+    return (jint) randombytes_seedbytes();
+}
+
+STODIUM_JNI(void, randombytes_1buf_1deterministic) (JNIEnv *jenv, jclass jcls,
+        jobject dst,
+        jobject seed) {
+    stodium_buffer dst_buffer, seed_buffer;
+    stodium_get_buffer(jenv, &dst_buffer, dst);
+    stodium_get_buffer(jenv, &seed_buffer, seed);
+
+    randombytes_buf_deterministic(
+            AS_OUTPUT(void, dst_buffer),
+            AS_INPUT_LEN(const size_t, dst_buffer),
+            AS_INPUT(unsigned char, seed_buffer));
+
+    stodium_release_output(jenv, dst, &dst_buffer);
+    stodium_release_input(jenv, seed, &seed_buffer);
+}
+
+/**
+ * stodium_randombytes_buf_deterministic_at fills dst with the output of
+ * randombytes_buf_deterministic for seed, starting at byte offset of that
+ * output rather than at its beginning. randombytes_buf_deterministic is the
+ * ChaCha20 (IETF) key stream for the seed and the nonce "LibsodiumDRG", so
+ * the offset translates to a block counter and a position within the block.
+ */
+STODIUM_JNI(jint, stodium_1randombytes_1buf_1deterministic_1at) (JNIEnv *jenv, jclass jcls,
+        jobject dst,
+        jobject seed,
+        jlong   offset) {
+    static const unsigned char nonce[crypto_stream_chacha20_ietf_NONCEBYTES] = {
+        'L', 'i', 'b', 's', 'o', 'd', 'i', 'u', 'm', 'D', 'R', 'G'
+    };
+    stodium_buffer dst_buffer, seed_buffer;
+    unsigned char  block[64];
+    unsigned char *out;
+    size_t         len, skip, head;
+    uint32_t       ic;
+    jint           result = 0;
+    stodium_get_buffer(jenv, &dst_buffer, dst);
+    stodium_get_buffer(jenv, &seed_buffer, seed);
+
+    out  = AS_OUTPUT(unsigned char, dst_buffer);
+    len  = AS_INPUT_LEN(size_t, dst_buffer);
+    ic   = (uint32_t) ((uint64_t) offset / 64U);
+    skip = (size_t) ((uint64_t) offset % 64U);
+
+    if (skip != 0 && len > 0) {
+        memset(block, 0, sizeof block);
+        result = crypto_stream_chacha20_ietf_xor_ic(block, block, sizeof block,
+                nonce, ic, AS_INPUT(unsigned char, seed_buffer));
+        head = len < 64U - skip ? len : 64U - skip;
+        memcpy(out, block + skip, head);
+        sodium_memzero(block, sizeof block);
+        out += head;
+        len -= head;
+        ic++;
+    }
+    if (result == 0 && len > 0) {
+        memset(out, 0, len);
+        result = crypto_stream_chacha20_ietf_xor_ic(out, out, (unsigned long long) len,
+                nonce, ic, AS_INPUT(unsigned char, seed_buffer));
+    }
+
+    stodium_release_output(jenv, dst, &dst_buffer);
+    stodium_release_input(jenv, seed, &seed_buffer);
+
+    return result;
+}
+
 /** ****************************************************************************
  *
  * AEAD - AES-256-GCM
@@ -963,6 +1297,9 @@ STODIUM_JNI(jint, crypto_1auth_1hmacsha256_1final) (JNIEnv *jenv, jclass jcls,
     return result;
 }
 
+STODIUM_AUTH_BATCH(hmacsha256)
+STODIUM_UPDATE_VECTOR(auth, hmacsha256)
+
 /** ****************************************************************************
  *
  * AUTH - HMAC-512
@@ -1070,6 +1407,9 @@ STODIUM_JNI(jint, crypto_1auth_1hmacsha512_1final) (JNIEnv *jenv, jclass jcls,
     return result;
 }
 
+STODIUM_AUTH_BATCH(hmacsha512)
+STODIUM_UPDATE_VECTOR(auth, hmacsha512)
+
 /** ****************************************************************************
  *
  * AUTH - HMAC-512/256
@@ -1177,6 +1517,9 @@ STODIUM_JNI(jint, crypto_1auth_1hmacsha512256_1final) (JNIEnv *jenv, jclass jcls
     return result;
 }
 
+STODIUM_AUTH_BATCH(hmacsha512256)
+STODIUM_UPDATE_VECTOR(auth, hmacsha512256)
+
 /** ****************************************************************************
  *
  * BOX
@@ -1616,18 +1959,38 @@ STODIUM_JNI(jint, crypto_1box_1curve25519xchacha20poly1305_1open_1easy) (JNIEnv
  *
  **************************************************************************** */
 
+/**
+ * sodium_bin2hex always writes a NUL terminator, which the Java side has no
+ * use for and does not reserve room for. If dst has no room for it, all but
+ * the last byte are encoded in place, and the last one through a buffer on
+ * the stack.
+ */
 STODIUM_JNI(jint, sodium_1bin2hex) (JNIEnv *jenv, jclass jcls,
         jobject dst,
         jobject src) {
     stodium_buffer dst_buffer, src_buffer;
+    size_t         bin_len;
+    char           tail[3];
     stodium_get_buffer(jenv, &dst_buffer, dst);
     stodium_get_buffer(jenv, &src_buffer, src);
 
-    sodium_bin2hex(
-            AS_OUTPUT(char, dst_buffer),
-            AS_INPUT_LEN(size_t, dst_buffer),
-            AS_INPUT(unsigned char, src_buffer),
-            AS_INPUT_LEN(size_t, src_buffer));
+    bin_len = AS_INPUT_LEN(size_t, src_buffer);
+    if (AS_INPUT_LEN(size_t, dst_buffer) > bin_len * 2U) {
+        sodium_bin2hex(
+                AS_OUTPUT(char, dst_buffer),
+                AS_INPUT_LEN(size_t, dst_buffer),
+                AS_INPUT(unsigned char, src_buffer),
+                bin_len);
+    } else if (bin_len > 0) {
+        sodium_bin2hex(
+                AS_OUTPUT(char, dst_buffer),
+                bin_len * 2U - 1U,
+                AS_INPUT(unsigned char, src_buffer),
+                bin_len - 1U);
+        sodium_bin2hex(tail, sizeof tail,
+                AS_INPUT(unsigned char, src_buffer) + bin_len - 1U, 1U);
+        memcpy(AS_OUTPUT(char, dst_buffer) + bin_len * 2U - 2U, tail, 2U);
+    }
 
     stodium_release_output(jenv, dst, &dst_buffer);
     stodium_release_input(jenv, src, &src_buffer);
@@ -1635,10 +1998,15 @@ STODIUM_JNI(jint, sodium_1bin2hex) (JNIEnv *jenv, jclass jcls,
     return (jint) 0;
 }
 
+/**
+ * sodium_hex2bin returns the number of bytes written to dst, or -1 if src is
+ * not a valid hex string or dst is too small.
+ */
 STODIUM_JNI(jint, sodium_1hex2bin) (JNIEnv *jenv, jclass jcls,
         jobject dst,
         jobject src) {
     stodium_buffer dst_buffer, src_buffer;
+    size_t         bin_len = 0;
     stodium_get_buffer(jenv, &dst_buffer, dst);
     stodium_get_buffer(jenv, &src_buffer, src);
 
@@ -1648,13 +2016,13 @@ STODIUM_JNI(jint, sodium_1hex2bin) (JNIEnv *jenv, jclass jcls,
             AS_INPUT(char, src_buffer),
             AS_INPUT_LEN(size_t, src_buffer),
             NULL,
-            NULL,
+            &bin_len,
             NULL);
 
     stodium_release_output(jenv, dst, &dst_buffer);
     stodium_release_input(jenv, src, &src_buffer);
     
-    return result;
+    return result == 0 ? (jint) bin_len : result;
 }
 
 /** ****************************************************************************
@@ -1663,16 +2031,16 @@ STODIUM_JNI(jint, sodium_1hex2bin) (JNIEnv *jenv, jclass jcls,
  *
  **************************************************************************** */
 
-STODIUM_JNI(jint, stodium_1base64_1variant_1original) (JNIEnv *jenv, jclass jcls) {
+STODIUM_JNI(jint, sodium_1base64_1variant_1original) (JNIEnv *jenv, jclass jcls) {
         return (jint) sodium_base64_VARIANT_ORIGINAL;
 }
-STODIUM_JNI(jint, stodium_1base64_1variant_1original_1no_1padding) (JNIEnv *jenv, jclass jcls) {
+STODIUM_JNI(jint, sodium_1base64_1variant_1original_1no_1padding) (JNIEnv *jenv, jclass jcls) {
         return (jint) sodium_base64_VARIANT_ORIGINAL_NO_PADDING;
 }
-STODIUM_JNI(jint, stodium_1base64_1variant_1urlsafe) (JNIEnv *jenv, jclass jcls) {
+STODIUM_JNI(jint, sodium_1base64_1variant_1urlsafe) (JNIEnv *jenv, jclass jcls) {
         return (jint) sodium_base64_VARIANT_URLSAFE;
 }
-STODIUM_JNI(jint, stodium_1base64_1variant_1urlsafe_1no_1padding) (JNIEnv *jenv, jclass jcls) {
+STODIUM_JNI(jint, sodium_1base64_1variant_1urlsafe_1no_1padding) (JNIEnv *jenv, jclass jcls) {
         return (jint) sodium_base64_VARIANT_URLSAFE_NO_PADDING;
 }
 
@@ -1684,20 +2052,46 @@ STODIUM_JNI(jint, sodium_1base64_1encoded_1len) (JNIEnv *jenv, jclass jcls,
             (const int) variant);
 }
 
+/**
+ * sodium_bin2base64 always writes a NUL terminator, which the Java side has
+ * no use for and does not reserve room for. If dst has no room for it, all
+ * complete 3-byte groups but the last are encoded in place, and the final
+ * group through a buffer on the stack.
+ */
 STODIUM_JNI(jint, sodium_1bin2base64) (JNIEnv *jenv, jclass jcls,
         jobject dst,
         jobject src,
         jint variant) {
     stodium_buffer dst_buffer, src_buffer;
+    size_t         bin_len, head_len, head_b64_len;
+    char           tail[5];
     stodium_get_buffer(jenv, &dst_buffer, dst);
     stodium_get_buffer(jenv, &src_buffer, src);
 
-    sodium_bin2base64(
-            AS_OUTPUT(char, dst_buffer),
-            AS_INPUT_LEN(size_t, dst_buffer),
-            AS_INPUT(unsigned char, src_buffer),
-            AS_INPUT_LEN(size_t, src_buffer),
-            (const int) variant);
+    bin_len = AS_INPUT_LEN(size_t, src_buffer);
+    if (AS_INPUT_LEN(size_t, dst_buffer) >= sodium_base64_encoded_len(bin_len, (const int) variant)) {
+        sodium_bin2base64(
+                AS_OUTPUT(char, dst_buffer),
+                AS_INPUT_LEN(size_t, dst_buffer),
+                AS_INPUT(unsigned char, src_buffer),
+                bin_len,
+                (const int) variant);
+    } else if (bin_len > 0) {
+        head_len     = bin_len - (bin_len % 3U == 0U ? 3U : bin_len % 3U);
+        head_b64_len = sodium_base64_encoded_len(head_len, (const int) variant);
+        sodium_bin2base64(
+                AS_OUTPUT(char, dst_buffer),
+                head_b64_len,
+                AS_INPUT(unsigned char, src_buffer),
+                head_len,
+                (const int) variant);
+        sodium_bin2base64(tail, sizeof tail,
+                AS_INPUT(unsigned char, src_buffer) + head_len,
+                bin_len - head_len,
+                (const int) variant);
+        memcpy(AS_OUTPUT(char, dst_buffer) + head_b64_len - 1U, tail,
+                sodium_base64_encoded_len(bin_len - head_len, (const int) variant) - 1U);
+    }
 
     stodium_release_output(jenv, dst, &dst_buffer);
     stodium_release_input(jenv, src, &src_buffer);
@@ -1705,11 +2099,16 @@ STODIUM_JNI(jint, sodium_1bin2base64) (JNIEnv *jenv, jclass jcls,
     return 0;
 }
 
+/**
+ * sodium_base642bin returns the number of bytes written to dst, or -1 if src
+ * is not valid for the variant or dst is too small.
+ */
 STODIUM_JNI(jint, sodium_1base642bin) (JNIEnv *jenv, jclass jcls,
         jobject dst,
         jobject src,
         jint variant) {
     stodium_buffer dst_buffer, src_buffer;
+    size_t         bin_len = 0;
     stodium_get_buffer(jenv, &dst_buffer, dst);
     stodium_get_buffer(jenv, &src_buffer, src);
 
@@ -1719,14 +2118,14 @@ STODIUM_JNI(jint, sodium_1base642bin) (JNIEnv *jenv, jclass jcls,
             AS_INPUT(char, src_buffer),
             AS_INPUT_LEN(size_t, src_buffer),
             NULL,
-            AS_OUTPUT_LEN(size_t, dst_buffer),
+            &bin_len,
             NULL,
             (const int) variant);
 
     stodium_release_output(jenv, dst, &dst_buffer);
     stodium_release_input(jenv, src, &src_buffer);
     
-    return result;
+    return result == 0 ? (jint) bin_len : result;
 }
 
 /** ****************************************************************************
@@ -1909,6 +2308,34 @@ STODIUM_JNI(jint, crypto_1generichash_1blake2b_1init) (JNIEnv *jenv, jclass jcls
     return result;
 }
 
+STODIUM_JNI(jint, crypto_1generichash_1blake2b_1init_1salt_1personal) (JNIEnv *jenv, jclass jcls,
+        jobject state,
+        jobject key,
+        jint    outlen,
+        jobject salt,
+        jobject personal) {
+    stodium_buffer dst_buffer, key_buffer, salt_buffer, pers_buffer;
+    stodium_get_buffer(jenv, &dst_buffer, state);
+    stodium_get_buffer(jenv, &key_buffer, key);
+    stodium_get_buffer(jenv, &salt_buffer, salt);
+    stodium_get_buffer(jenv, &pers_buffer, personal);
+
+    jint result = (jint) crypto_generichash_blake2b_init_salt_personal(
+            AS_OUTPUT(crypto_generichash_blake2b_state, dst_buffer),
+            AS_INPUT(unsigned char, key_buffer),
+            AS_INPUT_LEN(size_t, key_buffer),
+            (size_t) outlen,
+            AS_INPUT(unsigned char, salt_buffer),
+            AS_INPUT(unsigned char, pers_buffer));
+
+    stodium_release_output(jenv, state, &dst_buffer);
+    stodium_release_input(jenv, key, &key_buffer);
+    stodium_release_input(jenv, salt, &salt_buffer);
+    stodium_release_input(jenv, personal, &pers_buffer);
+
+    return result;
+}
+
 STODIUM_JNI(jint, crypto_1generichash_1blake2b_1update) (JNIEnv *jenv, jclass jcls,
         jobject state,
         jobject src) {
@@ -1926,6 +2353,8 @@ STODIUM_JNI(jint, crypto_1generichash_1blake2b_1update) (JNIEnv *jenv, jclass jc
     return result;
 }
 
+STODIUM_UPDATE_VECTOR(generichash, blake2b)
+
 STODIUM_JNI(jint, crypto_1generichash_1blake2b_1final) (JNIEnv *jenv, jclass jcls,
         jobject state,
         jobject dst) {
@@ -1944,6 +2373,46 @@ STODIUM_JNI(jint, crypto_1generichash_1blake2b_1final) (JNIEnv *jenv, jclass jcl
     return result;
 }
 
+STODIUM_JNI(jint, stodium_1generichash_1blake2b_1batch) (JNIEnv *jenv, jclass jcls,
+        jobject   dst,
+        jobject   src,
+        jobject   key,
+        jint      outlen,
+        jintArray offsets,
+        jint      from,
+        jint      to) {
+    stodium_buffer dst_buffer, src_buffer, key_buffer;
+    jint          *offs;
+    jint           result = 0;
+    jint           i;
+
+    offs = (jint *) malloc(sizeof (jint) * (size_t) (to - from + 1));
+    if (offs == NULL) {
+        return -1;
+    }
+    (*jenv)->GetIntArrayRegion(jenv, offsets, from, to - from + 1, offs);
+    stodium_get_buffer(jenv, &dst_buffer, dst);
+    stodium_get_buffer(jenv, &src_buffer, src);
+    stodium_get_buffer(jenv, &key_buffer, key);
+
+    for (i = 0; i < to - from && result == 0; i++) {
+        result = (jint) crypto_generichash_blake2b(
+                AS_OUTPUT(unsigned char, dst_buffer) + (size_t) (from + i) * (size_t) outlen,
+                (size_t) outlen,
+                AS_INPUT(unsigned char, src_buffer) + offs[i],
+                (unsigned long long) (offs[i + 1] - offs[i]),
+                AS_INPUT(unsigned char, key_buffer),
+                AS_INPUT_LEN(size_t, key_buffer));
+    }
+
+    free(offs);
+    stodium_release_output(jenv, dst, &dst_buffer);
+    stodium_release_input(jenv, src, &src_buffer);
+    stodium_release_input(jenv, key, &key_buffer);
+
+    return result;
+}
+
 /** ****************************************************************************
  *
  * HASH
@@ -2027,6 +2496,9 @@ STODIUM_JNI(jint, crypto_1hash_1sha256_1final) (JNIEnv *jenv, jclass jcls,
     return result;
 }
 
+STODIUM_HASH_BATCH(sha256)
+STODIUM_UPDATE_VECTOR(hash, sha256)
+
 /** ****************************************************************************
  *
  * HASH - SHA-512
@@ -2102,6 +2574,9 @@ STODIUM_JNI(jint, crypto_1hash_1sha512_1final) (JNIEnv *jenv, jclass jcls,
     return result;
 }
 
+STODIUM_HASH_BATCH(sha512)
+STODIUM_UPDATE_VECTOR(hash, sha512)
+
 /** ****************************************************************************
  *
  * KDF
@@ -2149,6 +2624,41 @@ STODIUM_JNI(jint, crypto_1kdf_1blake2b_1derive_1from_1key) (JNIEnv *jenv, jclass
     return result;
 }
 
+/**
+ * stodium_kdf_blake2b_derive_range derives the count subkeys with the ids
+ * [fromid, fromid + count), each sublen bytes long, into consecutive regions
+ * of sub.
+ */
+STODIUM_JNI(jint, stodium_1kdf_1blake2b_1derive_1range) (JNIEnv *jenv, jclass jcls,
+        jobject sub,
+        jint    sublen,
+        jlong   fromid,
+        jint    count,
+        jobject ctx,
+        jobject key) {
+    stodium_buffer sub_buffer, ctx_buffer, key_buffer;
+    jint result = 0;
+    jint i;
+    stodium_get_buffer(jenv, &sub_buffer, sub);
+    stodium_get_buffer(jenv, &ctx_buffer, ctx);
+    stodium_get_buffer(jenv, &key_buffer, key);
+
+    for (i = 0; i < count && result == 0; i++) {
+        result = (jint) crypto_kdf_blake2b_derive_from_key(
+                AS_OUTPUT(unsigned char, sub_buffer) + (size_t) i * (size_t) sublen,
+                (size_t) sublen,
+                (uint64_t) fromid + (uint64_t) i,
+                AS_INPUT(char, ctx_buffer),
+                AS_INPUT(unsigned char, key_buffer));
+    }
+
+    stodium_release_output(jenv, sub, &sub_buffer);
+    stodium_release_input(jenv, ctx, &ctx_buffer);
+    stodium_release_input(jenv, key, &key_buffer);
+
+    return result;
+}
+
 /** ****************************************************************************
  *
  * KX (x25519blake2b)
@@ -2257,6 +2767,52 @@ STODIUM_JNI(jint, crypto_1kx_1client_1session_1keys) (JNIEnv *jenv, jclass jcls,
     return result;
 }
 
+/**
+ * stodium_kx_server_session_keys_batch derives the server session keys for the
+ * count client public keys packed into cpks, writing the keys for client i to
+ * rx and tx at offset i * crypto_kx_SESSIONKEYBYTES. The keys of clients for
+ * which the derivation fails are zeroed, and the number of those clients is
+ * returned.
+ */
+STODIUM_JNI(jint, stodium_1kx_1server_1session_1keys_1batch) (JNIEnv *jenv, jclass jcls,
+            jobject rx,
+            jobject tx,
+            jobject spk,
+            jobject ssk,
+            jobject cpks,
+            jint    count) {
+    stodium_buffer rx_buffer, tx_buffer, spk_buffer, ssk_buffer, cpks_buffer;
+    jint failed = 0;
+    jint i;
+    stodium_get_buffer(jenv, &rx_buffer, rx);
+    stodium_get_buffer(jenv, &tx_buffer, tx);
+    stodium_get_buffer(jenv, &spk_buffer, spk);
+    stodium_get_buffer(jenv, &ssk_buffer, ssk);
+    stodium_get_buffer(jenv, &cpks_buffer, cpks);
+
+    for (i = 0; i < count; i++) {
+        unsigned char *rx_i = AS_OUTPUT(unsigned char, rx_buffer) + (size_t) i * crypto_kx_SESSIONKEYBYTES;
+        unsigned char *tx_i = AS_OUTPUT(unsigned char, tx_buffer) + (size_t) i * crypto_kx_SESSIONKEYBYTES;
+
+        if (crypto_kx_server_session_keys(rx_i, tx_i,
+                AS_INPUT(unsigned char, spk_buffer),
+                AS_INPUT(unsigned char, ssk_buffer),
+                AS_INPUT(unsigned char, cpks_buffer) + (size_t) i * crypto_kx_PUBLICKEYBYTES) != 0) {
+            sodium_memzero(rx_i, crypto_kx_SESSIONKEYBYTES);
+            sodium_memzero(tx_i, crypto_kx_SESSIONKEYBYTES);
+            failed++;
+        }
+    }
+
+    stodium_release_output(jenv, rx, &rx_buffer);
+    stodium_release_output(jenv, tx, &tx_buffer);
+    stodium_release_input(jenv, spk, &spk_buffer);
+    stodium_release_input(jenv, ssk, &ssk_buffer);
+    stodium_release_input(jenv, cpks, &cpks_buffer);
+
+    return failed;
+}
+
 /** ****************************************************************************
  *
  * ONETIMEAUTH
@@ -2354,6 +2910,8 @@ STODIUM_JNI(jint, crypto_1onetimeauth_1poly1305_1update) (JNIEnv *jenv, jclass j
     return result;
 }
 
+STODIUM_UPDATE_VECTOR(onetimeauth, poly1305)
+
 STODIUM_JNI(jint, crypto_1onetimeauth_1poly1305_1final) (JNIEnv *jenv, jclass jcls,
         jobject state,
         jobject dst) {
@@ -2495,6 +3053,163 @@ STODIUM_JNI(jint, crypto_1pwhash_1argon2i_1str_1verify) (JNIEnv *jenv, jclass jc
     return result;
 }
 
+STODIUM_JNI(jint, crypto_1pwhash_1argon2i_1str_1needs_1rehash) (JNIEnv *jenv, jclass jcls,
+        jobject str,
+        jlong opslimit,
+        jlong memlimit) {
+    stodium_buffer str_buffer;
+    stodium_get_buffer(jenv, &str_buffer, str);
+
+    jint result = (jint) crypto_pwhash_argon2i_str_needs_rehash(
+            AS_INPUT(char, str_buffer),
+            (unsigned long long) opslimit,
+            (size_t) memlimit);
+
+    stodium_release_input(jenv, str, &str_buffer);
+
+    return result;
+}
+
+
+/** ****************************************************************************
+ *
+ * PWHASH - Argon2id
+ *
+ **************************************************************************** */
+
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1bytes_1min) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_bytes_min();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1bytes_1max) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_bytes_max();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1passwd_1min) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_passwd_min();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1passwd_1max) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_passwd_max();
+}
+STODIUM_CONSTANT(pwhash, argon2id, saltbytes)
+STODIUM_CONSTANT(pwhash, argon2id, strbytes)
+STODIUM_JNI(jstring, crypto_1pwhash_1argon2id_1strprefix) (JNIEnv *jenv, jclass jcls) {
+        return (*jenv)->NewStringUTF(jenv, crypto_pwhash_argon2id_strprefix());
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1opslimit_1min) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_opslimit_min();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1opslimit_1max) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_opslimit_max();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1memlimit_1min) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_memlimit_min();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1memlimit_1max) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_memlimit_max();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1opslimit_1interactive) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_opslimit_interactive();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1memlimit_1interactive) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_memlimit_interactive();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1opslimit_1moderate) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_opslimit_moderate();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1memlimit_1moderate) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_memlimit_moderate();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1opslimit_1sensitive) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_opslimit_sensitive();
+}
+STODIUM_JNI(jlong, crypto_1pwhash_1argon2id_1memlimit_1sensitive) (JNIEnv *jenv, jclass jcls) {
+       return (jlong) crypto_pwhash_argon2id_memlimit_sensitive();
+}
+
+STODIUM_JNI(jint, crypto_1pwhash_1argon2id) (JNIEnv *jenv, jclass jcls,
+        jobject dst,
+        jobject password,
+        jobject salt,
+        jlong opslimit,
+        jlong memlimit) {
+    stodium_buffer dst_buffer, pw_buffer, salt_buffer;
+    stodium_get_buffer(jenv, &dst_buffer, dst);
+    stodium_get_buffer(jenv, &pw_buffer, password);
+    stodium_get_buffer(jenv, &salt_buffer, salt);
+
+    jint result = (jint) crypto_pwhash_argon2id(
+            AS_OUTPUT(unsigned char, dst_buffer),
+            AS_INPUT_LEN(unsigned long long, dst_buffer),
+            AS_INPUT(char, pw_buffer),
+            AS_INPUT_LEN(unsigned long long, pw_buffer),
+            AS_INPUT(unsigned char, salt_buffer),
+            (unsigned long long) opslimit,
+            (size_t) memlimit,
+            crypto_pwhash_argon2id_ALG_ARGON2ID13);
+
+    stodium_release_output(jenv, dst, &dst_buffer);
+    stodium_release_input(jenv, password, &pw_buffer);
+    stodium_release_input(jenv, salt, &salt_buffer);
+
+    return result;
+}
+
+STODIUM_JNI(jint, crypto_1pwhash_1argon2id_1str) (JNIEnv *jenv, jclass jcls,
+        jobject dst,
+        jobject password,
+        jlong opslimit,
+        jlong memlimit) {
+    stodium_buffer dst_buffer, pw_buffer;
+    stodium_get_buffer(jenv, &dst_buffer, dst);
+    stodium_get_buffer(jenv, &pw_buffer, password);
+
+    jint result = (jint) crypto_pwhash_argon2id_str(
+            AS_OUTPUT(char, dst_buffer),
+            AS_INPUT(char, pw_buffer),
+            AS_INPUT_LEN(unsigned long long, pw_buffer),
+            (unsigned long long) opslimit,
+            (size_t) memlimit);
+
+    stodium_release_output(jenv, dst, &dst_buffer);
+    stodium_release_input(jenv, password, &pw_buffer);
+
+    return result;
+}
+
+STODIUM_JNI(jint, crypto_1pwhash_1argon2id_1str_1verify) (JNIEnv *jenv, jclass jcls,
+        jobject dst,
+        jobject password) {
+    stodium_buffer dst_buffer, pw_buffer;
+    stodium_get_buffer(jenv, &dst_buffer, dst);
+    stodium_get_buffer(jenv, &pw_buffer, password);
+
+    jint result = (jint) crypto_pwhash_argon2id_str_verify(
+            AS_OUTPUT(char, dst_buffer),
+            AS_INPUT(char, pw_buffer),
+            AS_INPUT_LEN(unsigned long long, pw_buffer));
+
+    stodium_release_input(jenv, dst, &dst_buffer);
+    stodium_release_input(jenv, password, &pw_buffer);
+
+    return result;
+}
+
+STODIUM_JNI(jint, crypto_1pwhash_1argon2id_1str_1needs_1rehash) (JNIEnv *jenv, jclass jcls,
+        jobject str,
+        jlong opslimit,
+        jlong memlimit) {
+    stodium_buffer str_buffer;
+    stodium_get_buffer(jenv, &str_buffer, str);
+
+    jint result = (jint) crypto_pwhash_argon2id_str_needs_rehash(
+            AS_INPUT(char, str_buffer),
+            (unsigned long long) opslimit,
+            (size_t) memlimit);
+
+    stodium_release_input(jenv, str, &str_buffer);
+
+    return result;
+}
+
 
 /** ****************************************************************************
  *
@@ -2611,6 +3326,23 @@ STODIUM_JNI(jint, crypto_1pwhash_1scryptsalsa208sha256_1str_1verify) (JNIEnv *je
     return result;
 }
 
+STODIUM_JNI(jint, crypto_1pwhash_1scryptsalsa208sha256_1str_1needs_1rehash) (JNIEnv *jenv, jclass jcls,
+        jobject str,
+        jlong opslimit,
+        jlong memlimit) {
+    stodium_buffer str_buffer;
+    stodium_get_buffer(jenv, &str_buffer, str);
+
+    jint result = (jint) crypto_pwhash_scryptsalsa208sha256_str_needs_rehash(
+            AS_INPUT(char, str_buffer),
+            (unsigned long long) opslimit,
+            (size_t) memlimit);
+
+    stodium_release_input(jenv, str, &str_buffer);
+
+    return result;
+}
+
 /** ****************************************************************************
  *
  * SCALARMULT - Curve25519
@@ -2919,6 +3651,22 @@ STODIUM_JNI(jint, crypto_1secretbox_1xchacha20poly1305_1open_1detached) (JNIEnv
 
 STODIUM_CONSTANT_STR(shorthash)
 
+/**
+ * stodium_load64_le reads the 8 bytes at src as a little-endian 64-bit word,
+ * the byte order SipHash uses for its output.
+ */
+static jlong stodium_load64_le(const unsigned char *src) {
+    uint64_t w = (uint64_t) src[0];
+    w |= (uint64_t) src[1] <<  8;
+    w |= (uint64_t) src[2] << 16;
+    w |= (uint64_t) src[3] << 24;
+    w |= (uint64_t) src[4] << 32;
+    w |= (uint64_t) src[5] << 40;
+    w |= (uint64_t) src[6] << 48;
+    w |= (uint64_t) src[7] << 56;
+    return (jlong) w;
+}
+
 /** ****************************************************************************
  *
  * SHORTHASH - SipHash-2-4
@@ -2949,6 +3697,9 @@ STODIUM_JNI(jint, crypto_1shorthash_1siphash24) (JNIEnv *jenv, jclass jcls,
     return result;
 }
 
+STODIUM_SHORTHASH_64(siphash24)
+STODIUM_SHORTHASH_BATCH(siphash24)
+
 /** ****************************************************************************
  *
  * SHORTHASH - SipHashx-2-4
@@ -2979,6 +3730,63 @@ STODIUM_JNI(jint, crypto_1shorthash_1siphashx24) (JNIEnv *jenv, jclass jcls,
     return result;
 }
 
+STODIUM_SHORTHASH_64(siphashx24)
+STODIUM_SHORTHASH_BATCH(siphashx24)
+
+STODIUM_JNI(jint, stodium_1shorthash_1siphashx24_1128) (JNIEnv *jenv, jclass jcls,
+        jlongArray dst,
+        jint       dst_offset,
+        jobject    src,
+        jobject    key) {
+    stodium_buffer src_buffer, key_buffer;
+    unsigned char  out[crypto_shorthash_siphashx24_BYTES];
+    jlong          words[2];
+    stodium_get_buffer(jenv, &src_buffer, src);
+    stodium_get_buffer(jenv, &key_buffer, key);
+
+    jint result = (jint) crypto_shorthash_siphashx24(out,
+            AS_INPUT(unsigned char, src_buffer),
+            AS_INPUT_LEN(unsigned long long, src_buffer),
+            AS_INPUT(unsigned char, key_buffer));
+
+    stodium_release_input(jenv, src, &src_buffer);
+    stodium_release_input(jenv, key, &key_buffer);
+
+    words[0] = stodium_load64_le(out);
+    words[1] = stodium_load64_le(out + 8);
+    (*jenv)->SetLongArrayRegion(jenv, dst, dst_offset, 2, words);
+
+    return result;
+}
+
+STODIUM_JNI(jint, stodium_1shorthash_1siphashx24_1128_1array) (JNIEnv *jenv, jclass jcls,
+        jlongArray dst,
+        jint       dst_offset,
+        jbyteArray src,
+        jint       offset,
+        jint       len,
+        jobject    key) {
+    stodium_buffer key_buffer;
+    unsigned char  out[crypto_shorthash_siphashx24_BYTES];
+    unsigned char *in;
+    jlong          words[2];
+    stodium_get_buffer(jenv, &key_buffer, key);
+
+    in = (unsigned char *) (*jenv)->GetPrimitiveArrayCritical(jenv, src, NULL);
+    jint result = (jint) crypto_shorthash_siphashx24(out,
+            in + offset, (unsigned long long) len,
+            AS_INPUT(unsigned char, key_buffer));
+    (*jenv)->ReleasePrimitiveArrayCritical(jenv, src, in, JNI_ABORT);
+
+    stodium_release_input(jenv, key, &key_buffer);
+
+    words[0] = stodium_load64_le(out);
+    words[1] = stodium_load64_le(out + 8);
+    (*jenv)->SetLongArrayRegion(jenv, dst, dst_offset, 2, words);
+
+    return result;
+}
+
 /** ****************************************************************************
  *
  * SIGN
@@ -3158,6 +3966,8 @@ STODIUM_JNI(jint, crypto_1sign_1ed25519ph_1update) (JNIEnv *jenv, jclass jcls,
     return result;
 }
 
+STODIUM_UPDATE_VECTOR(sign, ed25519ph)
+
 STODIUM_JNI(jint, crypto_1sign_1ed25519ph_1final_1create) (JNIEnv *jenv, jclass jcls,
         jobject state,
         jobject dst,
@@ -1,15 +1,18 @@
 package eu.artemisc.stodium;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
 
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
  * @author Jan van de Molengraft [jan@artemisc.eu]
  */
-public class Multipart<T> {
+public class Multipart<T>
+        implements Updatable {
 
     /**
      *
@@ -25,6 +28,18 @@ public class Multipart<T> {
                     final @NotNull ByteBuffer in)
                 throws StodiumException;
 
+        /**
+         * update feeds every buffer in the array into the state, in order, in
+         * a single native call.
+         *
+         * @param state
+         * @param in
+         * @throws StodiumException
+         */
+        void update(final @NotNull ByteBuffer   state,
+                    final @NotNull ByteBuffer[] in)
+                throws StodiumException;
+
         /**
          *
          * @param state
@@ -36,6 +51,23 @@ public class Multipart<T> {
                 throws StodiumException;
     }
 
+    /**
+     * MAX_SCRATCH_BYTES is the size of the per-thread buffer used by
+     * {@link #verifyFinal(ByteBuffer)}. It covers the output of every
+     * primitive implementing Spec.
+     */
+    private static final int MAX_SCRATCH_BYTES = 64;
+
+    /**
+     *
+     */
+    private static final @NotNull ThreadLocal<ByteBuffer> SCRATCH = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(MAX_SCRATCH_BYTES);
+        }
+    };
+
     /**
      *
      */
@@ -46,6 +78,23 @@ public class Multipart<T> {
      */
     private final @NotNull ByteBuffer state;
 
+    /**
+     * initial holds a snapshot of the state as it was passed to the
+     * constructor, which {@link #reset()} restores. It is taken right before
+     * the state is first modified, and is null until then.
+     */
+    private @Nullable ByteBuffer initial;
+
+    /**
+     *
+     */
+    private boolean released;
+
+    /**
+     * pool is the pool that state and initial were acquired from, if any.
+     */
+    private final @Nullable StatePool pool;
+
     /**
      *
      * @param spec
@@ -53,17 +102,136 @@ public class Multipart<T> {
      */
     public Multipart(final @NotNull Spec       spec,
                      final @NotNull ByteBuffer state) {
-        this.spec  = spec;
-        this.state = state;
+        this(spec, state, null);
+    }
+
+    /**
+     * Creates a Multipart around an initialized state. If pool is not null,
+     * state must have been acquired from it, and the snapshot used by
+     * {@link #reset()} is acquired from the same pool.
+     *
+     * @param spec
+     * @param state
+     * @param pool
+     */
+    public Multipart(final @NotNull  Spec       spec,
+                     final @NotNull  ByteBuffer state,
+                     final @Nullable StatePool  pool) {
+        this.spec    = spec;
+        this.state   = state;
+        this.pool    = pool;
+    }
+
+    /**
+     * Copy constructor used by {@link #duplicate()}.
+     */
+    private Multipart(final @NotNull Multipart<T> original) {
+        this.spec    = original.spec;
+        this.pool    = original.pool;
+        this.state   = acquire(original.pool, original.state.remaining());
+        this.state.duplicate().put(original.state.duplicate());
+        if (original.initial != null) {
+            this.initial = acquire(original.pool, original.initial.remaining());
+            this.initial.duplicate().put(original.initial.duplicate());
+        }
     }
 
     /**
      *
-     * @return
+     */
+    @NotNull
+    private static ByteBuffer acquire(final @Nullable StatePool pool,
+                                      final           int       size) {
+        return pool == null ? ByteBuffer.allocateDirect(size) : pool.acquire();
+    }
+
+    /**
+     * duplicate returns a new Multipart that continues from the exact state
+     * this instance is currently in. This allows a common prefix to be fed
+     * into a state once, after which it can be forked for every message that
+     * shares the prefix. The copy uses the same state pool as this instance.
+     *
+     * @return a copy of this Multipart, backed by its own state
      */
     @NotNull
     public Multipart<T> duplicate() {
-        throw new UnsupportedOperationException();
+        return new Multipart<>(this);
+    }
+
+    /**
+     * copyTo overwrites the state of dst with the state held by this
+     * instance. Unlike {@link #duplicate()}, this does not allocate a new
+     * state, so a long-lived dst can be reused for every message forked from
+     * the same prefix.
+     *
+     * @param dst the Multipart that should take on the state of this instance
+     * @return dst
+     * @throws StodiumException if dst is not created by the same primitive
+     */
+    @NotNull
+    public Multipart<T> copyTo(final @NotNull Multipart<T> dst)
+            throws StodiumException {
+        if (dst.spec != spec) {
+            throw new ConstraintViolationException("Multipart: cannot copy state between primitives");
+        }
+        Stodium.checkSize(dst.state.remaining(), state.remaining());
+        dst.snapshot();
+        dst.state.duplicate().put(state.duplicate());
+        return dst;
+    }
+
+    /**
+     * reset returns the state to the point it was at when this Multipart was
+     * created, without calling into the native code or re-processing a key.
+     * A single instance can therefore be reused for any number of messages.
+     *
+     * @return this
+     */
+    @NotNull
+    public Multipart<T> reset() {
+        if (initial != null) {
+            state.duplicate().put(initial.duplicate());
+        }
+        return this;
+    }
+
+    /**
+     * release wipes the state and hands the underlying buffers back to the
+     * pool they came from. The Multipart must not be used afterwards.
+     * Releasing more than once has no effect.
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        release(state);
+        if (initial != null) {
+            release(initial);
+            initial = null;
+        }
+    }
+
+    /**
+     *
+     */
+    private void release(final @NotNull ByteBuffer buffer) {
+        if (pool == null) {
+            Stodium.wipeBytes(buffer.duplicate());
+        } else {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * snapshot saves the state for {@link #reset()}, if that has not been
+     * done yet. It is called before every operation that modifies the state.
+     */
+    private void snapshot() {
+        if (initial == null) {
+            initial = acquire(pool, state.remaining());
+            initial.duplicate().put(state.duplicate());
+        }
     }
 
     /**
@@ -73,12 +241,33 @@ public class Multipart<T> {
      * @throws StodiumException
      */
     @NotNull
+    @Override
     public Multipart<?> update(final @NotNull ByteBuffer src)
             throws StodiumException {
+        snapshot();
         spec.update(state, src);
         return this;
     }
 
+    /**
+     * update processes the remaining bytes of every buffer in srcs, in order,
+     * as if update were called for each of them, but in a single native call.
+     *
+     * @param srcs
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    @Override
+    public Multipart<?> update(final @NotNull ByteBuffer... srcs)
+            throws StodiumException {
+        if (srcs.length > 0) {
+            snapshot();
+            spec.update(state, srcs);
+        }
+        return this;
+    }
+
     /**
      *
      * @param dst
@@ -86,6 +275,7 @@ public class Multipart<T> {
      */
     public void doFinal(final @NotNull ByteBuffer dst)
             throws StodiumException {
+        snapshot();
         spec.doFinal(state, dst);
     }
 
@@ -97,8 +287,18 @@ public class Multipart<T> {
     public boolean verifyFinal(final @NotNull ByteBuffer cmp)
             throws StodiumException {
         final ByteBuffer tmp;
-        tmp = ByteBuffer.allocateDirect(cmp.remaining());
-        doFinal(tmp);
-        return Stodium.isEqual(tmp, cmp);
+        if (cmp.remaining() > MAX_SCRATCH_BYTES) {
+            tmp = ByteBuffer.allocateDirect(cmp.remaining());
+        } else {
+            // slice, as the native code uses the capacity of direct buffers
+            tmp = ((ByteBuffer) SCRATCH.get().duplicate().limit(cmp.remaining())).slice();
+        }
+
+        try {
+            doFinal(tmp);
+            return Stodium.isEqual(tmp, cmp);
+        } finally {
+            Stodium.wipeBytes(tmp);
+        }
     }
 }
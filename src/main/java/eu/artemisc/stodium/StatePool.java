@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * StatePool is a thread-safe pool of direct ByteBuffers that all hold exactly
+ * one native state struct of a single primitive. Every primitive owns one
+ * StatePool, which is used to back the {@link Multipart} and
+ * {@link eu.artemisc.stodium.sign.MultipartSign} instances it creates.
+ * <p>
+ * Buffers are carved out of larger direct slabs, so a miss on the pool costs
+ * one {@code allocateDirect} per {@link #SLAB_STATES} states instead of one
+ * per state. Released buffers are wiped before they are made available again.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class StatePool {
+
+    /**
+     * SLAB_STATES is the number of states allocated at once whenever the pool
+     * runs empty.
+     */
+    public static final int SLAB_STATES = 8;
+
+    /**
+     * DEFAULT_CAPACITY is the number of released states a pool retains when
+     * no explicit capacity is given.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * ALIGNMENT is the stride states are spaced on within a slab, matching the
+     * alignment some native states (e.g. blake2b) are declared with.
+     */
+    private static final int ALIGNMENT = 64;
+
+    /**
+     *
+     */
+    private final @NotNull ConcurrentLinkedQueue<ByteBuffer> free;
+
+    /**
+     *
+     */
+    private final @NotNull AtomicInteger size;
+
+    /**
+     *
+     */
+    private final int stateBytes;
+
+    /**
+     *
+     */
+    private final int capacity;
+
+    /**
+     *
+     * @param stateBytes
+     */
+    public StatePool(final int stateBytes) {
+        this(stateBytes, DEFAULT_CAPACITY);
+    }
+
+    /**
+     *
+     * @param stateBytes the size of a single state
+     * @param capacity the maximum number of idle states kept in the pool
+     */
+    public StatePool(final int stateBytes,
+                     final int capacity) {
+        this.free       = new ConcurrentLinkedQueue<>();
+        this.size       = new AtomicInteger();
+        this.stateBytes = stateBytes;
+        this.capacity   = capacity;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int stateBytes() {
+        return stateBytes;
+    }
+
+    /**
+     *
+     * @return the number of idle states currently held by the pool
+     */
+    public int idle() {
+        return size.get();
+    }
+
+    /**
+     * acquire returns a direct buffer of exactly {@link #stateBytes()} bytes.
+     * The contents of the buffer are all zeroes.
+     *
+     * @return a state buffer, owned by the caller until passed to
+     *         {@link #release(ByteBuffer)}
+     */
+    @NotNull
+    public ByteBuffer acquire() {
+        final ByteBuffer pooled = free.poll();
+        if (pooled != null) {
+            size.decrementAndGet();
+            return pooled;
+        }
+        return allocateSlab();
+    }
+
+    /**
+     * release wipes the state and hands it back to the pool. If the pool is
+     * already at capacity, the state is dropped and left to the garbage
+     * collector.
+     *
+     * @param state a buffer previously returned by {@link #acquire()}
+     */
+    public void release(final @NotNull ByteBuffer state) {
+        Stodium.wipeBytes(state.duplicate());
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return;
+        }
+        free.offer(state);
+    }
+
+    /**
+     * allocateSlab allocates {@link #SLAB_STATES} states in a single direct
+     * buffer. One state is returned, the others are added to the pool.
+     *
+     * @return
+     */
+    @NotNull
+    private ByteBuffer allocateSlab() {
+        final int        stride;
+        final ByteBuffer slab;
+
+        stride = (stateBytes + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+        slab   = ByteBuffer.allocateDirect(stride * SLAB_STATES);
+
+        for (int i = 1; i < SLAB_STATES && size.get() < capacity; i++) {
+            slab.limit(i * stride + stateBytes).position(i * stride);
+            size.incrementAndGet();
+            free.offer(slab.slice());
+        }
+
+        slab.limit(stateBytes).position(0);
+        return slab.slice();
+    }
+}
@@ -14,6 +14,7 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Locale;
 
+import eu.artemisc.stodium.codecs.Codec;
 import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.OperationFailedException;
 import eu.artemisc.stodium.exceptions.ReadOnlyBufferException;
@@ -149,6 +150,29 @@ public final class Stodium {
         Stodium.checkPositive(len);
     }
 
+    /**
+     * checkOffsets verifies the offsets array used by the batch APIs, which
+     * describe {@code offsets.length - 1} consecutive inputs packed into a
+     * single buffer of dataLen bytes. Input i spans
+     * {@code [offsets[i], offsets[i + 1])}, so the offsets must be
+     * non-decreasing and lie within the buffer.
+     *
+     * @param offsets
+     * @param dataLen
+     * @return the number of inputs described by offsets
+     * @throws ConstraintViolationException
+     */
+    public static int checkOffsets(final @NotNull int[] offsets,
+                                   final          int   dataLen)
+            throws ConstraintViolationException {
+        Stodium.checkSizeMin(offsets.length, 1);
+        Stodium.checkSize(offsets[0], 0, dataLen);
+        for (int i = 1; i < offsets.length; i++) {
+            Stodium.checkSize(offsets[i], offsets[i - 1], dataLen);
+        }
+        return offsets.length - 1;
+    }
+
     /**
      * checkPow2 checks whether the given integer src is a power of 2, and
      * throws an exception otherwise.
@@ -244,17 +268,46 @@ public final class Stodium {
         }
     }
 
+    /**
+     * mlock locks the whole capacity of the direct buffer buff into memory,
+     * so it is never swapped to disk. Locking may fail when the process
+     * exceeds its locked memory limit, which is why the result is returned
+     * rather than thrown.
+     *
+     * @param buff a direct buffer
+     * @return whether the memory was locked
+     */
+    public static boolean mlock(final @NotNull ByteBuffer buff) {
+        if (!buff.isDirect()) {
+            throw new IllegalArgumentException("mlock requires a direct buffer");
+        }
+        return StodiumJNI.sodium_mlock(buff) == StodiumJNI.NOERR;
+    }
+
+    /**
+     * munlock zeroes the whole capacity of the direct buffer buff, and unlocks
+     * it if it was locked by {@link #mlock(ByteBuffer)}.
+     *
+     * @param buff a direct buffer
+     */
+    public static void munlock(final @NotNull ByteBuffer buff) {
+        if (!buff.isDirect()) {
+            throw new IllegalArgumentException("munlock requires a direct buffer");
+        }
+        StodiumJNI.sodium_munlock(buff);
+    }
+
     /**
      * based on sodium_bin2hex
      * @param bin
-     * @return
+     * @return the lower case hex encoding of the remaining bytes of bin
      *
      * @see <a href="https://github.com/jedisct1/libsodium/blob/master/src/libsodium/sodium/utils.c">libsodium source</a>
      */
     @NotNull
     public static String bin2hex(final @NotNull ByteBuffer bin)
             throws StodiumException {
-        throw new UnsupportedOperationException();
+        return Codec.hex().encode(bin);
     }
 
     /**
@@ -267,7 +320,7 @@ public final class Stodium {
     public static void hex2bin(final @NotNull CharSequence hex,
                                final @NotNull ByteBuffer   dst)
             throws ConstraintViolationException {
-        throw new UnsupportedOperationException();
+        Codec.hex().decode(dst, hex);
     }
 
     /**
@@ -298,6 +351,30 @@ public final class Stodium {
         return direct;
     }
 
+    /**
+     * ensureUsableByteBuffers applies {@link #ensureUsableByteBuffer(ByteBuffer)}
+     * to every buffer in buffs. The array itself is only copied if one of the
+     * buffers had to be replaced.
+     *
+     * @param buffs the original buffers
+     * @return an array of buffers that are all guaranteed to function
+     *         correctly in the native code
+     */
+    @NotNull
+    public static ByteBuffer[] ensureUsableByteBuffers(final @NotNull ByteBuffer[] buffs) {
+        ByteBuffer[] usable = buffs;
+        for (int i = 0; i < buffs.length; i++) {
+            final ByteBuffer buff = ensureUsableByteBuffer(buffs[i]);
+            if (buff != buffs[i]) {
+                if (usable == buffs) {
+                    usable = buffs.clone();
+                }
+                usable[i] = buff;
+            }
+        }
+        return usable;
+    }
+
     /**
      * checkDestinationWritable throws an exception if the ByteBuffer passed to
      * it is backed by an array and is read-only. If this is the case, the
@@ -11,6 +11,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 
 /**
  * StodiumJNI implements the java definitions of native methods for wrappers
@@ -31,6 +32,10 @@ public class StodiumJNI {
     //
     public static native int stodium_init();
     public static native @NotNull String sodium_version_string();
+    public static native int sodium_mlock(
+            @NotNull ByteBuffer buf);
+    public static native int sodium_munlock(
+            @NotNull ByteBuffer buf);
     // TODO: 8-6-17 add constant time utility methods? like sodium_increment
 
     //
@@ -39,6 +44,14 @@ public class StodiumJNI {
     public static native int randombytes_random();
     public static native int randombytes_uniform(int upper_bound);
     public static native void randombytes_buf(@NotNull ByteBuffer dst);
+    public static native int randombytes_seedbytes();
+    public static native void randombytes_buf_deterministic(
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer seed);
+    public static native int stodium_randombytes_buf_deterministic_at(
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer seed,
+                     long       offset);
 
     //
     // Core
@@ -237,9 +250,17 @@ public class StodiumJNI {
     public static native int crypto_auth_hmacsha256_update(
             @NotNull ByteBuffer dst,
             @NotNull ByteBuffer in);
+    public static native int stodium_auth_hmacsha256_update_vector(
+            @NotNull ByteBuffer   state,
+            @NotNull ByteBuffer[] srcs);
     public static native int crypto_auth_hmacsha256_final(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer dst);
+    public static native int stodium_auth_hmacsha256_batch(
+            @NotNull ByteBuffer state,
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets);
 
     //
     // Auth - HMAC-SHA-512
@@ -262,9 +283,17 @@ public class StodiumJNI {
     public static native int crypto_auth_hmacsha512_update(
             @NotNull ByteBuffer dst,
             @NotNull ByteBuffer in);
+    public static native int stodium_auth_hmacsha512_update_vector(
+            @NotNull ByteBuffer   state,
+            @NotNull ByteBuffer[] srcs);
     public static native int crypto_auth_hmacsha512_final(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer dst);
+    public static native int stodium_auth_hmacsha512_batch(
+            @NotNull ByteBuffer state,
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets);
 
     //
     // Auth - HMAC-SHA-512/256
@@ -287,9 +316,17 @@ public class StodiumJNI {
     public static native int crypto_auth_hmacsha512256_update(
             @NotNull ByteBuffer dst,
             @NotNull ByteBuffer in);
+    public static native int stodium_auth_hmacsha512256_update_vector(
+            @NotNull ByteBuffer   state,
+            @NotNull ByteBuffer[] srcs);
     public static native int crypto_auth_hmacsha512256_final(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer dst);
+    public static native int stodium_auth_hmacsha512256_batch(
+            @NotNull ByteBuffer state,
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets);
 
     //
     // Box
@@ -459,21 +496,38 @@ public class StodiumJNI {
             @NotNull  ByteBuffer src,
             @Nullable ByteBuffer key);
     public static native int crypto_generichash_blake2b_salt_personal(
-            @NotNull ByteBuffer dst,
-            @NotNull ByteBuffer src,
-            @NotNull ByteBuffer key,
-            @NotNull ByteBuffer salt,
-            @NotNull ByteBuffer personal);
+            @NotNull  ByteBuffer dst,
+            @NotNull  ByteBuffer src,
+            @Nullable ByteBuffer key,
+            @NotNull  ByteBuffer salt,
+            @NotNull  ByteBuffer personal);
     public static native int crypto_generichash_blake2b_init(
             @NotNull  ByteBuffer state,
             @Nullable ByteBuffer key,
                       int        outlen);
+    public static native int crypto_generichash_blake2b_init_salt_personal(
+            @NotNull  ByteBuffer state,
+            @Nullable ByteBuffer key,
+                      int        outlen,
+            @NotNull  ByteBuffer salt,
+            @NotNull  ByteBuffer personal);
     public static native int crypto_generichash_blake2b_update(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer in);
+    public static native int stodium_generichash_blake2b_update_vector(
+            @NotNull ByteBuffer   state,
+            @NotNull ByteBuffer[] srcs);
     public static native int crypto_generichash_blake2b_final(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer out);
+    public static native int stodium_generichash_blake2b_batch(
+            @NotNull  ByteBuffer dst,
+            @NotNull  ByteBuffer src,
+            @Nullable ByteBuffer key,
+                      int        outlen,
+            @NotNull  int[]      offsets,
+                      int        from,
+                      int        to);
 
     //
     // Hash
@@ -494,9 +548,18 @@ public class StodiumJNI {
     public static native int crypto_hash_sha256_update(
             @NotNull ByteBuffer dst,
             @NotNull ByteBuffer in);
+    public static native int stodium_hash_sha256_update_vector(
+            @NotNull ByteBuffer   state,
+            @NotNull ByteBuffer[] srcs);
     public static native int crypto_hash_sha256_final(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer dst);
+    public static native int stodium_hash_sha256_batch(
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets,
+                     int        from,
+                     int        to);
 
     //
     // Hash - SHA-512
@@ -512,9 +575,18 @@ public class StodiumJNI {
     public static native int crypto_hash_sha512_update(
             @NotNull ByteBuffer dst,
             @NotNull ByteBuffer in);
+    public static native int stodium_hash_sha512_update_vector(
+            @NotNull ByteBuffer   state,
+            @NotNull ByteBuffer[] srcs);
     public static native int crypto_hash_sha512_final(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer dst);
+    public static native int stodium_hash_sha512_batch(
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets,
+                     int        from,
+                     int        to);
 
     //
     // Kdf
@@ -534,6 +606,13 @@ public class StodiumJNI {
                      long       subId,
             @NotNull ByteBuffer context,
             @NotNull ByteBuffer key);
+    public static native int stodium_kdf_blake2b_derive_range(
+            @NotNull ByteBuffer sub,
+                     int        sublen,
+                     long       fromid,
+                     int        count,
+            @NotNull ByteBuffer context,
+            @NotNull ByteBuffer key);
 
     //
     // Kx
@@ -567,6 +646,13 @@ public class StodiumJNI {
             @NotNull ByteBuffer serverPk,
             @NotNull ByteBuffer serverSk,
             @NotNull ByteBuffer clientPk);
+    public static native int stodium_kx_server_session_keys_batch(
+            @NotNull ByteBuffer rx,
+            @NotNull ByteBuffer tx,
+            @NotNull ByteBuffer serverPk,
+            @NotNull ByteBuffer serverSk,
+            @NotNull ByteBuffer clientPks,
+                     int        count);
 
     //
     // OneTimeAuth
@@ -594,6 +680,9 @@ public class StodiumJNI {
     public static native int crypto_onetimeauth_poly1305_update(
             @NotNull ByteBuffer dst,
             @NotNull ByteBuffer in);
+    public static native int stodium_onetimeauth_poly1305_update_vector(
+            @NotNull ByteBuffer   state,
+            @NotNull ByteBuffer[] srcs);
     public static native int crypto_onetimeauth_poly1305_final(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer dst);
@@ -638,6 +727,54 @@ public class StodiumJNI {
             @NotNull ByteBuffer str,
             @NotNull ByteBuffer password);
 
+    public static native int crypto_pwhash_argon2i_str_needs_rehash(
+            @NotNull ByteBuffer str,
+                     long       opslimit,
+                     long       memlimit);
+
+    //
+    // PwHash - Argon2id
+    //
+    public static native long crypto_pwhash_argon2id_bytes_min();
+    public static native long crypto_pwhash_argon2id_bytes_max();
+    public static native long crypto_pwhash_argon2id_passwd_min();
+    public static native long crypto_pwhash_argon2id_passwd_max();
+    public static native int crypto_pwhash_argon2id_saltbytes();
+    public static native int crypto_pwhash_argon2id_strbytes();
+    public static native @NotNull String crypto_pwhash_argon2id_strprefix();
+    public static native long crypto_pwhash_argon2id_opslimit_min();
+    public static native long crypto_pwhash_argon2id_opslimit_max();
+    public static native long crypto_pwhash_argon2id_memlimit_min();
+    public static native long crypto_pwhash_argon2id_memlimit_max();
+    public static native long crypto_pwhash_argon2id_opslimit_interactive();
+    public static native long crypto_pwhash_argon2id_memlimit_interactive();
+    public static native long crypto_pwhash_argon2id_opslimit_moderate();
+    public static native long crypto_pwhash_argon2id_memlimit_moderate();
+    public static native long crypto_pwhash_argon2id_opslimit_sensitive();
+    public static native long crypto_pwhash_argon2id_memlimit_sensitive();
+
+    public static native int crypto_pwhash_argon2id(
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer password,
+            @NotNull ByteBuffer salt,
+                     long       opslimit,
+                     long       memlimit);
+
+    public static native int crypto_pwhash_argon2id_str(
+            @NotNull ByteBuffer dst,
+            @NotNull ByteBuffer password,
+                     long       opslimit,
+                     long       memlimit);
+
+    public static native int crypto_pwhash_argon2id_str_verify(
+            @NotNull ByteBuffer str,
+            @NotNull ByteBuffer password);
+
+    public static native int crypto_pwhash_argon2id_str_needs_rehash(
+            @NotNull ByteBuffer str,
+                     long       opslimit,
+                     long       memlimit);
+
     //
     // PwHash Scrypt
     //
@@ -674,6 +811,11 @@ public class StodiumJNI {
             @NotNull ByteBuffer str,
             @NotNull ByteBuffer password);
 
+    public static native int crypto_pwhash_scryptsalsa208sha256_str_needs_rehash(
+            @NotNull ByteBuffer str,
+                     long       opslimit,
+                     long       memlimit);
+
     //
     // ScalarMult
     //
@@ -773,6 +915,30 @@ public class StodiumJNI {
             @NotNull ByteBuffer out,
             @NotNull ByteBuffer in,
             @NotNull ByteBuffer key);
+    public static native long stodium_shorthash_siphash24_64(
+            @NotNull ByteBuffer in,
+            @NotNull ByteBuffer key);
+    public static native long stodium_shorthash_siphash24_64_array(
+            @NotNull byte[]     in,
+                     int        offset,
+                     int        len,
+            @NotNull ByteBuffer key);
+    public static native int stodium_shorthash_siphash24_batch(
+            @NotNull long[]     dst,
+                     int        dstOffset,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets,
+                     int        from,
+                     int        to,
+            @NotNull ByteBuffer key);
+    public static native int stodium_shorthash_siphash24_batch_direct(
+            @NotNull LongBuffer dst,
+                     int        dstOffset,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets,
+                     int        from,
+                     int        to,
+            @NotNull ByteBuffer key);
 
     //
     // ShortHash SipHashx24
@@ -784,6 +950,42 @@ public class StodiumJNI {
             @NotNull ByteBuffer out,
             @NotNull ByteBuffer in,
             @NotNull ByteBuffer key);
+    public static native long stodium_shorthash_siphashx24_64(
+            @NotNull ByteBuffer in,
+            @NotNull ByteBuffer key);
+    public static native long stodium_shorthash_siphashx24_64_array(
+            @NotNull byte[]     in,
+                     int        offset,
+                     int        len,
+            @NotNull ByteBuffer key);
+    public static native int stodium_shorthash_siphashx24_batch(
+            @NotNull long[]     dst,
+                     int        dstOffset,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets,
+                     int        from,
+                     int        to,
+            @NotNull ByteBuffer key);
+    public static native int stodium_shorthash_siphashx24_batch_direct(
+            @NotNull LongBuffer dst,
+                     int        dstOffset,
+            @NotNull ByteBuffer src,
+            @NotNull int[]      offsets,
+                     int        from,
+                     int        to,
+            @NotNull ByteBuffer key);
+    public static native int stodium_shorthash_siphashx24_128(
+            @NotNull long[]     dst,
+                     int        dstOffset,
+            @NotNull ByteBuffer in,
+            @NotNull ByteBuffer key);
+    public static native int stodium_shorthash_siphashx24_128_array(
+            @NotNull long[]     dst,
+                     int        dstOffset,
+            @NotNull byte[]     in,
+                     int        offset,
+                     int        len,
+            @NotNull ByteBuffer key);
 
     //
     // Sign
@@ -827,6 +1029,9 @@ public class StodiumJNI {
     public static native int crypto_sign_ed25519ph_update(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer srcMsg);
+    public static native int stodium_sign_ed25519ph_update_vector(
+            @NotNull ByteBuffer   state,
+            @NotNull ByteBuffer[] srcs);
     public static native int crypto_sign_ed25519ph_final_create(
             @NotNull ByteBuffer state,
             @NotNull ByteBuffer dstSig,
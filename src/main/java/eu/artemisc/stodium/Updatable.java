@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * Updatable is implemented by the multipart APIs ({@link Multipart} and
+ * {@link eu.artemisc.stodium.sign.MultipartSign}), so input can be fed to
+ * any of them through a common interface, e.g. by the adapters in
+ * {@code eu.artemisc.stodium.io}.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public interface Updatable {
+    /**
+     * update processes the remaining bytes of src. As with every native call,
+     * a direct src is processed from its start up to its capacity, so callers
+     * pass a slice when only a part of a direct buffer must be processed.
+     *
+     * @param src
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    Updatable update(final @NotNull ByteBuffer src)
+            throws StodiumException;
+
+    /**
+     * update processes the remaining bytes of every buffer in srcs, in order,
+     * in a single native call.
+     *
+     * @param srcs
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    Updatable update(final @NotNull ByteBuffer... srcs)
+            throws StodiumException;
+}
@@ -13,6 +13,7 @@ import java.nio.ByteBuffer;
 
 import eu.artemisc.stodium.Multipart;
 import eu.artemisc.stodium.Singleton;
+import eu.artemisc.stodium.StatePool;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
@@ -20,26 +21,26 @@ import eu.artemisc.stodium.exceptions.StodiumException;
  */
 public abstract class Auth {
 
-    private static final @NotNull Singleton<Auth> HMAC_SHA_256 = new Singleton<Auth>() {
+    private static final @NotNull Singleton<Hmac> HMAC_SHA_256 = new Singleton<Hmac>() {
         @NotNull
         @Override
-        protected Auth initialize() {
+        protected Hmac initialize() {
             return new HmacSha256();
         }
     };
 
-    private static final @NotNull Singleton<Auth> HMAC_SHA_512 = new Singleton<Auth>() {
+    private static final @NotNull Singleton<Hmac> HMAC_SHA_512 = new Singleton<Hmac>() {
         @NotNull
         @Override
-        protected Auth initialize() {
+        protected Hmac initialize() {
             return new HmacSha512();
         }
     };
 
-    private static final @NotNull Singleton<Auth> HMAC_SHA_512256 = new Singleton<Auth>() {
+    private static final @NotNull Singleton<Hmac> HMAC_SHA_512256 = new Singleton<Hmac>() {
         @NotNull
         @Override
-        protected Auth initialize() {
+        protected Hmac initialize() {
             return new HmacSha512256();
         }
     };
@@ -50,17 +51,17 @@ public abstract class Auth {
     }
 
     @NotNull
-    public static Auth HmacSha256Instance() {
+    public static Hmac HmacSha256Instance() {
         return HMAC_SHA_256.get();
     }
 
     @NotNull
-    public static Auth HmacSha512Instance() {
+    public static Hmac HmacSha512Instance() {
         return HMAC_SHA_512.get();
     }
 
     @NotNull
-    public static Auth HmacSha512256Instance() {
+    public static Hmac HmacSha512256Instance() {
         return HMAC_SHA_512256.get();
     }
 
@@ -69,6 +70,12 @@ public abstract class Auth {
     protected final int KEYBYTES;
     protected final int STATEBYTES;
 
+    /**
+     * statePool provides the state buffers for the Multipart instances
+     * created by {@link #init(ByteBuffer)}.
+     */
+    protected final @NotNull StatePool statePool;
+
     /**
      *
      * @param bytes
@@ -81,6 +88,7 @@ public abstract class Auth {
         BYTES      = bytes;
         KEYBYTES   = key;
         STATEBYTES = state;
+        statePool  = new StatePool(state);
     }
 
     /**
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.auth;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Multipart;
+import eu.artemisc.stodium.Singleton;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * Hkdf implements the HMAC-based key derivation function of RFC 5869 on top
+ * of the HMAC-SHA-256 and HMAC-SHA-512 multipart states.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class Hkdf {
+
+    private static final @NotNull Singleton<Hkdf> HKDF_SHA_256 = new Singleton<Hkdf>() {
+        @NotNull
+        @Override
+        protected Hkdf initialize() {
+            return new Hkdf(Auth.HmacSha256Instance());
+        }
+    };
+
+    private static final @NotNull Singleton<Hkdf> HKDF_SHA_512 = new Singleton<Hkdf>() {
+        @NotNull
+        @Override
+        protected Hkdf initialize() {
+            return new Hkdf(Auth.HmacSha512Instance());
+        }
+    };
+
+    @NotNull
+    public static Hkdf sha256Instance() {
+        return HKDF_SHA_256.get();
+    }
+
+    @NotNull
+    public static Hkdf sha512Instance() {
+        return HKDF_SHA_512.get();
+    }
+
+    /**
+     * MAX_BLOCKS is the highest value the one-byte block counter can take.
+     */
+    private static final int MAX_BLOCKS = 255;
+
+    /**
+     *
+     */
+    private static final @NotNull ByteBuffer EMPTY = ByteBuffer.allocateDirect(0);
+
+    /**
+     *
+     */
+    private final @NotNull Hmac auth;
+
+    /**
+     *
+     * @param auth
+     */
+    private Hkdf(final @NotNull Hmac auth) {
+        this.auth = auth;
+    }
+
+    /**
+     *
+     * @return the length of a pseudorandom key, and of every output block
+     */
+    public int prkBytes() {
+        return auth.bytes();
+    }
+
+    /**
+     *
+     * @return the maximum number of bytes a single expansion can produce
+     */
+    public int outputBytesMax() {
+        return MAX_BLOCKS * auth.bytes();
+    }
+
+    /**
+     * extract writes the pseudorandom key for ikm to dstPrk. If salt is null,
+     * a string of {@link #prkBytes()} zeroes is used, as specified.
+     *
+     * @param dstPrk
+     * @param salt
+     * @param ikm
+     * @throws StodiumException
+     */
+    public void extract(final @NotNull  ByteBuffer dstPrk,
+                        final @Nullable ByteBuffer salt,
+                        final @NotNull  ByteBuffer ikm)
+            throws StodiumException {
+        final KeyedAuth keyed;
+
+        Stodium.checkDestinationWritable(dstPrk);
+        Stodium.checkSizeMin(dstPrk.remaining(), prkBytes());
+
+        keyed = auth.keyed(salt == null ? ByteBuffer.allocate(prkBytes()) : salt);
+        try {
+            keyed.mac(dstPrk, ikm);
+        } finally {
+            keyed.release();
+        }
+    }
+
+    /**
+     * expand fills all of dst with output keying material for prk and info.
+     *
+     * @param dst
+     * @param prk
+     * @param info
+     * @throws StodiumException
+     */
+    public void expand(final @NotNull ByteBuffer dst,
+                       final @NotNull ByteBuffer prk,
+                       final @NotNull ByteBuffer info)
+            throws StodiumException {
+        final Expander expander = expander(prk);
+        try {
+            expander.expand(dst, info);
+        } finally {
+            expander.release();
+        }
+    }
+
+    /**
+     * deriveKey runs extract and expand, and wipes the intermediate
+     * pseudorandom key.
+     *
+     * @param dst
+     * @param salt
+     * @param ikm
+     * @param info
+     * @throws StodiumException
+     */
+    public void deriveKey(final @NotNull  ByteBuffer dst,
+                          final @Nullable ByteBuffer salt,
+                          final @NotNull  ByteBuffer ikm,
+                          final @NotNull  ByteBuffer info)
+            throws StodiumException {
+        final ByteBuffer prk = ByteBuffer.allocateDirect(prkBytes());
+        try {
+            extract(prk, salt, ikm);
+            expand(dst, prk, info);
+        } finally {
+            Stodium.wipeBytes(prk);
+        }
+    }
+
+    /**
+     * expander returns an Expander that holds the HMAC state keyed with prk,
+     * so the key is only processed once for any number of expansions.
+     *
+     * @param prk
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public Expander expander(final @NotNull ByteBuffer prk)
+            throws StodiumException {
+        Stodium.checkSizeMin(prk.remaining(), prkBytes());
+        return new Expander(this, auth.keyed(prk));
+    }
+
+    /**
+     * Expander produces the output of the expand step for a fixed
+     * pseudorandom key. Output is either produced at once by
+     * {@link #expand(ByteBuffer, ByteBuffer)}, or incrementally by calling
+     * {@link #start(ByteBuffer)} followed by any number of
+     * {@link #read(ByteBuffer)} calls.
+     * <p>
+     * Every complete block is computed straight into the destination buffer;
+     * only a block that ends past the destination is buffered, and its
+     * remainder is handed out by the next read. An Expander is not thread
+     * safe.
+     */
+    public static final class Expander {
+
+        private final @NotNull Hkdf            hkdf;
+        private final @NotNull KeyedAuth       keyed;
+        private final @NotNull Multipart<Auth> multipart;
+
+        /**
+         * block holds the last block produced, which is chained into the next
+         * one, and the part of it that was not yet read.
+         */
+        private final @NotNull ByteBuffer block;
+
+        /**
+         *
+         */
+        private final @NotNull ByteBuffer counter;
+
+        /**
+         *
+         */
+        private @NotNull ByteBuffer info;
+
+        /**
+         * blocks is the number of blocks produced since the last start.
+         */
+        private int blocks;
+
+        /**
+         *
+         * @param hkdf
+         * @param keyed
+         */
+        private Expander(final @NotNull Hkdf      hkdf,
+                         final @NotNull KeyedAuth keyed) {
+            this.hkdf      = hkdf;
+            this.keyed     = keyed;
+            this.multipart = keyed.init();
+            this.block     = ByteBuffer.allocateDirect(hkdf.prkBytes());
+            this.counter   = ByteBuffer.allocateDirect(1);
+            this.info      = ByteBuffer.allocateDirect(0);
+        }
+
+        /**
+         * expand fills all of dst with the output for info.
+         *
+         * @param dst
+         * @param info
+         * @throws StodiumException
+         */
+        public void expand(final @NotNull ByteBuffer dst,
+                           final @NotNull ByteBuffer info)
+                throws StodiumException {
+            Stodium.checkSize(dst.remaining(), 0, hkdf.outputBytesMax());
+            start(info);
+            read(dst);
+        }
+
+        /**
+         * start begins a new output stream for info. The remaining bytes of
+         * info are copied.
+         *
+         * @param info
+         * @return this
+         */
+        @NotNull
+        public Expander start(final @NotNull ByteBuffer info) {
+            this.info = ByteBuffer.allocateDirect(info.remaining());
+            this.info.put(info.duplicate()).flip();
+            Stodium.wipeBytes(block);
+            block.clear().position(block.limit());
+            blocks = 0;
+            return this;
+        }
+
+        /**
+         * read fills dst with the next output bytes of the current stream.
+         *
+         * @param dst
+         * @throws StodiumException if the stream would exceed
+         *         {@link Hkdf#outputBytesMax()} bytes
+         */
+        public void read(final @NotNull ByteBuffer dst)
+                throws StodiumException {
+            final int blockBytes = block.capacity();
+            final int produced   = blocks;
+            ByteBuffer previous;
+
+            Stodium.checkDestinationWritable(dst);
+            Stodium.checkSize(dst.remaining(), 0,
+                    block.remaining() + (MAX_BLOCKS - blocks) * blockBytes);
+
+            // first hand out what is left of a previously buffered block
+            if (block.hasRemaining()) {
+                final ByteBuffer left = block.duplicate();
+                left.limit(left.position() + Math.min(left.remaining(), dst.remaining()));
+                dst.put(left);
+                block.position(left.position());
+            }
+
+            previous = (ByteBuffer) block.duplicate().clear();
+            while (dst.remaining() >= blockBytes) {
+                final ByteBuffer out = ((ByteBuffer) dst.duplicate().limit(dst.position() + blockBytes)).slice();
+                next(previous, out);
+                previous = out;
+                dst.position(dst.position() + blockBytes);
+            }
+
+            if (dst.hasRemaining()) {
+                next(previous, (ByteBuffer) block.duplicate().clear());
+                block.clear().limit(dst.remaining());
+                dst.put(block);
+                block.limit(blockBytes);
+            } else if (blocks > produced) {
+                // keep the last block for chaining, with nothing left to read
+                block.clear();
+                block.put(previous.duplicate());
+            }
+        }
+
+        /**
+         * next computes T(n) = HMAC(PRK, T(n - 1) | info | n) into out.
+         */
+        private void next(final @NotNull ByteBuffer previous,
+                          final @NotNull ByteBuffer out)
+                throws StodiumException {
+            blocks++;
+            counter.put(0, (byte) blocks);
+            multipart.reset().update(
+                    blocks == 1 ? EMPTY : previous.duplicate(),
+                    info.duplicate(),
+                    counter.duplicate());
+            multipart.doFinal(out);
+        }
+
+        /**
+         * release wipes the keyed state and the buffered output. The Expander
+         * must not be used afterwards.
+         */
+        public void release() {
+            multipart.release();
+            keyed.release();
+            block.clear();
+            Stodium.wipeBytes(block);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.auth;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * Hmac is the base of the HMAC primitives. Unlike a one-time authenticator,
+ * an HMAC key may authenticate any number of messages, so only these
+ * primitives offer keyed contexts.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class Hmac
+        extends Auth {
+
+    /**
+     * @param bytes
+     * @param key
+     * @param state
+     */
+    Hmac(final int bytes,
+         final int key,
+         final int state) {
+        super(bytes, key, state);
+    }
+
+    /**
+     * keyed processes the key once and returns a context that computes MACs
+     * under that key without repeating the key setup for every message.
+     *
+     * @param key
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public abstract KeyedAuth keyed(final @NotNull ByteBuffer key)
+            throws StodiumException;
+}
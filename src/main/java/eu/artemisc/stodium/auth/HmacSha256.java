@@ -13,8 +13,8 @@ import eu.artemisc.stodium.exceptions.StodiumException;
  * @author Jan van de Molengraft [jan@artemisc.eu]
  */
 final class HmacSha256
-        extends Auth
-        implements Multipart.Spec {
+        extends Hmac
+        implements KeyedAuth.Spec {
 
     HmacSha256() {
         super(StodiumJNI.crypto_auth_hmacsha256_bytes(),
@@ -58,13 +58,13 @@ final class HmacSha256
             throws StodiumException {
         final ByteBuffer state;
 
-        Stodium.checkSize(key.remaining(), KEYBYTES);
-        state = ByteBuffer.allocateDirect(STATEBYTES);
+        // unlike the one-shot functions, init accepts keys of any length
+        state = statePool.acquire();
 
         Stodium.checkStatus(StodiumJNI.crypto_auth_hmacsha256_init(
                 state, Stodium.ensureUsableByteBuffer(key)));
 
-        return new Multipart<>(this, state);
+        return new Multipart<>(this, state, statePool);
     }
 
     @Override
@@ -79,6 +79,18 @@ final class HmacSha256
                 Stodium.ensureUsableByteBuffer(in)));
     }
 
+    @Override
+    public void update(final @NotNull ByteBuffer   state,
+                       final @NotNull ByteBuffer[] in)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(state);
+        Stodium.checkSize(state.remaining(), STATEBYTES);
+
+        Stodium.checkStatus(StodiumJNI.stodium_auth_hmacsha256_update_vector(
+                Stodium.ensureUsableByteBuffer(state),
+                Stodium.ensureUsableByteBuffers(in)));
+    }
+
     @Override
     public void doFinal(final @NotNull ByteBuffer state,
                         final @NotNull ByteBuffer dst)
@@ -93,4 +105,40 @@ final class HmacSha256
                 Stodium.ensureUsableByteBuffer(state),
                 Stodium.ensureUsableByteBuffer(dst)));
     }
+
+    @NotNull
+    @Override
+    public KeyedAuth keyed(final @NotNull ByteBuffer key)
+            throws StodiumException {
+        final ByteBuffer state;
+
+        // unlike the one-shot functions, init accepts keys of any length
+        state = statePool.acquire();
+
+        Stodium.checkStatus(StodiumJNI.crypto_auth_hmacsha256_init(
+                state, Stodium.ensureUsableByteBuffer(key)));
+
+        return new KeyedAuth(this, statePool, state, BYTES);
+    }
+
+    @Override
+    public void macAll(final @NotNull ByteBuffer state,
+                       final @NotNull ByteBuffer dst,
+                       final @NotNull ByteBuffer src,
+                       final @NotNull int[]      offsets)
+            throws StodiumException {
+        final int count;
+
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSize(state.remaining(), STATEBYTES);
+
+        count = Stodium.checkOffsets(offsets, src.remaining());
+        Stodium.checkSizeMin(dst.remaining(), count * BYTES);
+
+        Stodium.checkStatus(StodiumJNI.stodium_auth_hmacsha256_batch(
+                Stodium.ensureUsableByteBuffer(state.slice()),
+                Stodium.ensureUsableByteBuffer(dst.slice()),
+                Stodium.ensureUsableByteBuffer(src.slice()),
+                offsets));
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.auth;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Multipart;
+import eu.artemisc.stodium.StatePool;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * KeyedAuth holds the state of an HMAC primitive right after the key has been
+ * processed. Every MAC computed through a KeyedAuth starts from a copy of that
+ * state, which saves the two compression calls spent on the inner and outer
+ * key pads for every message. This makes it suitable for computing large
+ * numbers of MACs under a single key, such as blind indexes.
+ * <p>
+ * A KeyedAuth is safe to use from multiple threads, as the keyed state is
+ * only ever read.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class KeyedAuth {
+
+    /**
+     * Spec is implemented by the HMAC primitives, which support keyed contexts.
+     */
+    interface Spec
+            extends Multipart.Spec {
+        /**
+         * macAll computes the MAC of every input described by offsets,
+         * starting each one from the keyed state, in a single native call.
+         *
+         * @param state
+         * @param dst
+         * @param src
+         * @param offsets
+         * @throws StodiumException
+         */
+        void macAll(final @NotNull ByteBuffer state,
+                    final @NotNull ByteBuffer dst,
+                    final @NotNull ByteBuffer src,
+                    final @NotNull int[]      offsets)
+                throws StodiumException;
+    }
+
+    /**
+     *
+     */
+    private final @NotNull Spec spec;
+
+    /**
+     *
+     */
+    private final @NotNull StatePool pool;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer keyed;
+
+    /**
+     *
+     */
+    private final int bytes;
+
+    /**
+     *
+     */
+    private volatile boolean released;
+
+    /**
+     *
+     * @param spec
+     * @param pool
+     * @param keyed
+     * @param bytes
+     */
+    KeyedAuth(final @NotNull Spec       spec,
+              final @NotNull StatePool  pool,
+              final @NotNull ByteBuffer keyed,
+              final          int        bytes) {
+        this.spec  = spec;
+        this.pool  = pool;
+        this.keyed = keyed;
+        this.bytes = bytes;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int bytes() {
+        return bytes;
+    }
+
+    /**
+     * mac computes the MAC over src and writes it to dstMac.
+     *
+     * @param dstMac
+     * @param src
+     * @throws StodiumException
+     */
+    public void mac(final @NotNull ByteBuffer dstMac,
+                    final @NotNull ByteBuffer src)
+            throws StodiumException {
+        final ByteBuffer state;
+        checkReleased();
+        state = pool.acquire();
+        try {
+            state.duplicate().put(keyed.duplicate());
+            spec.update(state, src);
+            spec.doFinal(state, dstMac);
+        } finally {
+            pool.release(state);
+        }
+    }
+
+    /**
+     * verify computes the MAC over src and compares it with the first
+     * {@link #bytes()} bytes of srcMac in constant time.
+     *
+     * @param srcMac
+     * @param src
+     * @return true iff the MAC is valid
+     * @throws StodiumException
+     */
+    public boolean verify(final @NotNull ByteBuffer srcMac,
+                          final @NotNull ByteBuffer src)
+            throws StodiumException {
+        final Multipart<Auth> multipart;
+
+        Stodium.checkSizeMin(srcMac.remaining(), bytes);
+
+        multipart = init();
+        try {
+            multipart.update(src);
+            return multipart.verifyFinal(
+                    (ByteBuffer) srcMac.duplicate().limit(srcMac.position() + bytes));
+        } finally {
+            multipart.release();
+        }
+    }
+
+    /**
+     * macAll computes a MAC for each of the {@code offsets.length - 1} inputs
+     * packed into src, in a single native call. Input i spans
+     * {@code [offsets[i], offsets[i + 1])} and its MAC is written to dst at
+     * offset {@code i * bytes()}.
+     *
+     * @param dst
+     * @param src
+     * @param offsets
+     * @throws StodiumException
+     */
+    public void macAll(final @NotNull ByteBuffer dst,
+                       final @NotNull ByteBuffer src,
+                       final @NotNull int[]      offsets)
+            throws StodiumException {
+        checkReleased();
+        spec.macAll(keyed, dst, src, offsets);
+    }
+
+    /**
+     * init returns a Multipart that starts out in the keyed state, for
+     * messages that are not available as a single buffer. Calling
+     * {@link Multipart#reset()} on it returns it to the keyed state.
+     *
+     * @return
+     */
+    @NotNull
+    public Multipart<Auth> init() {
+        final ByteBuffer state;
+        checkReleased();
+        state = pool.acquire();
+        state.duplicate().put(keyed.duplicate());
+        return new Multipart<>(spec, state, pool);
+    }
+
+    /**
+     * release wipes the keyed state. Using the KeyedAuth afterwards throws
+     * IllegalStateException. Releasing more than once has no effect.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        pool.release(keyed);
+    }
+
+    /**
+     *
+     */
+    private void checkReleased() {
+        if (released) {
+            throw new IllegalStateException("KeyedAuth: released");
+        }
+    }
+}
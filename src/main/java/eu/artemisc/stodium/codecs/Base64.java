@@ -6,48 +6,228 @@ import java.nio.ByteBuffer;
 
 import eu.artemisc.stodium.Stodium;
 import eu.artemisc.stodium.StodiumJNI;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
+ * The Java implementation follows sodium_bin2base64 and sodium_base642bin,
+ * which map between bytes and characters with arithmetic rather than lookup
+ * tables, so it runs in constant time.
+ *
  * @author Jan van de Molengraft [jan@artemisc.eu]
  */
 public class Base64
         extends Codec {
 
-    private final int variant;
+    // the bits of the variants, as defined by libsodium
+    private static final int VARIANT_NO_PADDING_MASK = 0x2;
+    private static final int VARIANT_URLSAFE_MASK    = 0x4;
+
+    private final int     variant;
+    private final boolean padded;
+    private final boolean urlSafe;
 
     Base64(final int variant) {
         this.variant = variant;
+        this.padded  = (variant & VARIANT_NO_PADDING_MASK) == 0;
+        this.urlSafe = (variant & VARIANT_URLSAFE_MASK) != 0;
+    }
+
+    @Override
+    int groupBytes() {
+        return 3;
     }
 
     @Override
     public int encodedLength(final int input) {
-        return StodiumJNI.sodium_base64_encoded_len(input, variant);
+        final int tail = input % 3;
+        if (tail == 0 || padded) {
+            return (input + 2) / 3 * 4;
+        }
+        return input / 3 * 4 + tail + 1;
+    }
+
+    @Override
+    public int decodedLengthMax(final int input) {
+        return input / 4 * 3 + (input % 4) * 3 / 4;
     }
 
     @Override
     public void encode(final @NotNull ByteBuffer dst,
                        final @NotNull ByteBuffer src)
             throws StodiumException {
+        final int length = encodedLength(src.remaining());
+
         Stodium.checkDestinationWritable(dst);
 
-        Stodium.checkSizeMin(dst.remaining(), encodedLength(src.remaining()));
+        Stodium.checkSizeMin(dst.remaining(), length);
+
+        if (useJava(dst, src)) {
+            final byte[] in  = src.array();
+            final byte[] out = dst.array();
+            final int    off = src.arrayOffset() + src.position();
+            final int    to  = dst.arrayOffset() + dst.position();
+            int acc = 0, accLen = 0, i = to;
 
+            for (int j = off; j < off + src.remaining(); j++) {
+                acc = (acc << 8 | (in[j] & 0xff)) & 0x3fff;
+                accLen += 8;
+                while (accLen >= 6) {
+                    accLen -= 6;
+                    out[i++] = (byte) toChar(acc >> accLen & 0x3f);
+                }
+            }
+            if (accLen > 0) {
+                out[i++] = (byte) toChar(acc << (6 - accLen) & 0x3f);
+            }
+            while (i < to + length) {
+                out[i++] = '=';
+            }
+            return;
+        }
+
+        // slice, as the native code uses the capacity of direct buffers
         Stodium.checkStatus(StodiumJNI.sodium_bin2base64(
-                Stodium.ensureUsableByteBuffer(dst),
-                Stodium.ensureUsableByteBuffer(src),
+                Stodium.ensureUsableByteBuffer(dst.slice()),
+                Stodium.ensureUsableByteBuffer(src.slice()),
                 variant));
     }
 
     @Override
-    public void decode(final @NotNull ByteBuffer dst,
-                       final @NotNull ByteBuffer src)
-            throws StodiumException {
+    void encode(final @NotNull char[]     dst,
+                final          int        offset,
+                final @NotNull ByteBuffer src) {
+        final int length = encodedLength(src.remaining());
+        int acc = 0, accLen = 0, i = offset;
+
+        for (int j = 0; j < src.remaining(); j++) {
+            acc = (acc << 8 | (src.get(src.position() + j) & 0xff)) & 0x3fff;
+            accLen += 8;
+            while (accLen >= 6) {
+                accLen -= 6;
+                dst[i++] = (char) toChar(acc >> accLen & 0x3f);
+            }
+        }
+        if (accLen > 0) {
+            dst[i++] = (char) toChar(acc << (6 - accLen) & 0x3f);
+        }
+        while (i < offset + length) {
+            dst[i++] = '=';
+        }
+    }
+
+    @Override
+    public int decode(final @NotNull ByteBuffer dst,
+                      final @NotNull ByteBuffer src)
+            throws ConstraintViolationException {
+        final int written;
+
         Stodium.checkDestinationWritable(dst);
 
-        Stodium.checkStatus(StodiumJNI.sodium_base642bin(
-                Stodium.ensureUsableByteBuffer(dst),
-                Stodium.ensureUsableByteBuffer(src),
-                variant));
+        if (useJava(dst, src)) {
+            return decode(dst, new Ascii(src));
+        }
+
+        written = StodiumJNI.sodium_base642bin(
+                Stodium.ensureUsableByteBuffer(dst.slice()),
+                Stodium.ensureUsableByteBuffer(src.slice()),
+                variant);
+        if (written < 0) {
+            throw new ConstraintViolationException("Base64: invalid input or destination too small");
+        }
+        return written;
+    }
+
+    @Override
+    public int decode(final @NotNull ByteBuffer   dst,
+                      final @NotNull CharSequence src)
+            throws ConstraintViolationException {
+        final int to = dst.position();
+        int acc = 0, accLen = 0, pos = 0, written = 0;
+
+        Stodium.checkDestinationWritable(dst);
+
+        if (src.length() >= JAVA_THRESHOLD) {
+            return decodeStaged(dst, src);
+        }
+
+        for (; pos < src.length(); pos++) {
+            final int d = toByte(src.charAt(pos));
+            if (d == 0xff) {
+                break;
+            }
+            acc = (acc << 6 | d) & 0x3fff;
+            accLen += 6;
+            if (accLen >= 8) {
+                accLen -= 8;
+                if (written >= dst.remaining()) {
+                    throw new ConstraintViolationException("Base64: invalid input or destination too small");
+                }
+                dst.put(to + written++, (byte) (acc >> accLen));
+            }
+        }
+
+        // reject leftover bits that a canonical encoder would not produce
+        if (accLen > 4 || (acc & ((1 << accLen) - 1)) != 0) {
+            throw new ConstraintViolationException("Base64: invalid input or destination too small");
+        }
+        if (padded) {
+            for (int padding = accLen / 2; padding > 0; padding--, pos++) {
+                if (pos >= src.length() || src.charAt(pos) != '=') {
+                    throw new ConstraintViolationException("Base64: invalid input or destination too small");
+                }
+            }
+        }
+        if (pos != src.length()) {
+            throw new ConstraintViolationException("Base64: invalid input or destination too small");
+        }
+        return written;
+    }
+
+    /**
+     * toChar returns the character for the 6-bit value x.
+     */
+    private int toChar(final int x) {
+        return (lt(x, 26) & (x + 'A'))
+                | (ge(x, 26) & lt(x, 52) & (x + ('a' - 26)))
+                | (ge(x, 52) & lt(x, 62) & (x + ('0' - 52)))
+                | (eq(x, 62) & (urlSafe ? '-' : '+'))
+                | (eq(x, 63) & (urlSafe ? '_' : '/'));
+    }
+
+    /**
+     * toByte returns the 6-bit value of character ch, or 0xff if it is not
+     * part of the alphabet.
+     */
+    private int toByte(final char ch) {
+        // characters beyond 0xff become 0xff, so c stays within a byte
+        final int c = (ch | ((0xff - ch) >> 31)) & 0xff;
+        final int x = (ge(c, 'A') & le(c, 'Z') & (c - 'A'))
+                | (ge(c, 'a') & le(c, 'z') & (c - ('a' - 26)))
+                | (ge(c, '0') & le(c, '9') & (c - ('0' - 52)))
+                | (eq(c, urlSafe ? '-' : '+') & 62)
+                | (eq(c, urlSafe ? '_' : '/') & 63);
+        return x | (eq(x, 0) & (eq(c, 'A') ^ 0xff));
+    }
+
+    // constant time comparisons of values in [0, 0xff], yielding 0xff or 0
+    private static int eq(final int x, final int y) {
+        return (((0 - (x ^ y)) >>> 8) & 0xff) ^ 0xff;
+    }
+
+    private static int gt(final int x, final int y) {
+        return ((y - x) >>> 8) & 0xff;
+    }
+
+    private static int ge(final int x, final int y) {
+        return gt(y, x) ^ 0xff;
+    }
+
+    private static int lt(final int x, final int y) {
+        return gt(y, x);
+    }
+
+    private static int le(final int x, final int y) {
+        return ge(y, x);
     }
 }
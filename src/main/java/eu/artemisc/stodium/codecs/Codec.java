@@ -2,10 +2,16 @@ package eu.artemisc.stodium.codecs;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 import eu.artemisc.stodium.Singleton;
 import eu.artemisc.stodium.StodiumJNI;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
@@ -78,14 +84,59 @@ public abstract class Codec {
         return BASE64_URL_NOPAD.get();
     }
 
+    /**
+     * JAVA_THRESHOLD is the input length, in bytes, below which heap buffers
+     * are encoded and decoded in Java rather than in the native code. For
+     * short inputs the JNI transition and the copies of the arrays cost more
+     * than the conversion itself. Direct buffers always go to the native
+     * code, which reads them in place.
+     */
+    static final int JAVA_THRESHOLD = 256;
+
+    /**
+     *
+     */
+    private static final @NotNull Charset US_ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * STAGE_CHARS is the size of the block long CharSequences are decoded
+     * through, a whole number of groups for every codec.
+     */
+    private static final int STAGE_CHARS = 8192;
+
+    /**
+     * useJava returns whether the conversion from src to dst is done in Java.
+     */
+    static boolean useJava(final @NotNull ByteBuffer dst,
+                           final @NotNull ByteBuffer src) {
+        return src.remaining() < JAVA_THRESHOLD
+                && src.hasArray() && dst.hasArray();
+    }
+
+    /**
+     * groupBytes returns the number of bytes that is encoded as a whole, the
+     * group the streaming {@link Encoder} and {@link Decoder} carry over
+     * between chunks.
+     */
+    abstract int groupBytes();
+
     /**
      *
      * @param input
-     * @return
+     * @return the number of characters input bytes are encoded to
      */
     public abstract int encodedLength(final int input);
 
     /**
+     *
+     * @param input
+     * @return the maximum number of bytes input characters decode to
+     */
+    public abstract int decodedLengthMax(final int input);
+
+    /**
+     * encode writes the encoding of the remaining bytes of src to dst, as
+     * ASCII. Neither position is changed.
      *
      * @param dst
      * @param src
@@ -96,39 +147,215 @@ public abstract class Codec {
             throws StodiumException;
 
     /**
+     * encode writes the encoding of the remaining bytes of src to dst at
+     * offset. This is always done in Java, as the native code cannot write
+     * characters.
+     *
+     * @param dst
+     * @param offset
+     * @param src
+     */
+    abstract void encode(final @NotNull char[]     dst,
+                         final          int        offset,
+                         final @NotNull ByteBuffer src);
+
+    /**
+     * encode returns the encoding of the remaining bytes of src. From
+     * {@link #JAVA_THRESHOLD} bytes up, the native code encodes into a byte
+     * array, which the String is decoded from as ASCII.
      *
      * @param src
      * @return
-     * @throws StodiumException
      */
     @NotNull
     public final String encode(final @NotNull ByteBuffer src)
             throws StodiumException {
-        final byte[] dst;
-        dst = new byte[encodedLength(src.remaining())];
-        encode(ByteBuffer.wrap(dst), src);
+        final char[] dst;
+        final byte[] ascii;
+
+        if (src.remaining() >= JAVA_THRESHOLD) {
+            ascii = new byte[encodedLength(src.remaining())];
+            encode(ByteBuffer.wrap(ascii), src);
+            return new String(ascii, US_ASCII);
+        }
+        dst = new char[encodedLength(src.remaining())];
+        encode(dst, 0, src);
         return new String(dst);
     }
 
     /**
+     * decode writes the bytes encoded by the remaining characters of src to
+     * dst. Neither position is changed.
      *
      * @param dst
      * @param src
-     * @throws StodiumException
+     * @return the number of bytes written to dst
+     * @throws ConstraintViolationException if src is not a valid encoding,
+     *         or dst is too small
      */
-    public abstract void decode(final @NotNull ByteBuffer dst,
-                                final @NotNull ByteBuffer src)
-            throws StodiumException;
+    public abstract int decode(final @NotNull ByteBuffer dst,
+                               final @NotNull ByteBuffer src)
+            throws ConstraintViolationException;
 
     /**
+     * decode writes the bytes encoded by src to dst, without going through a
+     * charset. Characters outside of ASCII are rejected.
      *
      * @param dst
      * @param src
-     * @throws StodiumException
+     * @return the number of bytes written to dst
+     * @throws ConstraintViolationException if src is not a valid encoding,
+     *         or dst is too small
      */
-    public final void decode(final @NotNull ByteBuffer dst,
-                             final @NotNull String     src)
-            throws StodiumException {
-        decode(dst, ByteBuffer.wrap(src.getBytes()));
+    public abstract int decode(final @NotNull ByteBuffer   dst,
+                               final @NotNull CharSequence src)
+            throws ConstraintViolationException;
+
+    /**
+     *
+     * @return a new Encoder for input that arrives in chunks
+     */
+    @NotNull
+    public Encoder newEncoder() {
+        return new Encoder(this);
+    }
+
+    /**
+     *
+     * @return a new Decoder for input that arrives in chunks
+     */
+    @NotNull
+    public Decoder newDecoder() {
+        return new Decoder(this);
+    }
+
+    /**
+     *
+     * @param channel
+     * @return a channel that writes the encoding of all bytes written to it
+     *         to channel
+     */
+    @NotNull
+    public WritableByteChannel encodingChannel(final @NotNull WritableByteChannel channel) {
+        return new EncodingWritableByteChannel(channel, newEncoder());
+    }
+
+    /**
+     *
+     * @param channel
+     * @return a channel that writes the bytes decoded from the ASCII written
+     *         to it to channel
+     */
+    @NotNull
+    public WritableByteChannel decodingChannel(final @NotNull WritableByteChannel channel) {
+        return new DecodingWritableByteChannel(channel, newDecoder());
+    }
+
+    /**
+     *
+     * @param out
+     * @return a stream that writes the encoding of all bytes written to it to
+     *         out
+     */
+    @NotNull
+    public OutputStream encodingStream(final @NotNull OutputStream out) {
+        return Channels.newOutputStream(encodingChannel(Channels.newChannel(out)));
+    }
+
+    /**
+     *
+     * @param out
+     * @return a stream that writes the bytes decoded from the ASCII written
+     *         to it to out
+     */
+    @NotNull
+    public OutputStream decodingStream(final @NotNull OutputStream out) {
+        return Channels.newOutputStream(decodingChannel(Channels.newChannel(out)));
+    }
+
+    /**
+     * decodeStaged decodes a long src for the native code, by copying it as
+     * ASCII into a block of at most {@link #STAGE_CHARS} bytes at a time.
+     * Characters outside of ASCII are mapped to 0xff, which is not valid in
+     * any encoding. Every block but the last holds whole groups, which must
+     * decode to whole groups, as only the last group can be padded.
+     * <p>
+     * The blocks are decoded into a small array as well, as the native code
+     * would otherwise copy the whole of a heap dst for every block.
+     */
+    final int decodeStaged(final @NotNull ByteBuffer   dst,
+                           final @NotNull CharSequence src)
+            throws ConstraintViolationException {
+        final byte[]     block      = new byte[Math.min(src.length(), STAGE_CHARS)];
+        final byte[]     bytes      = new byte[decodedLengthMax(block.length)];
+        final ByteBuffer out        = dst.duplicate();
+        final int        groupChars = encodedLength(groupBytes());
+
+        try {
+            for (int from = 0; from < src.length(); ) {
+                final int length = Math.min(src.length() - from, block.length);
+                final int decoded;
+
+                for (int i = 0; i < length; i++) {
+                    final int c = src.charAt(from + i);
+                    block[i] = (byte) (c | ((0x7f - c) >> 31));
+                }
+                decoded = decode(ByteBuffer.wrap(bytes), ByteBuffer.wrap(block, 0, length));
+                from   += length;
+
+                if (decoded > out.remaining()) {
+                    throw new ConstraintViolationException("Codec: destination too small");
+                }
+                if (from < src.length() && decoded < length / groupChars * groupBytes()) {
+                    throw new ConstraintViolationException("Codec: input after the end of the encoding");
+                }
+                out.put(bytes, 0, decoded);
+            }
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+        return out.position() - dst.position();
+    }
+
+    /**
+     * Ascii presents the remaining bytes of a buffer as characters, so the
+     * Java decoders only have to deal with CharSequences.
+     */
+    static final class Ascii
+            implements CharSequence {
+        private final @NotNull ByteBuffer buffer;
+
+        Ascii(final @NotNull ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int length() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return (char) (buffer.get(buffer.position() + index) & 0xff);
+        }
+
+        @NotNull
+        @Override
+        public CharSequence subSequence(final int start,
+                                        final int end) {
+            final ByteBuffer sub = buffer.duplicate();
+            sub.position(buffer.position() + start).limit(buffer.position() + end);
+            return new Ascii(sub);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            final char[] chars = new char[length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
     }
 }
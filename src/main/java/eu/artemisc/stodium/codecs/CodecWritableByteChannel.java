@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.codecs;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.io.Digests;
+
+/**
+ * CodecWritableByteChannel converts every byte written to it with an
+ * {@link Encoder} or {@link Decoder}, and writes the output to the wrapped
+ * channel. The output is staged in a direct block of
+ * {@link Digests#BLOCK_BYTES}, and input that is not direct is staged in a
+ * reusable array of one step, so it uses constant memory regardless of the
+ * length of the stream.
+ * <p>
+ * Once a write fails, part of its input may have been written already, so
+ * the channel fails every later write as well; {@link #close()} then only
+ * closes the wrapped channel. The wrapped channel must be blocking.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+abstract class CodecWritableByteChannel
+        implements WritableByteChannel {
+
+    private final @NotNull WritableByteChannel channel;
+
+    /**
+     * step is the number of input bytes converted into the block at once.
+     */
+    private final int step;
+
+    /**
+     * block is null once the channel has been closed.
+     */
+    private @Nullable ByteBuffer block;
+
+    /**
+     * staged holds a step of input that is not direct, so the native code
+     * does not copy the whole array it belongs to for every step.
+     */
+    private @Nullable byte[] staged;
+
+    /**
+     * failed is set once a write failed.
+     */
+    private boolean failed;
+
+    /**
+     *
+     * @param channel
+     * @param step
+     */
+    CodecWritableByteChannel(final @NotNull WritableByteChannel channel,
+                             final          int                 step) {
+        this.channel = channel;
+        this.step    = step;
+        this.block   = ByteBuffer.allocateDirect(Digests.BLOCK_BYTES);
+    }
+
+    /**
+     * update converts all remaining bytes of src into dst.
+     */
+    abstract void update(final @NotNull ByteBuffer dst,
+                         final @NotNull ByteBuffer src)
+            throws StodiumException;
+
+    /**
+     * finish writes the final output into dst.
+     */
+    abstract void finish(final @NotNull ByteBuffer dst)
+            throws StodiumException;
+
+    /**
+     * reset drops the state carried between writes.
+     */
+    abstract void reset();
+
+    @Override
+    public int write(final @NotNull ByteBuffer src)
+            throws IOException {
+        final ByteBuffer block = block();
+        final int        total = src.remaining();
+
+        if (!src.isDirect() && staged == null) {
+            staged = new byte[step];
+        }
+        try {
+            while (src.hasRemaining()) {
+                final int        length = Math.min(step, src.remaining());
+                final ByteBuffer chunk;
+
+                if (src.isDirect()) {
+                    chunk = (ByteBuffer) src.duplicate().limit(src.position() + length);
+                    src.position(src.position() + length);
+                } else {
+                    src.get(staged, 0, length);
+                    chunk = ByteBuffer.wrap(staged, 0, length);
+                }
+                block.clear();
+                update(block, chunk);
+                writeFully(block);
+            }
+        } catch (StodiumException e) {
+            failed = true;
+            throw new IOException(e);
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        } finally {
+            if (staged != null) {
+                Arrays.fill(staged, (byte) 0);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return block != null && channel.isOpen();
+    }
+
+    /**
+     * close writes the final output, unless a write failed, and closes the
+     * wrapped channel. Closing the channel more than once has no effect.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close()
+            throws IOException {
+        final ByteBuffer block = this.block;
+        if (block == null) {
+            return;
+        }
+        try {
+            if (!failed) {
+                block.clear();
+                finish(block);
+                writeFully(block);
+            }
+        } catch (StodiumException e) {
+            throw new IOException(e);
+        } finally {
+            this.block = null;
+            reset();
+            channel.close();
+        }
+    }
+
+    private void writeFully(final @NotNull ByteBuffer block)
+            throws IOException {
+        block.flip();
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+    }
+
+    @NotNull
+    private ByteBuffer block()
+            throws IOException {
+        if (block == null) {
+            throw new ClosedChannelException();
+        }
+        if (failed) {
+            throw new IOException("CodecWritableByteChannel: an earlier write failed");
+        }
+        return block;
+    }
+}
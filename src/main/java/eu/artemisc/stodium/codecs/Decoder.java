@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.codecs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+
+/**
+ * Decoder decodes input that arrives in chunks of any size. The characters
+ * that do not fill a complete group (4 characters for base64) are carried
+ * over to the next chunk, so the output is identical to decoding all input
+ * at once. Whole groups are passed on to the {@link Codec}, which decodes
+ * large chunks in the native code.
+ * <p>
+ * Padding ends the encoding; any input after a padded group is rejected.
+ * Call {@link #finish(ByteBuffer)} after the last chunk, which decodes the
+ * final group of unpadded variants and rejects incomplete input otherwise.
+ * The Decoder can be reused afterwards, and must be {@link #reset()} after
+ * an exception. A Decoder is not thread safe.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class Decoder {
+
+    private final @NotNull Codec  codec;
+    private final          int    groupBytes;
+    private final          int    groupChars;
+    private final @NotNull char[] carry;
+
+    /**
+     *
+     */
+    private int carried;
+
+    /**
+     * ended is set once a group decoded to less than groupBytes, after which
+     * no more input is accepted.
+     */
+    private boolean ended;
+
+    /**
+     *
+     * @param codec
+     */
+    Decoder(final @NotNull Codec codec) {
+        this.codec      = codec;
+        this.groupBytes = codec.groupBytes();
+        this.groupChars = codec.encodedLength(groupBytes);
+        this.carry      = new char[groupChars];
+    }
+
+    /**
+     *
+     * @param input
+     * @return the maximum number of bytes {@link #update(ByteBuffer, ByteBuffer)}
+     *         writes for input characters
+     */
+    public int updateLengthMax(final int input) {
+        return (carried + input) / groupChars * groupBytes;
+    }
+
+    /**
+     *
+     * @return the maximum number of bytes {@link #finish(ByteBuffer)} writes
+     */
+    public int finishLengthMax() {
+        return codec.decodedLengthMax(carried);
+    }
+
+    /**
+     * maxInput returns the largest number of input characters for which
+     * update writes at most output bytes, whatever is carried.
+     */
+    int maxInput(final int output) {
+        return output / groupBytes * groupChars;
+    }
+
+    /**
+     * update decodes all remaining ASCII characters of src, and writes the
+     * bytes of the complete groups to dst. The positions of both buffers are
+     * advanced.
+     *
+     * @param dst must have room for the decoded bytes, which is at most
+     *            {@link #updateLengthMax(int)}
+     * @param src
+     * @return the number of bytes written to dst
+     * @throws ConstraintViolationException if src is not a valid encoding,
+     *         or dst is too small
+     */
+    public int update(final @NotNull ByteBuffer dst,
+                      final @NotNull ByteBuffer src)
+            throws ConstraintViolationException {
+        final Codec.Ascii chars = new Codec.Ascii(src);
+        final int         from;
+        final int         length;
+        final ByteBuffer  bulk;
+        int written = 0;
+
+        Stodium.checkDestinationWritable(dst);
+
+        from = fillCarry(chars);
+        if (carried == groupChars) {
+            written += decodeCarry(dst);
+        }
+        length = (chars.length() - from) / groupChars * groupChars;
+        if (length > 0) {
+            bulk = src.duplicate();
+            bulk.position(src.position() + from).limit(src.position() + from + length);
+            checkOpen();
+            written += decoded(dst, length, codec.decode(dst, bulk));
+        }
+        stash(chars, from + length);
+        src.position(src.limit());
+        return written;
+    }
+
+    /**
+     * update decodes all characters of src, and writes the bytes of the
+     * complete groups to dst. The position of dst is advanced.
+     *
+     * @param dst must have room for the decoded bytes, which is at most
+     *            {@link #updateLengthMax(int)}
+     * @param src
+     * @return the number of bytes written to dst
+     * @throws ConstraintViolationException if src is not a valid encoding,
+     *         or dst is too small
+     */
+    public int update(final @NotNull ByteBuffer   dst,
+                      final @NotNull CharSequence src)
+            throws ConstraintViolationException {
+        final int from;
+        final int length;
+        int written = 0;
+
+        Stodium.checkDestinationWritable(dst);
+
+        from = fillCarry(src);
+        if (carried == groupChars) {
+            written += decodeCarry(dst);
+        }
+        length = (src.length() - from) / groupChars * groupChars;
+        if (length > 0) {
+            checkOpen();
+            written += decoded(dst, length,
+                    codec.decode(dst, src.subSequence(from, from + length)));
+        }
+        stash(src, from + length);
+        return written;
+    }
+
+    /**
+     * finish decodes the carried characters, which only unpadded variants
+     * leave behind in a valid encoding. The position of dst is advanced.
+     *
+     * @param dst must have at least {@link #finishLengthMax()} bytes left
+     * @return the number of bytes written to dst
+     * @throws ConstraintViolationException if the input was incomplete
+     */
+    public int finish(final @NotNull ByteBuffer dst)
+            throws ConstraintViolationException {
+        int written = 0;
+
+        Stodium.checkDestinationWritable(dst);
+
+        try {
+            if (carried > 0) {
+                written = decodeCarry(dst);
+            }
+        } finally {
+            reset();
+        }
+        return written;
+    }
+
+    /**
+     * reset drops the carried characters, and accepts new input.
+     */
+    public void reset() {
+        carried = 0;
+        ended   = false;
+    }
+
+    /**
+     * fillCarry moves characters from src to the carry, if it is not empty,
+     * and returns how many were taken.
+     */
+    private int fillCarry(final @NotNull CharSequence src) {
+        int i = 0;
+        if (carried == 0) {
+            return 0;
+        }
+        for (; i < src.length() && carried < groupChars; i++) {
+            carry[carried++] = src.charAt(i);
+        }
+        return i;
+    }
+
+    /**
+     * stash moves the characters of src from offset to the carry.
+     */
+    private void stash(final @NotNull CharSequence src,
+                       final          int          offset) {
+        for (int i = offset; i < src.length(); i++) {
+            carry[carried++] = src.charAt(i);
+        }
+    }
+
+    /**
+     *
+     */
+    private int decodeCarry(final @NotNull ByteBuffer dst)
+            throws ConstraintViolationException {
+        final int chars = carried;
+        checkOpen();
+        carried = 0;
+        return decoded(dst, chars, codec.decode(dst, CharBuffer.wrap(carry, 0, chars)));
+    }
+
+    /**
+     * decoded advances dst past the written bytes, and records whether the
+     * chars that were decoded ended the encoding.
+     */
+    private int decoded(final @NotNull ByteBuffer dst,
+                        final          int        chars,
+                        final          int        written) {
+        dst.position(dst.position() + written);
+        if (written < chars / groupChars * groupBytes) {
+            ended = true;
+        }
+        return written;
+    }
+
+    /**
+     *
+     */
+    private void checkOpen()
+            throws ConstraintViolationException {
+        if (ended) {
+            throw new ConstraintViolationException("Decoder: input after the end of the encoding");
+        }
+    }
+}
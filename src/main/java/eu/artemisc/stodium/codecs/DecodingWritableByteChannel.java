@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.codecs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.io.Digests;
+
+/**
+ * DecodingWritableByteChannel decodes the ASCII written to it, and writes the
+ * decoded bytes to the wrapped channel. Invalid input fails the write with an
+ * IOException, and every write after it. {@link #close()} decodes the final
+ * group of unpadded variants.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+final class DecodingWritableByteChannel
+        extends CodecWritableByteChannel {
+
+    private final @NotNull Decoder decoder;
+
+    /**
+     *
+     * @param channel
+     * @param decoder
+     */
+    DecodingWritableByteChannel(final @NotNull WritableByteChannel channel,
+                                final @NotNull Decoder             decoder) {
+        super(channel, decoder.maxInput(Digests.BLOCK_BYTES));
+        this.decoder = decoder;
+    }
+
+    @Override
+    void update(final @NotNull ByteBuffer dst,
+                final @NotNull ByteBuffer src)
+            throws StodiumException {
+        decoder.update(dst, src);
+    }
+
+    @Override
+    void finish(final @NotNull ByteBuffer dst)
+            throws StodiumException {
+        decoder.finish(dst);
+    }
+
+    @Override
+    void reset() {
+        decoder.reset();
+    }
+}
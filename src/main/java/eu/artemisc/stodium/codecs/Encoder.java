@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.codecs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * Encoder encodes input that arrives in chunks of any size. The bytes that do
+ * not fill a complete group (3 bytes for base64) are carried over to the next
+ * chunk, so the output is identical to encoding all input at once. Whole
+ * groups are passed on to the {@link Codec}, which encodes large chunks in
+ * the native code. For character output, large chunks are encoded natively
+ * into a small ASCII block at a time, which is then widened to characters.
+ * <p>
+ * Call {@link #finish(ByteBuffer)} or {@link #finish(Appendable)} after the
+ * last chunk, to encode the carried bytes and any padding. The Encoder can be
+ * reused afterwards. An Encoder is not thread safe.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class Encoder {
+
+    /**
+     * CHUNK_CHARS is the size of the buffer used for Appendable output, and
+     * of the ASCII block character output is encoded into.
+     */
+    private static final int CHUNK_CHARS = 4096;
+
+    private final @NotNull Codec      codec;
+    private final          int        group;
+    private final @NotNull ByteBuffer carry;
+
+    /**
+     *
+     */
+    private char[] chunk;
+
+    /**
+     * ascii receives the native encoding of a step of character output, and
+     * staged holds the input of that step if it is not direct, so the native
+     * code does not copy the whole array it belongs to.
+     */
+    private byte[] ascii;
+    private byte[] staged;
+
+    /**
+     *
+     * @param codec
+     */
+    Encoder(final @NotNull Codec codec) {
+        this.codec = codec;
+        this.group = codec.groupBytes();
+        this.carry = ByteBuffer.allocate(group);
+    }
+
+    /**
+     *
+     * @param input
+     * @return the number of characters {@link #update(ByteBuffer, ByteBuffer)}
+     *         writes for input bytes
+     */
+    public int updateLength(final int input) {
+        return codec.encodedLength((carry.position() + input) / group * group);
+    }
+
+    /**
+     *
+     * @return the number of characters {@link #finish(ByteBuffer)} writes
+     */
+    public int finishLength() {
+        return codec.encodedLength(carry.position());
+    }
+
+    /**
+     * maxInput returns the largest number of input bytes for which update
+     * writes at most output characters, whatever is carried.
+     */
+    int maxInput(final int output) {
+        return output / codec.encodedLength(group) * group;
+    }
+
+    /**
+     * update encodes all remaining bytes of src, and writes the complete
+     * groups to dst as ASCII. The positions of both buffers are advanced.
+     *
+     * @param dst must have at least {@link #updateLength(int)} bytes left
+     * @param src
+     * @throws StodiumException
+     */
+    public void update(final @NotNull ByteBuffer dst,
+                       final @NotNull ByteBuffer src)
+            throws StodiumException {
+        final int length;
+
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSizeMin(dst.remaining(), updateLength(src.remaining()));
+
+        if (fillCarry(src)) {
+            encode(dst, carry);
+            carry.clear();
+        }
+        length = src.remaining() / group * group;
+        encode(dst, (ByteBuffer) src.duplicate().limit(src.position() + length));
+        src.position(src.position() + length);
+        carry.put(src);
+    }
+
+    /**
+     * update encodes all remaining bytes of src, and writes the complete
+     * groups to dst. The positions of both buffers are advanced.
+     *
+     * @param dst must have at least {@link #updateLength(int)} chars left
+     * @param src
+     * @throws StodiumException
+     */
+    public void update(final @NotNull CharBuffer dst,
+                       final @NotNull ByteBuffer src)
+            throws StodiumException {
+        final int length;
+
+        Stodium.checkSizeMin(dst.remaining(), updateLength(src.remaining()));
+
+        if (fillCarry(src)) {
+            encode(dst, carry);
+            carry.clear();
+        }
+        length = src.remaining() / group * group;
+        encode(dst, (ByteBuffer) src.duplicate().limit(src.position() + length));
+        src.position(src.position() + length);
+        carry.put(src);
+    }
+
+    /**
+     * update encodes all remaining bytes of src, and appends the complete
+     * groups to dst. The position of src is advanced.
+     *
+     * @param dst
+     * @param src
+     * @throws IOException if dst throws
+     */
+    public void update(final @NotNull Appendable dst,
+                       final @NotNull ByteBuffer src)
+            throws IOException {
+        final int  step = maxInput(CHUNK_CHARS);
+        CharBuffer out  = chunk();
+
+        try {
+            if (fillCarry(src)) {
+                encode(out, carry);
+                carry.clear();
+            }
+            while (src.remaining() >= group) {
+                final int length = Math.min(src.remaining() / group * group, step);
+                if (out.remaining() < codec.encodedLength(length)) {
+                    dst.append((CharBuffer) out.flip());
+                    out = chunk();
+                }
+                encode(out, (ByteBuffer) src.duplicate().limit(src.position() + length));
+                src.position(src.position() + length);
+            }
+        } catch (final StodiumException e) {
+            throw new IOException(e);
+        }
+        carry.put(src);
+        dst.append((CharBuffer) out.flip());
+    }
+
+    /**
+     * finish encodes the carried bytes and writes them to dst as ASCII,
+     * followed by the padding of the variant. The position of dst is
+     * advanced.
+     *
+     * @param dst must have at least {@link #finishLength()} bytes left
+     * @throws StodiumException
+     */
+    public void finish(final @NotNull ByteBuffer dst)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSizeMin(dst.remaining(), finishLength());
+
+        encode(dst, carry);
+        carry.clear();
+    }
+
+    /**
+     * finish encodes the carried bytes and appends them to dst, followed by
+     * the padding of the variant.
+     *
+     * @param dst
+     * @throws IOException if dst throws
+     */
+    public void finish(final @NotNull Appendable dst)
+            throws IOException {
+        final CharBuffer out = chunk();
+        try {
+            encode(out, carry);
+        } catch (final StodiumException e) {
+            throw new IOException(e);
+        }
+        carry.clear();
+        dst.append((CharBuffer) out.flip());
+    }
+
+    /**
+     * reset drops the carried bytes.
+     */
+    public void reset() {
+        Stodium.wipeBytes((ByteBuffer) carry.clear());
+    }
+
+    /**
+     * fillCarry moves bytes from src to the carry, if it is not empty, and
+     * returns whether that completed a group.
+     */
+    private boolean fillCarry(final @NotNull ByteBuffer src) {
+        if (carry.position() == 0) {
+            return false;
+        }
+        while (carry.hasRemaining() && src.hasRemaining()) {
+            carry.put(src.get());
+        }
+        return !carry.hasRemaining();
+    }
+
+    /**
+     * encode encodes the bytes of carry up to its position, or all remaining
+     * bytes of any other buffer, and advances the position of dst.
+     */
+    private void encode(final @NotNull ByteBuffer dst,
+                        final @NotNull ByteBuffer src)
+            throws StodiumException {
+        final ByteBuffer in = src == carry ? (ByteBuffer) carry.duplicate().flip() : src;
+        final int length    = codec.encodedLength(in.remaining());
+
+        if (length == 0) {
+            return;
+        }
+        codec.encode(dst, in);
+        dst.position(dst.position() + length);
+    }
+
+    /**
+     * encode encodes like {@link #encode(ByteBuffer, ByteBuffer)}, for
+     * character output. From {@link Codec#JAVA_THRESHOLD} bytes up, the input
+     * is encoded natively into the ASCII block, one block at a time.
+     */
+    private void encode(final @NotNull CharBuffer dst,
+                        final @NotNull ByteBuffer src)
+            throws StodiumException {
+        final ByteBuffer in = src == carry ? (ByteBuffer) carry.duplicate().flip() : src;
+        final int length    = codec.encodedLength(in.remaining());
+
+        if (in.remaining() >= Codec.JAVA_THRESHOLD) {
+            encodeNative(dst, in.duplicate());
+            return;
+        }
+        if (dst.hasArray()) {
+            codec.encode(dst.array(), dst.arrayOffset() + dst.position(), in);
+        } else {
+            final char[] tmp = new char[length];
+            codec.encode(tmp, 0, in);
+            dst.duplicate().put(tmp);
+        }
+        dst.position(dst.position() + length);
+    }
+
+    /**
+     * encodeNative encodes all remaining bytes of in through the ASCII block,
+     * and advances the position of dst.
+     */
+    private void encodeNative(final @NotNull CharBuffer dst,
+                              final @NotNull ByteBuffer in)
+            throws StodiumException {
+        final int step = maxInput(CHUNK_CHARS);
+
+        if (ascii == null) {
+            ascii  = new byte[CHUNK_CHARS];
+            staged = new byte[step];
+        }
+        try {
+            while (in.hasRemaining()) {
+                final int        length = Math.min(in.remaining(), step);
+                final int        chars  = codec.encodedLength(length);
+                final ByteBuffer part;
+
+                if (in.isDirect()) {
+                    part = (ByteBuffer) in.duplicate().limit(in.position() + length);
+                    in.position(in.position() + length);
+                } else {
+                    in.get(staged, 0, length);
+                    part = ByteBuffer.wrap(staged, 0, length);
+                }
+                codec.encode(ByteBuffer.wrap(ascii), part);
+                for (int i = 0; i < chars; i++) {
+                    dst.put((char) ascii[i]);
+                }
+            }
+        } finally {
+            Arrays.fill(staged, (byte) 0);
+        }
+    }
+
+    /**
+     * chunk returns the reusable chunk for Appendable output, cleared.
+     */
+    @NotNull
+    private CharBuffer chunk() {
+        if (chunk == null) {
+            chunk = new char[CHUNK_CHARS];
+        }
+        return CharBuffer.wrap(chunk);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.codecs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.io.Digests;
+
+/**
+ * EncodingWritableByteChannel writes the encoding of every byte written to
+ * it to the wrapped channel, as ASCII. {@link #close()} writes the final
+ * group and the padding.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+final class EncodingWritableByteChannel
+        extends CodecWritableByteChannel {
+
+    private final @NotNull Encoder encoder;
+
+    /**
+     *
+     * @param channel
+     * @param encoder
+     */
+    EncodingWritableByteChannel(final @NotNull WritableByteChannel channel,
+                                final @NotNull Encoder             encoder) {
+        super(channel, encoder.maxInput(Digests.BLOCK_BYTES));
+        this.encoder = encoder;
+    }
+
+    @Override
+    void update(final @NotNull ByteBuffer dst,
+                final @NotNull ByteBuffer src)
+            throws StodiumException {
+        encoder.update(dst, src);
+    }
+
+    @Override
+    void finish(final @NotNull ByteBuffer dst)
+            throws StodiumException {
+        encoder.finish(dst);
+    }
+
+    @Override
+    void reset() {
+        encoder.reset();
+    }
+}
@@ -6,19 +6,33 @@ import java.nio.ByteBuffer;
 
 import eu.artemisc.stodium.Stodium;
 import eu.artemisc.stodium.StodiumJNI;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
+ * The Java implementation follows sodium_bin2hex and sodium_hex2bin, which
+ * do not branch or index tables on the data, so it runs in constant time.
+ *
  * @author Jan van de Molengraft [jan@artemisc.eu]
  */
 final class Hex
         extends Codec {
 
+    @Override
+    int groupBytes() {
+        return 1;
+    }
+
     @Override
     public int encodedLength(final int input) {
         return input * 2;
     }
 
+    @Override
+    public int decodedLengthMax(final int input) {
+        return input / 2;
+    }
+
     @Override
     public void encode(final @NotNull ByteBuffer dst,
                        final @NotNull ByteBuffer src)
@@ -27,21 +41,108 @@ final class Hex
 
         Stodium.checkSizeMin(dst.remaining(), encodedLength(src.remaining()));
 
+        if (useJava(dst, src)) {
+            final byte[] in  = src.array();
+            final byte[] out = dst.array();
+            final int    off = src.arrayOffset() + src.position();
+            final int    to  = dst.arrayOffset() + dst.position();
+            for (int i = 0; i < src.remaining(); i++) {
+                final int pair = pair(in[off + i]);
+                out[to + 2 * i] = (byte) (pair >>> 8);
+                out[to + 2 * i + 1] = (byte) pair;
+            }
+            return;
+        }
+
+        // slice, as the native code uses the capacity of direct buffers
         Stodium.checkStatus(StodiumJNI.sodium_bin2hex(
-                Stodium.ensureUsableByteBuffer(dst),
-                Stodium.ensureUsableByteBuffer(src)));
+                Stodium.ensureUsableByteBuffer(dst.slice()),
+                Stodium.ensureUsableByteBuffer(src.slice())));
     }
 
     @Override
-    public void decode(final @NotNull ByteBuffer dst,
-                       final @NotNull ByteBuffer src)
-            throws StodiumException {
+    void encode(final @NotNull char[]     dst,
+                final          int        offset,
+                final @NotNull ByteBuffer src) {
+        for (int i = 0; i < src.remaining(); i++) {
+            final int pair = pair(src.get(src.position() + i));
+            dst[offset + 2 * i] = (char) (pair >>> 8);
+            dst[offset + 2 * i + 1] = (char) (pair & 0xff);
+        }
+    }
+
+    @Override
+    public int decode(final @NotNull ByteBuffer dst,
+                      final @NotNull ByteBuffer src)
+            throws ConstraintViolationException {
+        final int written;
+
+        Stodium.checkDestinationWritable(dst);
+
+        if (useJava(dst, src)) {
+            return decode(dst, new Ascii(src));
+        }
+
+        written = StodiumJNI.sodium_hex2bin(
+                Stodium.ensureUsableByteBuffer(dst.slice()),
+                Stodium.ensureUsableByteBuffer(src.slice()));
+        if (written < 0) {
+            throw new ConstraintViolationException("Hex: invalid input or destination too small");
+        }
+        return written;
+    }
+
+    @Override
+    public int decode(final @NotNull ByteBuffer   dst,
+                      final @NotNull CharSequence src)
+            throws ConstraintViolationException {
+        final int to = dst.position();
+        final int length;
+
         Stodium.checkDestinationWritable(dst);
 
-        Stodium.checkSizeMin(encodedLength(dst.remaining()), src.remaining());
+        if (src.length() >= JAVA_THRESHOLD) {
+            return decodeStaged(dst, src);
+        }
+
+        length = src.length() / 2;
+        if (src.length() % 2 != 0 || dst.remaining() < length) {
+            throw new ConstraintViolationException("Hex: invalid input or destination too small");
+        }
+        for (int i = 0; i < length; i++) {
+            final int hi = nibble(src.charAt(2 * i));
+            final int lo = nibble(src.charAt(2 * i + 1));
+            if ((hi | lo) < 0) {
+                throw new ConstraintViolationException("Hex: invalid input or destination too small");
+            }
+            dst.put(to + i, (byte) (hi << 4 | lo));
+        }
+        return length;
+    }
+
+    /**
+     * pair returns the two lower case hex digits of b, as in sodium_bin2hex.
+     */
+    static int pair(final byte b) {
+        final int c = b & 0xf;
+        final int h = (b >> 4) & 0xf;
+        return (87 + h + (((h - 10) >> 8) & ~38)) << 8
+                | (87 + c + (((c - 10) >> 8) & ~38));
+    }
 
-        Stodium.checkStatus(StodiumJNI.sodium_hex2bin(
-                Stodium.ensureUsableByteBuffer(dst),
-                Stodium.ensureUsableByteBuffer(src)));
+    /**
+     * nibble returns the value of hex digit c, as in sodium_hex2bin, or a
+     * negative value if c is not a hex digit.
+     */
+    static int nibble(final char ch) {
+        // characters beyond 0xff become 0xff, so c stays within a byte
+        final int c      = (ch | ((0xff - ch) >> 31)) & 0xff;
+        final int num    = c ^ 48;
+        final int num0   = (num - 10) >> 8;
+        final int alpha  = (c & ~32) - 55;
+        final int alpha0 = ((alpha - 10) ^ (alpha - 16)) >> 8;
+        final int valid  = num0 | alpha0;
+        // an all-zero valid means c is not a digit; map it to -1
+        return ((num0 & num) | (alpha0 & alpha)) & valid | ~valid;
     }
 }
@@ -25,6 +25,8 @@ final class Blake
                 StodiumJNI.crypto_generichash_blake2b_keybytes(),
                 StodiumJNI.crypto_generichash_blake2b_keybytes_min(),
                 StodiumJNI.crypto_generichash_blake2b_keybytes_max(),
+                StodiumJNI.crypto_generichash_blake2b_saltbytes(),
+                StodiumJNI.crypto_generichash_blake2b_personalbytes(),
                 StodiumJNI.crypto_generichash_blake2b_statebytes());
     }
 
@@ -52,6 +54,67 @@ final class Blake
                 key == null ? null : Stodium.ensureUsableByteBuffer(key)));
     }
 
+    @Override
+    public void hash(final @NotNull  ByteBuffer dstHash,
+                     final @NotNull  ByteBuffer src,
+                     final @Nullable ByteBuffer key,
+                     final @NotNull  ByteBuffer salt,
+                     final @NotNull  ByteBuffer personal)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(dstHash);
+
+        Stodium.checkSize(dstHash.remaining(), BYTES_MIN, BYTES_MAX);
+        Stodium.checkSize(salt.remaining(), SALTBYTES);
+        Stodium.checkSize(personal.remaining(), PERSONALBYTES);
+        if (key != null) {
+            Stodium.checkSize(key.remaining(), KEYBYTES_MIN, KEYBYTES_MAX);
+        }
+
+        Stodium.checkStatus(StodiumJNI.crypto_generichash_blake2b_salt_personal(
+                Stodium.ensureUsableByteBuffer(dstHash),
+                Stodium.ensureUsableByteBuffer(src),
+                key == null ? null : Stodium.ensureUsableByteBuffer(key),
+                Stodium.ensureUsableByteBuffer(salt),
+                Stodium.ensureUsableByteBuffer(personal)));
+    }
+
+    @Override
+    public void hashAll(final @NotNull  ByteBuffer dstHashes,
+                        final @NotNull  ByteBuffer src,
+                        final @NotNull  int[]      offsets,
+                        final @Nullable ByteBuffer key,
+                        final           int        outlen)
+            throws StodiumException {
+        final int count;
+
+        Stodium.checkDestinationWritable(dstHashes);
+        Stodium.checkSize(outlen, BYTES_MIN, BYTES_MAX);
+        if (key != null) {
+            Stodium.checkSize(key.remaining(), KEYBYTES_MIN, KEYBYTES_MAX);
+        }
+        count = Stodium.checkOffsets(offsets, src.remaining());
+        Stodium.checkSizeMin(dstHashes.remaining(), count * outlen);
+
+        Stodium.checkStatus(StodiumJNI.stodium_generichash_blake2b_batch(
+                dstHashes.slice(),
+                Stodium.ensureUsableByteBuffer(src).slice(),
+                key == null ? null : Stodium.ensureUsableByteBuffer(key),
+                outlen, offsets, 0, count));
+    }
+
+    @Override
+    protected void hashRange(final @NotNull ByteBuffer dst,
+                             final @NotNull ByteBuffer src,
+                             final @NotNull int[]      offsets,
+                             final          int        from,
+                             final          int        to)
+            throws StodiumException {
+        Stodium.checkStatus(StodiumJNI.stodium_generichash_blake2b_batch(
+                Stodium.ensureUsableByteBuffer(dst),
+                Stodium.ensureUsableByteBuffer(src),
+                null, BYTES, offsets, from, to));
+    }
+
     @NotNull
     @Override
     public Multipart<Hash> init()
@@ -77,12 +140,59 @@ final class Blake
             Stodium.checkSize(key.remaining(), KEYBYTES_MIN, KEYBYTES_MAX);
         }
         Stodium.checkSize(outlen, BYTES_MIN, BYTES_MAX);
-        state = ByteBuffer.allocateDirect(STATEBYTES);
+        state = statePool.acquire();
 
         Stodium.checkStatus(StodiumJNI.crypto_generichash_blake2b_init(
                 state, key == null ? null : Stodium.ensureUsableByteBuffer(key), outlen));
 
-        return new Multipart<>(this, state);
+        return new Multipart<>(this, state, statePool);
+    }
+
+    @NotNull
+    @Override
+    public Multipart<Hash> init(final @Nullable ByteBuffer key,
+                                final           int        outlen,
+                                final @NotNull  ByteBuffer salt,
+                                final @NotNull  ByteBuffer personal)
+            throws StodiumException {
+        final ByteBuffer state;
+        state = statePool.acquire();
+        initSaltPersonal(state, key, outlen, salt, personal);
+        return new Multipart<>(this, state, statePool);
+    }
+
+    @NotNull
+    @Override
+    public HashContext context(final @Nullable ByteBuffer key,
+                               final           int        outlen,
+                               final @NotNull  ByteBuffer salt,
+                               final @NotNull  ByteBuffer personal)
+            throws StodiumException {
+        final ByteBuffer state;
+        state = ByteBuffer.allocateDirect(STATEBYTES);
+        initSaltPersonal(state, key, outlen, salt, personal);
+        return new HashContext(this, statePool, state, outlen);
+    }
+
+    private void initSaltPersonal(final @NotNull  ByteBuffer state,
+                                  final @Nullable ByteBuffer key,
+                                  final           int        outlen,
+                                  final @NotNull  ByteBuffer salt,
+                                  final @NotNull  ByteBuffer personal)
+            throws StodiumException {
+        Stodium.checkSize(outlen, BYTES_MIN, BYTES_MAX);
+        Stodium.checkSize(salt.remaining(), SALTBYTES);
+        Stodium.checkSize(personal.remaining(), PERSONALBYTES);
+        if (key != null) {
+            Stodium.checkSize(key.remaining(), KEYBYTES_MIN, KEYBYTES_MAX);
+        }
+
+        Stodium.checkStatus(StodiumJNI.crypto_generichash_blake2b_init_salt_personal(
+                state,
+                key == null ? null : Stodium.ensureUsableByteBuffer(key),
+                outlen,
+                Stodium.ensureUsableByteBuffer(salt),
+                Stodium.ensureUsableByteBuffer(personal)));
     }
 
     @Override
@@ -97,6 +207,18 @@ final class Blake
                 Stodium.ensureUsableByteBuffer(in)));
     }
 
+    @Override
+    public void update(final @NotNull ByteBuffer   state,
+                       final @NotNull ByteBuffer[] in)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(state);
+        Stodium.checkSize(state.remaining(), STATEBYTES);
+
+        Stodium.checkStatus(StodiumJNI.stodium_generichash_blake2b_update_vector(
+                Stodium.ensureUsableByteBuffer(state),
+                Stodium.ensureUsableByteBuffers(in)));
+    }
+
     @Override
     public void doFinal(final @NotNull ByteBuffer state,
                         final @NotNull ByteBuffer dst)
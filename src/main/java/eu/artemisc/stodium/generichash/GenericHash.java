@@ -48,6 +48,8 @@ public abstract class GenericHash
     final int KEYBYTES_MAX;
     final int BYTES_MIN;
     final int BYTES_MAX;
+    final int SALTBYTES;
+    final int PERSONALBYTES;
 
     /**
      *
@@ -57,6 +59,8 @@ public abstract class GenericHash
      * @param key
      * @param keyMin
      * @param keyMax
+     * @param salt
+     * @param personal
      * @param state
      */
     protected GenericHash(final int bytes,
@@ -65,13 +69,17 @@ public abstract class GenericHash
                           final int key,
                           final int keyMin,
                           final int keyMax,
+                          final int salt,
+                          final int personal,
                           final int state) {
         super(bytes, state);
-        KEYBYTES     = key;
-        KEYBYTES_MIN = keyMin;
-        KEYBYTES_MAX = keyMax;
-        BYTES_MIN    = bytesMin;
-        BYTES_MAX    = bytesMax;
+        KEYBYTES      = key;
+        KEYBYTES_MIN  = keyMin;
+        KEYBYTES_MAX  = keyMax;
+        BYTES_MIN     = bytesMin;
+        BYTES_MAX     = bytesMax;
+        SALTBYTES     = salt;
+        PERSONALBYTES = personal;
     }
 
     /**
@@ -114,6 +122,22 @@ public abstract class GenericHash
         return KEYBYTES_MAX;
     }
 
+    /**
+     *
+     * @return
+     */
+    public final int saltBytes() {
+        return SALTBYTES;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public final int personalBytes() {
+        return PERSONALBYTES;
+    }
+
     /**
      *
      * @param dstHash
@@ -126,6 +150,45 @@ public abstract class GenericHash
                               final @Nullable ByteBuffer key)
             throws StodiumException;
 
+    /**
+     * hash calculates the hash of src with the given salt and
+     * personalisation parameters. The output length is equal to
+     * {@code dstHash.remaining()}.
+     *
+     * @param dstHash
+     * @param src
+     * @param key
+     * @param salt
+     * @param personal
+     * @throws StodiumException
+     */
+    public abstract void hash(final @NotNull  ByteBuffer dstHash,
+                              final @NotNull  ByteBuffer src,
+                              final @Nullable ByteBuffer key,
+                              final @NotNull  ByteBuffer salt,
+                              final @NotNull  ByteBuffer personal)
+            throws StodiumException;
+
+    /**
+     * hashAll hashes each of the {@code offsets.length - 1} inputs packed into
+     * src with the given key and output length, in a single native call. The
+     * digest of input i is written to dstHashes at offset {@code i * outlen}.
+     *
+     * @param dstHashes
+     * @param src
+     * @param offsets
+     * @param key
+     * @param outlen
+     * @throws StodiumException
+     * @see Hash#hashAll(ByteBuffer, ByteBuffer, int[])
+     */
+    public abstract void hashAll(final @NotNull  ByteBuffer dstHashes,
+                                 final @NotNull  ByteBuffer src,
+                                 final @NotNull  int[]      offsets,
+                                 final @Nullable ByteBuffer key,
+                                 final           int        outlen)
+            throws StodiumException;
+
     /**
      *
      * @param key
@@ -147,4 +210,42 @@ public abstract class GenericHash
     public abstract Multipart<Hash> init(final @Nullable ByteBuffer key,
                                          final           int        outlen)
             throws StodiumException;
+
+    /**
+     * init starts a multipart hash with the given salt and personalisation
+     * parameters.
+     *
+     * @param key
+     * @param outlen
+     * @param salt
+     * @param personal
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public abstract Multipart<Hash> init(final @Nullable ByteBuffer key,
+                                         final           int        outlen,
+                                         final @NotNull  ByteBuffer salt,
+                                         final @NotNull  ByteBuffer personal)
+            throws StodiumException;
+
+    /**
+     * context precomputes the initial state for the given key, output length,
+     * salt and personalisation. The returned {@link HashContext} can be used
+     * to hash any number of messages with these parameters, without setting
+     * them up again for every message.
+     *
+     * @param key
+     * @param outlen
+     * @param salt
+     * @param personal
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public abstract HashContext context(final @Nullable ByteBuffer key,
+                                        final           int        outlen,
+                                        final @NotNull  ByteBuffer salt,
+                                        final @NotNull  ByteBuffer personal)
+            throws StodiumException;
 }
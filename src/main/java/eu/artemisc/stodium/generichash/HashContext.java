@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.generichash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Multipart;
+import eu.artemisc.stodium.StatePool;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.hash.Hash;
+
+/**
+ * HashContext holds the initial state of a generic hash for a fixed
+ * combination of key, output length, salt and personalisation. Hashing a
+ * message through the context starts from a copy of that state, so the
+ * parameters are not set up again and domain separation does not require a
+ * prefix on every message.
+ * <p>
+ * The context does not save any compressions. libsodium only buffers the
+ * padded key block at init, and compresses it once the message follows, so
+ * a keyed hash of a message that fits in a single block still costs two
+ * compressions.
+ * <p>
+ * A HashContext is safe to use from multiple threads, as the initial state is
+ * only ever read.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class HashContext {
+
+    /**
+     *
+     */
+    private final @NotNull Multipart.Spec spec;
+
+    /**
+     *
+     */
+    private final @NotNull StatePool pool;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer initial;
+
+    /**
+     *
+     */
+    private final int bytes;
+
+    /**
+     *
+     */
+    private volatile boolean released;
+
+    /**
+     *
+     * @param spec
+     * @param pool
+     * @param initial
+     * @param bytes
+     */
+    HashContext(final @NotNull Multipart.Spec spec,
+                final @NotNull StatePool      pool,
+                final @NotNull ByteBuffer     initial,
+                final          int            bytes) {
+        this.spec    = spec;
+        this.pool    = pool;
+        this.initial = initial;
+        this.bytes   = bytes;
+    }
+
+    /**
+     *
+     * @return the output length the context was created with
+     */
+    public int bytes() {
+        return bytes;
+    }
+
+    /**
+     * hash calculates the hash of src and writes {@link #bytes()} bytes to
+     * dstHash.
+     *
+     * @param dstHash
+     * @param src
+     * @throws StodiumException
+     */
+    public void hash(final @NotNull ByteBuffer dstHash,
+                     final @NotNull ByteBuffer src)
+            throws StodiumException {
+        final ByteBuffer state, dst;
+
+        checkReleased();
+        Stodium.checkDestinationWritable(dstHash);
+        Stodium.checkSizeMin(dstHash.remaining(), bytes);
+
+        dst = dstHash.duplicate();
+        dst.limit(dst.position() + bytes);
+
+        state = pool.acquire();
+        try {
+            state.duplicate().put(initial.duplicate());
+            spec.update(state, src);
+            spec.doFinal(state, dst.slice());
+        } finally {
+            pool.release(state);
+        }
+    }
+
+    /**
+     * init returns a Multipart that starts out in the initial state of the
+     * context. Calling {@link Multipart#reset()} on it returns it to that
+     * state.
+     *
+     * @return
+     */
+    @NotNull
+    public Multipart<Hash> init() {
+        final ByteBuffer state;
+        checkReleased();
+        state = pool.acquire();
+        state.duplicate().put(initial.duplicate());
+        return new Multipart<>(spec, state, pool);
+    }
+
+    /**
+     * release wipes the initial state. Using the HashContext afterwards
+     * throws IllegalStateException. Releasing more than once has no effect.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        Stodium.wipeBytes(initial.duplicate());
+    }
+
+    /**
+     *
+     */
+    private void checkReleased() {
+        if (released) {
+            throw new IllegalStateException("HashContext: released");
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.generichash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * MerkleTree is a binary hash tree over a fixed number of leaves, which keeps
+ * every node hash cached in a single direct buffer. Changing a leaf only
+ * re-hashes the path from that leaf to the root, so an update costs
+ * O(log n) hashes instead of hashing all of the content again.
+ * <p>
+ * The tree is stored in the usual implicit layout: node 1 is the root, the
+ * children of node i are 2i and 2i + 1, and the leaves occupy nodes
+ * [capacity, 2 * capacity), where capacity is the number of leaves rounded up
+ * to a power of two. Leaves that were never set hold an all-zero hash.
+ * <p>
+ * All hashes are Blake2b with domain separation through the personalisation:
+ * leaves use {@link #LEAF_PERSONAL} with the leaf index as salt, inner nodes
+ * use {@link #NODE_PERSONAL} with an all-zero salt.
+ * <p>
+ * A MerkleTree is not thread-safe.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class MerkleTree {
+
+    /**
+     *
+     */
+    public static final int DEFAULT_HASH_BYTES = 32;
+
+    /**
+     *
+     */
+    private static final @NotNull byte[] LEAF_PERSONAL = {
+            's', 't', 'o', 'd', 'i', 'u', 'm', '-', 'm', 'k', 'l', '-', 'l', 'e', 'a', 'f'
+    };
+
+    /**
+     *
+     */
+    private static final @NotNull byte[] NODE_PERSONAL = {
+            's', 't', 'o', 'd', 'i', 'u', 'm', '-', 'm', 'k', 'l', '-', 'n', 'o', 'd', 'e'
+    };
+
+    /**
+     *
+     */
+    private final @NotNull GenericHash blake;
+
+    /**
+     * nodes holds the hashes of all 2 * capacity nodes. Slot 0 is unused.
+     */
+    private final @NotNull ByteBuffer nodes;
+
+    /**
+     *
+     */
+    private final @NotNull Params params;
+
+    /**
+     *
+     */
+    private final int leaves;
+
+    /**
+     *
+     */
+    private final int capacity;
+
+    /**
+     *
+     */
+    private final int depth;
+
+    /**
+     *
+     * @param leaves
+     * @throws StodiumException
+     */
+    public MerkleTree(final int leaves)
+            throws StodiumException {
+        this(leaves, DEFAULT_HASH_BYTES);
+    }
+
+    /**
+     * Creates a tree in which all leaves are unset.
+     *
+     * @param leaves the number of leaves
+     * @param hashBytes the length of every node hash
+     * @throws StodiumException
+     */
+    public MerkleTree(final int leaves,
+                      final int hashBytes)
+            throws StodiumException {
+        int cap = 1, d = 0;
+
+        this.blake = GenericHash.blake2bInstance();
+        Stodium.checkSize(hashBytes, blake.bytesMin(), blake.bytesMax());
+        Stodium.checkSize(leaves, 1, Integer.MAX_VALUE / (2 * hashBytes));
+
+        while (cap < leaves) {
+            cap <<= 1;
+            d++;
+        }
+        // the nodes of the rounded up capacity must fit in a single buffer
+        Stodium.checkSize(cap, 1, Integer.MAX_VALUE / (2 * hashBytes));
+
+        this.leaves   = leaves;
+        this.capacity = cap;
+        this.depth    = d;
+        this.params   = new Params(blake, hashBytes);
+        this.nodes    = ByteBuffer.allocateDirect(2 * cap * hashBytes);
+
+        for (int i = capacity - 1; i >= 1; i--) {
+            hashNode(i);
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int leaves() {
+        return leaves;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int hashBytes() {
+        return params.hashBytes;
+    }
+
+    /**
+     * @return the number of hashes in a proof, which is log2(capacity)
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * set replaces the content of the leaf at index, and re-hashes every
+     * ancestor of the leaf.
+     *
+     * @param index
+     * @param chunk
+     * @throws StodiumException
+     */
+    public void set(final          int        index,
+                    final @NotNull ByteBuffer chunk)
+            throws StodiumException {
+        Stodium.checkSize(index, 0, leaves - 1);
+
+        hashLeaf(index, chunk);
+        for (int node = (capacity + index) >>> 1; node >= 1; node >>>= 1) {
+            hashNode(node);
+        }
+    }
+
+    /**
+     * setAll replaces the content of multiple leaves. The ancestors are
+     * re-hashed level by level afterwards, so an ancestor shared by several
+     * of the updated leaves is only hashed once.
+     *
+     * @param indices
+     * @param chunks
+     * @throws StodiumException
+     */
+    public void setAll(final @NotNull int[]        indices,
+                       final @NotNull ByteBuffer[] chunks)
+            throws StodiumException {
+        Stodium.checkSize(chunks.length, indices.length);
+        for (final int index : indices) {
+            Stodium.checkSize(index, 0, leaves - 1);
+        }
+
+        final int[] level = new int[indices.length];
+        int         count = indices.length;
+
+        for (int i = 0; i < indices.length; i++) {
+            hashLeaf(indices[i], chunks[i]);
+            level[i] = capacity + indices[i];
+        }
+        Arrays.sort(level, 0, count);
+
+        while (count > 0 && level[0] > 1) {
+            int parents = 0;
+            for (int i = 0; i < count; i++) {
+                final int parent = level[i] >>> 1;
+                if (parents == 0 || level[parents - 1] != parent) {
+                    level[parents++] = parent;
+                    hashNode(parent);
+                }
+            }
+            count = parents;
+        }
+    }
+
+    /**
+     * root writes the root hash to dst.
+     *
+     * @param dst
+     * @throws StodiumException
+     */
+    public void root(final @NotNull ByteBuffer dst)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSizeMin(dst.remaining(), params.hashBytes);
+        dst.duplicate().put(node(1));
+    }
+
+    /**
+     * proof writes the sibling hashes on the path from the leaf at index to
+     * the root, starting at the leaf. The proof is
+     * {@code depth() * hashBytes()} bytes long.
+     *
+     * @param index
+     * @param dst
+     * @throws StodiumException
+     */
+    public void proof(final          int        index,
+                      final @NotNull ByteBuffer dst)
+            throws StodiumException {
+        final ByteBuffer out;
+
+        Stodium.checkSize(index, 0, leaves - 1);
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSizeMin(dst.remaining(), depth * params.hashBytes);
+
+        out = dst.duplicate();
+        for (int node = capacity + index; node > 1; node >>>= 1) {
+            out.put(node(node ^ 1));
+        }
+    }
+
+    /**
+     * verify checks that chunk is the content of the leaf at index in the
+     * tree with the given root. The hash length is taken from root, and the
+     * depth of the tree from the length of the proof.
+     *
+     * @param root
+     * @param index
+     * @param chunk
+     * @param proof
+     * @return true iff the proof is valid
+     * @throws StodiumException
+     */
+    public static boolean verify(final @NotNull ByteBuffer root,
+                                 final          int        index,
+                                 final @NotNull ByteBuffer chunk,
+                                 final @NotNull ByteBuffer proof)
+            throws StodiumException {
+        final GenericHash blake;
+        final Params      params;
+        final ByteBuffer  current, pair, siblings;
+        final int         hashBytes;
+        int               position;
+
+        blake     = GenericHash.blake2bInstance();
+        hashBytes = root.remaining();
+        Stodium.checkSize(hashBytes, blake.bytesMin(), blake.bytesMax());
+        Stodium.checkPositive(index);
+
+        if (proof.remaining() % hashBytes != 0
+                || proof.remaining() / hashBytes > 31
+                || (index >>> (proof.remaining() / hashBytes)) != 0) {
+            return false;
+        }
+
+        params   = new Params(blake, hashBytes);
+        current  = ByteBuffer.allocateDirect(hashBytes);
+        pair     = ByteBuffer.allocateDirect(2 * hashBytes);
+        siblings = proof.duplicate();
+        position = index;
+
+        params.leafSalt.putLong(0, index);
+        blake.hash(current, chunk, null, params.leafSalt, params.leafPersonal);
+
+        while (siblings.hasRemaining()) {
+            final ByteBuffer sibling = siblings.slice();
+            sibling.limit(hashBytes);
+            siblings.position(siblings.position() + hashBytes);
+
+            pair.clear();
+            if ((position & 1) == 0) {
+                pair.put(current.duplicate()).put(sibling);
+            } else {
+                pair.put(sibling).put(current.duplicate());
+            }
+            pair.flip();
+
+            position >>>= 1;
+            blake.hash(current, pair, null, params.nodeSalt, params.nodePersonal);
+        }
+
+        return Stodium.isEqual(current, root);
+    }
+
+    /**
+     *
+     */
+    private void hashLeaf(final          int        index,
+                          final @NotNull ByteBuffer chunk)
+            throws StodiumException {
+        params.leafSalt.putLong(0, index);
+        blake.hash(node(capacity + index), chunk, null,
+                params.leafSalt, params.leafPersonal);
+    }
+
+    /**
+     * hashNode recomputes node i from its two children, which are adjacent in
+     * the node array and therefore hashed in place.
+     */
+    private void hashNode(final int i)
+            throws StodiumException {
+        blake.hash(node(i), slice(nodes, 2 * i * params.hashBytes, 2 * params.hashBytes),
+                null, params.nodeSalt, params.nodePersonal);
+    }
+
+    /**
+     *
+     */
+    @NotNull
+    private ByteBuffer node(final int i) {
+        return slice(nodes, i * params.hashBytes, params.hashBytes);
+    }
+
+    /**
+     *
+     */
+    @NotNull
+    private static ByteBuffer slice(final @NotNull ByteBuffer src,
+                                    final          int        offset,
+                                    final          int        length) {
+        final ByteBuffer dup = src.duplicate();
+        dup.limit(offset + length).position(offset);
+        return dup.slice();
+    }
+
+    /**
+     * Params holds the direct buffers for the hash parameters.
+     */
+    private static final class Params {
+        final @NotNull ByteBuffer leafSalt;
+        final @NotNull ByteBuffer nodeSalt;
+        final @NotNull ByteBuffer leafPersonal;
+        final @NotNull ByteBuffer nodePersonal;
+        final          int        hashBytes;
+
+        Params(final @NotNull GenericHash blake,
+               final          int         hashBytes) {
+            this.hashBytes    = hashBytes;
+            this.leafSalt     = ByteBuffer.allocateDirect(blake.saltBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            this.nodeSalt     = ByteBuffer.allocateDirect(blake.saltBytes());
+            this.leafPersonal = ByteBuffer.allocateDirect(blake.personalBytes());
+            this.nodePersonal = ByteBuffer.allocateDirect(blake.personalBytes());
+            this.leafPersonal.duplicate().put(LEAF_PERSONAL);
+            this.nodePersonal.duplicate().put(NODE_PERSONAL);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.generichash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.artemisc.stodium.Singleton;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.OperationFailedException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * TreeHash implements a parallel tree hashing mode on top of Blake2b. The
+ * input is split into leaves of a fixed size, which are hashed independently
+ * on an executor. The leaf digests are then combined by inner nodes with a
+ * fixed fan-out until a single root remains.
+ * <p>
+ * libsodium does not expose the Blake2b tree parameters (node offset, node
+ * depth, leaf length), so the output is not compatible with BLAKE2bp. Instead,
+ * every node is hashed with {@code crypto_generichash_blake2b_salt_personal}:
+ * <ul>
+ *     <li>the personalisation encodes the tree shape: "STDMTREE", the leaf
+ *     size (4 bytes LE), the fan-out and the output length;</li>
+ *     <li>the salt encodes the node: its offset in its level (8 bytes LE),
+ *     its depth (0 for leaves) and a flag that is only set for the root. The
+ *     root stores the total input length instead of an offset.</li>
+ * </ul>
+ * Leaves and inner nodes always produce {@code BYTES_MAX} byte digests; only
+ * the root is truncated to the requested output length.
+ * <p>
+ * Inputs should be direct buffers or files. Heap buffers work, but the native
+ * code may copy the entire backing array for every leaf.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class TreeHash {
+
+    /**
+     *
+     */
+    public static final int DEFAULT_LEAF_BYTES = 1 << 20;
+
+    /**
+     *
+     */
+    public static final int DEFAULT_FANOUT = 16;
+
+    /**
+     * WINDOW_LEAVES is the number of consecutive leaves hashed by a single
+     * task, and thus the size of every memory-mapped window of a file.
+     */
+    static final int WINDOW_LEAVES = 8;
+
+    /**
+     * EXECUTOR is the pool used when no executor is given. It holds one
+     * daemon thread per available processor.
+     */
+    private static final @NotNull Singleton<ExecutorService> EXECUTOR = new Singleton<ExecutorService>() {
+        @NotNull
+        @Override
+        protected ExecutorService initialize() {
+            final AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final @NotNull Runnable r) {
+                            final Thread thread;
+                            thread = new Thread(r, "stodium-treehash-" + counter.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+    };
+
+    /**
+     * Report describes a completed tree hash. {@link #speedup()} compares the
+     * time spent hashing leaves on all threads with the wall-clock time of
+     * the leaf phase, which shows how well the hash scaled across cores.
+     */
+    public static final class Report {
+        private final long bytes;
+        private final int  leaves;
+        private final long elapsedNanos;
+        private final long leafWallNanos;
+        private final long leafBusyNanos;
+
+        Report(final long bytes,
+               final int  leaves,
+               final long elapsedNanos,
+               final long leafWallNanos,
+               final long leafBusyNanos) {
+            this.bytes         = bytes;
+            this.leaves        = leaves;
+            this.elapsedNanos  = elapsedNanos;
+            this.leafWallNanos = leafWallNanos;
+            this.leafBusyNanos = leafBusyNanos;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        public int leaves() {
+            return leaves;
+        }
+
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the throughput of the whole operation in bytes per second
+         */
+        public double bytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return the effective number of cores used while hashing leaves
+         */
+        public double speedup() {
+            return leafWallNanos == 0 ? 1 : (double) leafBusyNanos / leafWallNanos;
+        }
+    }
+
+    /**
+     * Source abstracts over the inputs a tree can be computed for.
+     */
+    private interface Source {
+        @NotNull
+        ByteBuffer window(final long position,
+                          final int  length)
+                throws IOException;
+    }
+
+    /**
+     *
+     */
+    private final @NotNull GenericHash blake;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer personal;
+
+    /**
+     *
+     */
+    private final int leafBytes;
+
+    /**
+     *
+     */
+    private final int fanout;
+
+    /**
+     *
+     */
+    private final int outlen;
+
+    /**
+     *
+     */
+    private final int nodeBytes;
+
+    /**
+     * Creates a TreeHash with the default leaf size and fan-out, producing
+     * digests of the default Blake2b length.
+     */
+    public TreeHash()
+            throws StodiumException {
+        this(DEFAULT_LEAF_BYTES, DEFAULT_FANOUT, GenericHash.blake2bInstance().bytes());
+    }
+
+    /**
+     *
+     * @param leafBytes the number of input bytes per leaf, at most
+     *                  {@code Integer.MAX_VALUE / 8}
+     * @param fanout the number of children per inner node, between 2 and 255
+     * @param outlen the length of the root digest
+     * @throws StodiumException
+     */
+    public TreeHash(final int leafBytes,
+                    final int fanout,
+                    final int outlen)
+            throws StodiumException {
+        this.blake = GenericHash.blake2bInstance();
+
+        // a window of leaves is addressed with int offsets
+        Stodium.checkSize(leafBytes, 1, Integer.MAX_VALUE / WINDOW_LEAVES);
+        Stodium.checkSize(fanout, 2, 255);
+        Stodium.checkSize(outlen, blake.bytesMin(), blake.bytesMax());
+
+        this.leafBytes = leafBytes;
+        this.fanout    = fanout;
+        this.outlen    = outlen;
+        this.nodeBytes = blake.bytesMax();
+
+        this.personal = ByteBuffer.allocateDirect(blake.personalBytes())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.personal.put(new byte[] { 'S', 'T', 'D', 'M', 'T', 'R', 'E', 'E' });
+        this.personal.putInt(leafBytes);
+        this.personal.put((byte) fanout);
+        this.personal.put((byte) outlen);
+        this.personal.clear();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int outputBytes() {
+        return outlen;
+    }
+
+    /**
+     * hash calculates the tree hash of src on the shared executor.
+     *
+     * @param dst
+     * @param src
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public Report hash(final @NotNull ByteBuffer dst,
+                       final @NotNull ByteBuffer src)
+            throws StodiumException {
+        return hash(dst, src, EXECUTOR.get());
+    }
+
+    /**
+     * hash calculates the tree hash of src, hashing the leaves on executor.
+     *
+     * @param dst
+     * @param src
+     * @param executor
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public Report hash(final @NotNull ByteBuffer      dst,
+                       final @NotNull ByteBuffer      src,
+                       final @NotNull ExecutorService executor)
+            throws StodiumException {
+        try {
+            return hash(dst, new Source() {
+                @NotNull
+                @Override
+                public ByteBuffer window(final long position,
+                                         final int  length) {
+                    return slice(src, src.position() + (int) position, length);
+                }
+            }, src.remaining(), executor);
+        } catch (final IOException e) {
+            throw new OperationFailedException(e); // not thrown by buffer sources
+        }
+    }
+
+    /**
+     * hash calculates the tree hash of the entire contents of channel on the
+     * shared executor.
+     *
+     * @param dst
+     * @param channel
+     * @return
+     * @throws StodiumException
+     * @throws IOException
+     */
+    @NotNull
+    public Report hash(final @NotNull ByteBuffer  dst,
+                       final @NotNull FileChannel channel)
+            throws StodiumException, IOException {
+        return hash(dst, channel, EXECUTOR.get());
+    }
+
+    /**
+     * hash calculates the tree hash of the entire contents of channel. Every
+     * task maps its own window of the file, so the file is never copied into
+     * the Java heap.
+     *
+     * @param dst
+     * @param channel
+     * @param executor
+     * @return
+     * @throws StodiumException
+     * @throws IOException
+     */
+    @NotNull
+    public Report hash(final @NotNull ByteBuffer      dst,
+                       final @NotNull FileChannel     channel,
+                       final @NotNull ExecutorService executor)
+            throws StodiumException, IOException {
+        return hash(dst, new Source() {
+            @NotNull
+            @Override
+            public ByteBuffer window(final long position,
+                                     final int  length)
+                    throws IOException {
+                return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            }
+        }, channel.size(), executor);
+    }
+
+    /**
+     *
+     */
+    @NotNull
+    private Report hash(final @NotNull ByteBuffer      dst,
+                        final @NotNull Source          source,
+                        final          long            length,
+                        final @NotNull ExecutorService executor)
+            throws StodiumException, IOException {
+        final long                 start, leafEnd;
+        final int                  leaves;
+        final ByteBuffer           digests;
+        final AtomicLong           busy;
+        final List<Future<Void>>   tasks;
+
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSize(dst.remaining(), outlen);
+        Stodium.checkSize((length + leafBytes - 1) / leafBytes, 0, Integer.MAX_VALUE / nodeBytes);
+
+        start   = System.nanoTime();
+        leaves  = length == 0 ? 1 : (int) ((length + leafBytes - 1) / leafBytes);
+        digests = ByteBuffer.allocateDirect(leaves * nodeBytes);
+        busy    = new AtomicLong();
+        tasks   = new ArrayList<>((leaves + WINDOW_LEAVES - 1) / WINDOW_LEAVES);
+
+        for (int first = 0; first < leaves; first += WINDOW_LEAVES) {
+            final int from = first;
+            final int to   = Math.min(leaves, first + WINDOW_LEAVES);
+            tasks.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call()
+                        throws StodiumException, IOException {
+                    final long taskStart = System.nanoTime();
+                    hashLeaves(source, length, digests, from, to);
+                    busy.addAndGet(System.nanoTime() - taskStart);
+                    return null;
+                }
+            }));
+        }
+        await(tasks);
+        leafEnd = System.nanoTime();
+
+        hashNodes(dst, digests, leaves, length);
+
+        return new Report(length, leaves, System.nanoTime() - start,
+                leafEnd - start, busy.get());
+    }
+
+    /**
+     * hashLeaves hashes leaves [from, to) into their slots in digests.
+     */
+    private void hashLeaves(final @NotNull Source     source,
+                            final          long       length,
+                            final @NotNull ByteBuffer digests,
+                            final          int        from,
+                            final          int        to)
+            throws StodiumException, IOException {
+        final long       position;
+        final int        windowLength;
+        final ByteBuffer window, salt;
+
+        position     = (long) from * leafBytes;
+        windowLength = (int) Math.min(length - position, (long) (to - from) * leafBytes);
+        window       = windowLength == 0 ? ByteBuffer.allocate(0) : source.window(position, windowLength);
+        salt         = ByteBuffer.allocateDirect(blake.saltBytes()).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = from; i < to; i++) {
+            final int offset = (i - from) * leafBytes;
+            final int size   = Math.min(leafBytes, windowLength - offset);
+
+            writeSalt(salt, i, 0, false);
+            blake.hash(slice(digests, i * nodeBytes, nodeBytes),
+                    size == 0 ? window : slice(window, offset, size),
+                    null, salt, personal);
+        }
+    }
+
+    /**
+     * hashNodes combines the leaf digests level by level, until the children
+     * of a single node remain. That node is the root.
+     */
+    private void hashNodes(final @NotNull ByteBuffer dst,
+                           final @NotNull ByteBuffer leaves,
+                           final          int        count,
+                           final          long       length)
+            throws StodiumException {
+        final ByteBuffer salt;
+        ByteBuffer       level    = leaves;
+        int              children = count;
+        int              depth    = 1;
+
+        salt = ByteBuffer.allocateDirect(blake.saltBytes()).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (children > fanout) {
+            final int        parents = (children + fanout - 1) / fanout;
+            final ByteBuffer next    = ByteBuffer.allocateDirect(parents * nodeBytes);
+
+            for (int i = 0; i < parents; i++) {
+                final int first = i * fanout;
+                final int size  = Math.min(fanout, children - first);
+
+                writeSalt(salt, i, depth, false);
+                blake.hash(slice(next, i * nodeBytes, nodeBytes),
+                        slice(level, first * nodeBytes, size * nodeBytes),
+                        null, salt, personal);
+            }
+
+            level    = next;
+            children = parents;
+            depth++;
+        }
+
+        writeSalt(salt, length, depth, true);
+        blake.hash(dst, slice(level, 0, children * nodeBytes), null, salt, personal);
+    }
+
+    /**
+     *
+     */
+    private static void writeSalt(final @NotNull ByteBuffer salt,
+                                  final          long       offset,
+                                  final          int        depth,
+                                  final          boolean    root) {
+        salt.putLong(0, offset);
+        salt.put(8, (byte) depth);
+        salt.put(9, (byte) (root ? 1 : 0));
+    }
+
+    /**
+     *
+     */
+    @NotNull
+    private static ByteBuffer slice(final @NotNull ByteBuffer src,
+                                    final          int        offset,
+                                    final          int        length) {
+        final ByteBuffer dup = src.duplicate();
+        dup.limit(offset + length).position(offset);
+        return dup.slice();
+    }
+
+    /**
+     * await waits for all tasks, cancelling the remaining ones as soon as one
+     * of them fails.
+     */
+    private static void await(final @NotNull List<Future<Void>> tasks)
+            throws StodiumException, IOException {
+        try {
+            for (final Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationFailedException("TreeHash: interrupted", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof StodiumException) {
+                throw (StodiumException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new OperationFailedException(cause);
+        } finally {
+            for (final Future<Void> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+}
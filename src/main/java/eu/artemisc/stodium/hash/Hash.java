@@ -10,9 +10,18 @@ package eu.artemisc.stodium.hash;
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import eu.artemisc.stodium.Multipart;
 import eu.artemisc.stodium.Singleton;
+import eu.artemisc.stodium.StatePool;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.OperationFailedException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
@@ -51,10 +60,24 @@ public abstract class Hash {
         return SHA_512.get();
     }
 
+    /**
+     * BATCH_SPLIT is the batch size from which a batch is split across an
+     * executor; smaller batches are hashed on the calling thread. Larger
+     * batches are divided evenly over at most one task per processor, so a
+     * single task can receive fewer than BATCH_SPLIT inputs.
+     */
+    public static final int BATCH_SPLIT = 4096;
+
     // constants
     protected final int BYTES;
     protected final int STATEBYTES;
 
+    /**
+     * statePool provides the state buffers for the Multipart instances
+     * created by {@link #init()}.
+     */
+    protected final @NotNull StatePool statePool;
+
     /**
      *
      * @param bytes
@@ -64,6 +87,7 @@ public abstract class Hash {
                    final int state) {
         BYTES      = bytes;
         STATEBYTES = state;
+        statePool  = new StatePool(state);
     }
 
     /**
@@ -99,4 +123,148 @@ public abstract class Hash {
     @NotNull
     public abstract Multipart<Hash> init()
             throws StodiumException;
+
+    /**
+     * hashAll hashes each of the {@code offsets.length - 1} inputs packed
+     * into src in a single native call. Input i spans
+     * {@code [offsets[i], offsets[i + 1])}, relative to the position of src,
+     * and its digest is written to dst at offset {@code i * bytes()}.
+     *
+     * @param dstHashes
+     * @param src
+     * @param offsets
+     * @throws StodiumException
+     */
+    public final void hashAll(final @NotNull ByteBuffer dstHashes,
+                              final @NotNull ByteBuffer src,
+                              final @NotNull int[]      offsets)
+            throws StodiumException {
+        final int count;
+
+        Stodium.checkDestinationWritable(dstHashes);
+        count = Stodium.checkOffsets(offsets, src.remaining());
+        Stodium.checkSizeMin(dstHashes.remaining(), count * BYTES);
+
+        hashRange(dstHashes.slice(), Stodium.ensureUsableByteBuffer(src).slice(),
+                offsets, 0, count);
+    }
+
+    /**
+     * hashAll hashes the inputs like {@link #hashAll(ByteBuffer, ByteBuffer,
+     * int[])}, but splits batches larger than {@link #BATCH_SPLIT} inputs into
+     * ranges that are hashed on executor. The call returns once all ranges
+     * are done.
+     *
+     * @param dstHashes
+     * @param src
+     * @param offsets
+     * @param executor
+     * @throws StodiumException
+     */
+    public final void hashAll(final @NotNull ByteBuffer      dstHashes,
+                              final @NotNull ByteBuffer      src,
+                              final @NotNull int[]           offsets,
+                              final @NotNull ExecutorService executor)
+            throws StodiumException {
+        final List<Future<Void>> tasks;
+        final ByteBuffer         dst, in;
+        final int                count, tasksMax, step;
+
+        Stodium.checkDestinationWritable(dstHashes);
+        count = Stodium.checkOffsets(offsets, src.remaining());
+        Stodium.checkSizeMin(dstHashes.remaining(), count * BYTES);
+
+        dst = dstHashes.slice();
+        in  = Stodium.ensureUsableByteBuffer(src).slice();
+
+        tasksMax = Math.min(Runtime.getRuntime().availableProcessors(),
+                (count + BATCH_SPLIT - 1) / BATCH_SPLIT);
+        if (tasksMax <= 1) {
+            hashRange(dst, in, offsets, 0, count);
+            return;
+        }
+
+        step  = (count + tasksMax - 1) / tasksMax;
+        tasks = new ArrayList<>(tasksMax);
+        try {
+            for (int from = 0; from < count; from += step) {
+                final int start = from;
+                final int end   = Math.min(count, from + step);
+                tasks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call()
+                            throws StodiumException {
+                        if (dst.isDirect()) {
+                            hashRange(dst, in, offsets, start, end);
+                        } else {
+                            hashStaged(dst, in, offsets, start, end);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationFailedException("Hash: interrupted", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof StodiumException) {
+                throw (StodiumException) cause;
+            }
+            throw new OperationFailedException(cause);
+        } finally {
+            for (final Future<Void> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * hashStaged hashes inputs [from, to) into a direct buffer of its own,
+     * and copies the digests into their place in dst. The native code copies
+     * a heap buffer back as a whole, so tasks writing into the same heap
+     * buffer directly would overwrite each other's digests.
+     */
+    private void hashStaged(final @NotNull ByteBuffer dst,
+                            final @NotNull ByteBuffer src,
+                            final @NotNull int[]      offsets,
+                            final          int        from,
+                            final          int        to)
+            throws StodiumException {
+        final ByteBuffer staging = ByteBuffer.allocateDirect((to - from) * BYTES);
+        final ByteBuffer in      = src.duplicate();
+        final ByteBuffer out     = dst.duplicate();
+        final int[]      rebased = new int[to - from + 1];
+
+        for (int i = 0; i < rebased.length; i++) {
+            rebased[i] = offsets[from + i] - offsets[from];
+        }
+        in.limit(offsets[to]).position(offsets[from]);
+
+        hashRange(staging, in.slice(), rebased, 0, to - from);
+        out.position(from * BYTES);
+        out.put(staging);
+    }
+
+    /**
+     * hashRange hashes inputs [from, to) in a single native call. The offsets
+     * have already been checked, and dst and src start at the first byte of
+     * the batch.
+     *
+     * @param dst
+     * @param src
+     * @param offsets
+     * @param from
+     * @param to
+     * @throws StodiumException
+     */
+    protected abstract void hashRange(final @NotNull ByteBuffer dst,
+                                      final @NotNull ByteBuffer src,
+                                      final @NotNull int[]      offsets,
+                                      final          int        from,
+                                      final          int        to)
+            throws StodiumException;
 }
@@ -34,16 +34,29 @@ final class Sha512
                 Stodium.ensureUsableByteBuffer(src)));
     }
 
+    @Override
+    protected void hashRange(final @NotNull ByteBuffer dst,
+                             final @NotNull ByteBuffer src,
+                             final @NotNull int[]      offsets,
+                             final          int        from,
+                             final          int        to)
+            throws StodiumException {
+        Stodium.checkStatus(StodiumJNI.stodium_hash_sha512_batch(
+                Stodium.ensureUsableByteBuffer(dst),
+                Stodium.ensureUsableByteBuffer(src),
+                offsets, from, to));
+    }
+
     @NotNull
     @Override
     public Multipart<Hash> init()
             throws StodiumException {
         final ByteBuffer state;
 
-        state = ByteBuffer.allocateDirect(STATEBYTES);
+        state = statePool.acquire();
         Stodium.checkStatus(StodiumJNI.crypto_hash_sha512_init(state));
 
-        return new Multipart<>(this, state);
+        return new Multipart<>(this, state, statePool);
     }
 
     @Override
@@ -58,6 +71,18 @@ final class Sha512
                 Stodium.ensureUsableByteBuffer(in)));
     }
 
+    @Override
+    public void update(final @NotNull ByteBuffer   state,
+                       final @NotNull ByteBuffer[] in)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(state);
+        Stodium.checkSize(state.remaining(), STATEBYTES);
+
+        Stodium.checkStatus(StodiumJNI.stodium_hash_sha512_update_vector(
+                Stodium.ensureUsableByteBuffer(state),
+                Stodium.ensureUsableByteBuffers(in)));
+    }
+
     @Override
     public void doFinal(final @NotNull ByteBuffer state,
                         final @NotNull ByteBuffer dst)
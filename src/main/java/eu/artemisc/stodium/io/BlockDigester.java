@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.io;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Updatable;
+
+/**
+ * BlockDigester stages the bytes passed through one of the digesting adapters
+ * in a pooled direct block, so the primitive is updated with one native call
+ * per {@link Digests#BLOCK_BYTES} instead of one per read or write. Large
+ * regions of a direct buffer bypass the block and are passed to the primitive
+ * as-is.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+final class BlockDigester {
+
+    /**
+     * DIRECT_THRESHOLD is the smallest region of a direct buffer that is
+     * passed to the primitive without being staged first.
+     */
+    static final int DIRECT_THRESHOLD = 4096;
+
+    /**
+     *
+     */
+    private final @NotNull Updatable updatable;
+
+    /**
+     * block holds the staged bytes between its start and its position. It is
+     * null once the digester has been released.
+     */
+    private @Nullable ByteBuffer block;
+
+    /**
+     *
+     * @param updatable
+     */
+    BlockDigester(final @NotNull Updatable updatable) {
+        this.updatable = updatable;
+        this.block     = Digests.acquire();
+    }
+
+    /**
+     * update digests the remaining bytes of region, without changing its
+     * position.
+     *
+     * @param region
+     * @throws IOException
+     */
+    void update(final @NotNull ByteBuffer region)
+            throws IOException {
+        final ByteBuffer block = block();
+        final ByteBuffer src;
+
+        if (!region.hasRemaining()) {
+            return;
+        }
+        if (region.isDirect() && region.remaining() >= DIRECT_THRESHOLD) {
+            sync();
+            Digests.update(updatable, region.slice());
+            return;
+        }
+
+        src = region.duplicate();
+        while (src.hasRemaining()) {
+            if (!block.hasRemaining()) {
+                sync();
+            }
+            final ByteBuffer chunk = src.duplicate();
+            chunk.limit(chunk.position() + Math.min(block.remaining(), src.remaining()));
+            block.put(chunk);
+            src.position(chunk.position());
+        }
+    }
+
+    /**
+     *
+     * @param b
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    void update(final @NotNull byte[] b,
+                final          int    off,
+                final          int    len)
+            throws IOException {
+        update(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     *
+     * @param b
+     * @throws IOException
+     */
+    void update(final int b)
+            throws IOException {
+        if (!block().hasRemaining()) {
+            sync();
+        }
+        block().put((byte) b);
+    }
+
+    /**
+     * sync passes all staged bytes to the primitive.
+     *
+     * @throws IOException
+     */
+    void sync()
+            throws IOException {
+        final ByteBuffer block = block();
+        if (block.position() == 0) {
+            return;
+        }
+        block.flip();
+        try {
+            Digests.update(updatable, block.slice());
+        } finally {
+            block.clear();
+        }
+    }
+
+    /**
+     * release syncs the staged bytes, and returns the block to the pool.
+     * Releasing a digester more than once has no effect.
+     *
+     * @throws IOException
+     */
+    void release()
+            throws IOException {
+        if (block == null) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            Digests.release(block);
+            block = null;
+        }
+    }
+
+    @NotNull
+    private ByteBuffer block()
+            throws IOException {
+        if (block == null) {
+            throw new IOException("BlockDigester: closed");
+        }
+        return block;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import eu.artemisc.stodium.Updatable;
+
+/**
+ * DigestingInputStream passes every byte read or skipped from the wrapped
+ * stream to an {@link Updatable} primitive. Bytes are staged in a pooled
+ * direct block, and digested one block at a time. Call {@link #sync()} or
+ * {@link #close()} before finalizing the primitive.
+ * <p>
+ * Mark and reset are not supported, as the primitive cannot be rewound.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class DigestingInputStream
+        extends FilterInputStream {
+
+    /**
+     *
+     */
+    private final @NotNull BlockDigester digester;
+
+    /**
+     *
+     * @param in
+     * @param updatable
+     */
+    public DigestingInputStream(final @NotNull InputStream in,
+                                final @NotNull Updatable   updatable) {
+        super(in);
+        this.digester = new BlockDigester(updatable);
+    }
+
+    @Override
+    public int read()
+            throws IOException {
+        final int b = in.read();
+        if (b >= 0) {
+            digester.update(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final @NotNull byte[] b,
+                    final          int    off,
+                    final          int    len)
+            throws IOException {
+        final int read = in.read(b, off, len);
+        if (read > 0) {
+            digester.update(b, off, read);
+        }
+        return read;
+    }
+
+    /**
+     * skip reads and digests the skipped bytes, rather than skipping them in
+     * the wrapped stream.
+     */
+    @Override
+    public long skip(final long n)
+            throws IOException {
+        final byte[] skipped = new byte[(int) Math.min(n, BlockDigester.DIRECT_THRESHOLD)];
+        long total = 0;
+        int  read;
+
+        while (total < n && (read = read(skipped, 0,
+                (int) Math.min(n - total, skipped.length))) >= 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset()
+            throws IOException {
+        throw new IOException("DigestingInputStream: mark/reset not supported");
+    }
+
+    /**
+     * sync passes all staged bytes to the primitive.
+     *
+     * @throws IOException
+     */
+    public void sync()
+            throws IOException {
+        digester.sync();
+    }
+
+    /**
+     * close syncs the staged bytes, and closes the wrapped stream. The
+     * primitive itself is left open.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close()
+            throws IOException {
+        try {
+            digester.release();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import eu.artemisc.stodium.Updatable;
+
+/**
+ * DigestingOutputStream passes every byte written to the wrapped stream to an
+ * {@link Updatable} primitive. Bytes are staged in a pooled direct block, and
+ * digested one block at a time. {@link #flush()} and {@link #close()} both
+ * pass the staged bytes on, after which the primitive can be finalized.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class DigestingOutputStream
+        extends FilterOutputStream {
+
+    /**
+     *
+     */
+    private final @NotNull BlockDigester digester;
+
+    /**
+     *
+     * @param out
+     * @param updatable
+     */
+    public DigestingOutputStream(final @NotNull OutputStream out,
+                                 final @NotNull Updatable    updatable) {
+        super(out);
+        this.digester = new BlockDigester(updatable);
+    }
+
+    @Override
+    public void write(final int b)
+            throws IOException {
+        out.write(b);
+        digester.update(b);
+    }
+
+    @Override
+    public void write(final @NotNull byte[] b,
+                      final          int    off,
+                      final          int    len)
+            throws IOException {
+        out.write(b, off, len);
+        digester.update(b, off, len);
+    }
+
+    /**
+     * sync passes all staged bytes to the primitive, without flushing the
+     * wrapped stream.
+     *
+     * @throws IOException
+     */
+    public void sync()
+            throws IOException {
+        digester.sync();
+    }
+
+    @Override
+    public void flush()
+            throws IOException {
+        digester.sync();
+        out.flush();
+    }
+
+    /**
+     * close syncs the staged bytes, and closes the wrapped stream. The
+     * primitive itself is left open.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close()
+            throws IOException {
+        try {
+            digester.release();
+        } finally {
+            out.close();
+        }
+    }
+}
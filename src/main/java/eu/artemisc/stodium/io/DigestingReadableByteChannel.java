@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import eu.artemisc.stodium.Updatable;
+
+/**
+ * DigestingReadableByteChannel passes every byte read from the wrapped channel
+ * to an {@link Updatable} primitive. Bytes read into a direct buffer in large
+ * enough chunks are digested in place; everything else is staged in a pooled
+ * direct block first. Call {@link #sync()} or {@link #close()} before
+ * finalizing the primitive.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class DigestingReadableByteChannel
+        implements ReadableByteChannel {
+
+    /**
+     *
+     */
+    private final @NotNull ReadableByteChannel channel;
+
+    /**
+     *
+     */
+    private final @NotNull BlockDigester digester;
+
+    /**
+     *
+     * @param channel
+     * @param updatable
+     */
+    public DigestingReadableByteChannel(final @NotNull ReadableByteChannel channel,
+                                        final @NotNull Updatable           updatable) {
+        this.channel  = channel;
+        this.digester = new BlockDigester(updatable);
+    }
+
+    @Override
+    public int read(final @NotNull ByteBuffer dst)
+            throws IOException {
+        final int        position = dst.position();
+        final int        read     = channel.read(dst);
+        final ByteBuffer region;
+
+        if (read > 0) {
+            region = dst.duplicate();
+            region.limit(position + read).position(position);
+            digester.update(region);
+        }
+        return read;
+    }
+
+    /**
+     * sync passes all staged bytes to the primitive.
+     *
+     * @throws IOException
+     */
+    public void sync()
+            throws IOException {
+        digester.sync();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * close syncs the staged bytes, and closes the wrapped channel. The
+     * primitive itself is left open.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close()
+            throws IOException {
+        try {
+            digester.release();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import eu.artemisc.stodium.Updatable;
+
+/**
+ * DigestingWritableByteChannel passes every byte written to the wrapped
+ * channel to an {@link Updatable} primitive. Only the bytes the wrapped
+ * channel actually accepted are digested. Call {@link #sync()} or
+ * {@link #close()} before finalizing the primitive.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class DigestingWritableByteChannel
+        implements WritableByteChannel {
+
+    /**
+     *
+     */
+    private final @NotNull WritableByteChannel channel;
+
+    /**
+     *
+     */
+    private final @NotNull BlockDigester digester;
+
+    /**
+     *
+     * @param channel
+     * @param updatable
+     */
+    public DigestingWritableByteChannel(final @NotNull WritableByteChannel channel,
+                                        final @NotNull Updatable           updatable) {
+        this.channel  = channel;
+        this.digester = new BlockDigester(updatable);
+    }
+
+    @Override
+    public int write(final @NotNull ByteBuffer src)
+            throws IOException {
+        final int        position = src.position();
+        final int        written  = channel.write(src);
+        final ByteBuffer region;
+
+        if (written > 0) {
+            region = src.duplicate();
+            region.limit(position + written).position(position);
+            digester.update(region);
+        }
+        return written;
+    }
+
+    /**
+     * sync passes all staged bytes to the primitive.
+     *
+     * @throws IOException
+     */
+    public void sync()
+            throws IOException {
+        digester.sync();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * close syncs the staged bytes, and closes the wrapped channel. The
+     * primitive itself is left open.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close()
+            throws IOException {
+        try {
+            digester.release();
+        } finally {
+            channel.close();
+        }
+    }
+}
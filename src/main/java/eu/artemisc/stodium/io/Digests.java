@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.io;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+import eu.artemisc.stodium.StatePool;
+import eu.artemisc.stodium.Updatable;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * Digests feeds complete streams and channels into any {@link Updatable}
+ * primitive ({@link eu.artemisc.stodium.Multipart} or
+ * {@link eu.artemisc.stodium.sign.MultipartSign}).
+ * <p>
+ * Channels and streams are read into pooled direct blocks, and every read is
+ * passed to the primitive in a single native call as soon as it returns,
+ * without being copied by the JNI layer. Large files are mapped in windows of
+ * {@link #MAP_BYTES} instead, so they are hashed straight from the page cache.
+ * A selectable channel must be in blocking mode.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class Digests {
+    private Digests() {}
+
+    /**
+     * BLOCK_BYTES is the size of the blocks data is read into.
+     */
+    public static final int BLOCK_BYTES = 64 * 1024;
+
+    /**
+     * MAP_BYTES is the size of the windows a file is mapped in.
+     */
+    public static final int MAP_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * MAP_THRESHOLD is the smallest remaining file size that is mapped, rather
+     * than read block by block. Below it, setting up the mapping costs more
+     * than the copy it saves.
+     */
+    public static final int MAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * POOL_CAPACITY is the number of idle blocks retained between calls.
+     */
+    private static final int POOL_CAPACITY = 4;
+
+    /**
+     *
+     */
+    private static final @NotNull StatePool blocks
+            = new StatePool(BLOCK_BYTES, POOL_CAPACITY);
+
+    /**
+     *
+     * @return a cleared direct block of BLOCK_BYTES
+     */
+    @NotNull
+    static ByteBuffer acquire() {
+        return blocks.acquire();
+    }
+
+    /**
+     *
+     * @param block
+     */
+    static void release(final @NotNull ByteBuffer block) {
+        block.clear();
+        blocks.release(block);
+    }
+
+    /**
+     * update passes region to the primitive. As with every native call, a
+     * direct region is processed from its start up to its capacity.
+     *
+     * @param updatable
+     * @param region
+     * @throws IOException wrapping the StodiumException thrown by the
+     *         primitive
+     */
+    static void update(final @NotNull Updatable  updatable,
+                       final @NotNull ByteBuffer region)
+            throws IOException {
+        try {
+            updatable.update(region);
+        } catch (final StodiumException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * digest reads src until the end of the stream, and passes everything to
+     * updatable. The channel is not closed.
+     *
+     * @param src
+     * @param updatable
+     * @return the number of bytes digested
+     * @throws IOException
+     * @throws IllegalBlockingModeException if src is in non-blocking mode
+     */
+    public static long digest(final @NotNull ReadableByteChannel src,
+                              final @NotNull Updatable           updatable)
+            throws IOException {
+        return pump(src, null, updatable);
+    }
+
+    /**
+     * digest reads src until the end of the stream, and passes everything to
+     * updatable. The stream is not closed. A {@link FileInputStream} is read
+     * through its channel.
+     *
+     * @param src
+     * @param updatable
+     * @return the number of bytes digested
+     * @throws IOException
+     */
+    public static long digest(final @NotNull InputStream src,
+                              final @NotNull Updatable   updatable)
+            throws IOException {
+        if (src instanceof FileInputStream) {
+            return pump(((FileInputStream) src).getChannel(), null, updatable);
+        }
+        return pump(src, null, updatable);
+    }
+
+    /**
+     * transfer copies src to dst until the end of src is reached, and passes
+     * every read to updatable on the way. Neither channel is closed.
+     *
+     * @param src
+     * @param dst
+     * @param updatable
+     * @return the number of bytes transferred
+     * @throws IOException
+     * @throws IllegalBlockingModeException if src is in non-blocking mode
+     */
+    public static long transfer(final @NotNull ReadableByteChannel src,
+                                final @NotNull WritableByteChannel dst,
+                                final @NotNull Updatable           updatable)
+            throws IOException {
+        return pump(src, dst, updatable);
+    }
+
+    /**
+     * transfer copies src to dst until the end of src is reached, and passes
+     * every read to updatable on the way. Neither stream is closed.
+     *
+     * @param src
+     * @param dst
+     * @param updatable
+     * @return the number of bytes transferred
+     * @throws IOException
+     */
+    public static long transfer(final @NotNull InputStream  src,
+                                final @NotNull OutputStream dst,
+                                final @NotNull Updatable    updatable)
+            throws IOException {
+        return pump(src, dst, updatable);
+    }
+
+    /**
+     * pump reads src into a block, and passes on whatever every read returns,
+     * so a slow source such as a socket is forwarded to dst as it arrives.
+     * Large remainders of a FileChannel are mapped instead.
+     */
+    private static long pump(final @NotNull  ReadableByteChannel src,
+                             final @Nullable WritableByteChannel dst,
+                             final @NotNull  Updatable           updatable)
+            throws IOException {
+        final ByteBuffer block;
+        long total = 0;
+
+        if (src instanceof SelectableChannel && !((SelectableChannel) src).isBlocking()) {
+            // a non-blocking channel would have to be polled for every read
+            throw new IllegalBlockingModeException();
+        }
+        if (src instanceof FileChannel) {
+            final FileChannel file = (FileChannel) src;
+            if (file.size() - file.position() >= MAP_THRESHOLD) {
+                return pumpMapped(file, dst, updatable);
+            }
+        }
+
+        block = acquire();
+        try {
+            while (src.read(block) >= 0) {
+                if (block.position() == 0) {
+                    continue;
+                }
+
+                block.flip();
+                update(updatable, block.slice());
+                total += block.remaining();
+                if (dst != null) {
+                    writeFully(dst, block);
+                }
+                block.clear();
+            }
+        } finally {
+            release(block);
+        }
+        return total;
+    }
+
+    /**
+     * pumpMapped maps src from its position up to its size, one window at a
+     * time, and moves the position to the end.
+     */
+    private static long pumpMapped(final @NotNull  FileChannel         src,
+                                   final @Nullable WritableByteChannel dst,
+                                   final @NotNull  Updatable           updatable)
+            throws IOException {
+        final long start = src.position();
+        final long end   = src.size();
+
+        for (long position = start; position < end; position += MAP_BYTES) {
+            final MappedByteBuffer window = src.map(FileChannel.MapMode.READ_ONLY,
+                    position, Math.min(MAP_BYTES, end - position));
+            update(updatable, window);
+            if (dst != null) {
+                writeFully(dst, window);
+            }
+        }
+        src.position(end);
+        return end - start;
+    }
+
+    /**
+     * pump reads src through a channel into a pooled direct block, and writes
+     * every read to dst if it is not null.
+     */
+    private static long pump(final @NotNull  InputStream  src,
+                             final @Nullable OutputStream dst,
+                             final @NotNull  Updatable    updatable)
+            throws IOException {
+        return pump(Channels.newChannel(src),
+                dst == null ? null : Channels.newChannel(dst), updatable);
+    }
+
+    /**
+     *
+     */
+    private static void writeFully(final @NotNull WritableByteChannel dst,
+                                   final @NotNull ByteBuffer          src)
+            throws IOException {
+        while (src.hasRemaining()) {
+            dst.write(src);
+        }
+    }
+}
@@ -38,4 +38,27 @@ public final class Blake2b
                 Stodium.ensureUsableByteBuffer(context),
                 Stodium.ensureUsableByteBuffer(key)));
     }
+
+    @Override
+    public void deriveRange(final @NotNull ByteBuffer master,
+                            final @NotNull ByteBuffer context,
+                            final          long       fromId,
+                            final          int        count,
+                            final @NotNull ByteBuffer dst)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(dst);
+
+        Stodium.checkSizeMin(count, 1);
+        Stodium.checkSize(dst.remaining() % count, 0);
+        Stodium.checkSize(dst.remaining() / count, BYTES_MIN, BYTES_MAX);
+        Stodium.checkSize(context.remaining(), CONTEXTBYTES);
+        Stodium.checkSize(master.remaining(), KEYBYTES);
+
+        Stodium.checkStatus(StodiumJNI.stodium_kdf_blake2b_derive_range(
+                Stodium.ensureUsableByteBuffer(dst.slice()),
+                dst.remaining() / count,
+                fromId, count,
+                Stodium.ensureUsableByteBuffer(context),
+                Stodium.ensureUsableByteBuffer(master)));
+    }
 }
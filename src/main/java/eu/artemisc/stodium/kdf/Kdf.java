@@ -90,4 +90,24 @@ public abstract class Kdf {
                                        final @NotNull ByteBuffer context,
                                        final @NotNull ByteBuffer key)
             throws StodiumException;
+
+    /**
+     * deriveRange derives the count subkeys with the ids
+     * {@code [fromId, fromId + count)} from master in a single native call.
+     * The remaining bytes of dst are split into count subkeys of equal
+     * length, stored in order of their id.
+     *
+     * @param master
+     * @param context
+     * @param fromId
+     * @param count
+     * @param dst
+     * @throws StodiumException
+     */
+    public abstract void deriveRange(final @NotNull ByteBuffer master,
+                                     final @NotNull ByteBuffer context,
+                                     final          long       fromId,
+                                     final          int        count,
+                                     final @NotNull ByteBuffer dst)
+            throws StodiumException;
 }
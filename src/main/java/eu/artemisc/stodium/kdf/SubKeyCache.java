@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.kdf;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * SubKeyCache caches the subkeys derived from one master key, keyed by their
+ * (context, id) pair, and evicts the least recently used subkey once it holds
+ * {@link #capacity()} of them.
+ * <p>
+ * The master key and all subkeys live in direct buffers that are locked into
+ * memory, when the process is allowed to, so they are never swapped out.
+ * Evicted subkeys are wiped immediately, and {@link #close()} wipes the whole
+ * cache.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class SubKeyCache {
+
+    /**
+     * Slot identifies a cached subkey.
+     */
+    private static final class Slot {
+        private final long context;
+        private final long id;
+
+        Slot(final long context,
+             final long id) {
+            this.context = context;
+            this.id      = id;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Slot
+                    && ((Slot) o).context == context
+                    && ((Slot) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            final long h = context * 0x9e3779b97f4a7c15L ^ id;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private final @NotNull Kdf        kdf;
+    private final @NotNull ByteBuffer master;
+    private final @NotNull ByteBuffer subKeys;
+    private final          int        subKeyBytes;
+    private final          int        capacity;
+    private final          boolean    locked;
+
+    // all guarded by this
+    private final @NotNull LinkedHashMap<Slot, Integer> slots;
+    private final @NotNull ArrayDeque<Integer>          free;
+    private long    hits;
+    private long    misses;
+    private long    evictions;
+    private boolean closed;
+
+    /**
+     *
+     * @param kdf
+     * @param master the master key, which is copied
+     * @param subKeyBytes the length of every subkey
+     * @param capacity the maximum number of subkeys kept
+     * @throws ConstraintViolationException
+     */
+    public SubKeyCache(final @NotNull Kdf        kdf,
+                       final @NotNull ByteBuffer master,
+                       final          int        subKeyBytes,
+                       final          int        capacity)
+            throws ConstraintViolationException {
+        Stodium.checkSize(master.remaining(), kdf.keyBytes());
+        Stodium.checkSize(subKeyBytes, kdf.bytesMin(), kdf.bytesMax());
+        Stodium.checkSize(capacity, 1, Integer.MAX_VALUE / subKeyBytes);
+        Stodium.checkSize(kdf.contextBytes(), 1, 8);
+
+        this.kdf         = kdf;
+        this.subKeyBytes = subKeyBytes;
+        this.capacity    = capacity;
+        this.master      = ByteBuffer.allocateDirect(kdf.keyBytes());
+        this.subKeys     = ByteBuffer.allocateDirect(capacity * subKeyBytes);
+        this.locked      = Stodium.mlock(this.master) & Stodium.mlock(this.subKeys);
+        this.master.put(master.duplicate()).flip();
+
+        this.free  = new ArrayDeque<>(capacity);
+        this.slots = new LinkedHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < capacity; i++) {
+            free.add(i);
+        }
+    }
+
+    /**
+     *
+     * @return the maximum number of subkeys kept
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     *
+     * @return the length of every subkey
+     */
+    public int subKeyBytes() {
+        return subKeyBytes;
+    }
+
+    /**
+     *
+     * @return whether the keys are locked into memory
+     */
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /**
+     * get copies the subkey for (context, subKeyId) into dst, deriving it on
+     * a miss.
+     *
+     * @param dst receives {@link #subKeyBytes()} bytes
+     * @param context
+     * @param subKeyId
+     * @return true if the subkey was cached
+     * @throws StodiumException
+     */
+    public synchronized boolean get(final @NotNull ByteBuffer dst,
+                                    final @NotNull ByteBuffer context,
+                                    final          long       subKeyId)
+            throws StodiumException {
+        final Slot    slot;
+        final Integer cached;
+        final int     index;
+
+        if (closed) {
+            throw new IllegalStateException("SubKeyCache: closed");
+        }
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSize(dst.remaining(), subKeyBytes);
+        Stodium.checkSize(context.remaining(), kdf.contextBytes());
+
+        slot   = new Slot(pack(context), subKeyId);
+        cached = slots.get(slot);
+        if (cached != null) {
+            hits++;
+            dst.duplicate().put(region(cached));
+            return true;
+        }
+
+        misses++;
+        if (free.isEmpty()) {
+            // the map is in access order, so the first entry is the eldest
+            final Iterator<Map.Entry<Slot, Integer>> eldest = slots.entrySet().iterator();
+            final int evicted = eldest.next().getValue();
+            eldest.remove();
+            wipe(evicted);
+            evictions++;
+        }
+        index = free.poll();
+        try {
+            kdf.deriveFromKey(region(index), subKeyId, context.duplicate(), master.duplicate());
+        } catch (StodiumException e) {
+            free.add(index);
+            throw e;
+        }
+        slots.put(slot, index);
+        dst.duplicate().put(region(index));
+        return false;
+    }
+
+    /**
+     * invalidate wipes every cached subkey.
+     */
+    public synchronized void invalidate() {
+        for (final Integer index : slots.values()) {
+            wipe(index);
+        }
+        slots.clear();
+    }
+
+    /**
+     *
+     * @return the number of lookups answered from the cache
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     *
+     * @return the number of lookups that derived a subkey
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     *
+     * @return the number of subkeys evicted to make room
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     *
+     * @return the fraction of lookups answered from the cache
+     */
+    public synchronized double hitRate() {
+        return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * close wipes and unlocks the master key and all subkeys. The cache must
+     * not be used afterwards.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        slots.clear();
+        free.clear();
+        Stodium.munlock(master);
+        Stodium.munlock(subKeys);
+    }
+
+    /**
+     * wipe wipes the subkey at index and returns it to the free list.
+     */
+    private void wipe(final int index) {
+        Stodium.wipeBytes(region(index));
+        free.add(index);
+    }
+
+    /**
+     * region returns the slice of subKeys for the subkey at index.
+     */
+    @NotNull
+    private ByteBuffer region(final int index) {
+        final ByteBuffer region = subKeys.duplicate();
+        region.position(index * subKeyBytes).limit((index + 1) * subKeyBytes);
+        return region.slice();
+    }
+
+    /**
+     * pack reads the context bytes into a long.
+     */
+    private long pack(final @NotNull ByteBuffer context) {
+        long packed = 0;
+        for (int i = 0; i < kdf.contextBytes(); i++) {
+            packed = (packed << 8) | (context.get(context.position() + i) & 0xff);
+        }
+        return packed;
+    }
+}
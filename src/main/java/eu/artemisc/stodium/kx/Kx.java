@@ -126,4 +126,28 @@ public abstract class Kx {
                                            final @NotNull ByteBuffer serverSk,
                                            final @NotNull ByteBuffer clientPk)
             throws StodiumException;
+
+    /**
+     * serverSessionKeysAll derives the server session keys for every client
+     * public key packed into clientPks, under a single server keypair and in
+     * a single native call. The keys for client i are written to rx and tx at
+     * offset {@code i * sessionKeyBytes()}.
+     * <p>
+     * A client key for which no shared secret can be computed does not fail
+     * the batch; the session keys of that client are zeroed instead.
+     *
+     * @param rx
+     * @param tx
+     * @param serverPk
+     * @param serverSk
+     * @param clientPks
+     * @return the number of clients for which the derivation failed
+     * @throws StodiumException
+     */
+    public abstract int serverSessionKeysAll(final @NotNull ByteBuffer rx,
+                                             final @NotNull ByteBuffer tx,
+                                             final @NotNull ByteBuffer serverPk,
+                                             final @NotNull ByteBuffer serverSk,
+                                             final @NotNull ByteBuffer clientPks)
+            throws StodiumException;
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.kx;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+import eu.artemisc.stodium.secretbox.SecretBox;
+
+/**
+ * SessionTickets seals the session keys a server derived for a client into an
+ * opaque ticket that is handed to the client. A returning client presents the
+ * ticket, and the server recovers the keys from it without another key
+ * exchange, and without keeping any state per client.
+ * <p>
+ * A ticket is a random nonce followed by the secret box of the server's rx
+ * key, its tx key and the expiry time as big-endian milliseconds since the
+ * epoch. Tickets past their expiry time are rejected. The ticket key is kept
+ * in memory that is locked, when the process is allowed to, until
+ * {@link #close()} wipes it.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class SessionTickets {
+
+    /**
+     *
+     */
+    private static final int EXPIRY_BYTES = 8;
+
+    private final @NotNull SecretBox  box;
+    private final @NotNull ByteBuffer key;
+    private final          int        sessionKeyBytes;
+    private final          int        plainBytes;
+
+    /**
+     * lock keeps {@link #close()} from wiping the key while a ticket is being
+     * sealed or opened with it. closed is guarded by lock.
+     */
+    private final @NotNull ReadWriteLock lock = new ReentrantReadWriteLock();
+    private                boolean       closed;
+
+    /**
+     *
+     * @param kx the key exchange the session keys come from
+     * @param box the primitive the tickets are sealed with
+     * @param key the ticket key, which is copied
+     * @throws StodiumException
+     */
+    public SessionTickets(final @NotNull Kx         kx,
+                          final @NotNull SecretBox  box,
+                          final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkSize(key.remaining(), box.keyBytes());
+
+        this.box             = box;
+        this.sessionKeyBytes = kx.sessionKeyBytes();
+        this.plainBytes      = 2 * sessionKeyBytes + EXPIRY_BYTES;
+        this.key             = ByteBuffer.allocateDirect(box.keyBytes());
+        Stodium.mlock(this.key);
+        this.key.put(key.duplicate()).flip();
+    }
+
+    /**
+     *
+     * @return the length of a ticket
+     */
+    public int ticketBytes() {
+        return box.nonceBytes() + box.macBytes() + plainBytes;
+    }
+
+    /**
+     * seal writes a ticket holding rx, tx and expiresAt to dst.
+     *
+     * @param dst receives {@link #ticketBytes()} bytes
+     * @param rx
+     * @param tx
+     * @param expiresAt the expiry time, in milliseconds since the epoch
+     * @throws StodiumException
+     */
+    public void seal(final @NotNull ByteBuffer dst,
+                     final @NotNull ByteBuffer rx,
+                     final @NotNull ByteBuffer tx,
+                     final          long       expiresAt)
+            throws StodiumException {
+        final ByteBuffer ticket, nonce, plain;
+
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSizeMin(dst.remaining(), ticketBytes());
+        Stodium.checkSize(rx.remaining(), sessionKeyBytes);
+        Stodium.checkSize(tx.remaining(), sessionKeyBytes);
+
+        ticket = ((ByteBuffer) dst.duplicate().limit(dst.position() + ticketBytes())).slice();
+        nonce  = ((ByteBuffer) ticket.duplicate().limit(box.nonceBytes())).slice();
+        RandomBytes.nextBytes(nonce);
+
+        plain = ByteBuffer.allocateDirect(plainBytes);
+        lock.readLock().lock();
+        try {
+            checkClosed();
+            plain.put(rx.duplicate()).put(tx.duplicate()).putLong(expiresAt).flip();
+            box.easy(((ByteBuffer) ticket.duplicate().position(box.nonceBytes())).slice(),
+                    plain, nonce, key.duplicate());
+        } finally {
+            lock.readLock().unlock();
+            plain.clear();
+            Stodium.wipeBytes(plain);
+        }
+    }
+
+    /**
+     * open recovers the session keys from ticket into rx and tx, if the
+     * ticket was sealed with this ticket key and has not expired at now.
+     * Otherwise, rx and tx are left untouched.
+     *
+     * @param rx
+     * @param tx
+     * @param ticket
+     * @param now the current time, in milliseconds since the epoch
+     * @return whether the ticket was valid
+     * @throws StodiumException
+     */
+    public boolean open(final @NotNull ByteBuffer rx,
+                        final @NotNull ByteBuffer tx,
+                        final @NotNull ByteBuffer ticket,
+                        final          long       now)
+            throws StodiumException {
+        final ByteBuffer nonce, cipher, plain;
+
+        Stodium.checkDestinationWritable(rx);
+        Stodium.checkDestinationWritable(tx);
+        Stodium.checkSize(rx.remaining(), sessionKeyBytes);
+        Stodium.checkSize(tx.remaining(), sessionKeyBytes);
+
+        if (ticket.remaining() != ticketBytes()) {
+            return false;
+        }
+        nonce  = ((ByteBuffer) ticket.duplicate().limit(ticket.position() + box.nonceBytes())).slice();
+        cipher = ((ByteBuffer) ticket.duplicate().position(ticket.position() + box.nonceBytes())).slice();
+
+        plain = ByteBuffer.allocateDirect(plainBytes);
+        lock.readLock().lock();
+        try {
+            checkClosed();
+            if (!box.easyOpen(plain, cipher, nonce, key.duplicate())
+                    || plain.getLong(2 * sessionKeyBytes) <= now) {
+                return false;
+            }
+            plain.limit(sessionKeyBytes);
+            rx.duplicate().put(plain);
+            plain.limit(2 * sessionKeyBytes);
+            tx.duplicate().put(plain);
+            return true;
+        } finally {
+            lock.readLock().unlock();
+            plain.clear();
+            Stodium.wipeBytes(plain);
+        }
+    }
+
+    /**
+     * close wipes and unlocks the ticket key, once any seal or open in
+     * progress has finished. Afterwards, seal and open throw
+     * IllegalStateException. Closing more than once has no effect.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Stodium.munlock(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *
+     */
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("SessionTickets: closed");
+        }
+    }
+}
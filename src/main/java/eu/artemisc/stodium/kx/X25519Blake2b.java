@@ -6,6 +6,7 @@ import java.nio.ByteBuffer;
 
 import eu.artemisc.stodium.Stodium;
 import eu.artemisc.stodium.StodiumJNI;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
@@ -96,4 +97,36 @@ public final class X25519Blake2b
                 Stodium.ensureUsableByteBuffer(serverSk),
                 Stodium.ensureUsableByteBuffer(clientPk)));
     }
+
+    @Override
+    public int serverSessionKeysAll(final @NotNull ByteBuffer rx,
+                                    final @NotNull ByteBuffer tx,
+                                    final @NotNull ByteBuffer serverPk,
+                                    final @NotNull ByteBuffer serverSk,
+                                    final @NotNull ByteBuffer clientPks)
+            throws StodiumException {
+        final int count;
+
+        Stodium.checkDestinationWritable(rx);
+        Stodium.checkDestinationWritable(tx);
+
+        if (clientPks.remaining() % PUBLICKEYBYTES != 0) {
+            throw new ConstraintViolationException("Kx: clientPks must hold whole public keys");
+        }
+        count = clientPks.remaining() / PUBLICKEYBYTES;
+
+        Stodium.checkSizeMin(rx.remaining(), count * SESSIONKEYBYTES);
+        Stodium.checkSizeMin(tx.remaining(), count * SESSIONKEYBYTES);
+        Stodium.checkSizeMin(serverPk.remaining(), PUBLICKEYBYTES);
+        Stodium.checkSize(serverSk.remaining(), SECRETKEYBYTES);
+
+        // slice, as the native code uses the capacity of direct buffers
+        return StodiumJNI.stodium_kx_server_session_keys_batch(
+                Stodium.ensureUsableByteBuffer(rx.slice()),
+                Stodium.ensureUsableByteBuffer(tx.slice()),
+                Stodium.ensureUsableByteBuffer(serverPk.slice()),
+                Stodium.ensureUsableByteBuffer(serverSk.slice()),
+                Stodium.ensureUsableByteBuffer(clientPks.slice()),
+                count);
+    }
 }
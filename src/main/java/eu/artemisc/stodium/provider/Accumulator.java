@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Accumulator collects the input of the SPIs that can only process a message
+ * as a whole (AEAD ciphers, Ed25519), and exposes it as a ByteBuffer over the
+ * internal array without copying it again.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+final class Accumulator
+        extends ByteArrayOutputStream {
+
+    /**
+     * write appends the remaining bytes of src, and advances its position.
+     *
+     * @param src
+     */
+    void write(final @NotNull ByteBuffer src) {
+        final int length = src.remaining();
+        if (buf.length - count < length) {
+            final byte[] old = buf;
+            buf = Arrays.copyOf(old, Math.max(old.length << 1, count + length));
+            Arrays.fill(old, (byte) 0);
+        }
+        src.get(buf, count, length);
+        count += length;
+    }
+
+    /**
+     * @return a buffer over the accumulated bytes, at position 0
+     */
+    @NotNull
+    ByteBuffer buffer() {
+        return ByteBuffer.wrap(buf, 0, count).slice();
+    }
+
+    /**
+     * wipe zeroes the accumulated bytes and empties the accumulator.
+     */
+    void wipe() {
+        Arrays.fill(buf, 0, count, (byte) 0);
+        reset();
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+
+/**
+ * Keys converts between the raw 32-byte Ed25519 and X25519 keys used by
+ * libsodium and the X.509 / PKCS#8 encodings defined in RFC 8410, which are
+ * the encodings expected by the JCA and used by other providers.
+ * <p>
+ * Private keys are represented by their 32-byte seed (Ed25519) or scalar
+ * (X25519), not by the 64-byte libsodium secret key.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class Keys {
+
+    /**
+     *
+     */
+    public static final String ED25519 = "Ed25519";
+
+    /**
+     *
+     */
+    public static final String X25519 = "X25519";
+
+    /**
+     * RAW_BYTES is the length of every raw public key, seed and scalar.
+     */
+    public static final int RAW_BYTES = 32;
+
+    // DER prefixes from RFC 8410, followed by the 32 raw key bytes
+    private static final byte[] ED25519_X509 = {
+            0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00
+    };
+    private static final byte[] ED25519_PKCS8 = {
+            0x30, 0x2e, 0x02, 0x01, 0x00, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70,
+            0x04, 0x22, 0x04, 0x20
+    };
+    private static final byte[] X25519_X509 = {
+            0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x03, 0x21, 0x00
+    };
+    private static final byte[] X25519_PKCS8 = {
+            0x30, 0x2e, 0x02, 0x01, 0x00, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e,
+            0x04, 0x22, 0x04, 0x20
+    };
+
+    private Keys() {
+    }
+
+    /**
+     *
+     * @param raw the 32-byte public key
+     * @return
+     * @throws InvalidKeyException
+     */
+    @NotNull
+    public static PublicKey ed25519PublicKey(final @NotNull byte[] raw)
+            throws InvalidKeyException {
+        return new EncodedPublicKey(ED25519, encode(ED25519_X509, raw));
+    }
+
+    /**
+     *
+     * @param seed the 32-byte seed the key pair is derived from
+     * @return
+     * @throws InvalidKeyException
+     */
+    @NotNull
+    public static PrivateKey ed25519PrivateKey(final @NotNull byte[] seed)
+            throws InvalidKeyException {
+        return new EncodedPrivateKey(ED25519, encode(ED25519_PKCS8, seed));
+    }
+
+    /**
+     *
+     * @param raw the 32-byte public key
+     * @return
+     * @throws InvalidKeyException
+     */
+    @NotNull
+    public static PublicKey x25519PublicKey(final @NotNull byte[] raw)
+            throws InvalidKeyException {
+        return new EncodedPublicKey(X25519, encode(X25519_X509, raw));
+    }
+
+    /**
+     *
+     * @param scalar the 32-byte private scalar
+     * @return
+     * @throws InvalidKeyException
+     */
+    @NotNull
+    public static PrivateKey x25519PrivateKey(final @NotNull byte[] scalar)
+            throws InvalidKeyException {
+        return new EncodedPrivateKey(X25519, encode(X25519_PKCS8, scalar));
+    }
+
+    /**
+     * rawPublic returns the 32 raw bytes of an Ed25519 or X25519 public key,
+     * given in X.509 or RAW format.
+     *
+     * @param key
+     * @param algorithm either {@link #ED25519} or {@link #X25519}
+     * @return
+     * @throws InvalidKeyException
+     */
+    @NotNull
+    public static byte[] rawPublic(final @NotNull Key    key,
+                                   final @NotNull String algorithm)
+            throws InvalidKeyException {
+        return decode(key, "X.509",
+                ED25519.equals(algorithm) ? ED25519_X509 : X25519_X509);
+    }
+
+    /**
+     * rawPrivate returns the 32-byte seed or scalar of an Ed25519 or X25519
+     * private key, given in PKCS#8 or RAW format. A RAW Ed25519 key may also
+     * be the 64-byte libsodium secret key, of which the seed is the first
+     * half.
+     *
+     * @param key
+     * @param algorithm either {@link #ED25519} or {@link #X25519}
+     * @return
+     * @throws InvalidKeyException
+     */
+    @NotNull
+    public static byte[] rawPrivate(final @NotNull Key    key,
+                                    final @NotNull String algorithm)
+            throws InvalidKeyException {
+        return decode(key, "PKCS#8",
+                ED25519.equals(algorithm) ? ED25519_PKCS8 : X25519_PKCS8);
+    }
+
+    @NotNull
+    static byte[] encode(final @NotNull byte[] prefix,
+                         final @NotNull byte[] raw)
+            throws InvalidKeyException {
+        final byte[] encoded;
+
+        if (raw.length != RAW_BYTES) {
+            throw new InvalidKeyException("Keys: expected " + RAW_BYTES + " bytes, got " + raw.length);
+        }
+        encoded = Arrays.copyOf(prefix, prefix.length + RAW_BYTES);
+        System.arraycopy(raw, 0, encoded, prefix.length, RAW_BYTES);
+        return encoded;
+    }
+
+    @NotNull
+    private static byte[] decode(final @NotNull Key    key,
+                                 final @NotNull String format,
+                                 final @NotNull byte[] prefix)
+            throws InvalidKeyException {
+        final byte[] encoded = key.getEncoded();
+
+        if (encoded == null) {
+            throw new InvalidKeyException("Keys: key does not support encoding");
+        }
+        if ("RAW".equalsIgnoreCase(key.getFormat())
+                && (encoded.length == RAW_BYTES || encoded.length == 2 * RAW_BYTES)) {
+            return Arrays.copyOf(encoded, RAW_BYTES);
+        }
+        if (!format.equalsIgnoreCase(key.getFormat())) {
+            throw new InvalidKeyException("Keys: unsupported key format " + key.getFormat());
+        }
+        return decode(encoded, prefix);
+    }
+
+    @NotNull
+    static byte[] decode(final @NotNull byte[] encoded,
+                         final @NotNull byte[] prefix)
+            throws InvalidKeyException {
+        if (encoded.length != prefix.length + RAW_BYTES) {
+            throw new InvalidKeyException("Keys: unsupported key encoding");
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (encoded[i] != prefix[i]) {
+                throw new InvalidKeyException("Keys: unsupported key encoding");
+            }
+        }
+        return Arrays.copyOfRange(encoded, prefix.length, encoded.length);
+    }
+
+    @NotNull
+    static byte[] x509Prefix(final @NotNull String algorithm) {
+        return ED25519.equals(algorithm) ? ED25519_X509 : X25519_X509;
+    }
+
+    @NotNull
+    static byte[] pkcs8Prefix(final @NotNull String algorithm) {
+        return ED25519.equals(algorithm) ? ED25519_PKCS8 : X25519_PKCS8;
+    }
+
+    /**
+     * EncodedKey holds the DER encoding of a key.
+     */
+    private static abstract class EncodedKey
+            implements Key {
+        private static final long serialVersionUID = 1L;
+
+        private final @NotNull String algorithm;
+        private final @NotNull String format;
+        private final @NotNull byte[] encoded;
+
+        EncodedKey(final @NotNull String algorithm,
+                   final @NotNull String format,
+                   final @NotNull byte[] encoded) {
+            this.algorithm = algorithm;
+            this.format    = format;
+            this.encoded   = encoded;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return format;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return encoded.clone();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Key
+                    && format.equals(((Key) other).getFormat())
+                    && Arrays.equals(encoded, ((Key) other).getEncoded());
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(encoded);
+        }
+    }
+
+    private static final class EncodedPublicKey
+            extends EncodedKey
+            implements PublicKey {
+        private static final long serialVersionUID = 1L;
+
+        EncodedPublicKey(final @NotNull String algorithm,
+                         final @NotNull byte[] encoded) {
+            super(algorithm, "X.509", encoded);
+        }
+    }
+
+    private static final class EncodedPrivateKey
+            extends EncodedKey
+            implements PrivateKey {
+        private static final long serialVersionUID = 1L;
+
+        EncodedPrivateKey(final @NotNull String algorithm,
+                          final @NotNull byte[] encoded) {
+            super(algorithm, "PKCS#8", encoded);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.aead.AEAD;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * StodiumCipher implements {@link Cipher} for the AEAD constructions. AEAD
+ * messages are processed as a whole, so update only buffers the input and the
+ * work happens in doFinal. The {@code doFinal(ByteBuffer, ByteBuffer)} path
+ * hands the buffers to the native code directly when nothing was buffered.
+ * <p>
+ * The nonce is passed as an {@link IvParameterSpec} (or a GCMParameterSpec
+ * with a 128-bit tag for AES-GCM). When encrypting without parameters, a
+ * random nonce is generated, which is available through {@link Cipher#getIV()}.
+ * As with the JDK providers, a cipher must be initialized again with a fresh
+ * nonce after every encryption.
+ * <p>
+ * A failed authentication is reported as a {@link BadPaddingException}, as
+ * AEADBadTagException is not available before Android API 19.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class StodiumCipher
+        extends CipherSpi {
+
+    /**
+     *
+     */
+    private final @NotNull AEAD aead;
+
+    /**
+     *
+     */
+    private final @NotNull String mode;
+
+    /**
+     *
+     */
+    private final @NotNull Accumulator aad;
+
+    /**
+     *
+     */
+    private final @NotNull Accumulator data;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer key;
+
+    /**
+     *
+     */
+    private @Nullable byte[] nonce;
+
+    /**
+     *
+     */
+    private int opmode;
+
+    /**
+     * spent is set once a message has been encrypted under the current nonce.
+     */
+    private boolean spent;
+
+    /**
+     * encryptKey and encryptNonce hold the key and nonce of the last
+     * initialization for encryption, so that the pair cannot be used to
+     * encrypt again. Decryption does not replace them.
+     */
+    private final @NotNull ByteBuffer encryptKey;
+
+    /**
+     *
+     */
+    private @Nullable byte[] encryptNonce;
+
+    /**
+     *
+     * @param aead
+     * @param mode the only mode name accepted by {@link #engineSetMode(String)}
+     */
+    StodiumCipher(final @NotNull AEAD   aead,
+                  final @NotNull String mode) {
+        this.aead = aead;
+        this.mode = mode;
+        this.aad  = new Accumulator();
+        this.data = new Accumulator();
+        this.key  = ByteBuffer.allocateDirect(aead.keyBytes());
+        this.encryptKey = ByteBuffer.allocateDirect(aead.keyBytes());
+    }
+
+    @Override
+    protected void engineSetMode(final @NotNull String mode)
+            throws NoSuchAlgorithmException {
+        if (!this.mode.equalsIgnoreCase(mode)) {
+            throw new NoSuchAlgorithmException("StodiumCipher: unsupported mode " + mode);
+        }
+    }
+
+    @Override
+    protected void engineSetPadding(final @NotNull String padding)
+            throws NoSuchPaddingException {
+        if (!"NoPadding".equalsIgnoreCase(padding)) {
+            throw new NoSuchPaddingException("StodiumCipher: unsupported padding " + padding);
+        }
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+        return 0;
+    }
+
+    @Override
+    protected int engineGetOutputSize(final int inputLen) {
+        final int total = data.size() + inputLen;
+        if (opmode == Cipher.ENCRYPT_MODE) {
+            return total + aead.aBytes();
+        }
+        return Math.max(0, total - aead.aBytes());
+    }
+
+    @Nullable
+    @Override
+    protected byte[] engineGetIV() {
+        return nonce == null ? null : nonce.clone();
+    }
+
+    @Nullable
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        return null;
+    }
+
+    @Override
+    protected void engineInit(final          int          opmode,
+                              final @NotNull Key          key,
+                              final @Nullable SecureRandom random)
+            throws InvalidKeyException {
+        if (opmode != Cipher.ENCRYPT_MODE) {
+            throw new InvalidKeyException("StodiumCipher: decryption requires a nonce");
+        }
+        final byte[] fresh = new byte[aead.npubBytes()];
+        RandomBytes.nextBytes(ByteBuffer.wrap(fresh));
+        try {
+            init(opmode, key, fresh);
+        } catch (final InvalidAlgorithmParameterException e) {
+            // a fresh random nonce repeats the previous one with negligible probability
+            throw new ProviderException(e);
+        }
+    }
+
+    @Override
+    protected void engineInit(final           int                    opmode,
+                              final @NotNull  Key                    key,
+                              final @Nullable AlgorithmParameterSpec params,
+                              final @Nullable SecureRandom           random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (params == null) {
+            engineInit(opmode, key, random);
+            return;
+        }
+        init(opmode, key, nonceOf(params));
+    }
+
+    @Override
+    protected void engineInit(final           int                 opmode,
+                              final @NotNull  Key                 key,
+                              final @Nullable AlgorithmParameters params,
+                              final @Nullable SecureRandom        random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (params == null) {
+            engineInit(opmode, key, random);
+            return;
+        }
+        try {
+            init(opmode, key, params.getParameterSpec(IvParameterSpec.class).getIV());
+        } catch (final InvalidParameterSpecException e) {
+            throw new InvalidAlgorithmParameterException(e);
+        }
+    }
+
+    @Override
+    protected void engineUpdateAAD(final @NotNull byte[] src,
+                                   final          int    offset,
+                                   final          int    len) {
+        checkState();
+        if (data.size() > 0) {
+            throw new IllegalStateException("StodiumCipher: AAD must be supplied before the data");
+        }
+        aad.write(src, offset, len);
+    }
+
+    @Override
+    protected void engineUpdateAAD(final @NotNull ByteBuffer src) {
+        checkState();
+        if (data.size() > 0) {
+            throw new IllegalStateException("StodiumCipher: AAD must be supplied before the data");
+        }
+        aad.write(src);
+    }
+
+    @NotNull
+    @Override
+    protected byte[] engineUpdate(final @NotNull byte[] input,
+                                  final          int    offset,
+                                  final          int    len) {
+        checkState();
+        data.write(input, offset, len);
+        return new byte[0];
+    }
+
+    @Override
+    protected int engineUpdate(final @NotNull byte[] input,
+                               final          int    offset,
+                               final          int    len,
+                               final @NotNull byte[] output,
+                               final          int    outputOffset) {
+        checkState();
+        data.write(input, offset, len);
+        return 0;
+    }
+
+    @Override
+    protected int engineUpdate(final @NotNull ByteBuffer input,
+                               final @NotNull ByteBuffer output) {
+        checkState();
+        data.write(input);
+        return 0;
+    }
+
+    @NotNull
+    @Override
+    protected byte[] engineDoFinal(final @Nullable byte[] input,
+                                   final           int    offset,
+                                   final           int    len)
+            throws IllegalBlockSizeException, BadPaddingException {
+        final byte[] output;
+
+        checkState();
+        if (input != null) {
+            data.write(input, offset, len);
+        }
+        output = new byte[engineGetOutputSize(0)];
+        run(ByteBuffer.wrap(output), data.buffer());
+        return output;
+    }
+
+    @Override
+    protected int engineDoFinal(final @Nullable byte[] input,
+                                final           int    offset,
+                                final           int    len,
+                                final @NotNull  byte[] output,
+                                final           int    outputOffset)
+            throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        final int size;
+
+        checkState();
+        size = engineGetOutputSize(input == null ? 0 : len);
+        if (output.length - outputOffset < size) {
+            throw new ShortBufferException("StodiumCipher: output buffer too small");
+        }
+        if (input != null) {
+            data.write(input, offset, len);
+        }
+        return run(ByteBuffer.wrap(output, outputOffset, size).slice(), data.buffer());
+    }
+
+    @Override
+    protected int engineDoFinal(final @NotNull ByteBuffer input,
+                                final @NotNull ByteBuffer output)
+            throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        final ByteBuffer dst, src;
+        final int        size, written;
+
+        checkState();
+        size = engineGetOutputSize(input.remaining());
+        if (output.remaining() < size) {
+            throw new ShortBufferException("StodiumCipher: output buffer too small");
+        }
+
+        if (data.size() > 0) {
+            data.write(input);
+            src = data.buffer();
+        } else {
+            src = input.slice();
+            input.position(input.limit());
+        }
+
+        dst = output.duplicate();
+        dst.limit(dst.position() + size);
+        written = run(dst.slice(), src);
+        output.position(output.position() + written);
+        return written;
+    }
+
+    /**
+     * run encrypts or decrypts src into dst, which must be exactly the size
+     * of the output, and clears the buffered AAD and data.
+     */
+    private int run(final @NotNull ByteBuffer dst,
+                    final @NotNull ByteBuffer src)
+            throws BadPaddingException {
+        final ByteBuffer ad, npub;
+
+        ad   = aad.buffer();
+        npub = ByteBuffer.wrap(nonce);
+        try {
+            if (opmode == Cipher.ENCRYPT_MODE) {
+                spent = true;
+                aead.encrypt(dst, src, ad, npub, key);
+                return dst.remaining();
+            }
+            if (src.remaining() < aead.aBytes()
+                    || !aead.decrypt(dst, src, ad, npub, key)) {
+                Stodium.wipeBytes(dst.duplicate());
+                throw new BadPaddingException("StodiumCipher: message authentication failed");
+            }
+            return dst.remaining();
+        } catch (final StodiumException e) {
+            throw new ProviderException(e);
+        } finally {
+            aad.wipe();
+            data.wipe();
+        }
+    }
+
+    private void init(final          int    opmode,
+                      final @NotNull Key    key,
+                      final @NotNull byte[] nonce)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final byte[] encoded;
+
+        if (opmode != Cipher.ENCRYPT_MODE && opmode != Cipher.DECRYPT_MODE) {
+            throw new InvalidParameterException("StodiumCipher: only ENCRYPT_MODE and DECRYPT_MODE are supported");
+        }
+        encoded = key.getEncoded();
+        if (encoded == null || encoded.length != aead.keyBytes()) {
+            throw new InvalidKeyException("StodiumCipher: expected a " + aead.keyBytes() + " byte key");
+        }
+        if (nonce.length != aead.npubBytes()) {
+            throw new InvalidKeyException("StodiumCipher: expected a " + aead.npubBytes() + " byte nonce");
+        }
+        if (opmode == Cipher.ENCRYPT_MODE) {
+            if (encryptNonce != null
+                    && Stodium.isEqual(nonce, encryptNonce)
+                    && Stodium.isEqual(ByteBuffer.wrap(encoded), encryptKey)) {
+                Arrays.fill(encoded, (byte) 0);
+                throw new InvalidAlgorithmParameterException("StodiumCipher: cannot reuse a nonce for encryption under the same key");
+            }
+            encryptKey.clear();
+            encryptKey.put(encoded).flip();
+            encryptNonce = nonce.clone();
+        }
+
+        this.key.clear();
+        this.key.put(encoded).flip();
+        Arrays.fill(encoded, (byte) 0);
+
+        this.opmode = opmode;
+        this.nonce  = nonce.clone();
+        this.spent  = false;
+        aad.wipe();
+        data.wipe();
+    }
+
+    private void checkState() {
+        if (nonce == null) {
+            throw new IllegalStateException("StodiumCipher: not initialized");
+        }
+        if (spent) {
+            throw new IllegalStateException("StodiumCipher: must be initialized with a new nonce before encrypting again");
+        }
+    }
+
+    /**
+     * nonceOf extracts the nonce from an IvParameterSpec, or from a
+     * GCMParameterSpec (Android API 19+) through reflection, so that the
+     * class still loads on older releases.
+     */
+    @NotNull
+    private byte[] nonceOf(final @NotNull AlgorithmParameterSpec params)
+            throws InvalidAlgorithmParameterException {
+        if (params instanceof IvParameterSpec) {
+            return ((IvParameterSpec) params).getIV();
+        }
+        if ("javax.crypto.spec.GCMParameterSpec".equals(params.getClass().getName())) {
+            try {
+                final Method tLen = params.getClass().getMethod("getTLen");
+                final Method iv   = params.getClass().getMethod("getIV");
+                if ((Integer) tLen.invoke(params) != 8 * aead.aBytes()) {
+                    throw new InvalidAlgorithmParameterException("StodiumCipher: only " + (8 * aead.aBytes()) + " bit tags are supported");
+                }
+                return (byte[]) iv.invoke(params);
+            } catch (final NoSuchMethodException e) {
+                throw new InvalidAlgorithmParameterException(e);
+            } catch (final IllegalAccessException e) {
+                throw new InvalidAlgorithmParameterException(e);
+            } catch (final InvocationTargetException e) {
+                throw new InvalidAlgorithmParameterException(e);
+            }
+        }
+        throw new InvalidAlgorithmParameterException("StodiumCipher: unsupported parameters " + params.getClass().getName());
+    }
+
+    /**
+     * ChaCha20-Poly1305 as specified in RFC 7539, with a 96-bit nonce.
+     */
+    public static final class Chacha20Poly1305
+            extends StodiumCipher {
+        public Chacha20Poly1305() {
+            super(AEAD.chachaIetfInstance(), "NONE");
+        }
+    }
+
+    /**
+     * XChaCha20-Poly1305, with a 192-bit nonce.
+     */
+    public static final class XChacha20Poly1305
+            extends StodiumCipher {
+        public XChacha20Poly1305() {
+            super(AEAD.xchachaIetfInstance(), "NONE");
+        }
+    }
+
+    /**
+     * AES-256-GCM. Only registered when the hardware supports it.
+     */
+    public static final class Aes256Gcm
+            extends StodiumCipher {
+        public Aes256Gcm() {
+            super(aes(), "GCM");
+        }
+
+        @NotNull
+        private static AEAD aes() {
+            final AEAD aes = AEAD.aesInstance();
+            if (aes == null) {
+                throw new ProviderException("StodiumCipher: AES-GCM is not supported on this hardware");
+            }
+            return aes;
+        }
+    }
+}
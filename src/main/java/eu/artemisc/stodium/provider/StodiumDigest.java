@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigestSpi;
+import java.security.ProviderException;
+
+import eu.artemisc.stodium.Multipart;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.generichash.GenericHash;
+import eu.artemisc.stodium.hash.Hash;
+
+/**
+ * StodiumDigest implements {@link java.security.MessageDigest} on top of a
+ * {@link Multipart} hash. Resetting restores the state snapshot taken by the
+ * Multipart, and cloning duplicates the native state.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class StodiumDigest
+        extends MessageDigestSpi
+        implements Cloneable {
+
+    /**
+     *
+     */
+    private @NotNull Multipart<Hash> multipart;
+
+    /**
+     *
+     */
+    private @NotNull byte[] single;
+
+    /**
+     *
+     */
+    private final int bytes;
+
+    /**
+     *
+     * @param multipart
+     * @param bytes
+     */
+    StodiumDigest(final @NotNull Multipart<Hash> multipart,
+                  final          int             bytes) {
+        this.multipart = multipart;
+        this.single    = new byte[1];
+        this.bytes     = bytes;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return bytes;
+    }
+
+    @Override
+    protected void engineUpdate(final byte input) {
+        single[0] = input;
+        update(ByteBuffer.wrap(single));
+    }
+
+    @Override
+    protected void engineUpdate(final @NotNull byte[] input,
+                                final          int    offset,
+                                final          int    len) {
+        update(ByteBuffer.wrap(input, offset, len).slice());
+    }
+
+    @Override
+    protected void engineUpdate(final @NotNull ByteBuffer input) {
+        if (!input.hasRemaining()) {
+            return;
+        }
+        update(input.slice());
+        input.position(input.limit());
+    }
+
+    @NotNull
+    @Override
+    protected byte[] engineDigest() {
+        final byte[] out = new byte[bytes];
+        doFinal(ByteBuffer.wrap(out));
+        return out;
+    }
+
+    @Override
+    protected int engineDigest(final @NotNull byte[] buf,
+                               final          int    offset,
+                               final          int    len)
+            throws DigestException {
+        if (len < bytes) {
+            throw new DigestException("StodiumDigest: output buffer too small");
+        }
+        doFinal(ByteBuffer.wrap(buf, offset, bytes).slice());
+        return bytes;
+    }
+
+    @Override
+    protected void engineReset() {
+        multipart.reset();
+    }
+
+    @Override
+    public Object clone()
+            throws CloneNotSupportedException {
+        final StodiumDigest copy = (StodiumDigest) super.clone();
+        copy.multipart = multipart.duplicate();
+        copy.single    = new byte[1];
+        return copy;
+    }
+
+    private void update(final @NotNull ByteBuffer src) {
+        try {
+            multipart.update(src);
+        } catch (final StodiumException e) {
+            throw new ProviderException(e);
+        }
+    }
+
+    private void doFinal(final @NotNull ByteBuffer dst) {
+        try {
+            multipart.doFinal(dst);
+        } catch (final StodiumException e) {
+            throw new ProviderException(e);
+        } finally {
+            multipart.reset();
+        }
+    }
+
+    @NotNull
+    static Multipart<Hash> init(final @NotNull Hash hash) {
+        try {
+            return hash.init();
+        } catch (final StodiumException e) {
+            throw new ProviderException(e);
+        }
+    }
+
+    @NotNull
+    static Multipart<Hash> initBlake2b(final int outlen) {
+        try {
+            return GenericHash.blake2bInstance().init(null, outlen);
+        } catch (final StodiumException e) {
+            throw new ProviderException(e);
+        }
+    }
+
+    /**
+     * SHA-256
+     */
+    public static final class Sha256
+            extends StodiumDigest {
+        public Sha256() {
+            super(init(Hash.sha256Instance()), Hash.sha256Instance().bytes());
+        }
+    }
+
+    /**
+     * SHA-512
+     */
+    public static final class Sha512
+            extends StodiumDigest {
+        public Sha512() {
+            super(init(Hash.sha512Instance()), Hash.sha512Instance().bytes());
+        }
+    }
+
+    /**
+     * BLAKE2b with a 256-bit output.
+     */
+    public static final class Blake2b256
+            extends StodiumDigest {
+        public Blake2b256() {
+            super(initBlake2b(32), 32);
+        }
+    }
+
+    /**
+     * BLAKE2b with a 512-bit output.
+     */
+    public static final class Blake2b512
+            extends StodiumDigest {
+        public Blake2b512() {
+            super(initBlake2b(64), 64);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.KeyAgreementSpi;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.scalarmult.ScalarMult;
+
+/**
+ * StodiumKeyAgreement implements {@link javax.crypto.KeyAgreement} for X25519
+ * (RFC 7748). The agreement consists of a single phase. Shared secrets
+ * resulting from a low-order public key are rejected.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class StodiumKeyAgreement
+        extends KeyAgreementSpi {
+
+    /**
+     *
+     */
+    private final @NotNull ScalarMult scalarMult;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer scalar;
+
+    /**
+     *
+     */
+    private @Nullable byte[] secret;
+
+    /**
+     *
+     */
+    private boolean initialized;
+
+    public StodiumKeyAgreement() {
+        this.scalarMult = ScalarMult.curve25519Instance();
+        this.scalar     = ByteBuffer.allocateDirect(scalarMult.scalarBytes());
+    }
+
+    @Override
+    protected void engineInit(final @NotNull  Key          key,
+                              final @Nullable SecureRandom random)
+            throws InvalidKeyException {
+        final byte[] raw = Keys.rawPrivate(key, Keys.X25519);
+
+        scalar.clear();
+        scalar.put(raw).flip();
+        Arrays.fill(raw, (byte) 0);
+
+        clearSecret();
+        initialized = true;
+    }
+
+    @Override
+    protected void engineInit(final @NotNull  Key                    key,
+                              final @Nullable AlgorithmParameterSpec params,
+                              final @Nullable SecureRandom           random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (params != null) {
+            throw new InvalidAlgorithmParameterException("StodiumKeyAgreement: X25519 takes no parameters");
+        }
+        engineInit(key, random);
+    }
+
+    @Nullable
+    @Override
+    protected Key engineDoPhase(final @NotNull Key     key,
+                                final          boolean lastPhase)
+            throws InvalidKeyException {
+        final ByteBuffer dst;
+        final byte[]     out;
+
+        if (!initialized) {
+            throw new IllegalStateException("StodiumKeyAgreement: not initialized");
+        }
+        if (!lastPhase) {
+            throw new IllegalStateException("StodiumKeyAgreement: X25519 has a single phase");
+        }
+
+        out = new byte[scalarMult.bytes()];
+        dst = ByteBuffer.wrap(out);
+        try {
+            scalarMult.scalarMult(dst, scalar.duplicate(),
+                    ByteBuffer.wrap(Keys.rawPublic(key, Keys.X25519)));
+        } catch (final StodiumException e) {
+            throw new InvalidKeyException("StodiumKeyAgreement: invalid public key", e);
+        }
+
+        clearSecret();
+        secret = out;
+        return null;
+    }
+
+    @NotNull
+    @Override
+    protected byte[] engineGenerateSecret() {
+        final byte[] out = secret();
+        secret = null;
+        return out;
+    }
+
+    @Override
+    protected int engineGenerateSecret(final @NotNull byte[] sharedSecret,
+                                       final          int    offset)
+            throws ShortBufferException {
+        final byte[] out = secret();
+
+        if (sharedSecret.length - offset < out.length) {
+            throw new ShortBufferException("StodiumKeyAgreement: output buffer too small");
+        }
+        System.arraycopy(out, 0, sharedSecret, offset, out.length);
+        Arrays.fill(out, (byte) 0);
+        secret = null;
+        return out.length;
+    }
+
+    @NotNull
+    @Override
+    protected SecretKey engineGenerateSecret(final @NotNull String algorithm)
+            throws NoSuchAlgorithmException {
+        final byte[] out = secret();
+        try {
+            return new SecretKeySpec(out, algorithm);
+        } finally {
+            Arrays.fill(out, (byte) 0);
+            secret = null;
+        }
+    }
+
+    @NotNull
+    private byte[] secret() {
+        if (secret == null) {
+            throw new IllegalStateException("StodiumKeyAgreement: doPhase has not been called");
+        }
+        return secret;
+    }
+
+    private void clearSecret() {
+        if (secret != null) {
+            Arrays.fill(secret, (byte) 0);
+            secret = null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactorySpi;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * StodiumKeyFactory converts Ed25519 and X25519 keys from and to their
+ * X.509 / PKCS#8 encoded key specs.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class StodiumKeyFactory
+        extends KeyFactorySpi {
+
+    /**
+     *
+     */
+    private final @NotNull String algorithm;
+
+    StodiumKeyFactory(final @NotNull String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    @NotNull
+    @Override
+    protected PublicKey engineGeneratePublic(final @NotNull KeySpec keySpec)
+            throws InvalidKeySpecException {
+        if (!(keySpec instanceof X509EncodedKeySpec)) {
+            throw new InvalidKeySpecException("StodiumKeyFactory: expected an X509EncodedKeySpec");
+        }
+        try {
+            return publicKey(Keys.decode(((X509EncodedKeySpec) keySpec).getEncoded(),
+                    Keys.x509Prefix(algorithm)));
+        } catch (final InvalidKeyException e) {
+            throw new InvalidKeySpecException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    protected PrivateKey engineGeneratePrivate(final @NotNull KeySpec keySpec)
+            throws InvalidKeySpecException {
+        if (!(keySpec instanceof PKCS8EncodedKeySpec)) {
+            throw new InvalidKeySpecException("StodiumKeyFactory: expected a PKCS8EncodedKeySpec");
+        }
+        try {
+            return privateKey(Keys.decode(((PKCS8EncodedKeySpec) keySpec).getEncoded(),
+                    Keys.pkcs8Prefix(algorithm)));
+        } catch (final InvalidKeyException e) {
+            throw new InvalidKeySpecException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    protected <T extends KeySpec> T engineGetKeySpec(final @NotNull Key      key,
+                                                     final @NotNull Class<T> keySpec)
+            throws InvalidKeySpecException {
+        try {
+            if (keySpec.isAssignableFrom(X509EncodedKeySpec.class) && key instanceof PublicKey) {
+                return keySpec.cast(new X509EncodedKeySpec(
+                        Keys.encode(Keys.x509Prefix(algorithm), Keys.rawPublic(key, algorithm))));
+            }
+            if (keySpec.isAssignableFrom(PKCS8EncodedKeySpec.class) && key instanceof PrivateKey) {
+                return keySpec.cast(new PKCS8EncodedKeySpec(
+                        Keys.encode(Keys.pkcs8Prefix(algorithm), Keys.rawPrivate(key, algorithm))));
+            }
+        } catch (final InvalidKeyException e) {
+            throw new InvalidKeySpecException(e);
+        }
+        throw new InvalidKeySpecException("StodiumKeyFactory: unsupported key spec " + keySpec.getName());
+    }
+
+    @NotNull
+    @Override
+    protected Key engineTranslateKey(final @NotNull Key key)
+            throws InvalidKeyException {
+        if (key instanceof PublicKey) {
+            return publicKey(Keys.rawPublic(key, algorithm));
+        }
+        if (key instanceof PrivateKey) {
+            return privateKey(Keys.rawPrivate(key, algorithm));
+        }
+        throw new InvalidKeyException("StodiumKeyFactory: unsupported key type");
+    }
+
+    @NotNull
+    private PublicKey publicKey(final @NotNull byte[] raw)
+            throws InvalidKeyException {
+        return Keys.ED25519.equals(algorithm)
+                ? Keys.ed25519PublicKey(raw)
+                : Keys.x25519PublicKey(raw);
+    }
+
+    @NotNull
+    private PrivateKey privateKey(final @NotNull byte[] raw)
+            throws InvalidKeyException {
+        return Keys.ED25519.equals(algorithm)
+                ? Keys.ed25519PrivateKey(raw)
+                : Keys.x25519PrivateKey(raw);
+    }
+
+    /**
+     * Ed25519 keys.
+     */
+    public static final class Ed25519
+            extends StodiumKeyFactory {
+        public Ed25519() {
+            super(Keys.ED25519);
+        }
+    }
+
+    /**
+     * X25519 keys.
+     */
+    public static final class X25519
+            extends StodiumKeyFactory {
+        public X25519() {
+            super(Keys.X25519);
+        }
+    }
+}
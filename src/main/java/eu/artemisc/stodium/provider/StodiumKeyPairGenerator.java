@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGeneratorSpi;
+import java.security.ProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+import eu.artemisc.stodium.scalarmult.ScalarMult;
+import eu.artemisc.stodium.sign.Sign;
+
+/**
+ * StodiumKeyPairGenerator generates Ed25519 and X25519 key pairs, encoded as
+ * described in {@link Keys}. Randomness always comes from libsodium, any
+ * SecureRandom passed to initialize is ignored.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class StodiumKeyPairGenerator
+        extends KeyPairGeneratorSpi {
+
+    StodiumKeyPairGenerator() {
+    }
+
+    @Override
+    public void initialize(final          int          keysize,
+                           final @Nullable SecureRandom random) {
+        if (keysize != 255 && keysize != 256) {
+            throw new InvalidParameterException("StodiumKeyPairGenerator: unsupported key size " + keysize);
+        }
+    }
+
+    @Override
+    public void initialize(final @Nullable AlgorithmParameterSpec params,
+                           final @Nullable SecureRandom           random)
+            throws InvalidAlgorithmParameterException {
+        if (params != null) {
+            throw new InvalidAlgorithmParameterException("StodiumKeyPairGenerator: no parameters supported");
+        }
+    }
+
+    @NotNull
+    @Override
+    public KeyPair generateKeyPair() {
+        final byte[] priv = new byte[Keys.RAW_BYTES];
+        final byte[] pub  = new byte[Keys.RAW_BYTES];
+
+        RandomBytes.nextBytes(ByteBuffer.wrap(priv));
+        try {
+            derivePublic(ByteBuffer.wrap(pub), ByteBuffer.wrap(priv));
+            return encode(pub, priv);
+        } catch (final StodiumException e) {
+            throw new ProviderException(e);
+        } catch (final InvalidKeyException e) {
+            throw new ProviderException(e);
+        } finally {
+            Arrays.fill(priv, (byte) 0);
+        }
+    }
+
+    abstract void derivePublic(final @NotNull ByteBuffer dstPub,
+                               final @NotNull ByteBuffer priv)
+            throws StodiumException;
+
+    @NotNull
+    abstract KeyPair encode(final @NotNull byte[] pub,
+                            final @NotNull byte[] priv)
+            throws InvalidKeyException;
+
+    /**
+     * Ed25519 key pairs. The private key holds the 32-byte seed.
+     */
+    public static final class Ed25519
+            extends StodiumKeyPairGenerator {
+        @Override
+        void derivePublic(final @NotNull ByteBuffer dstPub,
+                          final @NotNull ByteBuffer priv)
+                throws StodiumException {
+            final Sign       sign   = Sign.ed25519Instance();
+            final ByteBuffer secret = ByteBuffer.allocateDirect(sign.secretKeyBytes());
+            sign.keypair(dstPub, secret, priv);
+            Stodium.wipeBytes(secret);
+        }
+
+        @NotNull
+        @Override
+        KeyPair encode(final @NotNull byte[] pub,
+                       final @NotNull byte[] priv)
+                throws InvalidKeyException {
+            return new KeyPair(Keys.ed25519PublicKey(pub), Keys.ed25519PrivateKey(priv));
+        }
+    }
+
+    /**
+     * X25519 key pairs. The private key holds the 32-byte scalar.
+     */
+    public static final class X25519
+            extends StodiumKeyPairGenerator {
+        @Override
+        void derivePublic(final @NotNull ByteBuffer dstPub,
+                          final @NotNull ByteBuffer priv)
+                throws StodiumException {
+            ScalarMult.curve25519Instance().scalarMultBase(dstPub, priv);
+        }
+
+        @NotNull
+        @Override
+        KeyPair encode(final @NotNull byte[] pub,
+                       final @NotNull byte[] priv)
+                throws InvalidKeyException {
+            return new KeyPair(Keys.x25519PublicKey(pub), Keys.x25519PrivateKey(priv));
+        }
+    }
+}
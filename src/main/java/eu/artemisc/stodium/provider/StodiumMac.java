@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.ProviderException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.MacSpi;
+
+import eu.artemisc.stodium.Multipart;
+import eu.artemisc.stodium.auth.Auth;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * StodiumMac implements {@link javax.crypto.Mac} for the HMAC primitives.
+ * The keyed state is computed once on init, and restored on every reset, so
+ * the key pads are not processed again for every MAC.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class StodiumMac
+        extends MacSpi
+        implements Cloneable {
+
+    /**
+     *
+     */
+    private final @NotNull Auth auth;
+
+    /**
+     *
+     */
+    private @Nullable Multipart<Auth> multipart;
+
+    /**
+     *
+     */
+    private @NotNull byte[] single;
+
+    /**
+     *
+     * @param auth
+     */
+    StodiumMac(final @NotNull Auth auth) {
+        this.auth   = auth;
+        this.single = new byte[1];
+    }
+
+    @Override
+    protected int engineGetMacLength() {
+        return auth.bytes();
+    }
+
+    @Override
+    protected void engineInit(final @Nullable Key                    key,
+                              final @Nullable AlgorithmParameterSpec params)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final byte[] encoded;
+
+        if (params != null) {
+            throw new InvalidAlgorithmParameterException("StodiumMac: HMAC takes no parameters");
+        }
+        if (key == null || (encoded = key.getEncoded()) == null) {
+            throw new InvalidKeyException("StodiumMac: key does not support encoding");
+        }
+
+        if (multipart != null) {
+            multipart.release();
+        }
+        try {
+            multipart = auth.init(ByteBuffer.wrap(encoded));
+        } catch (final StodiumException e) {
+            throw new InvalidKeyException(e);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    @Override
+    protected void engineUpdate(final byte input) {
+        single[0] = input;
+        update(ByteBuffer.wrap(single));
+    }
+
+    @Override
+    protected void engineUpdate(final @NotNull byte[] input,
+                                final          int    offset,
+                                final          int    len) {
+        update(ByteBuffer.wrap(input, offset, len).slice());
+    }
+
+    @Override
+    protected void engineUpdate(final @NotNull ByteBuffer input) {
+        if (!input.hasRemaining()) {
+            return;
+        }
+        update(input.slice());
+        input.position(input.limit());
+    }
+
+    @NotNull
+    @Override
+    protected byte[] engineDoFinal() {
+        final byte[] out = new byte[auth.bytes()];
+        try {
+            initialized().doFinal(ByteBuffer.wrap(out));
+        } catch (final StodiumException e) {
+            throw new ProviderException(e);
+        } finally {
+            initialized().reset();
+        }
+        return out;
+    }
+
+    @Override
+    protected void engineReset() {
+        if (multipart != null) {
+            multipart.reset();
+        }
+    }
+
+    @Override
+    public Object clone()
+            throws CloneNotSupportedException {
+        final StodiumMac copy = (StodiumMac) super.clone();
+        copy.multipart = multipart == null ? null : multipart.duplicate();
+        copy.single    = new byte[1];
+        return copy;
+    }
+
+    private void update(final @NotNull ByteBuffer src) {
+        try {
+            initialized().update(src);
+        } catch (final StodiumException e) {
+            throw new ProviderException(e);
+        }
+    }
+
+    @NotNull
+    private Multipart<Auth> initialized() {
+        if (multipart == null) {
+            throw new IllegalStateException("StodiumMac: not initialized");
+        }
+        return multipart;
+    }
+
+    /**
+     * HmacSHA256
+     */
+    public static final class HmacSha256
+            extends StodiumMac {
+        public HmacSha256() {
+            super(Auth.HmacSha256Instance());
+        }
+    }
+
+    /**
+     * HmacSHA512
+     */
+    public static final class HmacSha512
+            extends StodiumMac {
+        public HmacSha512() {
+            super(Auth.HmacSha512Instance());
+        }
+    }
+}
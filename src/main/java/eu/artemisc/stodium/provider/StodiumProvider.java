@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.security.Provider;
+import java.security.Security;
+
+import eu.artemisc.stodium.aead.AEAD;
+
+/**
+ * StodiumProvider exposes the stodium primitives through the Java
+ * Cryptography Architecture, so code written against {@code java.security}
+ * and {@code javax.crypto} can use them by selecting the provider by name:
+ * <pre>
+ *     MessageDigest.getInstance("SHA-256", StodiumProvider.NAME);
+ * </pre>
+ * <p>
+ * The following algorithms are registered:
+ * <ul>
+ *     <li>MessageDigest: SHA-256, SHA-512, BLAKE2B-256, BLAKE2B-512</li>
+ *     <li>Mac: HmacSHA256, HmacSHA512</li>
+ *     <li>Cipher: ChaCha20-Poly1305, XChaCha20-Poly1305, and AES/GCM/NoPadding
+ *     (256-bit keys only) when the hardware supports it</li>
+ *     <li>Signature: Ed25519, Ed25519ph</li>
+ *     <li>KeyAgreement: X25519</li>
+ *     <li>KeyPairGenerator and KeyFactory: Ed25519, X25519</li>
+ *     <li>SecureRandom: Sodium</li>
+ * </ul>
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class StodiumProvider
+        extends Provider {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * NAME is the name the provider is registered under.
+     */
+    public static final String NAME = "Stodium";
+
+    /**
+     *
+     */
+    private static final double VERSION = 1.0;
+
+    public StodiumProvider() {
+        super(NAME, VERSION, "Stodium provider (libsodium: SHA-2, BLAKE2b, "
+                + "HMAC, ChaCha20-Poly1305, AES-GCM, Ed25519, X25519, randombytes)");
+
+        put("MessageDigest.SHA-256", StodiumDigest.Sha256.class.getName());
+        put("MessageDigest.SHA-512", StodiumDigest.Sha512.class.getName());
+        put("MessageDigest.BLAKE2B-256", StodiumDigest.Blake2b256.class.getName());
+        put("MessageDigest.BLAKE2B-512", StodiumDigest.Blake2b512.class.getName());
+        put("Alg.Alias.MessageDigest.SHA256", "SHA-256");
+        put("Alg.Alias.MessageDigest.SHA512", "SHA-512");
+
+        put("Mac.HmacSHA256", StodiumMac.HmacSha256.class.getName());
+        put("Mac.HmacSHA512", StodiumMac.HmacSha512.class.getName());
+
+        put("Cipher.ChaCha20-Poly1305", StodiumCipher.Chacha20Poly1305.class.getName());
+        put("Cipher.XChaCha20-Poly1305", StodiumCipher.XChacha20Poly1305.class.getName());
+        if (AEAD.aesInstance() != null) {
+            put("Cipher.AES/GCM/NoPadding", StodiumCipher.Aes256Gcm.class.getName());
+            put("Alg.Alias.Cipher.AES_256/GCM/NoPadding", "AES/GCM/NoPadding");
+        }
+
+        put("Signature.Ed25519", StodiumSignature.Ed25519.class.getName());
+        put("Signature.Ed25519ph", StodiumSignature.Ed25519ph.class.getName());
+        put("Alg.Alias.Signature.EdDSA", "Ed25519");
+
+        put("KeyAgreement.X25519", StodiumKeyAgreement.class.getName());
+
+        put("KeyPairGenerator.Ed25519", StodiumKeyPairGenerator.Ed25519.class.getName());
+        put("KeyPairGenerator.X25519", StodiumKeyPairGenerator.X25519.class.getName());
+        put("KeyFactory.Ed25519", StodiumKeyFactory.Ed25519.class.getName());
+        put("KeyFactory.X25519", StodiumKeyFactory.X25519.class.getName());
+
+        put("SecureRandom.Sodium", StodiumSecureRandom.class.getName());
+        put("SecureRandom.Sodium ThreadSafe", "true");
+    }
+
+    /**
+     * install adds the provider to the end of the provider list, unless it is
+     * already installed. Algorithms are then only taken from stodium when the
+     * provider is requested by name.
+     *
+     * @return the provider installed under {@link #NAME}
+     */
+    @NotNull
+    public static synchronized Provider install() {
+        return install(false);
+    }
+
+    /**
+     * install adds the provider to the provider list, unless it is already
+     * installed. If preferred is true, the provider is inserted at the highest
+     * priority, so it is used for every algorithm it supports, even when no
+     * provider is requested explicitly.
+     *
+     * @param preferred
+     * @return the provider installed under {@link #NAME}
+     */
+    @NotNull
+    public static synchronized Provider install(final boolean preferred) {
+        final Provider installed = Security.getProvider(NAME);
+        if (installed != null) {
+            return installed;
+        }
+
+        final Provider provider = new StodiumProvider();
+        if (preferred) {
+            Security.insertProviderAt(provider, 1);
+        } else {
+            Security.addProvider(provider);
+        }
+        return provider;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandomSpi;
+
+import eu.artemisc.stodium.random.BufferedRandom;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * StodiumSecureRandom implements {@link java.security.SecureRandom} on top of
+ * {@link BufferedRandom}. The generator cannot be seeded; seeds passed to it
+ * are ignored, as libsodium's CSPRNG is seeded by the operating system.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class StodiumSecureRandom
+        extends SecureRandomSpi {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void engineSetSeed(final @NotNull byte[] seed) {
+        // nothing to mix the seed into
+    }
+
+    @Override
+    protected void engineNextBytes(final @NotNull byte[] bytes) {
+        BufferedRandom.nextBytes(bytes);
+    }
+
+    @NotNull
+    @Override
+    protected byte[] engineGenerateSeed(final int numBytes) {
+        final byte[] seed = new byte[numBytes];
+        RandomBytes.nextBytes(ByteBuffer.wrap(seed));
+        return seed;
+    }
+}
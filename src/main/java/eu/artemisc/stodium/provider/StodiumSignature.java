@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.provider;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.PrivateKey;
+import java.security.ProviderException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+import java.util.Arrays;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.sign.MultipartSign;
+import eu.artemisc.stodium.sign.Sign;
+
+/**
+ * StodiumSignature implements {@link java.security.Signature} for Ed25519 and
+ * Ed25519ph. Keys are accepted in the X.509 / PKCS#8 encodings of RFC 8410
+ * (see {@link Keys}).
+ * <p>
+ * Pure Ed25519 hashes the message twice, so the message is buffered until the
+ * signature is created or verified. Ed25519ph signs a SHA-512 prehash of the
+ * message instead, and streams every update straight into the native state.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class StodiumSignature
+        extends SignatureSpi {
+
+    /**
+     *
+     */
+    final @NotNull Sign sign;
+
+    /**
+     * key holds the 64-byte secret key when signing, or the 32-byte public key
+     * when verifying.
+     */
+    @Nullable ByteBuffer key;
+
+    /**
+     *
+     */
+    private @NotNull byte[] single;
+
+    StodiumSignature() {
+        this.sign   = Sign.ed25519Instance();
+        this.single = new byte[1];
+    }
+
+    @Override
+    protected void engineInitSign(final @NotNull PrivateKey privateKey)
+            throws InvalidKeyException {
+        final byte[]     seed;
+        final ByteBuffer pub, priv;
+
+        seed = Keys.rawPrivate(privateKey, Keys.ED25519);
+        pub  = ByteBuffer.allocateDirect(sign.publicKeyBytes());
+        priv = ByteBuffer.allocateDirect(sign.secretKeyBytes());
+        try {
+            sign.keypair(pub, priv, ByteBuffer.wrap(seed));
+        } catch (final StodiumException e) {
+            throw new InvalidKeyException(e);
+        } finally {
+            Arrays.fill(seed, (byte) 0);
+        }
+        replaceKey(priv);
+    }
+
+    @Override
+    protected void engineInitVerify(final @NotNull PublicKey publicKey)
+            throws InvalidKeyException {
+        final ByteBuffer pub;
+        pub = ByteBuffer.allocateDirect(sign.publicKeyBytes());
+        pub.put(Keys.rawPublic(publicKey, Keys.ED25519)).flip();
+        replaceKey(pub);
+    }
+
+    @Override
+    protected void engineUpdate(final byte b)
+            throws SignatureException {
+        single[0] = b;
+        update(ByteBuffer.wrap(single));
+    }
+
+    @Override
+    protected void engineUpdate(final @NotNull byte[] b,
+                                final          int    off,
+                                final          int    len)
+            throws SignatureException {
+        update(ByteBuffer.wrap(b, off, len).slice());
+    }
+
+    @Override
+    protected void engineUpdate(final @NotNull ByteBuffer input) {
+        try {
+            update(input);
+        } catch (final SignatureException e) {
+            throw new ProviderException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    protected byte[] engineSign()
+            throws SignatureException {
+        final byte[] signature = new byte[sign.bytes()];
+        try {
+            doSign(ByteBuffer.wrap(signature), initialized());
+        } catch (final StodiumException e) {
+            throw new SignatureException(e);
+        }
+        return signature;
+    }
+
+    @Override
+    protected boolean engineVerify(final @NotNull byte[] sigBytes)
+            throws SignatureException {
+        try {
+            return sigBytes.length == sign.bytes()
+                    && doVerify(ByteBuffer.wrap(sigBytes), initialized());
+        } catch (final StodiumException e) {
+            throw new SignatureException(e);
+        }
+    }
+
+    @Override
+    @Deprecated
+    protected void engineSetParameter(final String param,
+                                      final Object value) {
+        throw new InvalidParameterException("StodiumSignature: no parameters supported");
+    }
+
+    @Override
+    @Deprecated
+    protected Object engineGetParameter(final String param) {
+        throw new InvalidParameterException("StodiumSignature: no parameters supported");
+    }
+
+    /**
+     * update processes the remaining bytes of src, and advances its position.
+     */
+    abstract void update(final @NotNull ByteBuffer src)
+            throws SignatureException;
+
+    abstract void doSign(final @NotNull ByteBuffer dst,
+                         final @NotNull ByteBuffer priv)
+            throws StodiumException, SignatureException;
+
+    abstract boolean doVerify(final @NotNull ByteBuffer sig,
+                              final @NotNull ByteBuffer pub)
+            throws StodiumException, SignatureException;
+
+    /**
+     * keyChanged is called whenever the SPI is initialized with a new key, and
+     * discards any message processed so far.
+     */
+    abstract void keyChanged();
+
+    @NotNull
+    final ByteBuffer initialized()
+            throws SignatureException {
+        if (key == null) {
+            throw new SignatureException("StodiumSignature: not initialized");
+        }
+        return key;
+    }
+
+    private void replaceKey(final @NotNull ByteBuffer key) {
+        if (this.key != null) {
+            Stodium.wipeBytes(this.key.duplicate());
+        }
+        this.key = key;
+        keyChanged();
+    }
+
+    /**
+     * Ed25519 as specified in RFC 8032.
+     */
+    public static final class Ed25519
+            extends StodiumSignature {
+        private final @NotNull Accumulator message = new Accumulator();
+
+        @Override
+        void update(final @NotNull ByteBuffer src)
+                throws SignatureException {
+            initialized();
+            message.write(src);
+        }
+
+        @Override
+        void doSign(final @NotNull ByteBuffer dst,
+                    final @NotNull ByteBuffer priv)
+                throws StodiumException {
+            try {
+                sign.signDetached(dst, message.buffer(), priv);
+            } finally {
+                message.wipe();
+            }
+        }
+
+        @Override
+        boolean doVerify(final @NotNull ByteBuffer sig,
+                         final @NotNull ByteBuffer pub)
+                throws StodiumException {
+            try {
+                return sign.verifyDetached(sig, message.buffer(), pub);
+            } finally {
+                message.wipe();
+            }
+        }
+
+        @Override
+        void keyChanged() {
+            message.wipe();
+        }
+    }
+
+    /**
+     * Ed25519ph as specified in RFC 8032, with an empty context.
+     */
+    public static final class Ed25519ph
+            extends StodiumSignature {
+        private @Nullable MultipartSign multipart;
+
+        @Override
+        void update(final @NotNull ByteBuffer src)
+                throws SignatureException {
+            if (!src.hasRemaining()) {
+                return;
+            }
+            try {
+                multipart().update(src.slice());
+            } catch (final StodiumException e) {
+                throw new SignatureException(e);
+            }
+            src.position(src.limit());
+        }
+
+        @Override
+        void doSign(final @NotNull ByteBuffer dst,
+                    final @NotNull ByteBuffer priv)
+                throws StodiumException, SignatureException {
+            try {
+                multipart().doFinal(dst, priv);
+            } finally {
+                multipart().reset();
+            }
+        }
+
+        @Override
+        boolean doVerify(final @NotNull ByteBuffer sig,
+                         final @NotNull ByteBuffer pub)
+                throws StodiumException, SignatureException {
+            try {
+                return multipart().doFinalVerify(sig, pub);
+            } finally {
+                multipart().reset();
+            }
+        }
+
+        @Override
+        void keyChanged() {
+            if (multipart != null) {
+                multipart.reset();
+            }
+        }
+
+        @NotNull
+        private MultipartSign multipart()
+                throws SignatureException {
+            initialized();
+            if (multipart == null) {
+                try {
+                    multipart = sign.init();
+                } catch (final StodiumException e) {
+                    throw new SignatureException(e);
+                }
+            }
+            return multipart;
+        }
+    }
+}
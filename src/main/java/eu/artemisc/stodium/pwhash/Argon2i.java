@@ -89,4 +89,11 @@ final class Argon2i
                 Stodium.ensureUsableByteBuffer(str),
                 Stodium.ensureUsableByteBuffer(pw));
     }
+
+    @Override
+    int needsRehash(final @NotNull ByteBuffer str,
+                    final          long       opsLimit,
+                    final          long       memLimit) {
+        return StodiumJNI.crypto_pwhash_argon2i_str_needs_rehash(str, opsLimit, memLimit);
+    }
 }
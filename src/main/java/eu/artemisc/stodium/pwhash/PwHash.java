@@ -8,10 +8,14 @@
 package eu.artemisc.stodium.pwhash;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
 
 import eu.artemisc.stodium.Singleton;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.StodiumJNI;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
@@ -27,6 +31,14 @@ public abstract class PwHash {
         }
     };
 
+    private static final @NotNull Singleton<PwHash> ARGON2ID = new Singleton<PwHash>() {
+        @NotNull
+        @Override
+        protected PwHash initialize() {
+            return new Argon2id();
+        }
+    };
+
     private static final @NotNull Singleton<PwHash> SCRYPT = new Singleton<PwHash>() {
         @NotNull
         @Override
@@ -45,11 +57,34 @@ public abstract class PwHash {
         return ARGON2I.get();
     }
 
+    @NotNull
+    public static PwHash argon2idInstance() {
+        return ARGON2ID.get();
+    }
+
     @NotNull
     public static PwHash scryptInstance() {
         return SCRYPT.get();
     }
 
+    /**
+     * instanceFor returns the PwHash that created the hash string str, based
+     * on its prefix.
+     *
+     * @param str
+     * @return the PwHash, or null if str has an unknown prefix
+     */
+    @Nullable
+    public static PwHash instanceFor(final @NotNull String str) {
+        for (final PwHash pwHash : new PwHash[] {
+                argon2idInstance(), argon2iInstance(), scryptInstance() }) {
+            if (str.startsWith(pwHash.STRPREFIX)) {
+                return pwHash;
+            }
+        }
+        return null;
+    }
+
     // constants
     final          long   BYTES_MIN;
     final          long   BYTES_MAX;
@@ -69,6 +104,17 @@ public abstract class PwHash {
     final          long   OPSLIMIT_SENSITIVE;
     final          long   MEMLIMIT_SENSITIVE;
 
+    /**
+     * scratch holds a NUL-terminated hash string for the native calls, so
+     * the String variants do not allocate per call.
+     */
+    private final @NotNull ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(STRBYTES);
+        }
+    };
+
     /**
      *
      * @param bytesMin
@@ -305,12 +351,18 @@ public abstract class PwHash {
                                 final          long       opsLimit,
                                 final          long       memLimit)
             throws StodiumException {
-        final byte[] dst;
-        dst = new byte[STRBYTES];
+        final ByteBuffer dst = scratch.get();
+        final char[]     str = new char[STRBYTES];
+        int len = 0;
 
-        strHash(ByteBuffer.wrap(dst), srcPw, opsLimit, memLimit);
+        dst.clear();
+        strHash(dst, srcPw, opsLimit, memLimit);
 
-        return new String(dst);
+        // the string is ASCII, padded with NUL bytes
+        for (byte b; len < STRBYTES && (b = dst.get(len)) != 0; len++) {
+            str[len] = (char) b;
+        }
+        return new String(str, 0, len);
     }
 
     /**
@@ -338,16 +390,134 @@ public abstract class PwHash {
             throws StodiumException;
 
     /**
+     * strVerify verifies pw against the ASCII hash string str, which may or
+     * may not include its NUL padding.
      *
      * @param str
      * @param pw
      * @return
+     * @throws ConstraintViolationException if str is not an ASCII string
+     *         that fits {@link #strBytes()}
      */
     public final boolean strVerify(final @NotNull String     str,
                                    final @NotNull ByteBuffer pw)
             throws StodiumException {
-        final ByteBuffer buff;
-        buff = ByteBuffer.wrap(str.getBytes());
-        return strVerify(buff, pw);
+        return strVerify(ascii(str), pw);
+    }
+
+    /**
+     * strNeedsRehash checks whether the hash string str was created by this
+     * PwHash with exactly the given limits.
+     *
+     * @param str the hash string, which must include its NUL terminator
+     * @param opsLimit
+     * @param memLimit
+     * @return false if str matches; true if it was created with other limits,
+     *         or is not a valid hash string of this PwHash, e.g. because it
+     *         was created by another algorithm
+     * @throws ConstraintViolationException if str holds no NUL byte
+     * @throws StodiumException
+     */
+    public final boolean strNeedsRehash(final @NotNull ByteBuffer str,
+                                        final          long       opsLimit,
+                                        final          long       memLimit)
+            throws StodiumException {
+        Stodium.checkSize(str.remaining(), STRBYTES);
+        Stodium.checkSize(opsLimit, OPSLIMIT_MIN, OPSLIMIT_MAX);
+        Stodium.checkSize(memLimit, MEMLIMIT_MIN, MEMLIMIT_MAX);
+        checkTerminated(str);
+
+        return StodiumJNI.NOERR != needsRehash(
+                Stodium.ensureUsableByteBuffer(str), opsLimit, memLimit);
+    }
+
+    /**
+     * strNeedsRehash checks whether the ASCII hash string str was created by
+     * this PwHash with exactly the given limits.
+     *
+     * @param str
+     * @param opsLimit
+     * @param memLimit
+     * @return
+     * @throws StodiumException
+     * @see #strNeedsRehash(ByteBuffer, long, long)
+     */
+    public final boolean strNeedsRehash(final @NotNull String str,
+                                        final          long   opsLimit,
+                                        final          long   memLimit)
+            throws StodiumException {
+        return strNeedsRehash(ascii(str), opsLimit, memLimit);
+    }
+
+    /**
+     * strNeedsRehash checks whether the hash string str was created by the
+     * PwHash of params with its limits.
+     *
+     * @param str
+     * @param params
+     * @return
+     * @throws StodiumException
+     */
+    public static boolean strNeedsRehash(final @NotNull String           str,
+                                         final @NotNull PwHashParameters params)
+            throws StodiumException {
+        return params.pwHash().strNeedsRehash(str, params.opsLimit(), params.memLimit());
+    }
+
+    /**
+     * needsRehash calls crypto_pwhash_*_str_needs_rehash.
+     *
+     * @param str
+     * @param opsLimit
+     * @param memLimit
+     * @return
+     */
+    abstract int needsRehash(final @NotNull ByteBuffer str,
+                             final          long       opsLimit,
+                             final          long       memLimit);
+
+    /**
+     * checkTerminated checks that str holds a NUL byte, as the native code
+     * reads it as a C string and would otherwise read past its end.
+     */
+    private static void checkTerminated(final @NotNull ByteBuffer str)
+            throws ConstraintViolationException {
+        for (int i = str.position(); i < str.limit(); i++) {
+            if (str.get(i) == 0) {
+                return;
+            }
+        }
+        throw new ConstraintViolationException("PwHash: hash string is not NUL-terminated");
+    }
+
+    /**
+     * ascii copies str into the scratch buffer of the calling thread, padded
+     * with NUL bytes.
+     */
+    @NotNull
+    private ByteBuffer ascii(final @NotNull String str)
+            throws ConstraintViolationException {
+        final ByteBuffer dst = scratch.get();
+        int len = str.indexOf('\0');
+
+        if (len < 0) {
+            len = str.length();
+        }
+        if (len >= STRBYTES) {
+            throw new ConstraintViolationException("PwHash: hash string too long");
+        }
+
+        dst.clear();
+        for (int i = 0; i < len; i++) {
+            final char c = str.charAt(i);
+            if (c == 0 || c > 0x7f) {
+                throw new ConstraintViolationException("PwHash: hash string is not ASCII");
+            }
+            dst.put(i, (byte) c);
+        }
+        for (int i = len; i < STRBYTES; i++) {
+            dst.put(i, (byte) 0);
+        }
+        return dst;
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.pwhash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * PwHashCalibrator picks the opslimit and memlimit for a PwHash by timing
+ * hashes on the device it runs on, typically once at startup.
+ * <p>
+ * The memlimit is taken first, as the largest power of two that lets the
+ * given number of hashes run concurrently within the memory budget. It is
+ * only lowered if a single pass at that memlimit is too slow. The opslimit is
+ * then raised for as long as the slowest of {@link #SAMPLES} hashes stays
+ * within the latency target.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class PwHashCalibrator {
+
+    /**
+     * SAMPLES is the number of hashes timed per candidate; the slowest one
+     * counts.
+     */
+    public static final int SAMPLES = 3;
+
+    /**
+     * PRECISION stops the search for the opslimit once the candidates are
+     * within 1/PRECISION of each other.
+     */
+    private static final int PRECISION = 8;
+
+    private PwHashCalibrator() {
+    }
+
+    /**
+     * calibrate returns the strongest parameters for pwHash for which a
+     * single hash takes at most targetMillis, and concurrency hashes fit in
+     * memoryBudget bytes.
+     *
+     * @param pwHash
+     * @param targetMillis
+     * @param memoryBudget
+     * @param concurrency
+     * @return the chosen parameters, with the measured latency
+     * @throws ConstraintViolationException if no parameters meet the target
+     * @throws StodiumException
+     */
+    @NotNull
+    public static PwHashParameters calibrate(final @NotNull PwHash pwHash,
+                                             final          long   targetMillis,
+                                             final          long   memoryBudget,
+                                             final          int    concurrency)
+            throws StodiumException {
+        final long       target = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        final ByteBuffer dst    = ByteBuffer.allocateDirect((int) Math.max(32L, pwHash.BYTES_MIN));
+        final ByteBuffer pw     = ByteBuffer.allocateDirect((int) Math.max(16L, pwHash.PASSWD_MIN));
+        final ByteBuffer salt   = ByteBuffer.allocateDirect(pwHash.SALTBYTES);
+        long mem, ops, hi, nanos;
+
+        Stodium.checkSizeMin(concurrency, 1);
+        mem = Long.highestOneBit(Math.min(pwHash.MEMLIMIT_MAX, memoryBudget / concurrency));
+        if (mem < pwHash.MEMLIMIT_MIN) {
+            throw new ConstraintViolationException("PwHashCalibrator: memory budget too small");
+        }
+
+        // lower the memlimit until the cheapest pass fits
+        ops   = pwHash.OPSLIMIT_MIN;
+        nanos = time(pwHash, dst, pw, salt, ops, mem);
+        while (nanos > target && mem / 2 >= pwHash.MEMLIMIT_MIN) {
+            mem  /= 2;
+            nanos = time(pwHash, dst, pw, salt, ops, mem);
+        }
+        if (nanos > target) {
+            throw new ConstraintViolationException("PwHashCalibrator: latency target too small");
+        }
+
+        // double the opslimit until it no longer fits, then bisect
+        hi = pwHash.OPSLIMIT_MAX;
+        while (ops < hi) {
+            final long next = Math.min(hi, ops * 2);
+            final long t    = time(pwHash, dst, pw, salt, next, mem);
+            if (t > target) {
+                hi = next;
+                break;
+            }
+            ops   = next;
+            nanos = t;
+        }
+        while (hi - ops > Math.max(1L, ops / PRECISION)) {
+            final long mid = ops + (hi - ops) / 2;
+            final long t   = time(pwHash, dst, pw, salt, mid, mem);
+            if (t > target) {
+                hi = mid;
+            } else {
+                ops   = mid;
+                nanos = t;
+            }
+        }
+        return new PwHashParameters(pwHash, ops, mem, nanos);
+    }
+
+    /**
+     * time returns the slowest of SAMPLES hashes with the given limits.
+     */
+    private static long time(final @NotNull PwHash     pwHash,
+                             final @NotNull ByteBuffer dst,
+                             final @NotNull ByteBuffer pw,
+                             final @NotNull ByteBuffer salt,
+                             final          long       ops,
+                             final          long       mem)
+            throws StodiumException {
+        long slowest = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            final long start = System.nanoTime();
+            pwHash.hash(dst.duplicate(), pw.duplicate(), salt.duplicate(), ops, mem);
+            slowest = Math.max(slowest, System.nanoTime() - start);
+        }
+        return slowest;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.pwhash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+
+/**
+ * PwHashParameters is a PwHash instance together with the opslimit and
+ * memlimit to use it with, as chosen by {@link PwHashCalibrator}.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class PwHashParameters {
+
+    /**
+     *
+     */
+    private final @NotNull PwHash pwHash;
+
+    /**
+     *
+     */
+    private final long opsLimit;
+
+    /**
+     *
+     */
+    private final long memLimit;
+
+    /**
+     *
+     */
+    private final long latencyNanos;
+
+    /**
+     *
+     * @param pwHash
+     * @param opsLimit
+     * @param memLimit
+     * @throws ConstraintViolationException if the limits are out of range for
+     *         pwHash
+     */
+    public PwHashParameters(final @NotNull PwHash pwHash,
+                            final          long   opsLimit,
+                            final          long   memLimit)
+            throws ConstraintViolationException {
+        this(pwHash, opsLimit, memLimit, -1L);
+    }
+
+    /**
+     *
+     * @param pwHash
+     * @param opsLimit
+     * @param memLimit
+     * @param latencyNanos
+     * @throws ConstraintViolationException
+     */
+    PwHashParameters(final @NotNull PwHash pwHash,
+                     final          long   opsLimit,
+                     final          long   memLimit,
+                     final          long   latencyNanos)
+            throws ConstraintViolationException {
+        Stodium.checkSize(opsLimit, pwHash.OPSLIMIT_MIN, pwHash.OPSLIMIT_MAX);
+        Stodium.checkSize(memLimit, pwHash.MEMLIMIT_MIN, pwHash.MEMLIMIT_MAX);
+
+        this.pwHash       = pwHash;
+        this.opsLimit     = opsLimit;
+        this.memLimit     = memLimit;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @NotNull
+    public PwHash pwHash() {
+        return pwHash;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public long opsLimit() {
+        return opsLimit;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public long memLimit() {
+        return memLimit;
+    }
+
+    /**
+     *
+     * @return the slowest hash measured for these parameters during
+     *         calibration, in nanoseconds, or -1 if they were not calibrated
+     */
+    public long latencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH,
+                "PwHashParameters[%s, opslimit: %d, memlimit: %d, latency: %.1f ms]",
+                pwHash.strPrefix(), opsLimit, memLimit, latencyNanos / 1e6);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.pwhash;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * PwHashRehasher verifies passwords against stored hash strings, and
+ * upgrades the strings that were created with other parameters than the
+ * target ones, possibly by another algorithm.
+ * <p>
+ * Verification runs on the calling thread. When it succeeds and the string
+ * is outdated, the password is copied and hashed again on a
+ * {@link PwHashScheduler}, and the new string is handed to the callback to be
+ * stored. The copy is wiped once the hash completes, or once the scheduler
+ * shuts down before the hash started, which the callback receives as a
+ * CancellationException.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class PwHashRehasher {
+
+    /**
+     *
+     */
+    private final @NotNull PwHashParameters target;
+
+    /**
+     *
+     */
+    private final @NotNull PwHashScheduler scheduler;
+
+    /**
+     *
+     * @param target the parameters strings are upgraded to
+     * @param scheduler the scheduler the upgrades run on
+     */
+    public PwHashRehasher(final @NotNull PwHashParameters target,
+                          final @NotNull PwHashScheduler  scheduler) {
+        this.target    = target;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @NotNull
+    public PwHashParameters target() {
+        return target;
+    }
+
+    /**
+     * verify checks pw against str, using the algorithm str was created by.
+     * If pw matches and str needs a rehash, an upgrade is scheduled, and its
+     * result is passed to rehashed.
+     *
+     * @param str
+     * @param pw
+     * @param rehashed receives the new hash string, or the reason the
+     *                 upgrade failed or was cancelled
+     * @return whether pw matches str
+     * @throws StodiumException
+     */
+    public boolean verify(final @NotNull String                           str,
+                          final @NotNull ByteBuffer                       pw,
+                          final @NotNull PwHashScheduler.Callback<String> rehashed)
+            throws StodiumException {
+        final PwHash pwHash = PwHash.instanceFor(str);
+        final ByteBuffer copy;
+
+        if (pwHash == null || !pwHash.strVerify(str, pw)) {
+            return false;
+        }
+        if (!PwHash.strNeedsRehash(str, target)) {
+            return true;
+        }
+
+        copy = ByteBuffer.allocateDirect(pw.remaining());
+        copy.put(pw.duplicate()).flip();
+        try {
+            scheduler.strHash(target, copy, new PwHashScheduler.Callback<String>() {
+                @Override
+                public void onSuccess(final @Nullable String result) {
+                    wipe(copy);
+                    rehashed.onSuccess(result);
+                }
+
+                @Override
+                public void onFailure(final @NotNull Throwable error) {
+                    wipe(copy);
+                    rehashed.onFailure(error);
+                }
+            });
+        } catch (StodiumException | RuntimeException e) {
+            // the login itself succeeded; only the upgrade failed
+            wipe(copy);
+            rehashed.onFailure(e);
+        }
+        return true;
+    }
+
+    /**
+     * wipe zeroes all of buffer, wherever its position was left.
+     */
+    private static void wipe(final @NotNull ByteBuffer buffer) {
+        buffer.clear();
+        Stodium.wipeBytes(buffer);
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.pwhash;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * PwHashScheduler runs password hashes on a dedicated pool of threads,
+ * without ever letting the memory they allocate exceed a global budget.
+ * <p>
+ * Every operation reserves the memory it is going to allocate before it
+ * starts: the memlimit for new hashes, and the memory encoded in the hash
+ * string for verifications. Operations start in submission order; when the
+ * operation at the head of the queue does not fit, everything behind it
+ * waits as well, so large operations are never starved by small ones.
+ * <p>
+ * The arguments of an operation are used on the pool, and must not be
+ * modified until the returned Future is done.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class PwHashScheduler {
+
+    /**
+     * Callback is notified on the pool once an operation completes. An
+     * operation cancelled by {@link #shutdown()} before it started is reported
+     * to onFailure with a CancellationException, on the calling thread.
+     *
+     * @param <T>
+     */
+    public interface Callback<T> {
+        void onSuccess(@Nullable T result);
+        void onFailure(@NotNull Throwable error);
+    }
+
+    /**
+     * Stats is a snapshot of the state of the scheduler.
+     */
+    public static final class Stats {
+        private final int  queueDepth;
+        private final int  running;
+        private final long reservedBytes;
+        private final long started;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+
+        Stats(final int  queueDepth,
+              final int  running,
+              final long reservedBytes,
+              final long started,
+              final long totalWaitNanos,
+              final long maxWaitNanos) {
+            this.queueDepth     = queueDepth;
+            this.running        = running;
+            this.reservedBytes  = reservedBytes;
+            this.started        = started;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos   = maxWaitNanos;
+        }
+
+        /**
+         * @return the number of operations waiting to start
+         */
+        public int queueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return the number of operations running
+         */
+        public int running() {
+            return running;
+        }
+
+        /**
+         * @return the memory reserved by the running operations
+         */
+        public long reservedBytes() {
+            return reservedBytes;
+        }
+
+        /**
+         * @return the number of operations started so far
+         */
+        public long started() {
+            return started;
+        }
+
+        /**
+         * @return the total time operations spent in the queue
+         */
+        public long totalWaitNanos() {
+            return totalWaitNanos;
+        }
+
+        /**
+         * @return the longest time an operation spent in the queue
+         */
+        public long maxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        /**
+         * @return the mean time an operation spent in the queue
+         */
+        public long meanWaitNanos() {
+            return started == 0 ? 0 : totalWaitNanos / started;
+        }
+    }
+
+    /**
+     * ITOA64 is the alphabet scrypt hash strings encode their parameters in.
+     */
+    private static final String ITOA64 =
+            "./0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    /**
+     *
+     */
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final @NotNull ExecutorService executor;
+    private final          long            memoryBudget;
+    private final          int             threads;
+
+    // guarded by pending
+    private final @NotNull ArrayDeque<Task<?>> pending = new ArrayDeque<>();
+    private long    reserved;
+    private int     running;
+    private long    started;
+    private long    totalWaitNanos;
+    private long    maxWaitNanos;
+    private boolean shutdown;
+
+    /**
+     *
+     * @param memoryBudget the memory all running operations may reserve
+     * @param threads the number of operations that may run at once
+     * @throws ConstraintViolationException
+     */
+    public PwHashScheduler(final long memoryBudget,
+                           final int  threads)
+            throws ConstraintViolationException {
+        final int pool = POOLS.incrementAndGet();
+        final AtomicInteger counter = new AtomicInteger();
+
+        Stodium.checkSize(memoryBudget, 1L, Long.MAX_VALUE);
+        Stodium.checkSizeMin(threads, 1);
+
+        this.memoryBudget = memoryBudget;
+        this.threads      = threads;
+        this.executor     = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final @NotNull Runnable r) {
+                final Thread thread;
+                thread = new Thread(r, "stodium-pwhash-" + pool + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * hash derives a key from srcPw and srcSalt into dstKey.
+     *
+     * @param params
+     * @param dstKey
+     * @param srcPw
+     * @param srcSalt
+     * @param callback
+     * @return
+     * @throws ConstraintViolationException if the memlimit exceeds the budget
+     */
+    @NotNull
+    public Future<Void> hash(final @NotNull  PwHashParameters params,
+                             final @NotNull  ByteBuffer       dstKey,
+                             final @NotNull  ByteBuffer       srcPw,
+                             final @NotNull  ByteBuffer       srcSalt,
+                             final @Nullable Callback<Void>   callback)
+            throws ConstraintViolationException {
+        return submit(params.memLimit(), callback, new Callable<Void>() {
+            @Override
+            public Void call() throws StodiumException {
+                params.pwHash().hash(dstKey, srcPw, srcSalt, params.opsLimit(), params.memLimit());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * strHash hashes srcPw into a hash string.
+     *
+     * @param params
+     * @param srcPw
+     * @param callback
+     * @return
+     * @throws ConstraintViolationException if the memlimit exceeds the budget
+     */
+    @NotNull
+    public Future<String> strHash(final @NotNull  PwHashParameters params,
+                                  final @NotNull  ByteBuffer       srcPw,
+                                  final @Nullable Callback<String> callback)
+            throws ConstraintViolationException {
+        return submit(params.memLimit(), callback, new Callable<String>() {
+            @Override
+            public String call() throws StodiumException {
+                return params.pwHash().strHash(srcPw, params.opsLimit(), params.memLimit());
+            }
+        });
+    }
+
+    /**
+     * strVerify verifies pw against the hash string str. The memory reserved
+     * is read from str.
+     *
+     * @param pwHash
+     * @param str
+     * @param pw
+     * @param callback
+     * @return
+     * @throws ConstraintViolationException if the memory needed exceeds the
+     *         budget
+     */
+    @NotNull
+    public Future<Boolean> strVerify(final @NotNull  PwHash            pwHash,
+                                     final @NotNull  String            str,
+                                     final @NotNull  ByteBuffer        pw,
+                                     final @Nullable Callback<Boolean> callback)
+            throws ConstraintViolationException {
+        return submit(memoryFor(str), callback, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws StodiumException {
+                return pwHash.strVerify(str, pw);
+            }
+        });
+    }
+
+    /**
+     *
+     * @return a snapshot of the queue and wait-time metrics
+     */
+    @NotNull
+    public Stats stats() {
+        synchronized (pending) {
+            return new Stats(pending.size(), running, reserved,
+                    started, totalWaitNanos, maxWaitNanos);
+        }
+    }
+
+    /**
+     * shutdown cancels the operations that have not started yet, and stops
+     * the threads once the running operations complete. The callbacks of the
+     * cancelled operations are notified before shutdown returns.
+     */
+    public void shutdown() {
+        final List<Task<?>> cancelled = new ArrayList<>();
+
+        synchronized (pending) {
+            shutdown = true;
+            for (final Task<?> task : pending) {
+                if (task.cancel(false)) {
+                    cancelled.add(task);
+                }
+            }
+            pending.clear();
+        }
+        executor.shutdown();
+
+        for (final Task<?> task : cancelled) {
+            if (task.callback != null) {
+                task.callback.onFailure(new CancellationException("PwHashScheduler: shut down"));
+            }
+        }
+    }
+
+    /**
+     * submit queues an operation that reserves memory bytes.
+     */
+    @NotNull
+    private <T> Future<T> submit(final          long        memory,
+                                 final @Nullable Callback<T> callback,
+                                 final @NotNull Callable<T> callable)
+            throws ConstraintViolationException {
+        final Task<T> task = new Task<>(memory, callable, callback);
+
+        if (memory > memoryBudget) {
+            throw new ConstraintViolationException("PwHashScheduler: operation exceeds the memory budget");
+        }
+        synchronized (pending) {
+            if (shutdown) {
+                throw new IllegalStateException("PwHashScheduler: shut down");
+            }
+            pending.add(task);
+        }
+        dispatch();
+        return task;
+    }
+
+    /**
+     * dispatch starts the operations at the head of the queue for as long as
+     * they fit.
+     */
+    private void dispatch() {
+        synchronized (pending) {
+            Task<?> task;
+            while ((task = pending.peek()) != null) {
+                if (task.isCancelled()) {
+                    pending.poll();
+                    continue;
+                }
+                if (running == threads || reserved + task.memory > memoryBudget) {
+                    return;
+                }
+                pending.poll();
+
+                final long wait = System.nanoTime() - task.queued;
+                reserved       += task.memory;
+                running        += 1;
+                started        += 1;
+                totalWaitNanos += wait;
+                maxWaitNanos    = Math.max(maxWaitNanos, wait);
+                executor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * complete releases the memory of a finished operation, and starts the
+     * operations that fit now.
+     */
+    private void complete(final @NotNull Task<?> task) {
+        synchronized (pending) {
+            if (task.released) {
+                return;
+            }
+            task.released = true;
+            reserved -= task.memory;
+            running  -= 1;
+        }
+        dispatch();
+    }
+
+    /**
+     * memoryFor returns the memory needed to verify str. Strings that cannot
+     * be parsed reserve the whole budget.
+     */
+    private long memoryFor(final @NotNull String str) {
+        try {
+            if (str.startsWith("$argon2")) {
+                // $argon2id$v=19$m=<KiB>,t=<ops>,p=<lanes>$...
+                final int m = str.indexOf("$m=") + 3;
+                return 1024L * Long.parseLong(str.substring(m, str.indexOf(',', m)));
+            }
+            if (str.startsWith("$7$") && str.length() >= 14) {
+                // $7$ N r p: log2(N) in one char, r and p in five chars each
+                final long n = 1L << ITOA64.indexOf(str.charAt(3));
+                long r = 0;
+                for (int i = 0; i < 5; i++) {
+                    r |= (long) ITOA64.indexOf(str.charAt(4 + i)) << (6 * i);
+                }
+                return 128L * r * n;
+            }
+        } catch (RuntimeException ignored) {
+        }
+        return memoryBudget;
+    }
+
+    /**
+     * Task is a queued operation.
+     */
+    private final class Task<T>
+            extends FutureTask<T> {
+        final           long        memory;
+        final           long        queued;
+        final @Nullable Callback<T> callback;
+
+        // guarded by pending
+        boolean released;
+
+        Task(final           long        memory,
+             final @NotNull  Callable<T> callable,
+             final @Nullable Callback<T> callback) {
+            super(callable);
+            this.memory   = memory;
+            this.queued   = System.nanoTime();
+            this.callback = callback;
+        }
+
+        /**
+         * run releases the memory of operations that were cancelled before
+         * they started.
+         */
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                complete(this);
+            }
+        }
+
+        /**
+         * set and setException are called once the operation returns, even
+         * if it was cancelled while running, so the memory is released
+         * before the Future completes.
+         */
+        @Override
+        protected void set(final @Nullable T result) {
+            complete(this);
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(final @NotNull Throwable error) {
+            complete(this);
+            super.setException(error);
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            try {
+                callback.onSuccess(get());
+            } catch (ExecutionException e) {
+                callback.onFailure(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                callback.onFailure(e);
+            }
+        }
+    }
+}
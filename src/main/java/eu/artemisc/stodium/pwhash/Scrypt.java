@@ -89,4 +89,11 @@ final class Scrypt
                 Stodium.ensureUsableByteBuffer(str),
                 Stodium.ensureUsableByteBuffer(pw));
     }
+
+    @Override
+    int needsRehash(final @NotNull ByteBuffer str,
+                    final          long       opsLimit,
+                    final          long       memLimit) {
+        return StodiumJNI.crypto_pwhash_scryptsalsa208sha256_str_needs_rehash(str, opsLimit, memLimit);
+    }
 }
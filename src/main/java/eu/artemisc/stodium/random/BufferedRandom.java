@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.random;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.StodiumJNI;
+import eu.artemisc.stodium.exceptions.ReadOnlyBufferException;
+
+/**
+ * BufferedRandom serves random bytes from a per-thread buffer that is refilled
+ * {@link #BUFFER_BYTES} at a time by libsodium's randombytes_buf. Small
+ * requests, such as nonces, ids and salts, are therefore answered without a
+ * native call for each of them.
+ * <p>
+ * Every byte handed out is zeroed in the buffer right away, so the output
+ * that was already used cannot be recovered from memory afterwards. Requests
+ * larger than the buffer bypass it.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class BufferedRandom {
+
+    /**
+     * BUFFER_BYTES is the size of the per-thread buffer.
+     */
+    public static final int BUFFER_BYTES = 4096;
+
+    /**
+     *
+     */
+    private static final @NotNull byte[] ZEROES = new byte[BUFFER_BYTES];
+
+    /**
+     *
+     */
+    private static final @NotNull ThreadLocal<ByteBuffer> POOL = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            final ByteBuffer pool = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            pool.position(pool.limit());
+            return pool;
+        }
+    };
+
+    // block the constructor
+    private BufferedRandom() {}
+
+    /**
+     * nextBytes fills the remaining bytes of dst with random bytes, and
+     * advances its position.
+     *
+     * @param dst
+     * @throws ReadOnlyBufferException
+     */
+    public static void nextBytes(final @NotNull ByteBuffer dst) {
+        Stodium.checkDestinationWritable(dst);
+        if (dst.remaining() > BUFFER_BYTES) {
+            StodiumJNI.randombytes_buf(dst.slice());
+            dst.position(dst.limit());
+            return;
+        }
+
+        final ByteBuffer pool = take(dst.remaining());
+        final int        from = pool.position();
+        pool.limit(from + dst.remaining());
+        dst.put(pool);
+        pool.limit(pool.capacity());
+        wipe(pool, from);
+    }
+
+    /**
+     * nextBytes fills dst with random bytes.
+     *
+     * @param dst
+     */
+    public static void nextBytes(final @NotNull byte[] dst) {
+        if (dst.length > BUFFER_BYTES) {
+            RandomBytes.nextBytes(ByteBuffer.wrap(dst));
+            return;
+        }
+
+        final ByteBuffer pool = take(dst.length);
+        final int        from = pool.position();
+        pool.get(dst);
+        wipe(pool, from);
+    }
+
+    /**
+     *
+     * @return a uniformly distributed int
+     */
+    public static int nextInt() {
+        final ByteBuffer pool = take(4);
+        final int        from = pool.position();
+        final int        r    = pool.getInt();
+        wipe(pool, from);
+        return r;
+    }
+
+    /**
+     *
+     * @return a uniformly distributed long
+     */
+    public static long nextLong() {
+        final ByteBuffer pool = take(8);
+        final int        from = pool.position();
+        final long       r    = pool.getLong();
+        wipe(pool, from);
+        return r;
+    }
+
+    /**
+     * uniform returns a uniformly distributed value in [0, upperBound), using
+     * the same rejection sampling as libsodium's randombytes_uniform, so the
+     * result has no modulo bias.
+     *
+     * @param upperBound
+     * @return
+     * @throws IllegalArgumentException if upperBound is not positive
+     */
+    public static int uniform(final int upperBound) {
+        final long bound = upperBound;
+        final long min;
+        long r;
+
+        if (upperBound <= 0) {
+            throw new IllegalArgumentException("BufferedRandom: upperBound must be positive");
+        }
+        // 2^32 mod bound; values below it would make the result biased
+        min = (0x100000000L - bound) % bound;
+        do {
+            r = nextInt() & 0xffffffffL;
+        } while (r < min);
+        return (int) (r % bound);
+    }
+
+    /**
+     * take returns the thread's buffer with at least count unread bytes left,
+     * refilling it if needed.
+     */
+    @NotNull
+    private static ByteBuffer take(final int count) {
+        final ByteBuffer pool = POOL.get();
+        if (pool.remaining() < count) {
+            // randombytes_buf overwrites all of it, including unread bytes
+            StodiumJNI.randombytes_buf(pool);
+            pool.clear();
+        }
+        return pool;
+    }
+
+    /**
+     * wipe zeroes the bytes of pool between from and its position.
+     */
+    private static void wipe(final @NotNull ByteBuffer pool,
+                             final          int        from) {
+        final int to = pool.position();
+        pool.position(from);
+        pool.put(ZEROES, 0, to - from);
+    }
+}
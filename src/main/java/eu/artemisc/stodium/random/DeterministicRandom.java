@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.random;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.StodiumJNI;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * DeterministicRandom generates the byte stream of libsodium's
+ * randombytes_buf_deterministic for a fixed seed, as a sequence that can be
+ * read in pieces and repositioned with {@link #seek(long)}. The same seed
+ * always produces the same bytes, which makes it suitable for reproducible
+ * test vectors, fixtures and load tests, but not for generating secrets.
+ * <p>
+ * Every read is a single native call, regardless of its length. A
+ * DeterministicRandom is not thread safe.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class DeterministicRandom {
+
+    /**
+     * MAX_BYTES is the length of the stream, which is limited by the 32-bit
+     * block counter of the underlying ChaCha20 key stream.
+     */
+    public static final long MAX_BYTES = 64L << 32;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer seed;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer scratch;
+
+    /**
+     *
+     */
+    private long position;
+
+    /**
+     *
+     * @param seed the seed, which is copied
+     * @throws ConstraintViolationException
+     */
+    public DeterministicRandom(final @NotNull ByteBuffer seed)
+            throws ConstraintViolationException {
+        Stodium.checkSize(seed.remaining(), seedBytes());
+        this.seed    = ByteBuffer.allocateDirect(seedBytes());
+        this.scratch = ByteBuffer.allocateDirect(8);
+        this.seed.put(seed.duplicate()).flip();
+    }
+
+    /**
+     *
+     * @return the length of a seed
+     */
+    public static int seedBytes() {
+        return StodiumJNI.randombytes_seedbytes();
+    }
+
+    /**
+     *
+     * @return the offset in the stream of the next byte read
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * seek moves to position in the stream.
+     *
+     * @param position
+     * @return this
+     * @throws ConstraintViolationException
+     */
+    @NotNull
+    public DeterministicRandom seek(final long position)
+            throws ConstraintViolationException {
+        Stodium.checkSize(position, 0, MAX_BYTES);
+        this.position = position;
+        return this;
+    }
+
+    /**
+     * nextBytes fills the remaining bytes of dst with the next bytes of the
+     * stream, and advances its position.
+     *
+     * @param dst
+     * @throws StodiumException if the read would pass {@link #MAX_BYTES}
+     */
+    public void nextBytes(final @NotNull ByteBuffer dst)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(dst);
+        Stodium.checkSize(position + dst.remaining(), position, MAX_BYTES);
+
+        // slice, as the native code uses the capacity of direct buffers
+        Stodium.checkStatus(StodiumJNI.stodium_randombytes_buf_deterministic_at(
+                Stodium.ensureUsableByteBuffer(dst.slice()),
+                seed.duplicate(),
+                position));
+        position += dst.remaining();
+        dst.position(dst.limit());
+    }
+
+    /**
+     *
+     * @return the next 4 bytes of the stream, as a big-endian int
+     * @throws StodiumException
+     */
+    public int nextInt()
+            throws StodiumException {
+        scratch.clear().limit(4);
+        nextBytes(scratch);
+        return scratch.getInt(0);
+    }
+
+    /**
+     *
+     * @return the next 8 bytes of the stream, as a big-endian long
+     * @throws StodiumException
+     */
+    public long nextLong()
+            throws StodiumException {
+        scratch.clear();
+        nextBytes(scratch);
+        return scratch.getLong(0);
+    }
+
+    /**
+     * release wipes the seed. The DeterministicRandom must not be used
+     * afterwards.
+     */
+    public void release() {
+        Stodium.wipeBytes(seed);
+        Stodium.wipeBytes((ByteBuffer) scratch.clear());
+    }
+}
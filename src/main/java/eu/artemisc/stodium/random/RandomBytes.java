@@ -12,6 +12,7 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 
 import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.ReadOnlyBufferException;
 import eu.artemisc.stodium.StodiumJNI;
 
@@ -36,4 +37,51 @@ public final class RandomBytes {
         Stodium.checkDestinationWritable(buffer);
         StodiumJNI.randombytes_buf(buffer);
     }
+
+    /**
+     * nextBytesDeterministic fills the provided buffer with bytes that only
+     * depend on seed, using Sodium's
+     * {@code randombytes_buf_deterministic(void*, size_t, const unsigned char*)}
+     * function. See {@link DeterministicRandom} to read the same bytes in
+     * pieces.
+     *
+     * @param buffer
+     * @param seed
+     * @throws ConstraintViolationException
+     */
+    public static void nextBytesDeterministic(final @NotNull ByteBuffer buffer,
+                                              final @NotNull ByteBuffer seed)
+            throws ConstraintViolationException {
+        Stodium.checkDestinationWritable(buffer);
+        Stodium.checkSize(seed.remaining(), StodiumJNI.randombytes_seedbytes());
+        StodiumJNI.randombytes_buf_deterministic(
+                Stodium.ensureUsableByteBuffer(buffer),
+                Stodium.ensureUsableByteBuffer(seed));
+    }
+
+    /**
+     * nextInt returns a random int, using Sodium's
+     * {@code randombytes_random()} function.
+     *
+     * @return
+     */
+    public static int nextInt() {
+        return StodiumJNI.randombytes_random();
+    }
+
+    /**
+     * uniform returns a uniformly distributed value in [0, upperBound),
+     * without modulo bias, using Sodium's
+     * {@code randombytes_uniform(uint32_t)} function.
+     *
+     * @param upperBound
+     * @return
+     * @throws IllegalArgumentException if upperBound is not positive
+     */
+    public static int uniform(final int upperBound) {
+        if (upperBound <= 0) {
+            throw new IllegalArgumentException("RandomBytes: upperBound must be positive");
+        }
+        return StodiumJNI.randombytes_uniform(upperBound);
+    }
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+
+/**
+ * BloomFilter is a Bloom filter keyed by SipHashX24. The k bit indices of an
+ * item are derived from the two 64-bit words of its hash by double hashing,
+ * {@code h1 + i * h2}.
+ * <p>
+ * Insertions and queries are lock-free and safe to use from multiple threads:
+ * bits are set with a compare-and-set on the word that holds them. The bits
+ * are therefore kept in an {@link AtomicLongArray}, a flat array of
+ * primitives, as the platform offers no atomic operations on direct memory.
+ * The filter is persisted to, and loaded from, a memory-mapped file region.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class BloomFilter
+        extends KeyedFilter {
+
+    /**
+     * MAGIC starts the serialized form of a BloomFilter.
+     */
+    private static final int MAGIC = 0x53424c46; // "SBLF"
+
+    /**
+     * HEADER_BYTES is the size of the serialized header: magic, hash count,
+     * and the number of bits.
+     */
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     *
+     */
+    private static final int MAX_HASHES = 32;
+
+    /**
+     *
+     */
+    private final @NotNull AtomicLongArray words;
+
+    /**
+     *
+     */
+    private final long bits;
+
+    /**
+     *
+     */
+    private final int hashes;
+
+    /**
+     *
+     * @param key
+     * @param bits a multiple of 64
+     * @param hashes
+     * @throws ConstraintViolationException
+     */
+    private BloomFilter(final @NotNull ShortHashKey key,
+                        final          long         bits,
+                        final          int          hashes)
+            throws ConstraintViolationException {
+        super(key);
+        Stodium.checkSize(bits, 64L, 64L * Integer.MAX_VALUE);
+        Stodium.checkSize(hashes, 1, MAX_HASHES);
+
+        this.words  = new AtomicLongArray((int) (bits >>> 6));
+        this.bits   = bits;
+        this.hashes = hashes;
+    }
+
+    /**
+     * create returns a filter sized for expectedItems items at a false
+     * positive probability of fpp.
+     *
+     * @param key a SipHashX24 key
+     * @param expectedItems
+     * @param fpp the false positive probability, in (0, 1)
+     * @return
+     * @throws ConstraintViolationException
+     */
+    @NotNull
+    public static BloomFilter create(final @NotNull ShortHashKey key,
+                                     final          long         expectedItems,
+                                     final          double       fpp)
+            throws ConstraintViolationException {
+        final long n = Math.max(1L, expectedItems);
+        final long bits;
+
+        if (!(fpp > 0.0 && fpp < 1.0)) {
+            throw new ConstraintViolationException("BloomFilter: fpp must be in (0, 1)");
+        }
+
+        bits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        return new BloomFilter(key, (bits + 63) & ~63L,
+                (int) Math.max(1L, Math.min(MAX_HASHES,
+                        Math.round((double) bits / n * Math.log(2)))));
+    }
+
+    /**
+     *
+     * @return the number of bits in the filter
+     */
+    public long bitSize() {
+        return bits;
+    }
+
+    /**
+     *
+     * @return the number of bits set per item
+     */
+    public int hashCount() {
+        return hashes;
+    }
+
+    @Override
+    boolean put(final long h1,
+                final long h2) {
+        boolean changed = false;
+        long    h       = h1;
+
+        for (int i = 0; i < hashes; i++, h += h2) {
+            final long index = (h & Long.MAX_VALUE) % bits;
+            final int  word  = (int) (index >>> 6);
+            final long mask  = 1L << index;
+            long       old;
+
+            while (((old = words.get(word)) & mask) == 0) {
+                if (words.compareAndSet(word, old, old | mask)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    boolean mightContain(final long h1,
+                         final long h2) {
+        long h = h1;
+
+        for (int i = 0; i < hashes; i++, h += h2) {
+            final long index = (h & Long.MAX_VALUE) % bits;
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return the number of bytes written by {@link #writeTo(FileChannel, long)}
+     */
+    public long serializedBytes() {
+        return HEADER_BYTES + (bits >>> 3);
+    }
+
+    /**
+     * writeTo maps {@link #serializedBytes()} bytes of channel, starting at
+     * position, and writes the filter to them. The key is not written. The
+     * channel must be opened for reading and writing. Insertions running
+     * concurrently may or may not be included.
+     *
+     * @param channel
+     * @param position
+     * @throws IOException
+     */
+    public void writeTo(final @NotNull FileChannel channel,
+                        final          long        position)
+            throws IOException {
+        final MappedByteBuffer map;
+        final LongBuffer       dst;
+
+        map = channel.map(FileChannel.MapMode.READ_WRITE, position, serializedBytes());
+        map.putInt(MAGIC).putInt(hashes).putLong(bits);
+
+        dst = map.asLongBuffer();
+        for (int i = 0; i < words.length(); i++) {
+            dst.put(words.get(i));
+        }
+        map.force();
+    }
+
+    /**
+     * readFrom loads a filter written by {@link #writeTo(FileChannel, long)}.
+     * The key must be the key the filter was created with.
+     *
+     * @param key
+     * @param channel
+     * @param position
+     * @return
+     * @throws IOException
+     * @throws ConstraintViolationException if the region does not hold a
+     *         BloomFilter
+     */
+    @NotNull
+    public static BloomFilter readFrom(final @NotNull ShortHashKey key,
+                                       final @NotNull FileChannel  channel,
+                                       final          long         position)
+            throws IOException, ConstraintViolationException {
+        final MappedByteBuffer header, map;
+        final BloomFilter      filter;
+        final LongBuffer       src;
+
+        header = channel.map(FileChannel.MapMode.READ_ONLY, position, HEADER_BYTES);
+        if (header.getInt() != MAGIC) {
+            throw new ConstraintViolationException("BloomFilter: not a serialized filter");
+        }
+        if ((header.getLong(8) & 63) != 0) {
+            throw new ConstraintViolationException("BloomFilter: corrupt header");
+        }
+        filter = new BloomFilter(key, header.getLong(8), header.getInt(4));
+
+        map = channel.map(FileChannel.MapMode.READ_ONLY, position, filter.serializedBytes());
+        map.position(HEADER_BYTES);
+        src = map.asLongBuffer();
+        for (int i = 0; i < filter.words.length(); i++) {
+            filter.words.set(i, src.get());
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * CuckooFilter is a cuckoo filter keyed by SipHashX24, with 16-bit
+ * fingerprints in buckets of {@link #BUCKET_SLOTS}. The first word of the hash
+ * of an item selects its primary bucket, the second word provides the
+ * fingerprint. Unlike a Bloom filter, items can be removed again.
+ * <p>
+ * The fingerprints are stored off-heap, in a direct buffer. Relocating a
+ * fingerprint touches two buckets, so all operations are synchronized on the
+ * filter; use a {@link BloomFilter} where lock-free insertions are needed.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class CuckooFilter
+        extends KeyedFilter {
+
+    /**
+     * BUCKET_SLOTS is the number of fingerprints per bucket.
+     */
+    public static final int BUCKET_SLOTS = 4;
+
+    /**
+     * MAX_KICKS is the number of relocations an insertion attempts before the
+     * filter is considered full.
+     */
+    private static final int MAX_KICKS = 500;
+
+    /**
+     * LOAD_FACTOR is the fraction of slots a filter is sized to fill.
+     */
+    private static final double LOAD_FACTOR = 0.95;
+
+    /**
+     * MAX_BUCKETS is the largest power of two whose table size fits in an
+     * int.
+     */
+    private static final int MAX_BUCKETS = Integer.highestOneBit(Integer.MAX_VALUE / (2 * BUCKET_SLOTS));
+
+    /**
+     * MAGIC starts the serialized form of a CuckooFilter.
+     */
+    private static final int MAGIC = 0x53435546; // "SCUF"
+
+    /**
+     * HEADER_BYTES is the size of the serialized header: magic, bucket count,
+     * item count, and the victim slot.
+     */
+    private static final int HEADER_BYTES = 24;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer table;
+
+    /**
+     *
+     */
+    private final int buckets;
+
+    /**
+     *
+     */
+    private int count;
+
+    /**
+     * An insertion that runs out of kicks leaves the last evicted
+     * fingerprint in the victim slot, which is checked by every lookup. Once
+     * it is taken, the filter is full.
+     */
+    private int     victimIndex;
+    private short   victimFingerprint;
+    private boolean hasVictim;
+
+    /**
+     * kickSeed drives the choice of the fingerprint evicted on every kick.
+     */
+    private long kickSeed;
+
+    /**
+     *
+     * @param key
+     * @param buckets a power of two
+     * @throws ConstraintViolationException
+     */
+    private CuckooFilter(final @NotNull ShortHashKey key,
+                         final          int          buckets)
+            throws ConstraintViolationException {
+        super(key);
+        Stodium.checkPow2(buckets);
+        Stodium.checkSize(buckets, 1, MAX_BUCKETS);
+
+        this.table    = ByteBuffer.allocateDirect(buckets * BUCKET_SLOTS * 2);
+        this.buckets  = buckets;
+        this.kickSeed = System.nanoTime() | 1L;
+    }
+
+    /**
+     * create returns a filter with room for at least expectedItems items.
+     *
+     * @param key a SipHashX24 key
+     * @param expectedItems
+     * @return
+     * @throws ConstraintViolationException if expectedItems needs more than
+     *         the largest table
+     */
+    @NotNull
+    public static CuckooFilter create(final @NotNull ShortHashKey key,
+                                      final          long         expectedItems)
+            throws ConstraintViolationException {
+        final long needed = (long) Math.ceil(Math.max(1L, expectedItems)
+                / (BUCKET_SLOTS * LOAD_FACTOR));
+        int buckets = 1;
+
+        Stodium.checkSize(needed, 1L, (long) MAX_BUCKETS);
+        while (buckets < needed) {
+            buckets <<= 1;
+        }
+        return new CuckooFilter(key, buckets);
+    }
+
+    /**
+     *
+     * @return the number of items in the filter
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     *
+     * @return the number of fingerprint slots
+     */
+    public long capacity() {
+        return (long) buckets * BUCKET_SLOTS;
+    }
+
+    /**
+     * remove deletes one occurrence of the item. Only items that were put
+     * before may be removed, or the filter loses other items.
+     *
+     * @param item
+     * @return true if a matching fingerprint was removed
+     * @throws StodiumException
+     */
+    public boolean remove(final @NotNull byte[] item)
+            throws StodiumException {
+        final long[] h = new long[2];
+        key.hash128(h, 0, item, 0, item.length);
+        return remove(h[0], h[1]);
+    }
+
+    /**
+     * remove deletes one occurrence of the remaining bytes of item.
+     *
+     * @param item
+     * @return true if a matching fingerprint was removed
+     * @throws StodiumException
+     */
+    public boolean remove(final @NotNull ByteBuffer item)
+            throws StodiumException {
+        final long[] h = new long[2];
+        key.hash128(h, 0, item.slice());
+        return remove(h[0], h[1]);
+    }
+
+    /**
+     * put adds the item. Every call adds a fingerprint, even if the item was
+     * added before, so it returns false only if the filter is full.
+     */
+    @Override
+    synchronized boolean put(final long h1,
+                             final long h2) {
+        final short fp = fingerprint(h2);
+        final int   i1 = (int) h1 & (buckets - 1);
+        final int   i2 = alternate(i1, fp);
+        int   index;
+        short kicked;
+
+        if (hasVictim) {
+            return false;
+        }
+        if (insert(i1, fp) || insert(i2, fp)) {
+            count++;
+            return true;
+        }
+
+        // evict a random fingerprint, and move it to its alternate bucket
+        index  = (next() & 1) == 0 ? i1 : i2;
+        kicked = fp;
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            final int   slot = offset(index, next() & (BUCKET_SLOTS - 1));
+            final short old  = table.getShort(slot);
+            table.putShort(slot, kicked);
+            kicked = old;
+
+            index = alternate(index, kicked);
+            if (insert(index, kicked)) {
+                count++;
+                return true;
+            }
+        }
+
+        victimIndex       = index;
+        victimFingerprint = kicked;
+        hasVictim         = true;
+        count++;
+        return true;
+    }
+
+    @Override
+    synchronized boolean mightContain(final long h1,
+                                      final long h2) {
+        final short fp = fingerprint(h2);
+        final int   i1 = (int) h1 & (buckets - 1);
+        final int   i2 = alternate(i1, fp);
+
+        return contains(i1, fp) || contains(i2, fp)
+                || (hasVictim && victimFingerprint == fp
+                        && (victimIndex == i1 || victimIndex == i2));
+    }
+
+    synchronized boolean remove(final long h1,
+                                final long h2) {
+        final short fp = fingerprint(h2);
+        final int   i1 = (int) h1 & (buckets - 1);
+        final int   i2 = alternate(i1, fp);
+
+        if (delete(i1, fp) || delete(i2, fp)) {
+            count--;
+            reinsertVictim();
+            return true;
+        }
+        if (hasVictim && victimFingerprint == fp
+                && (victimIndex == i1 || victimIndex == i2)) {
+            hasVictim = false;
+            count--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * reinsertVictim moves the victim back into the table once a slot has
+     * been freed.
+     */
+    private void reinsertVictim() {
+        if (hasVictim && (insert(victimIndex, victimFingerprint)
+                || insert(alternate(victimIndex, victimFingerprint), victimFingerprint))) {
+            hasVictim = false;
+        }
+    }
+
+    /**
+     * fingerprint takes the top 16 bits of h2. Zero marks an empty slot, so
+     * it is mapped to 1.
+     */
+    private static short fingerprint(final long h2) {
+        final short fp = (short) (h2 >>> 48);
+        return fp == 0 ? 1 : fp;
+    }
+
+    /**
+     * alternate returns the other bucket of a fingerprint in bucket index.
+     * Applying it twice returns the original bucket.
+     */
+    private int alternate(final int   index,
+                          final short fp) {
+        return (index ^ ((fp & 0xffff) * 0x5bd1e995)) & (buckets - 1);
+    }
+
+    private static int offset(final int index,
+                              final int slot) {
+        return (index * BUCKET_SLOTS + slot) * 2;
+    }
+
+    private boolean insert(final int   index,
+                           final short fp) {
+        for (int slot = 0; slot < BUCKET_SLOTS; slot++) {
+            if (table.getShort(offset(index, slot)) == 0) {
+                table.putShort(offset(index, slot), fp);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(final int   index,
+                             final short fp) {
+        for (int slot = 0; slot < BUCKET_SLOTS; slot++) {
+            if (table.getShort(offset(index, slot)) == fp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean delete(final int   index,
+                           final short fp) {
+        for (int slot = 0; slot < BUCKET_SLOTS; slot++) {
+            if (table.getShort(offset(index, slot)) == fp) {
+                table.putShort(offset(index, slot), (short) 0);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * next is a xorshift generator; the evictions only need to be
+     * unpredictable enough to avoid cycles.
+     */
+    private int next() {
+        kickSeed ^= kickSeed << 13;
+        kickSeed ^= kickSeed >>> 7;
+        kickSeed ^= kickSeed << 17;
+        return (int) kickSeed;
+    }
+
+    /**
+     *
+     * @return the number of bytes written by {@link #writeTo(FileChannel, long)}
+     */
+    public long serializedBytes() {
+        return HEADER_BYTES + (long) table.capacity();
+    }
+
+    /**
+     * writeTo maps {@link #serializedBytes()} bytes of channel, starting at
+     * position, and writes the filter to them. The key is not written. The
+     * channel must be opened for reading and writing.
+     *
+     * @param channel
+     * @param position
+     * @throws IOException
+     */
+    public synchronized void writeTo(final @NotNull FileChannel channel,
+                                     final          long        position)
+            throws IOException {
+        final MappedByteBuffer map;
+
+        map = channel.map(FileChannel.MapMode.READ_WRITE, position, serializedBytes());
+        map.putInt(MAGIC).putInt(buckets).putInt(count)
+                .putInt(hasVictim ? 1 : 0).putInt(victimIndex).putInt(victimFingerprint);
+        map.put(table.duplicate());
+        map.force();
+    }
+
+    /**
+     * readFrom loads a filter written by {@link #writeTo(FileChannel, long)}.
+     * The key must be the key the filter was created with.
+     *
+     * @param key
+     * @param channel
+     * @param position
+     * @return
+     * @throws IOException
+     * @throws ConstraintViolationException if the region does not hold a
+     *         CuckooFilter
+     */
+    @NotNull
+    public static CuckooFilter readFrom(final @NotNull ShortHashKey key,
+                                        final @NotNull FileChannel  channel,
+                                        final          long         position)
+            throws IOException, ConstraintViolationException {
+        final MappedByteBuffer header, map;
+        final CuckooFilter     filter;
+
+        header = channel.map(FileChannel.MapMode.READ_ONLY, position, HEADER_BYTES);
+        if (header.getInt() != MAGIC) {
+            throw new ConstraintViolationException("CuckooFilter: not a serialized filter");
+        }
+        filter = new CuckooFilter(key, header.getInt());
+        filter.count             = header.getInt();
+        filter.hasVictim         = header.getInt() != 0;
+        filter.victimIndex       = header.getInt() & (filter.buckets - 1);
+        filter.victimFingerprint = (short) header.getInt();
+
+        map = channel.map(FileChannel.MapMode.READ_ONLY, position, filter.serializedBytes());
+        map.position(HEADER_BYTES);
+        filter.table.put(map);
+        filter.table.clear();
+        return filter;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * HashRing is a consistent-hash ring. Every node is placed on the ring at
+ * {@link #virtualNodes()} keyed positions, and an item is owned by the node
+ * at the first position at or after the hash of the item, wrapping around.
+ * <p>
+ * The positions are kept in a sorted long[], with the owning node of every
+ * position in a parallel int[], so a lookup is a single binary search.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class HashRing
+        extends Placement {
+
+    /**
+     * DEFAULT_VIRTUAL_NODES is the number of positions per node used by
+     * {@link #create(ShortHashKey, byte[]...)}.
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    /**
+     *
+     */
+    private final int virtualNodes;
+
+    /**
+     *
+     */
+    private final @NotNull long[] points;
+
+    /**
+     *
+     */
+    private final @NotNull int[] owners;
+
+    /**
+     *
+     * @param key
+     * @param nodes
+     * @param virtualNodes
+     * @param points sorted
+     * @param owners
+     * @throws ConstraintViolationException
+     */
+    private HashRing(final @NotNull ShortHashKey key,
+                     final @NotNull byte[][]     nodes,
+                     final          int          virtualNodes,
+                     final @NotNull long[]       points,
+                     final @NotNull int[]        owners)
+            throws ConstraintViolationException {
+        super(key, nodes);
+        this.virtualNodes = virtualNodes;
+        this.points       = points;
+        this.owners       = owners;
+    }
+
+    /**
+     *
+     * @param key
+     * @param nodes
+     * @return a ring with {@link #DEFAULT_VIRTUAL_NODES} positions per node
+     * @throws StodiumException
+     */
+    @NotNull
+    public static HashRing create(final @NotNull ShortHashKey key,
+                                  final @NotNull byte[]...    nodes)
+            throws StodiumException {
+        return create(key, DEFAULT_VIRTUAL_NODES, nodes);
+    }
+
+    /**
+     *
+     * @param key
+     * @param virtualNodes the number of positions per node
+     * @param nodes
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public static HashRing create(final @NotNull ShortHashKey key,
+                                  final          int          virtualNodes,
+                                  final @NotNull byte[]...    nodes)
+            throws StodiumException {
+        final byte[][] copy = new byte[nodes.length][];
+        Stodium.checkSizeMin(virtualNodes, 1);
+        Stodium.checkSize(nodes.length, 1, Integer.MAX_VALUE / virtualNodes);
+
+        for (int i = 0; i < nodes.length; i++) {
+            copy[i] = nodes[i].clone();
+        }
+
+        final HashRing ring = new HashRing(key, copy, virtualNodes,
+                new long[nodes.length * virtualNodes],
+                new int[nodes.length * virtualNodes]);
+        for (int i = 0; i < nodes.length; i++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.points[i * virtualNodes + v] = ring.nodeHash(copy[i], v);
+                ring.owners[i * virtualNodes + v] = i;
+            }
+        }
+        sort(ring.points, ring.owners);
+        return ring;
+    }
+
+    /**
+     *
+     * @return the number of positions per node
+     */
+    public int virtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * withNode returns a ring that also contains node. Only the positions of
+     * node are hashed; the existing positions are merged in.
+     *
+     * @param node
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public HashRing withNode(final @NotNull byte[] node)
+            throws StodiumException {
+        final int    owner = nodes.length;
+        final long[] added = new long[virtualNodes];
+        final long[] p     = new long[points.length + virtualNodes];
+        final int[]  o     = new int[p.length];
+
+        if (indexOf(node) >= 0) {
+            throw new ConstraintViolationException("HashRing: node is already a member");
+        }
+        Stodium.checkSize(owner + 1, 1, Integer.MAX_VALUE / virtualNodes);
+
+        for (int v = 0; v < virtualNodes; v++) {
+            added[v] = nodeHash(node, v);
+        }
+        Arrays.sort(added);
+
+        // merge; existing positions win ties, so they keep their items
+        for (int i = 0, j = 0, k = 0; k < p.length; k++) {
+            if (j == added.length || (i < points.length && points[i] <= added[j])) {
+                p[k] = points[i];
+                o[k] = owners[i++];
+            } else {
+                p[k] = added[j++];
+                o[k] = owner;
+            }
+        }
+        return new HashRing(key, withNode(nodes, node), virtualNodes, p, o);
+    }
+
+    /**
+     * withoutNode returns a ring without node. Node indices after the index
+     * of node shift down by one.
+     *
+     * @param node
+     * @return
+     * @throws ConstraintViolationException if node is not a member, or is the
+     *         last node
+     */
+    @NotNull
+    public HashRing withoutNode(final @NotNull byte[] node)
+            throws ConstraintViolationException {
+        final int    index = indexOf(node);
+        final long[] p;
+        final int[]  o;
+
+        if (index < 0) {
+            throw new ConstraintViolationException("HashRing: node is not a member");
+        }
+        Stodium.checkSizeMin(nodes.length, 2);
+
+        p = new long[points.length - virtualNodes];
+        o = new int[p.length];
+        for (int i = 0, k = 0; i < points.length; i++) {
+            if (owners[i] != index) {
+                p[k]   = points[i];
+                o[k++] = owners[i] > index ? owners[i] - 1 : owners[i];
+            }
+        }
+        return new HashRing(key, withoutNode(nodes, index), virtualNodes, p, o);
+    }
+
+    @Override
+    int locate(final long h) {
+        int i = Arrays.binarySearch(points, h);
+        if (i < 0) {
+            i = -(i + 1);
+            if (i == points.length) {
+                i = 0;
+            }
+        }
+        // binarySearch may land on any of several equal positions
+        while (i > 0 && points[i - 1] == h) {
+            i--;
+        }
+        return owners[i];
+    }
+
+    /**
+     * sort sorts points in ascending order, applying the same permutation to
+     * owners. Equal points are ordered by owner, so the ring does not depend
+     * on the order the nodes were added in.
+     */
+    private static void sort(final @NotNull long[] points,
+                             final @NotNull int[]  owners) {
+        // heapsort, to avoid boxing every position
+        for (int i = points.length / 2 - 1; i >= 0; i--) {
+            siftDown(points, owners, i, points.length);
+        }
+        for (int end = points.length - 1; end > 0; end--) {
+            swap(points, owners, 0, end);
+            siftDown(points, owners, 0, end);
+        }
+    }
+
+    private static void siftDown(final @NotNull long[] points,
+                                 final @NotNull int[]  owners,
+                                       int             i,
+                                 final int             end) {
+        for (int child = 2 * i + 1; child < end; i = child, child = 2 * i + 1) {
+            if (child + 1 < end && less(points, owners, child, child + 1)) {
+                child++;
+            }
+            if (!less(points, owners, i, child)) {
+                return;
+            }
+            swap(points, owners, i, child);
+        }
+    }
+
+    private static boolean less(final @NotNull long[] points,
+                                final @NotNull int[]  owners,
+                                final          int    a,
+                                final          int    b) {
+        return points[a] < points[b]
+                || (points[a] == points[b] && owners[a] < owners[b]);
+    }
+
+    private static void swap(final @NotNull long[] points,
+                             final @NotNull int[]  owners,
+                             final          int    a,
+                             final          int    b) {
+        final long p = points[a];
+        final int  o = owners[a];
+        points[a] = points[b];
+        owners[a] = owners[b];
+        points[b] = p;
+        owners[b] = o;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * KeyedFilter is the base of the approximate-membership filters keyed by
+ * SipHashX24. Every item is hashed once into two 64-bit words, which the
+ * filters derive all of their indices from. As long as the key is secret, an
+ * attacker cannot choose items that collide in the filter.
+ * <p>
+ * The bulk methods hash a batch of items packed into one buffer with a
+ * single native call per {@link #BULK_ITEMS} items.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class KeyedFilter {
+
+    /**
+     * BULK_ITEMS is the number of items hashed per native call by the bulk
+     * methods.
+     */
+    public static final int BULK_ITEMS = 4096;
+
+    /**
+     *
+     */
+    final @NotNull ShortHashKey key;
+
+    /**
+     *
+     * @param key a SipHashX24 key
+     * @throws ConstraintViolationException if key is not a SipHashX24 key
+     */
+    KeyedFilter(final @NotNull ShortHashKey key)
+            throws ConstraintViolationException {
+        if (key.shortHash().words() != 2) {
+            throw new ConstraintViolationException("KeyedFilter: requires a SipHashX24 key");
+        }
+        this.key = key;
+    }
+
+    /**
+     * put adds the item to the filter.
+     *
+     * @param item
+     * @return true if the filter changed, i.e. the item was definitely not in
+     *         the filter before
+     * @throws StodiumException
+     */
+    public final boolean put(final @NotNull byte[] item)
+            throws StodiumException {
+        final long[] h = new long[2];
+        key.hash128(h, 0, item, 0, item.length);
+        return put(h[0], h[1]);
+    }
+
+    /**
+     * put adds the remaining bytes of item to the filter.
+     *
+     * @param item
+     * @return true if the filter changed
+     * @throws StodiumException
+     */
+    public final boolean put(final @NotNull ByteBuffer item)
+            throws StodiumException {
+        final long[] h = new long[2];
+        key.hash128(h, 0, item.slice());
+        return put(h[0], h[1]);
+    }
+
+    /**
+     *
+     * @param item
+     * @return false if the item is definitely not in the filter
+     * @throws StodiumException
+     */
+    public final boolean mightContain(final @NotNull byte[] item)
+            throws StodiumException {
+        final long[] h = new long[2];
+        key.hash128(h, 0, item, 0, item.length);
+        return mightContain(h[0], h[1]);
+    }
+
+    /**
+     *
+     * @param item
+     * @return false if the remaining bytes of item are definitely not in the
+     *         filter
+     * @throws StodiumException
+     */
+    public final boolean mightContain(final @NotNull ByteBuffer item)
+            throws StodiumException {
+        final long[] h = new long[2];
+        key.hash128(h, 0, item.slice());
+        return mightContain(h[0], h[1]);
+    }
+
+    /**
+     * putAll adds each of the {@code offsets.length - 1} items packed into
+     * src. Item i spans {@code [offsets[i], offsets[i + 1])}, relative to the
+     * position of src.
+     *
+     * @param src
+     * @param offsets
+     * @return the number of items that changed the filter
+     * @throws StodiumException
+     */
+    public final int putAll(final @NotNull ByteBuffer src,
+                            final @NotNull int[]      offsets)
+            throws StodiumException {
+        final int    count = Stodium.checkOffsets(offsets, src.remaining());
+        final long[] h     = new long[2 * Math.min(count, BULK_ITEMS)];
+        int changed = 0;
+
+        for (int from = 0; from < count; from += BULK_ITEMS) {
+            final int n = hashChunk(h, src, offsets, from, count);
+            for (int i = 0; i < n; i++) {
+                if (put(h[2 * i], h[2 * i + 1])) {
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * mightContainAll queries each of the items packed into src, as described
+     * by {@link #putAll(ByteBuffer, int[])}, and stores the result for item i
+     * in {@code dst[i]}.
+     *
+     * @param dst
+     * @param src
+     * @param offsets
+     * @return the number of items that might be in the filter
+     * @throws StodiumException
+     */
+    public final int mightContainAll(final @NotNull boolean[]  dst,
+                                     final @NotNull ByteBuffer src,
+                                     final @NotNull int[]      offsets)
+            throws StodiumException {
+        final int    count = Stodium.checkOffsets(offsets, src.remaining());
+        final long[] h     = new long[2 * Math.min(count, BULK_ITEMS)];
+        int found = 0;
+
+        Stodium.checkSizeMin(dst.length, count);
+        for (int from = 0; from < count; from += BULK_ITEMS) {
+            final int n = hashChunk(h, src, offsets, from, count);
+            for (int i = 0; i < n; i++) {
+                if (dst[from + i] = mightContain(h[2 * i], h[2 * i + 1])) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * hashChunk hashes up to BULK_ITEMS items starting at from into h, and
+     * returns the number of items hashed.
+     */
+    private int hashChunk(final @NotNull long[]     h,
+                          final @NotNull ByteBuffer src,
+                          final @NotNull int[]      offsets,
+                          final          int        from,
+                          final          int        count)
+            throws StodiumException {
+        final int        n = Math.min(BULK_ITEMS, count - from);
+        final int[]      chunk = new int[n + 1];
+        final ByteBuffer in    = src.duplicate();
+
+        for (int i = 0; i <= n; i++) {
+            chunk[i] = offsets[from + i] - offsets[from];
+        }
+        in.position(src.position() + offsets[from]);
+        key.hashAll(h, 0, in.slice(), chunk);
+        return n;
+    }
+
+    /**
+     * put adds the item with the base hashes h1 and h2.
+     */
+    abstract boolean put(final long h1,
+                         final long h2);
+
+    /**
+     * mightContain queries the item with the base hashes h1 and h2.
+     */
+    abstract boolean mightContain(final long h1,
+                                  final long h2);
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * Placement is the base of the keyed placement functions, which map items to
+ * one of a fixed list of nodes. Items are hashed with a secret ShortHash key,
+ * so the placement cannot be predicted or manipulated without the key.
+ * <p>
+ * Placements are immutable. Membership changes return a new Placement, in
+ * which only the items owned by the removed node, or claimed by the added
+ * node, move. Lookups return the index of the node in {@link #node(int)} of
+ * the Placement they are made on.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public abstract class Placement {
+
+    /**
+     * BULK_ITEMS is the number of items hashed per native call by
+     * {@link #lookupAll(int[], ByteBuffer, int[])}.
+     */
+    public static final int BULK_ITEMS = 4096;
+
+    /**
+     *
+     */
+    final @NotNull ShortHashKey key;
+
+    /**
+     *
+     */
+    final @NotNull byte[][] nodes;
+
+    /**
+     *
+     * @param key
+     * @param nodes
+     * @throws ConstraintViolationException if there are no nodes
+     */
+    Placement(final @NotNull ShortHashKey key,
+              final @NotNull byte[][]     nodes)
+            throws ConstraintViolationException {
+        Stodium.checkSizeMin(nodes.length, 1);
+        this.key   = key;
+        this.nodes = nodes;
+    }
+
+    /**
+     *
+     * @return the number of nodes
+     */
+    public final int nodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     *
+     * @param index
+     * @return a copy of the identifier of the node at index
+     */
+    @NotNull
+    public final byte[] node(final int index) {
+        return nodes[index].clone();
+    }
+
+    /**
+     *
+     * @param node
+     * @return the index of node, or -1 if it is not a member
+     */
+    public final int indexOf(final @NotNull byte[] node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (Arrays.equals(nodes[i], node)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param item
+     * @return the index of the node that owns item
+     * @throws StodiumException
+     */
+    public final int lookup(final @NotNull byte[] item)
+            throws StodiumException {
+        return locate(key.hash64(item, 0, item.length));
+    }
+
+    /**
+     *
+     * @param item
+     * @return the index of the node that owns the remaining bytes of item
+     */
+    public final int lookup(final @NotNull ByteBuffer item) {
+        return locate(key.hash64(item.slice()));
+    }
+
+    /**
+     * lookupAll looks up each of the {@code offsets.length - 1} items packed
+     * into src, and stores the node index for item i in {@code dst[i]}. Item i
+     * spans {@code [offsets[i], offsets[i + 1])}, relative to the position of
+     * src.
+     *
+     * @param dst
+     * @param src
+     * @param offsets
+     * @throws StodiumException
+     */
+    public final void lookupAll(final @NotNull int[]      dst,
+                                final @NotNull ByteBuffer src,
+                                final @NotNull int[]      offsets)
+            throws StodiumException {
+        final int    count = Stodium.checkOffsets(offsets, src.remaining());
+        final int    words = key.shortHash().words();
+        final long[] h     = new long[words * Math.min(count, BULK_ITEMS)];
+        final int[]  chunk = new int[Math.min(count, BULK_ITEMS) + 1];
+
+        Stodium.checkSizeMin(dst.length, count);
+        for (int from = 0; from < count; from += BULK_ITEMS) {
+            final int        n  = Math.min(BULK_ITEMS, count - from);
+            final ByteBuffer in = src.duplicate();
+
+            for (int i = 0; i <= n; i++) {
+                chunk[i] = offsets[from + i] - offsets[from];
+            }
+            in.position(src.position() + offsets[from]);
+            key.hashAll(h, 0, in.slice(), n == chunk.length - 1
+                    ? chunk : Arrays.copyOf(chunk, n + 1));
+
+            for (int i = 0; i < n; i++) {
+                dst[from + i] = locate(h[words * i]);
+            }
+        }
+    }
+
+    /**
+     * nodeHash hashes the identifier of a node, followed by the big-endian
+     * replica number.
+     */
+    final long nodeHash(final @NotNull byte[] node,
+                        final          int    replica)
+            throws StodiumException {
+        final byte[] in = Arrays.copyOf(node, node.length + 4);
+
+        in[node.length]     = (byte) (replica >>> 24);
+        in[node.length + 1] = (byte) (replica >>> 16);
+        in[node.length + 2] = (byte) (replica >>> 8);
+        in[node.length + 3] = (byte) replica;
+        return key.hash64(in, 0, in.length);
+    }
+
+    /**
+     * withNode copies nodes and appends node to the copy.
+     */
+    @NotNull
+    static byte[][] withNode(final @NotNull byte[][] nodes,
+                             final @NotNull byte[]   node) {
+        final byte[][] copy = Arrays.copyOf(nodes, nodes.length + 1);
+        copy[nodes.length] = node.clone();
+        return copy;
+    }
+
+    /**
+     * withoutNode copies nodes, leaving out the node at index.
+     */
+    @NotNull
+    static byte[][] withoutNode(final @NotNull byte[][] nodes,
+                                final          int      index) {
+        final byte[][] copy = new byte[nodes.length - 1][];
+        System.arraycopy(nodes, 0, copy, 0, index);
+        System.arraycopy(nodes, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+
+    /**
+     * locate returns the index of the node that owns the item hash h.
+     */
+    abstract int locate(final long h);
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * RendezvousHash implements rendezvous, or highest random weight, hashing:
+ * every node scores the item, and the node with the highest score owns it.
+ * Adding or removing a node only moves the items that node wins or owned.
+ * <p>
+ * Each node is hashed once with the key, into a seed kept in a long[]. An
+ * item is hashed once as well; the score for a node is the 64-bit finalizer
+ * of MurmurHash3 applied to the item hash and the node seed. As the item hash
+ * is keyed, the scores cannot be predicted without the key. A lookup costs
+ * one hash and O(n) multiplications; prefer {@link HashRing} for large node
+ * sets.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class RendezvousHash
+        extends Placement {
+
+    /**
+     *
+     */
+    private final @NotNull long[] seeds;
+
+    /**
+     *
+     * @param key
+     * @param nodes
+     * @param seeds
+     * @throws ConstraintViolationException
+     */
+    private RendezvousHash(final @NotNull ShortHashKey key,
+                           final @NotNull byte[][]     nodes,
+                           final @NotNull long[]       seeds)
+            throws ConstraintViolationException {
+        super(key, nodes);
+        this.seeds = seeds;
+    }
+
+    /**
+     *
+     * @param key
+     * @param nodes
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public static RendezvousHash create(final @NotNull ShortHashKey key,
+                                        final @NotNull byte[]...    nodes)
+            throws StodiumException {
+        final byte[][]       copy = new byte[nodes.length][];
+        final RendezvousHash hrw;
+
+        for (int i = 0; i < nodes.length; i++) {
+            copy[i] = nodes[i].clone();
+        }
+        hrw = new RendezvousHash(key, copy, new long[nodes.length]);
+        for (int i = 0; i < nodes.length; i++) {
+            hrw.seeds[i] = hrw.nodeHash(copy[i], 0);
+        }
+        return hrw;
+    }
+
+    /**
+     * withNode returns a placement that also contains node.
+     *
+     * @param node
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public RendezvousHash withNode(final @NotNull byte[] node)
+            throws StodiumException {
+        final long[] s = new long[seeds.length + 1];
+
+        if (indexOf(node) >= 0) {
+            throw new ConstraintViolationException("RendezvousHash: node is already a member");
+        }
+        System.arraycopy(seeds, 0, s, 0, seeds.length);
+        s[seeds.length] = nodeHash(node, 0);
+        return new RendezvousHash(key, withNode(nodes, node), s);
+    }
+
+    /**
+     * withoutNode returns a placement without node. Node indices after the
+     * index of node shift down by one.
+     *
+     * @param node
+     * @return
+     * @throws ConstraintViolationException if node is not a member, or is the
+     *         last node
+     */
+    @NotNull
+    public RendezvousHash withoutNode(final @NotNull byte[] node)
+            throws ConstraintViolationException {
+        final int    index = indexOf(node);
+        final long[] s;
+
+        if (index < 0) {
+            throw new ConstraintViolationException("RendezvousHash: node is not a member");
+        }
+        Stodium.checkSizeMin(nodes.length, 2);
+
+        s = new long[seeds.length - 1];
+        System.arraycopy(seeds, 0, s, 0, index);
+        System.arraycopy(seeds, index + 1, s, index, s.length - index);
+        return new RendezvousHash(key, withoutNode(nodes, index), s);
+    }
+
+    @Override
+    int locate(final long h) {
+        int  best      = 0;
+        long bestScore = score(h, seeds[0]);
+
+        for (int i = 1; i < seeds.length; i++) {
+            final long score = score(h, seeds[i]);
+            if (score > bestScore) {
+                best      = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * score mixes the item hash with a node seed, using the fmix64 finalizer
+     * of MurmurHash3.
+     */
+    private static long score(final long h,
+                              final long seed) {
+        long k = h ^ seed;
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
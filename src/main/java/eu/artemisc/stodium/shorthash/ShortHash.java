@@ -8,10 +8,22 @@
 package eu.artemisc.stodium.shorthash;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import eu.artemisc.stodium.Singleton;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.OperationFailedException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
@@ -50,6 +62,14 @@ public abstract class ShortHash {
         return SIPHASHX24.get();
     }
 
+    /**
+     * BATCH_SPLIT is the batch size from which a batch is split across an
+     * executor; smaller batches are hashed on the calling thread. Larger
+     * batches are divided evenly over at most one task per processor, so a
+     * single task can receive fewer than BATCH_SPLIT inputs.
+     */
+    public static final int BATCH_SPLIT = 16384;
+
     // constants
     final int BYTES;
     final int KEYBYTES;
@@ -92,4 +112,417 @@ public abstract class ShortHash {
                               final @NotNull ByteBuffer in,
                               final @NotNull ByteBuffer key)
             throws StodiumException;
+
+    /**
+     * hash64 returns the first 8 bytes of the hash of in as a little-endian
+     * long, without allocating an output buffer. For SipHash-2-4 this is the
+     * complete hash.
+     *
+     * @param in
+     * @param key
+     * @return
+     * @throws StodiumException
+     */
+    public final long hash64(final @NotNull ByteBuffer in,
+                             final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        return digest64(Stodium.ensureUsableByteBuffer(in),
+                Stodium.ensureUsableByteBuffer(key));
+    }
+
+    /**
+     * hash64 returns the first 8 bytes of the hash of {@code in[off, off+len)}
+     * as a little-endian long. The input is read straight from the array.
+     *
+     * @param in
+     * @param off
+     * @param len
+     * @param key
+     * @return
+     * @throws StodiumException
+     */
+    public final long hash64(final @NotNull byte[]     in,
+                             final          int        off,
+                             final          int        len,
+                             final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkOffsetParams(in.length, off, len);
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        return digest64(in, off, len, Stodium.ensureUsableByteBuffer(key));
+    }
+
+    /**
+     * hash128 writes the 16-byte hash of in to {@code dst[dstOff]} and
+     * {@code dst[dstOff + 1]}, as two little-endian longs. Only supported by
+     * SipHashX24; any other primitive throws a ConstraintViolationException.
+     *
+     * @param dst
+     * @param dstOff
+     * @param in
+     * @param key
+     * @throws StodiumException
+     */
+    public final void hash128(final @NotNull long[]     dst,
+                              final          int        dstOff,
+                              final @NotNull ByteBuffer in,
+                              final @NotNull ByteBuffer key)
+            throws StodiumException {
+        check128();
+        Stodium.checkSize(dstOff, 0, dst.length - 2);
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        digest128(dst, dstOff, Stodium.ensureUsableByteBuffer(in),
+                Stodium.ensureUsableByteBuffer(key));
+    }
+
+    /**
+     * hash128 writes the 16-byte hash of {@code in[off, off+len)} to
+     * {@code dst[dstOff]} and {@code dst[dstOff + 1]}, as two little-endian
+     * longs. Only supported by SipHashX24; any other primitive throws a
+     * ConstraintViolationException.
+     *
+     * @param dst
+     * @param dstOff
+     * @param in
+     * @param off
+     * @param len
+     * @param key
+     * @throws StodiumException
+     */
+    public final void hash128(final @NotNull long[]     dst,
+                              final          int        dstOff,
+                              final @NotNull byte[]     in,
+                              final          int        off,
+                              final          int        len,
+                              final @NotNull ByteBuffer key)
+            throws StodiumException {
+        check128();
+        Stodium.checkSize(dstOff, 0, dst.length - 2);
+        Stodium.checkOffsetParams(in.length, off, len);
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        digest128(dst, dstOff, in, off, len, Stodium.ensureUsableByteBuffer(key));
+    }
+
+    /**
+     * key copies key into a direct buffer owned by the returned
+     * {@link ShortHashKey}, which hashes without validating the key on every
+     * call.
+     *
+     * @param key
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    public final ShortHashKey key(final @NotNull ByteBuffer key)
+            throws StodiumException {
+        final ByteBuffer pinned;
+
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        pinned = ByteBuffer.allocateDirect(KEYBYTES);
+        pinned.duplicate().put(key.duplicate());
+        return new ShortHashKey(this, pinned);
+    }
+
+    /**
+     * hashAll hashes each of the {@code offsets.length - 1} inputs packed into
+     * src in a single native call. Input i spans
+     * {@code [offsets[i], offsets[i + 1])}, relative to the position of src.
+     * Its hash is stored as {@link #words()} little-endian longs, starting at
+     * {@code dst[dstOff + i * words()]}.
+     *
+     * @param dst
+     * @param dstOff
+     * @param src
+     * @param offsets
+     * @param key
+     * @throws StodiumException
+     */
+    public final void hashAll(final @NotNull long[]     dst,
+                              final          int        dstOff,
+                              final @NotNull ByteBuffer src,
+                              final @NotNull int[]      offsets,
+                              final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        batch(dst, dstOff, src, offsets, Stodium.ensureUsableByteBuffer(key), null);
+    }
+
+    /**
+     * hashAll hashes the inputs like {@link #hashAll(long[], int, ByteBuffer,
+     * int[], ByteBuffer)}, but splits batches larger than
+     * {@link #BATCH_SPLIT} inputs into ranges that are hashed on executor.
+     * The call returns once all ranges are done.
+     *
+     * @param dst
+     * @param dstOff
+     * @param src
+     * @param offsets
+     * @param key
+     * @param executor
+     * @throws StodiumException
+     */
+    public final void hashAll(final @NotNull long[]          dst,
+                              final          int             dstOff,
+                              final @NotNull ByteBuffer      src,
+                              final @NotNull int[]           offsets,
+                              final @NotNull ByteBuffer      key,
+                              final @NotNull ExecutorService executor)
+            throws StodiumException {
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        batch(dst, dstOff, src, offsets, Stodium.ensureUsableByteBuffer(key), executor);
+    }
+
+    /**
+     * hashAll hashes the inputs like {@link #hashAll(long[], int, ByteBuffer,
+     * int[], ByteBuffer)}, storing the hashes in dst starting at its
+     * position. The position of dst is not changed. Direct buffers in native
+     * byte order are written to in place.
+     *
+     * @param dst
+     * @param src
+     * @param offsets
+     * @param key
+     * @throws StodiumException
+     */
+    public final void hashAll(final @NotNull LongBuffer dst,
+                              final @NotNull ByteBuffer src,
+                              final @NotNull int[]      offsets,
+                              final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        batch(dst, src, offsets, Stodium.ensureUsableByteBuffer(key), null);
+    }
+
+    /**
+     * hashAll hashes the inputs like {@link #hashAll(LongBuffer, ByteBuffer,
+     * int[], ByteBuffer)}, but splits large batches over executor.
+     *
+     * @param dst
+     * @param src
+     * @param offsets
+     * @param key
+     * @param executor
+     * @throws StodiumException
+     */
+    public final void hashAll(final @NotNull LongBuffer      dst,
+                              final @NotNull ByteBuffer      src,
+                              final @NotNull int[]           offsets,
+                              final @NotNull ByteBuffer      key,
+                              final @NotNull ExecutorService executor)
+            throws StodiumException {
+        Stodium.checkSize(key.remaining(), KEYBYTES);
+        batch(dst, src, offsets, Stodium.ensureUsableByteBuffer(key), executor);
+    }
+
+    /**
+     *
+     * @return the number of longs a single hash is stored as by hashAll
+     */
+    public final int words() {
+        return BYTES / 8;
+    }
+
+    /**
+     * check128 rejects hash128 before anything is hashed, unless the hash is
+     * 128 bits.
+     */
+    final void check128()
+            throws ConstraintViolationException {
+        if (words() != 2) {
+            throw new ConstraintViolationException("ShortHash: hash128 requires a 128-bit hash");
+        }
+    }
+
+    /**
+     * batch checks the batch, and hashes it on the calling thread if
+     * executor is null. The key has already been checked.
+     */
+    final void batch(final @NotNull  long[]          dst,
+                     final           int             dstOff,
+                     final @NotNull  ByteBuffer      src,
+                     final @NotNull  int[]           offsets,
+                     final @NotNull  ByteBuffer      key,
+                     final @Nullable ExecutorService executor)
+            throws StodiumException {
+        final int        count;
+        final ByteBuffer in;
+
+        count = Stodium.checkOffsets(offsets, src.remaining());
+        Stodium.checkSize(dstOff, 0, dst.length);
+        Stodium.checkSize((long) dstOff + (long) count * words(), 0L, (long) dst.length);
+
+        in = Stodium.ensureUsableByteBuffer(src).slice();
+        split(count, executor, new Range() {
+            @Override
+            public void hash(final int from,
+                             final int to)
+                    throws StodiumException {
+                hashRange(dst, dstOff, in, offsets, from, to, key);
+            }
+        });
+    }
+
+    /**
+     * batch checks the batch, and hashes it on the calling thread if
+     * executor is null. The key has already been checked.
+     */
+    final void batch(final @NotNull  LongBuffer      dst,
+                     final @NotNull  ByteBuffer      src,
+                     final @NotNull  int[]           offsets,
+                     final @NotNull  ByteBuffer      key,
+                     final @Nullable ExecutorService executor)
+            throws StodiumException {
+        final int        count;
+        final ByteBuffer in;
+        final long[]     tmp;
+
+        count = Stodium.checkOffsets(offsets, src.remaining());
+        Stodium.checkSize((long) count * words(), 0L, (long) dst.remaining());
+
+        if (dst.hasArray()) {
+            batch(dst.array(), dst.arrayOffset() + dst.position(),
+                  src, offsets, key, executor);
+            return;
+        }
+        if (!dst.isDirect() || dst.order() != ByteOrder.nativeOrder()) {
+            tmp = new long[count * words()];
+            batch(tmp, 0, src, offsets, key, executor);
+            dst.duplicate().put(tmp);
+            return;
+        }
+
+        in = Stodium.ensureUsableByteBuffer(src).slice();
+        split(count, executor, new Range() {
+            @Override
+            public void hash(final int from,
+                             final int to)
+                    throws StodiumException {
+                hashRange(dst, dst.position(), in, offsets, from, to, key);
+            }
+        });
+    }
+
+    /**
+     * Range hashes a range of the inputs of a batch.
+     */
+    private interface Range {
+        void hash(final int from,
+                  final int to)
+                throws StodiumException;
+    }
+
+    /**
+     * split hashes count inputs in even ranges submitted to executor, one per
+     * started {@link #BATCH_SPLIT} inputs up to one per processor, or in a
+     * single range on the calling thread if the batch is small or executor is
+     * null.
+     */
+    private static void split(final           int             count,
+                              final @Nullable ExecutorService executor,
+                              final @NotNull  Range           range)
+            throws StodiumException {
+        final List<Future<Void>> tasks;
+        final int                tasksMax, step;
+
+        tasksMax = Math.min(Runtime.getRuntime().availableProcessors(),
+                (count + BATCH_SPLIT - 1) / BATCH_SPLIT);
+        if (executor == null || tasksMax <= 1) {
+            range.hash(0, count);
+            return;
+        }
+
+        step  = (count + tasksMax - 1) / tasksMax;
+        tasks = new ArrayList<>(tasksMax);
+        try {
+            for (int from = 0; from < count; from += step) {
+                final int start = from;
+                final int end   = Math.min(count, from + step);
+                tasks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call()
+                            throws StodiumException {
+                        range.hash(start, end);
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationFailedException("ShortHash: interrupted", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof StodiumException) {
+                throw (StodiumException) cause;
+            }
+            throw new OperationFailedException(cause);
+        } finally {
+            for (final Future<Void> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * hashRange hashes inputs [from, to) in a single native call. The
+     * arguments have already been checked, and src starts at the first byte
+     * of the batch.
+     */
+    abstract void hashRange(final @NotNull long[]     dst,
+                            final          int        dstOff,
+                            final @NotNull ByteBuffer src,
+                            final @NotNull int[]      offsets,
+                            final          int        from,
+                            final          int        to,
+                            final @NotNull ByteBuffer key)
+            throws StodiumException;
+
+    /**
+     * hashRange hashes inputs [from, to) into a direct LongBuffer in native
+     * byte order.
+     */
+    abstract void hashRange(final @NotNull LongBuffer dst,
+                            final          int        dstOff,
+                            final @NotNull ByteBuffer src,
+                            final @NotNull int[]      offsets,
+                            final          int        from,
+                            final          int        to,
+                            final @NotNull ByteBuffer key)
+            throws StodiumException;
+
+    /**
+     * The digest methods are called with validated arguments only, and every
+     * ByteBuffer passed to them is usable by the native code.
+     */
+    abstract long digest64(final @NotNull ByteBuffer in,
+                           final @NotNull ByteBuffer key);
+
+    abstract long digest64(final @NotNull byte[]     in,
+                           final          int        off,
+                           final          int        len,
+                           final @NotNull ByteBuffer key);
+
+    /**
+     * digest128 is only implemented by the 128-bit hashes. hash128 calls
+     * {@link #check128()} first, so the default is not reached.
+     */
+    void digest128(final @NotNull long[]     dst,
+                   final          int        dstOff,
+                   final @NotNull ByteBuffer in,
+                   final @NotNull ByteBuffer key)
+            throws StodiumException {
+        throw new ConstraintViolationException("ShortHash: hash128 requires a 128-bit hash");
+    }
+
+    void digest128(final @NotNull long[]     dst,
+                   final          int        dstOff,
+                   final @NotNull byte[]     in,
+                   final          int        off,
+                   final          int        len,
+                   final @NotNull ByteBuffer key)
+            throws StodiumException {
+        throw new ConstraintViolationException("ShortHash: hash128 requires a 128-bit hash");
+    }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * ShortHashKey binds a {@link ShortHash} to a key held in a direct buffer, for
+ * use in hash tables and similar structures that hash many short inputs under
+ * a single key. The key is validated once, when the ShortHashKey is created,
+ * after which every hash is a single native call that returns the result as a
+ * primitive long.
+ * <p>
+ * A ShortHashKey is safe to use from multiple threads, as the key is only
+ * ever read.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class ShortHashKey {
+
+    /**
+     *
+     */
+    private final @NotNull ShortHash shortHash;
+
+    /**
+     *
+     */
+    private final @NotNull ByteBuffer key;
+
+    /**
+     *
+     * @param shortHash
+     * @param key a direct buffer of exactly {@link ShortHash#keyBytes()}
+     */
+    ShortHashKey(final @NotNull ShortHash  shortHash,
+                 final @NotNull ByteBuffer key) {
+        this.shortHash = shortHash;
+        this.key       = key;
+    }
+
+    /**
+     *
+     * @return the primitive the key is used with
+     */
+    @NotNull
+    public ShortHash shortHash() {
+        return shortHash;
+    }
+
+    /**
+     * hash64 returns the first 8 bytes of the hash of in as a little-endian
+     * long.
+     *
+     * @param in
+     * @return
+     */
+    public long hash64(final @NotNull ByteBuffer in) {
+        return shortHash.digest64(Stodium.ensureUsableByteBuffer(in), key);
+    }
+
+    /**
+     * hash64 returns the first 8 bytes of the hash of {@code in[off, off+len)}
+     * as a little-endian long.
+     *
+     * @param in
+     * @param off
+     * @param len
+     * @return
+     * @throws StodiumException
+     */
+    public long hash64(final @NotNull byte[] in,
+                       final          int    off,
+                       final          int    len)
+            throws StodiumException {
+        Stodium.checkOffsetParams(in.length, off, len);
+        return shortHash.digest64(in, off, len, key);
+    }
+
+    /**
+     * hash128 writes the 16-byte hash of in to {@code dst[dstOff]} and
+     * {@code dst[dstOff + 1]}. Only supported by SipHashX24; any other
+     * primitive throws a ConstraintViolationException.
+     *
+     * @param dst
+     * @param dstOff
+     * @param in
+     * @throws StodiumException
+     */
+    public void hash128(final @NotNull long[]     dst,
+                        final          int        dstOff,
+                        final @NotNull ByteBuffer in)
+            throws StodiumException {
+        shortHash.check128();
+        Stodium.checkSize(dstOff, 0, dst.length - 2);
+        shortHash.digest128(dst, dstOff, Stodium.ensureUsableByteBuffer(in), key);
+    }
+
+    /**
+     * hash128 writes the 16-byte hash of {@code in[off, off+len)} to
+     * {@code dst[dstOff]} and {@code dst[dstOff + 1]}. Only supported by
+     * SipHashX24; any other primitive throws a ConstraintViolationException.
+     *
+     * @param dst
+     * @param dstOff
+     * @param in
+     * @param off
+     * @param len
+     * @throws StodiumException
+     */
+    public void hash128(final @NotNull long[] dst,
+                        final          int    dstOff,
+                        final @NotNull byte[] in,
+                        final          int    off,
+                        final          int    len)
+            throws StodiumException {
+        shortHash.check128();
+        Stodium.checkSize(dstOff, 0, dst.length - 2);
+        Stodium.checkOffsetParams(in.length, off, len);
+        shortHash.digest128(dst, dstOff, in, off, len, key);
+    }
+
+    /**
+     * hashAll hashes every input packed into src under this key, as described
+     * by {@link ShortHash#hashAll(long[], int, ByteBuffer, int[], ByteBuffer)}.
+     *
+     * @param dst
+     * @param dstOff
+     * @param src
+     * @param offsets
+     * @throws StodiumException
+     */
+    public void hashAll(final @NotNull long[]     dst,
+                        final          int        dstOff,
+                        final @NotNull ByteBuffer src,
+                        final @NotNull int[]      offsets)
+            throws StodiumException {
+        shortHash.batch(dst, dstOff, src, offsets, key, null);
+    }
+
+    /**
+     * hashAll hashes every input packed into src under this key, splitting
+     * large batches over executor.
+     *
+     * @param dst
+     * @param dstOff
+     * @param src
+     * @param offsets
+     * @param executor
+     * @throws StodiumException
+     */
+    public void hashAll(final @NotNull long[]          dst,
+                        final          int             dstOff,
+                        final @NotNull ByteBuffer      src,
+                        final @NotNull int[]           offsets,
+                        final @NotNull ExecutorService executor)
+            throws StodiumException {
+        shortHash.batch(dst, dstOff, src, offsets, key, executor);
+    }
+
+    /**
+     * wipe zeroes the key. The ShortHashKey must not be used afterwards.
+     */
+    public void wipe() {
+        Stodium.wipeBytes(key.duplicate());
+    }
+}
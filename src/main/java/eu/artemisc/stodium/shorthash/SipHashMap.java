@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2017 Project ArteMisc
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * SipHashMap is an open-addressing hash map from byte strings to primitive
+ * longs, meant for indexing attacker-controlled keys. Keys are hashed with
+ * SipHash-2-4 under a random key that is private to the map, so an attacker
+ * cannot predict which keys collide, and a fresh key is drawn whenever the map
+ * is rehashed.
+ * <p>
+ * Both the slot table and the key bytes are stored off-heap, in direct
+ * buffers, so a map holding millions of entries creates no garbage besides a
+ * handful of large buffers. Growing the map does not copy the table in one
+ * go; instead, every operation moves {@link #MIGRATE_SLOTS} slots from the old
+ * table to the new one, until the old table is drained. Key bytes of removed
+ * entries are reclaimed when the entries are migrated.
+ * <p>
+ * A SipHashMap is not safe to use from multiple threads without external
+ * synchronization; note that lookups also advance a running migration.
+ *
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public final class SipHashMap {
+
+    /**
+     * EntryVisitor is called for every entry by {@link #forEach(EntryVisitor)}.
+     */
+    public interface EntryVisitor {
+        /**
+         *
+         * @param key a read-only view of the key bytes, only valid during the
+         *            call
+         * @param value
+         */
+        void visit(final @NotNull ByteBuffer key,
+                   final          long       value);
+    }
+
+    /**
+     * MIGRATE_SLOTS is the number of slots of the old table that every
+     * operation migrates while the map is being rehashed.
+     */
+    public static final int MIGRATE_SLOTS = 64;
+
+    /**
+     *
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * MAX_CAPACITY is the largest slot table whose byte offsets fit in an int.
+     */
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    /**
+     * MAX_ENTRIES is the largest number of entries a map holds, at 3/8 load of
+     * the largest table, so a rehash never needs a larger table.
+     */
+    public static final int MAX_ENTRIES = (MAX_CAPACITY >>> 1) - (MAX_CAPACITY >>> 3);
+
+    /**
+     * SLAB_BYTES is the size of the off-heap slabs key bytes are appended to.
+     * Keys that do not fit in a slab get a slab of their own.
+     */
+    private static final int SLAB_BYTES = 64 * 1024;
+
+    /**
+     * A slot consists of the 64-bit hash, the value, and a reference to the
+     * key bytes, which is EMPTY or TOMBSTONE for unused slots.
+     */
+    private static final int SLOT_BYTES   = 24;
+    private static final int HASH_OFFSET  = 0;
+    private static final int VALUE_OFFSET = 8;
+    private static final int REF_OFFSET   = 16;
+
+    private static final long EMPTY     = 0L;
+    private static final long TOMBSTONE = -1L;
+
+    /**
+     * Table is a single generation of the map: a slot table, the slabs that
+     * hold its keys, and the SipHash key it was built with.
+     */
+    private static final class Table {
+        final @NotNull ByteBuffer            key;
+        final @NotNull ByteBuffer            slots;
+        final @NotNull ArrayList<ByteBuffer> slabs;
+        final          int                   capacity;
+        final          int                   mask;
+
+        @Nullable ByteBuffer slab;
+        int                  live;
+        int                  used;
+
+        Table(final int capacity) {
+            this.key      = ByteBuffer.allocateDirect(SIPHASH24.keyBytes());
+            this.slots    = ByteBuffer.allocateDirect(capacity * SLOT_BYTES)
+                    .order(ByteOrder.nativeOrder());
+            this.slabs    = new ArrayList<>();
+            this.capacity = capacity;
+            this.mask     = capacity - 1;
+            RandomBytes.nextBytes(key);
+        }
+
+        long hash(final @NotNull ByteBuffer k) {
+            if (k.hasArray()) {
+                return SIPHASH24.digest64(k.array(),
+                        k.arrayOffset() + k.position(), k.remaining(), key);
+            }
+            return SIPHASH24.digest64(Stodium.ensureUsableByteBuffer(k.slice()), key);
+        }
+
+        long slotHash(final int i) {
+            return slots.getLong(i * SLOT_BYTES + HASH_OFFSET);
+        }
+
+        long slotValue(final int i) {
+            return slots.getLong(i * SLOT_BYTES + VALUE_OFFSET);
+        }
+
+        long slotRef(final int i) {
+            return slots.getLong(i * SLOT_BYTES + REF_OFFSET);
+        }
+
+        void setValue(final int  i,
+                      final long value) {
+            slots.putLong(i * SLOT_BYTES + VALUE_OFFSET, value);
+        }
+
+        /**
+         * find returns the slot holding k, or -1.
+         */
+        int find(final @NotNull ByteBuffer k,
+                 final          long       h) {
+            for (int i = (int) h & mask; ; i = (i + 1) & mask) {
+                final long ref = slotRef(i);
+                if (ref == EMPTY) {
+                    return -1;
+                }
+                if (ref != TOMBSTONE && slotHash(i) == h && keyEquals(ref, k)) {
+                    return i;
+                }
+            }
+        }
+
+        /**
+         * insert stores k, which must not be in the table yet.
+         */
+        void insert(final @NotNull ByteBuffer k,
+                    final          long       h,
+                    final          long       value) {
+            int i = (int) h & mask;
+            while (slotRef(i) != EMPTY && slotRef(i) != TOMBSTONE) {
+                i = (i + 1) & mask;
+            }
+            if (slotRef(i) == EMPTY) {
+                used++;
+            }
+            live++;
+
+            slots.putLong(i * SLOT_BYTES + HASH_OFFSET, h);
+            slots.putLong(i * SLOT_BYTES + VALUE_OFFSET, value);
+            slots.putLong(i * SLOT_BYTES + REF_OFFSET, store(k));
+        }
+
+        void delete(final int i) {
+            slots.putLong(i * SLOT_BYTES + REF_OFFSET, TOMBSTONE);
+            live--;
+        }
+
+        /**
+         * store appends k to the current slab, and returns a reference of
+         * the form {@code (slab + 1) << 32 | offset}.
+         */
+        long store(final @NotNull ByteBuffer k) {
+            final int len = k.remaining();
+            if (slab == null || slab.remaining() < 4 + len) {
+                slab = ByteBuffer.allocateDirect(Math.max(SLAB_BYTES, 4 + len));
+                slabs.add(slab);
+            }
+
+            final long ref = ((long) slabs.size() << 32) | slab.position();
+            slab.putInt(len);
+            slab.put(k.duplicate());
+            return ref;
+        }
+
+        /**
+         * keyAt returns a view of the key referenced by ref, with the key
+         * bytes between its position and limit.
+         */
+        @NotNull
+        ByteBuffer keyAt(final long ref) {
+            final ByteBuffer s   = slabs.get((int) (ref >>> 32) - 1);
+            final int        off = (int) ref + 4;
+            final ByteBuffer k   = s.duplicate();
+            k.limit(off + s.getInt(off - 4)).position(off);
+            return k;
+        }
+
+        boolean keyEquals(final          long       ref,
+                          final @NotNull ByteBuffer k) {
+            final ByteBuffer s   = slabs.get((int) (ref >>> 32) - 1);
+            final int        off = (int) ref + 4;
+            final int        len = s.getInt(off - 4);
+            final int        pos = k.position();
+
+            if (len != k.remaining()) {
+                return false;
+            }
+            for (int j = 0; j < len; j++) {
+                if (s.get(off + j) != k.get(pos + j)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean overloaded() {
+            return used > capacity - (capacity >>> 2);
+        }
+    }
+
+    /**
+     *
+     */
+    private static final @NotNull ShortHash SIPHASH24 = ShortHash.siphash24Instance();
+
+    /**
+     * table receives all insertions.
+     */
+    private @NotNull Table table;
+
+    /**
+     * draining is the previous table while its entries are being migrated,
+     * and null otherwise.
+     */
+    private @Nullable Table draining;
+
+    /**
+     * drainIndex is the first slot of draining that has not been migrated.
+     */
+    private int drainIndex;
+
+    /**
+     *
+     */
+    public SipHashMap() {
+        this(0);
+    }
+
+    /**
+     *
+     * @param expected the number of entries the map is sized for initially
+     * @throws IllegalArgumentException if expected exceeds {@link #MAX_ENTRIES}
+     */
+    public SipHashMap(final int expected) {
+        if (expected > MAX_ENTRIES) {
+            throw new IllegalArgumentException("SipHashMap: expected exceeds MAX_ENTRIES");
+        }
+        this.table = new Table(capacityFor(expected));
+    }
+
+    /**
+     * capacityFor returns the table size that holds count entries at no more
+     * than 3/8 load, so a full table of entries can be inserted before the
+     * next rehash. It is at most MAX_CAPACITY, which holds MAX_ENTRIES.
+     */
+    private static int capacityFor(final int count) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && (capacity >>> 1) - (capacity >>> 3) < count) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     *
+     * @return the number of entries in the map
+     */
+    public int size() {
+        return table.live + (draining == null ? 0 : draining.live);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public boolean containsKey(final @NotNull ByteBuffer key) {
+        step();
+        return table.find(key, table.hash(key)) >= 0
+                || (draining != null && draining.find(key, draining.hash(key)) >= 0);
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public boolean containsKey(final @NotNull byte[] key) {
+        return containsKey(ByteBuffer.wrap(key));
+    }
+
+    /**
+     * get returns the value mapped to the remaining bytes of key, or
+     * defaultValue if there is no such entry.
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public long get(final @NotNull ByteBuffer key,
+                    final          long       defaultValue) {
+        int i;
+
+        step();
+        if ((i = table.find(key, table.hash(key))) >= 0) {
+            return table.slotValue(i);
+        }
+        if (draining != null && (i = draining.find(key, draining.hash(key))) >= 0) {
+            return draining.slotValue(i);
+        }
+        return defaultValue;
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public long get(final @NotNull byte[] key,
+                    final          long   defaultValue) {
+        return get(ByteBuffer.wrap(key), defaultValue);
+    }
+
+    /**
+     * put maps the remaining bytes of key to value. The key bytes are copied.
+     *
+     * @param key
+     * @param value
+     * @return true if the key was not in the map yet
+     * @throws IllegalStateException if the key is new and the map already
+     *         holds {@link #MAX_ENTRIES}
+     */
+    public boolean put(final @NotNull ByteBuffer key,
+                       final          long       value) {
+        final long h;
+        final int  i;
+        boolean    added = true;
+
+        step();
+        h = table.hash(key);
+        if ((i = table.find(key, h)) >= 0) {
+            table.setValue(i, value);
+            return false;
+        }
+
+        // the key may still sit in the old table; move it along
+        if (draining != null) {
+            final int j = draining.find(key, draining.hash(key));
+            if (j >= 0) {
+                draining.delete(j);
+                added = false;
+            }
+        }
+        if (added && size() >= MAX_ENTRIES) {
+            throw new IllegalStateException("SipHashMap: the map holds MAX_ENTRIES");
+        }
+
+        table.insert(key, h, value);
+        if (table.overloaded()) {
+            rehash();
+        }
+        return added;
+    }
+
+    /**
+     *
+     * @param key
+     * @param value
+     * @return true if the key was not in the map yet
+     * @throws IllegalStateException if the key is new and the map already
+     *         holds {@link #MAX_ENTRIES}
+     */
+    public boolean put(final @NotNull byte[] key,
+                       final          long   value) {
+        return put(ByteBuffer.wrap(key), value);
+    }
+
+    /**
+     *
+     * @param key
+     * @return true if the key was in the map
+     */
+    public boolean remove(final @NotNull ByteBuffer key) {
+        boolean removed = false;
+        int     i;
+
+        step();
+        if ((i = table.find(key, table.hash(key))) >= 0) {
+            table.delete(i);
+            removed = true;
+        }
+        if (draining != null && (i = draining.find(key, draining.hash(key))) >= 0) {
+            draining.delete(i);
+            removed = true;
+        }
+        return removed;
+    }
+
+    /**
+     *
+     * @param key
+     * @return true if the key was in the map
+     */
+    public boolean remove(final @NotNull byte[] key) {
+        return remove(ByteBuffer.wrap(key));
+    }
+
+    /**
+     * clear removes all entries, and releases the off-heap memory to the
+     * garbage collector.
+     */
+    public void clear() {
+        table      = new Table(MIN_CAPACITY);
+        draining   = null;
+        drainIndex = 0;
+    }
+
+    /**
+     * forEach calls visitor for every entry, in no particular order. The map
+     * must not be modified during the iteration.
+     *
+     * @param visitor
+     */
+    public void forEach(final @NotNull EntryVisitor visitor) {
+        if (draining != null) {
+            visit(draining, visitor);
+        }
+        visit(table, visitor);
+    }
+
+    private static void visit(final @NotNull Table        table,
+                              final @NotNull EntryVisitor visitor) {
+        for (int i = 0; i < table.capacity; i++) {
+            final long ref = table.slotRef(i);
+            if (ref != EMPTY && ref != TOMBSTONE) {
+                visitor.visit(table.keyAt(ref).asReadOnlyBuffer(), table.slotValue(i));
+            }
+        }
+    }
+
+    /**
+     * rehash starts migrating all entries to a new table with a fresh key,
+     * sized for the live entries. Tombstones and dead key bytes are left
+     * behind in the old table.
+     * <p>
+     * The new table is at least 1/16th of the old one, so it has room for
+     * more insertions than it takes operations to drain the old table, and a
+     * migration always completes before the next one starts.
+     */
+    private void rehash() {
+        while (draining != null) {
+            step();
+        }
+        draining   = table;
+        drainIndex = 0;
+        table      = new Table(Math.max(capacityFor(draining.live + 1),
+                draining.capacity >>> 4));
+    }
+
+    /**
+     * step migrates the next {@link #MIGRATE_SLOTS} slots of the old table, if
+     * the map is being rehashed.
+     */
+    private void step() {
+        final Table old = draining;
+        final int   end;
+
+        if (old == null) {
+            return;
+        }
+
+        end = Math.min(drainIndex + MIGRATE_SLOTS, old.capacity);
+        for (int i = drainIndex; i < end; i++) {
+            final long ref = old.slotRef(i);
+            if (ref != EMPTY && ref != TOMBSTONE) {
+                final ByteBuffer k = old.keyAt(ref).slice();
+                table.insert(k, table.hash(k), old.slotValue(i));
+                old.delete(i);
+            }
+        }
+
+        drainIndex = end;
+        if (drainIndex == old.capacity) {
+            draining = null;
+        }
+    }
+}
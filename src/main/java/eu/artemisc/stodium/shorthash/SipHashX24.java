@@ -3,6 +3,7 @@ package eu.artemisc.stodium.shorthash;
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 
 import eu.artemisc.stodium.Stodium;
 import eu.artemisc.stodium.StodiumJNI;
@@ -34,4 +35,66 @@ final class SipHashX24
                 Stodium.ensureUsableByteBuffer(in),
                 Stodium.ensureUsableByteBuffer(key)));
     }
+
+    @Override
+    long digest64(final @NotNull ByteBuffer in,
+                  final @NotNull ByteBuffer key) {
+        return StodiumJNI.stodium_shorthash_siphashx24_64(in, key);
+    }
+
+    @Override
+    long digest64(final @NotNull byte[]     in,
+                  final          int        off,
+                  final          int        len,
+                  final @NotNull ByteBuffer key) {
+        return StodiumJNI.stodium_shorthash_siphashx24_64_array(in, off, len, key);
+    }
+
+    @Override
+    void digest128(final @NotNull long[]     dst,
+                   final          int        dstOff,
+                   final @NotNull ByteBuffer in,
+                   final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkStatus(StodiumJNI.stodium_shorthash_siphashx24_128(
+                dst, dstOff, in, key));
+    }
+
+    @Override
+    void digest128(final @NotNull long[]     dst,
+                   final          int        dstOff,
+                   final @NotNull byte[]     in,
+                   final          int        off,
+                   final          int        len,
+                   final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkStatus(StodiumJNI.stodium_shorthash_siphashx24_128_array(
+                dst, dstOff, in, off, len, key));
+    }
+
+    @Override
+    void hashRange(final @NotNull long[]     dst,
+                   final          int        dstOff,
+                   final @NotNull ByteBuffer src,
+                   final @NotNull int[]      offsets,
+                   final          int        from,
+                   final          int        to,
+                   final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkStatus(StodiumJNI.stodium_shorthash_siphashx24_batch(
+                dst, dstOff, src, offsets, from, to, key));
+    }
+
+    @Override
+    void hashRange(final @NotNull LongBuffer dst,
+                   final          int        dstOff,
+                   final @NotNull ByteBuffer src,
+                   final @NotNull int[]      offsets,
+                   final          int        from,
+                   final          int        to,
+                   final @NotNull ByteBuffer key)
+            throws StodiumException {
+        Stodium.checkStatus(StodiumJNI.stodium_shorthash_siphashx24_batch_direct(
+                dst, dstOff, src, offsets, from, to, key));
+    }
 }
@@ -81,7 +81,7 @@ final class Ed25519
         Stodium.checkDestinationWritable(dstMsg);
 
         Stodium.checkSizeMin(srcSigned.remaining(), dstMsg.remaining() + BYTES);
-        Stodium.checkSize(priv.remaining(), SECRETKEYBYTES);
+        Stodium.checkSize(priv.remaining(), PUBLICKEYBYTES);
 
         return StodiumJNI.NOERR == StodiumJNI.crypto_sign_ed25519_open(
                 Stodium.ensureUsableByteBuffer(dstMsg),
@@ -111,7 +111,7 @@ final class Ed25519
                                   final @NotNull ByteBuffer priv)
             throws StodiumException {
         Stodium.checkSizeMin(srcSig.remaining(), BYTES);
-        Stodium.checkSize(priv.remaining(), SECRETKEYBYTES);
+        Stodium.checkSize(priv.remaining(), PUBLICKEYBYTES);
 
         return StodiumJNI.NOERR == StodiumJNI.crypto_sign_ed25519_verify_detached(
                 Stodium.ensureUsableByteBuffer(srcSig),
@@ -125,10 +125,10 @@ final class Ed25519
             throws StodiumException {
         final ByteBuffer state;
 
-        state = ByteBuffer.allocateDirect(STATEBYTES);
+        state = statePool.acquire();
         Stodium.checkStatus(StodiumJNI.crypto_sign_ed25519ph_init(state));
 
-        return new MultipartSign(this, state);
+        return new MultipartSign(this, state, statePool);
     }
 
     @Override
@@ -144,6 +144,18 @@ final class Ed25519
                 Stodium.ensureUsableByteBuffer(in)));
     }
 
+    @Override
+    public void update(final @NotNull ByteBuffer   state,
+                       final @NotNull ByteBuffer[] in)
+            throws StodiumException {
+        Stodium.checkDestinationWritable(state);
+        Stodium.checkSize(state.remaining(), STATEBYTES);
+
+        Stodium.checkStatus(StodiumJNI.stodium_sign_ed25519ph_update_vector(
+                Stodium.ensureUsableByteBuffer(state),
+                Stodium.ensureUsableByteBuffers(in)));
+    }
+
     @Override
     public void doFinal(final @NotNull ByteBuffer state,
                         final @NotNull ByteBuffer dst,
@@ -171,7 +183,7 @@ final class Ed25519
 
         Stodium.checkSizeMin(sig.remaining(), BYTES);
         Stodium.checkSize(state.remaining(), STATEBYTES);
-        Stodium.checkSize(priv.remaining(), SECRETKEYBYTES);
+        Stodium.checkSize(priv.remaining(), PUBLICKEYBYTES);
 
         return StodiumJNI.NOERR == StodiumJNI.crypto_sign_ed25519ph_final_verify(
                 Stodium.ensureUsableByteBuffer(state),
@@ -1,15 +1,21 @@
 package eu.artemisc.stodium.sign;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
 
+import eu.artemisc.stodium.StatePool;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.Updatable;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
  * @author Jan van de Molengraft [jan@artemisc.eu]
  */
-public final class MultipartSign {
+public final class MultipartSign
+        implements Updatable {
 
     /**
      *
@@ -25,6 +31,18 @@ public final class MultipartSign {
                     final @NotNull ByteBuffer in)
                 throws StodiumException;
 
+        /**
+         * update feeds every buffer in the array into the state, in order, in
+         * a single native call.
+         *
+         * @param state
+         * @param in
+         * @throws StodiumException
+         */
+        void update(final @NotNull ByteBuffer   state,
+                    final @NotNull ByteBuffer[] in)
+                throws StodiumException;
+
         /**
          *
          * @param state
@@ -52,6 +70,23 @@ public final class MultipartSign {
      */
     private final @NotNull ByteBuffer state;
 
+    /**
+     * initial holds a snapshot of the state as it was passed to the
+     * constructor, which {@link #reset()} restores. It is taken right before
+     * the state is first modified, and is null until then.
+     */
+    private @Nullable ByteBuffer initial;
+
+    /**
+     *
+     */
+    private boolean released;
+
+    /**
+     * pool is the pool that state and initial were acquired from, if any.
+     */
+    private final @Nullable StatePool pool;
+
     /**
      *
      * @param spec
@@ -59,17 +94,131 @@ public final class MultipartSign {
      */
     public MultipartSign(final @NotNull Spec       spec,
                          final @NotNull ByteBuffer state) {
-        this.spec  = spec;
-        this.state = state;
+        this(spec, state, null);
+    }
+
+    /**
+     * Creates a MultipartSign around an initialized state. If pool is not
+     * null, state must have been acquired from it.
+     *
+     * @param spec
+     * @param state
+     * @param pool
+     */
+    public MultipartSign(final @NotNull  Spec       spec,
+                         final @NotNull  ByteBuffer state,
+                         final @Nullable StatePool  pool) {
+        this.spec    = spec;
+        this.state   = state;
+        this.pool    = pool;
+    }
+
+    /**
+     * Copy constructor used by {@link #duplicate()}.
+     */
+    private MultipartSign(final @NotNull MultipartSign original) {
+        this.spec    = original.spec;
+        this.pool    = original.pool;
+        this.state   = acquire(original.pool, original.state.remaining());
+        this.state.duplicate().put(original.state.duplicate());
+        if (original.initial != null) {
+            this.initial = acquire(original.pool, original.initial.remaining());
+            this.initial.duplicate().put(original.initial.duplicate());
+        }
     }
 
     /**
      *
-     * @return
+     */
+    @NotNull
+    private static ByteBuffer acquire(final @Nullable StatePool pool,
+                                      final           int       size) {
+        return pool == null ? ByteBuffer.allocateDirect(size) : pool.acquire();
+    }
+
+    /**
+     * duplicate returns a new MultipartSign that continues from the exact
+     * state this instance is currently in, so a prehashed prefix can be
+     * reused for multiple messages.
+     *
+     * @return a copy of this MultipartSign, backed by its own state
      */
     @NotNull
     public MultipartSign duplicate() {
-        throw new UnsupportedOperationException();
+        return new MultipartSign(this);
+    }
+
+    /**
+     * copyTo overwrites the state of dst with the state held by this
+     * instance, without allocating a new state.
+     *
+     * @param dst the MultipartSign that should take on this instance's state
+     * @return dst
+     * @throws StodiumException if dst is not created by the same primitive
+     */
+    @NotNull
+    public MultipartSign copyTo(final @NotNull MultipartSign dst)
+            throws StodiumException {
+        if (dst.spec != spec) {
+            throw new ConstraintViolationException("MultipartSign: cannot copy state between primitives");
+        }
+        Stodium.checkSize(dst.state.remaining(), state.remaining());
+        dst.snapshot();
+        dst.state.duplicate().put(state.duplicate());
+        return dst;
+    }
+
+    /**
+     * reset returns the state to the point it was at when this MultipartSign
+     * was created, so the instance can be reused for the next message.
+     *
+     * @return this
+     */
+    @NotNull
+    public MultipartSign reset() {
+        if (initial != null) {
+            state.duplicate().put(initial.duplicate());
+        }
+        return this;
+    }
+
+    /**
+     * release wipes the state and hands the underlying buffers back to the
+     * pool they came from. The MultipartSign must not be used afterwards.
+     * Releasing more than once has no effect.
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        release(state);
+        if (initial != null) {
+            release(initial);
+            initial = null;
+        }
+    }
+
+    /**
+     *
+     */
+    private void release(final @NotNull ByteBuffer buffer) {
+        if (pool == null) {
+            Stodium.wipeBytes(buffer.duplicate());
+        } else {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * snapshot saves the state for {@link #reset()}, if that has not been
+     * done yet. It is called before every operation that modifies the state.
+     */
+    private void snapshot() {
+        if (initial == null) {
+            initial = acquire(pool, state.remaining());
+            initial.duplicate().put(state.duplicate());
+        }
     }
 
     /**
@@ -79,12 +228,33 @@ public final class MultipartSign {
      * @throws StodiumException
      */
     @NotNull
+    @Override
     public MultipartSign update(final @NotNull ByteBuffer src)
             throws StodiumException {
+        snapshot();
         spec.update(state, src);
         return this;
     }
 
+    /**
+     * update processes the remaining bytes of every buffer in srcs, in order,
+     * as if update were called for each of them, but in a single native call.
+     *
+     * @param srcs
+     * @return
+     * @throws StodiumException
+     */
+    @NotNull
+    @Override
+    public MultipartSign update(final @NotNull ByteBuffer... srcs)
+            throws StodiumException {
+        if (srcs.length > 0) {
+            snapshot();
+            spec.update(state, srcs);
+        }
+        return this;
+    }
+
     /**
      *
      * @param dst
@@ -94,6 +264,7 @@ public final class MultipartSign {
     public void doFinal(final @NotNull ByteBuffer dst,
                         final @NotNull ByteBuffer priv)
             throws StodiumException {
+        snapshot();
         spec.doFinal(state, dst, priv);
     }
 
@@ -107,6 +278,7 @@ public final class MultipartSign {
     public boolean doFinalVerify(final @NotNull ByteBuffer sign,
                                  final @NotNull ByteBuffer priv)
             throws StodiumException {
+        snapshot();
         return spec.doFinalVerify(state, sign, priv);
     }
 }
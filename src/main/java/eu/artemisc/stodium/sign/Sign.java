@@ -12,6 +12,7 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 
 import eu.artemisc.stodium.Singleton;
+import eu.artemisc.stodium.StatePool;
 import eu.artemisc.stodium.exceptions.StodiumException;
 
 /**
@@ -44,6 +45,12 @@ public abstract class Sign {
     final int SEEDBYTES;
     final int STATEBYTES;
 
+    /**
+     * statePool provides the state buffers for the MultipartSign instances
+     * created by {@link #init()}.
+     */
+    final @NotNull StatePool statePool;
+
     /**
      *
      * @param pub
@@ -61,6 +68,7 @@ public abstract class Sign {
         this.BYTES          = bytes;
         this.SEEDBYTES      = seed;
         this.STATEBYTES     = state;
+        this.statePool      = new StatePool(state);
     }
 
     /**
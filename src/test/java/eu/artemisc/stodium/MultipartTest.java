@@ -0,0 +1,210 @@
+package eu.artemisc.stodium;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.hash.Hash;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class MultipartTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * SUM keeps the sum of all bytes fed into it as the state.
+     */
+    private static final Multipart.Spec SUM = new Multipart.Spec() {
+        @Override
+        public void update(final ByteBuffer state,
+                           final ByteBuffer in) {
+            long sum = state.getLong(0);
+            for (int i = in.position(); i < in.limit(); i++) {
+                sum += in.get(i);
+            }
+            state.putLong(0, sum);
+        }
+
+        @Override
+        public void update(final ByteBuffer   state,
+                           final ByteBuffer[] in) {
+            for (final ByteBuffer src : in) {
+                update(state, src);
+            }
+        }
+
+        @Override
+        public void doFinal(final ByteBuffer state,
+                            final ByteBuffer dst) {
+            dst.putLong(0, state.getLong(0));
+        }
+    };
+
+    private static ByteBuffer ascii(final String s) {
+        return ByteBuffer.wrap(s.getBytes(US_ASCII));
+    }
+
+    private static ByteBuffer hash(final String s)
+            throws StodiumException {
+        final ByteBuffer dst = ByteBuffer.allocateDirect(Hash.sha256Instance().bytes());
+        Hash.sha256Instance().hash(dst, ascii(s));
+        return dst;
+    }
+
+    private static ByteBuffer doFinal(final Multipart<?> multipart)
+            throws StodiumException {
+        final ByteBuffer dst = ByteBuffer.allocateDirect(Hash.sha256Instance().bytes());
+        multipart.doFinal(dst);
+        return dst;
+    }
+
+    @Test
+    public void duplicate()
+            throws StodiumException {
+        final Multipart<Hash> original = Hash.sha256Instance().init();
+        final Multipart<Hash> copy;
+
+        original.update(ascii("prefix|"));
+        copy = original.duplicate();
+
+        // the copy continues from the prefix, and does not see later updates
+        original.update(ascii("one"));
+        copy.update(ascii("two"));
+
+        Assert.assertEquals(hash("prefix|one"), doFinal(original));
+        Assert.assertEquals(hash("prefix|two"), doFinal(copy));
+
+        original.release();
+        copy.release();
+    }
+
+    @Test
+    public void duplicateFinal()
+            throws StodiumException {
+        final Multipart<Hash> original = Hash.sha256Instance().init();
+        final Multipart<Hash> copy;
+
+        original.update(ascii("message"));
+        copy = original.duplicate();
+
+        Assert.assertEquals(hash("message"), doFinal(copy));
+        Assert.assertEquals(hash("message"), doFinal(original));
+
+        original.release();
+        copy.release();
+    }
+
+    @Test
+    public void copyTo()
+            throws StodiumException {
+        final Multipart<Hash> prefix = Hash.sha256Instance().init();
+        final Multipart<Hash> target = Hash.sha256Instance().init();
+
+        prefix.update(ascii("prefix|"));
+        target.update(ascii("overwritten"));
+
+        Assert.assertSame(target, prefix.copyTo(target));
+        Assert.assertEquals(hash("prefix|"), doFinal(target));
+
+        // the target can be reused for every message with the same prefix
+        prefix.copyTo(target).update(ascii("one"));
+        prefix.update(ascii("two"));
+        Assert.assertEquals(hash("prefix|one"), doFinal(target));
+        Assert.assertEquals(hash("prefix|two"), doFinal(prefix));
+
+        prefix.release();
+        target.release();
+    }
+
+    @Test
+    public void copyToOtherPrimitive()
+            throws StodiumException {
+        final Multipart<Hash> sha256 = Hash.sha256Instance().init();
+        final Multipart<Hash> sha512 = Hash.sha512Instance().init();
+
+        try {
+            sha256.copyTo(sha512);
+            Assert.fail("expected StodiumException");
+        } catch (StodiumException ignored) {
+        } finally {
+            sha256.release();
+            sha512.release();
+        }
+    }
+
+    @Test
+    public void reset()
+            throws StodiumException {
+        final Multipart<Hash> multipart = Hash.sha256Instance().init();
+
+        // a reset before any update leaves the initial state in place
+        multipart.reset().update(ascii("one"));
+        Assert.assertEquals(hash("one"), doFinal(multipart));
+
+        multipart.reset().update(ascii("two"));
+        Assert.assertEquals(hash("two"), doFinal(multipart));
+
+        multipart.reset();
+        Assert.assertEquals(hash(""), doFinal(multipart));
+
+        multipart.release();
+    }
+
+    @Test
+    public void pooledInit()
+            throws StodiumException {
+        final StatePool       pool  = new StatePool(8, 64);
+        final ByteBuffer      state = pool.acquire();
+        final ByteBuffer      dst   = ByteBuffer.allocate(8);
+        final int             idle  = pool.idle();
+        final Multipart<Void> multipart;
+
+        state.putLong(0, 100);
+        multipart = new Multipart<>(SUM, state, pool);
+        multipart.reset();
+        Assert.assertEquals(idle, pool.idle());
+
+        // the snapshot for reset is only taken once the state changes
+        multipart.update(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        Assert.assertEquals(idle - 1, pool.idle());
+        multipart.doFinal(dst);
+        Assert.assertEquals(106, dst.getLong(0));
+
+        multipart.reset().update(ByteBuffer.wrap(new byte[] { 4 }));
+        multipart.doFinal(dst);
+        Assert.assertEquals(104, dst.getLong(0));
+        Assert.assertEquals(idle - 1, pool.idle());
+
+        multipart.release();
+        Assert.assertEquals(idle + 1, pool.idle());
+    }
+
+    @Test
+    public void releaseTwice()
+            throws StodiumException {
+        final StatePool       pool = new StatePool(8, 64);
+        final Multipart<Void> multipart;
+        final int             idle;
+
+        multipart = new Multipart<>(SUM, pool.acquire(), pool);
+        multipart.update(ByteBuffer.wrap(new byte[] { 1 }));
+        idle = pool.idle();
+
+        multipart.release();
+        multipart.release();
+        Assert.assertEquals(idle + 2, pool.idle());
+
+        // every buffer is handed out once
+        final ByteBuffer a = pool.acquire();
+        final ByteBuffer b = pool.acquire();
+        final ByteBuffer c = pool.acquire();
+        Assert.assertNotSame(a, b);
+        Assert.assertNotSame(b, c);
+        Assert.assertNotSame(a, c);
+    }
+}
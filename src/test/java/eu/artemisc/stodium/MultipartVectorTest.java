@@ -0,0 +1,119 @@
+package eu.artemisc.stodium;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.auth.Auth;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.generichash.GenericHash;
+import eu.artemisc.stodium.hash.Hash;
+import eu.artemisc.stodium.onetimeauth.OneTimeAuth;
+import eu.artemisc.stodium.random.RandomBytes;
+import eu.artemisc.stodium.sign.MultipartSign;
+import eu.artemisc.stodium.sign.Sign;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class MultipartVectorTest {
+
+    /**
+     * segments returns a mix of direct, heap, offset heap, read-only and empty
+     * buffers.
+     */
+    private static ByteBuffer[] segments() {
+        final byte[]     heap   = new byte[300];
+        final ByteBuffer direct = ByteBuffer.allocateDirect(1000);
+
+        RandomBytes.nextBytes(ByteBuffer.wrap(heap));
+        RandomBytes.nextBytes(direct);
+        return new ByteBuffer[] {
+                direct,
+                ByteBuffer.wrap(heap, 17, 200).slice(),
+                ByteBuffer.allocate(0),
+                ByteBuffer.wrap(heap).asReadOnlyBuffer(),
+                ByteBuffer.allocateDirect(1),
+        };
+    }
+
+    private static ByteBuffer key(final int size) {
+        final ByteBuffer key = ByteBuffer.allocateDirect(size);
+        RandomBytes.nextBytes(key);
+        return key;
+    }
+
+    private static void assertVector(final Multipart<?> single,
+                                     final Multipart<?> vector,
+                                     final int          bytes)
+            throws StodiumException {
+        final ByteBuffer[] srcs = segments();
+        final ByteBuffer   one  = ByteBuffer.allocateDirect(bytes);
+        final ByteBuffer   all  = ByteBuffer.allocateDirect(bytes);
+
+        for (final ByteBuffer src : srcs) {
+            single.update(src);
+        }
+        vector.update(srcs);
+        single.doFinal(one);
+        vector.doFinal(all);
+        Assert.assertEquals(one, all);
+    }
+
+    @Test
+    public void vectorMatchesSingle()
+            throws StodiumException {
+        final GenericHash blake = GenericHash.blake2bInstance();
+        final ByteBuffer  key   = key(32);
+
+        for (final Hash hash : new Hash[] { Hash.sha256Instance(), Hash.sha512Instance() }) {
+            assertVector(hash.init(), hash.init(), hash.bytes());
+        }
+        assertVector(blake.init(key), blake.init(key), blake.bytes());
+
+        for (final Auth auth : new Auth[] { Auth.HmacSha256Instance(), Auth.HmacSha512Instance(),
+                Auth.HmacSha512256Instance(), OneTimeAuth.poly1305Instance() }) {
+            final ByteBuffer authKey = key(auth.keyBytes());
+            assertVector(auth.init(authKey), auth.init(authKey), auth.bytes());
+        }
+    }
+
+    @Test
+    public void vectorSign()
+            throws StodiumException {
+        final Sign          sign   = Sign.ed25519Instance();
+        final ByteBuffer    pub    = ByteBuffer.allocateDirect(sign.publicKeyBytes());
+        final ByteBuffer    priv   = ByteBuffer.allocateDirect(sign.secretKeyBytes());
+        final ByteBuffer    one    = ByteBuffer.allocateDirect(sign.bytes());
+        final ByteBuffer    all    = ByteBuffer.allocateDirect(sign.bytes());
+        final ByteBuffer[]  srcs   = segments();
+        final MultipartSign single = sign.init();
+        final MultipartSign vector = sign.init();
+
+        sign.keypair(pub, priv);
+        for (final ByteBuffer src : srcs) {
+            single.update(src);
+        }
+        vector.update(srcs);
+        single.doFinal(one, priv);
+        vector.doFinal(all, priv);
+        Assert.assertEquals(one, all);
+
+        vector.reset();
+        vector.update(srcs);
+        Assert.assertTrue(vector.doFinalVerify(all, pub));
+    }
+
+    @Test
+    public void emptyVector()
+            throws StodiumException {
+        final Hash       hash  = Hash.sha256Instance();
+        final ByteBuffer empty = ByteBuffer.allocateDirect(hash.bytes());
+        final ByteBuffer out   = ByteBuffer.allocateDirect(hash.bytes());
+
+        hash.hash(empty, ByteBuffer.allocate(0));
+        hash.init().update(new ByteBuffer[0]).doFinal(out);
+        Assert.assertEquals(empty, out);
+    }
+}
@@ -0,0 +1,62 @@
+package eu.artemisc.stodium;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class StatePoolTest {
+
+    @Test
+    public void acquireSize() {
+        final StatePool  pool;
+        final ByteBuffer state;
+
+        pool  = new StatePool(208);
+        state = pool.acquire();
+
+        Assert.assertTrue(state.isDirect());
+        Assert.assertEquals(208, state.remaining());
+        Assert.assertEquals(208, state.capacity());
+        Assert.assertEquals(StatePool.SLAB_STATES - 1, pool.idle());
+    }
+
+    @Test
+    public void releaseWipes() {
+        final StatePool  pool;
+        final ByteBuffer state;
+
+        pool  = new StatePool(32, 1);
+        state = pool.acquire();
+        Assert.assertEquals(1, pool.idle());
+        pool.acquire();
+
+        for (int i = 0; i < state.remaining(); i++) {
+            state.put(i, (byte) 0xff);
+        }
+        pool.release(state);
+        Assert.assertEquals(1, pool.idle());
+
+        final ByteBuffer reused = pool.acquire();
+        Assert.assertSame(state, reused);
+        Assert.assertEquals(0, reused.position());
+        for (int i = 0; i < reused.remaining(); i++) {
+            Assert.assertEquals(0, reused.get(i));
+        }
+    }
+
+    @Test
+    public void capacity() {
+        final StatePool pool;
+
+        pool = new StatePool(16, 2);
+        pool.release(pool.acquire());
+        pool.release(ByteBuffer.allocateDirect(16));
+        pool.release(ByteBuffer.allocateDirect(16));
+
+        Assert.assertEquals(2, pool.idle());
+    }
+}
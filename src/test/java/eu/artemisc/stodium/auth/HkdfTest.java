@@ -0,0 +1,120 @@
+package eu.artemisc.stodium.auth;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class HkdfTest {
+
+    private static ByteBuffer hex(final String hex) {
+        final ByteBuffer bin = ByteBuffer.allocate(hex.length() / 2);
+        for (int i = 0; i < bin.capacity(); i++) {
+            bin.put(i, (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16));
+        }
+        return bin;
+    }
+
+    private static ByteBuffer fill(final int value,
+                                   final int length) {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(i, (byte) (value == -1 ? i : value));
+        }
+        return buffer;
+    }
+
+    // RFC 5869, test case 1
+    @Test
+    public void sha256()
+            throws StodiumException {
+        final Hkdf       hkdf = Hkdf.sha256Instance();
+        final ByteBuffer prk  = ByteBuffer.allocateDirect(hkdf.prkBytes());
+        final ByteBuffer okm  = ByteBuffer.allocate(42);
+
+        hkdf.extract(prk, hex("000102030405060708090a0b0c"), fill(0x0b, 22));
+        Assert.assertEquals(hex("077709362c2e32df0ddc3f0dc47bba63"
+                + "90b6c73bb50f9c3122ec844ad7c2b3e5"), prk);
+
+        hkdf.expand(okm, prk, hex("f0f1f2f3f4f5f6f7f8f9"));
+        Assert.assertFalse(okm.hasRemaining());
+        okm.flip();
+        Assert.assertEquals(hex("3cb25f25faacd57a90434f64d0362f2a"
+                + "2d2d0a90cf1a5a4c5db02d56ecc4c5bf"
+                + "34007208d5b887185865"), okm);
+    }
+
+    // RFC 5869, test case 3: no salt and no info
+    @Test
+    public void sha256NoSalt()
+            throws StodiumException {
+        final Hkdf       hkdf = Hkdf.sha256Instance();
+        final ByteBuffer okm  = ByteBuffer.allocateDirect(42);
+
+        hkdf.deriveKey(okm, null, fill(0x0b, 22), ByteBuffer.allocate(0));
+        okm.flip();
+        Assert.assertEquals(hex("8da4e775a563c18f715f802a063c5a31"
+                + "b8a11f5c5ee1879ec3454e5f3c738d2d"
+                + "9d201395faa4b61a96c8"), okm);
+    }
+
+    @Test
+    public void sha512Streaming()
+            throws StodiumException {
+        final Hkdf            hkdf     = Hkdf.sha512Instance();
+        final ByteBuffer      prk      = ByteBuffer.allocateDirect(hkdf.prkBytes());
+        final ByteBuffer      info     = fill(-1, 10);
+        final ByteBuffer      expected = hex("832390086cda71fb47625bb5ceb168e4"
+                + "c8e26a1a16ed34d9fc7fe92c14815793"
+                + "38da362cb8d9f925d7cbcce0dff70987"
+                + "69cf15959867d571c1715450cb530137"
+                + "be3fb62f3cf32b84feba8f1eb1b563e2"
+                + "0d9749b8640b8264c4b69b14ad519911"
+                + "5e1d609c83c6940ce5b4214a0c799469"
+                + "83547a35cdcc17e0daf31b647dec0d0e"
+                + "6142b1deaa036b348422068ca66631c0"
+                + "ca5586485a27");
+        final Hkdf.Expander   expander;
+
+        for (int i = 0; i < info.capacity(); i++) {
+            info.put(i, (byte) (0xf0 + i));
+        }
+        hkdf.extract(prk, fill(-1, 13), fill(0x0b, 22));
+        Assert.assertEquals(hex("665799823737ded04a88e47e54a5890b"
+                + "b2c3d247c7a4254a8e61350723590a26"
+                + "c36238127d8661b88cf80ef802d57e2f"
+                + "7cebcf1e00e083848be19929c61b4237"), prk);
+
+        expander = hkdf.expander(prk);
+        try {
+            // chunks that end inside, at, and across block boundaries
+            for (final int chunk : new int[] { 1, 7, 64, 100, 150 }) {
+                final ByteBuffer okm = ByteBuffer.allocate(150);
+                expander.start(info);
+                while (okm.hasRemaining()) {
+                    expander.read((ByteBuffer) okm.slice().limit(Math.min(chunk, okm.remaining())));
+                    okm.position(Math.min(okm.position() + chunk, okm.limit()));
+                }
+                okm.flip();
+                Assert.assertEquals("chunk " + chunk, expected, okm);
+            }
+
+            expander.start(info);
+            expander.read(ByteBuffer.allocate(hkdf.outputBytesMax() - 1));
+            expander.read(ByteBuffer.allocate(1));
+            try {
+                expander.read(ByteBuffer.allocate(1));
+                Assert.fail("expected ConstraintViolationException");
+            } catch (ConstraintViolationException ignored) {
+            }
+        } finally {
+            expander.release();
+        }
+    }
+}
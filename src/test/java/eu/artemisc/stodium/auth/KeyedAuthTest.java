@@ -0,0 +1,158 @@
+package eu.artemisc.stodium.auth;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Multipart;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class KeyedAuthTest {
+
+    private static final int[] OFFSETS = new int[] { 0, 0, 1, 33, 97, 225, 1024 };
+
+    @Test
+    public void hmacSha256()
+            throws StodiumException {
+        check(Auth.HmacSha256Instance());
+    }
+
+    @Test
+    public void hmacSha512()
+            throws StodiumException {
+        check(Auth.HmacSha512Instance());
+    }
+
+    @Test
+    public void hmacSha512256()
+            throws StodiumException {
+        check(Auth.HmacSha512256Instance());
+    }
+
+    @Test
+    public void macAllOffsetBuffers()
+            throws StodiumException {
+        for (final Hmac auth : new Hmac[] { Auth.HmacSha256Instance(),
+                Auth.HmacSha512Instance(), Auth.HmacSha512256Instance() }) {
+            final int        count  = OFFSETS.length - 1;
+            final ByteBuffer key    = ByteBuffer.allocateDirect(auth.keyBytes());
+            final ByteBuffer src    = ByteBuffer.allocateDirect(OFFSETS[count] + 13);
+            final ByteBuffer direct = ByteBuffer.allocateDirect(count * auth.bytes() + 7);
+            final ByteBuffer heap   = ByteBuffer.wrap(new byte[count * auth.bytes() + 16], 5, count * auth.bytes() + 7).slice();
+            final ByteBuffer expected = ByteBuffer.allocateDirect(auth.bytes());
+            final KeyedAuth  keyed;
+
+            RandomBytes.nextBytes(key);
+            RandomBytes.nextBytes(src);
+            keyed = auth.keyed(key);
+
+            // none of the buffers start at the beginning of their memory
+            src.position(13);
+            direct.position(7);
+            heap.position(7);
+            keyed.macAll(direct, src, OFFSETS);
+            keyed.macAll(heap, src, OFFSETS);
+
+            for (int i = 0; i < count; i++) {
+                auth.mac(expected, slice(src, 13 + OFFSETS[i], 13 + OFFSETS[i + 1]), key);
+                Assert.assertEquals(expected,
+                        slice(direct, 7 + i * auth.bytes(), 7 + (i + 1) * auth.bytes()));
+                Assert.assertEquals(expected,
+                        slice(heap, 7 + i * auth.bytes(), 7 + (i + 1) * auth.bytes()));
+            }
+            Assert.assertEquals(0, direct.get(0));
+            Assert.assertEquals(0, heap.get(0));
+
+            keyed.release();
+        }
+    }
+
+    @Test
+    public void releaseTwice()
+            throws StodiumException {
+        final Hmac       auth = Auth.HmacSha256Instance();
+        final ByteBuffer key1, key2, src, expected, actual;
+        final KeyedAuth  released, first, second;
+
+        key1     = ByteBuffer.allocateDirect(auth.keyBytes());
+        key2     = ByteBuffer.allocateDirect(auth.keyBytes());
+        src      = ByteBuffer.allocateDirect(64);
+        expected = ByteBuffer.allocateDirect(auth.bytes());
+        actual   = ByteBuffer.allocateDirect(auth.bytes());
+        RandomBytes.nextBytes(key1);
+        RandomBytes.nextBytes(key2);
+        RandomBytes.nextBytes(src);
+
+        released = auth.keyed(key1);
+        released.release();
+        released.release();
+        try {
+            released.mac(actual, src);
+            Assert.fail("mac after release");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // a second release must not hand the same state out twice
+        first  = auth.keyed(key1);
+        second = auth.keyed(key2);
+        auth.mac(expected, src, key1);
+        first.mac(actual, src);
+        Assert.assertTrue(Stodium.isEqual(expected, actual));
+
+        first.release();
+        second.release();
+    }
+
+    private static void check(final Hmac auth)
+            throws StodiumException {
+        final ByteBuffer key, src, batch, expected, actual;
+        final KeyedAuth  keyed;
+        final int        count;
+
+        key = ByteBuffer.allocateDirect(auth.keyBytes());
+        src = ByteBuffer.allocateDirect(OFFSETS[OFFSETS.length - 1]);
+        RandomBytes.nextBytes(key);
+        RandomBytes.nextBytes(src);
+
+        count    = OFFSETS.length - 1;
+        keyed    = auth.keyed(key);
+        batch    = ByteBuffer.allocateDirect(count * auth.bytes());
+        expected = ByteBuffer.allocateDirect(auth.bytes());
+        actual   = ByteBuffer.allocateDirect(auth.bytes());
+
+        keyed.macAll(batch, src, OFFSETS);
+
+        for (int i = 0; i < count; i++) {
+            final ByteBuffer msg = slice(src, OFFSETS[i], OFFSETS[i + 1]);
+
+            auth.mac(expected, msg, key);
+            keyed.mac(actual, msg);
+            Assert.assertTrue(Stodium.isEqual(expected, actual));
+            Assert.assertTrue(Stodium.isEqual(expected,
+                    slice(batch, i * auth.bytes(), (i + 1) * auth.bytes())));
+            Assert.assertTrue(keyed.verify(expected, msg));
+
+            final Multipart<Auth> multipart = keyed.init();
+            multipart.update(msg);
+            Assert.assertTrue(multipart.verifyFinal(expected));
+            multipart.release();
+        }
+
+        keyed.release();
+    }
+
+    private static ByteBuffer slice(final ByteBuffer src,
+                                    final int        from,
+                                    final int        to) {
+        final ByteBuffer dup = src.duplicate();
+        dup.limit(to).position(from);
+        return dup.slice();
+    }
+}
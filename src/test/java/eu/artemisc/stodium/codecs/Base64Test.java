@@ -1,15 +1,144 @@
 package eu.artemisc.stodium.codecs;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.DeterministicRandom;
+
 /**
  * @author Jan van de Molengraft [jan@artemisc.eu]
  */
 public class Base64Test {
 
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final Codec[] CODECS = new Codec[] {
+            Codec.base64Original(),
+            Codec.base64OriginalNoPadding(),
+            Codec.base64UrlSafe(),
+            Codec.base64UrlSafeNoPadding(),
+    };
+
+    // RFC 4648, section 10
+    @Test
+    public void tv()
+            throws StodiumException {
+        final String[] plain   = { "", "f", "fo", "foo", "foob", "fooba", "foobar" };
+        final String[] encoded = { "", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9vYmFy" };
+
+        for (int i = 0; i < plain.length; i++) {
+            final ByteBuffer bin = ByteBuffer.wrap(plain[i].getBytes(US_ASCII));
+            final ByteBuffer dst = ByteBuffer.allocate(bin.remaining());
+
+            Assert.assertEquals(encoded[i], Codec.base64Original().encode(bin));
+            Assert.assertEquals(encoded[i].replace("=", ""), Codec.base64UrlSafeNoPadding().encode(bin));
+
+            Assert.assertEquals(bin.remaining(), Codec.base64Original().decode(dst, encoded[i]));
+            Assert.assertEquals(bin, dst);
+            Assert.assertEquals(bin.remaining(),
+                    Codec.base64OriginalNoPadding().decode(dst, encoded[i].replace("=", "")));
+            Assert.assertEquals(bin, dst);
+        }
+
+        Assert.assertEquals("-_8=", Codec.base64UrlSafe().encode(ByteBuffer.wrap(new byte[] { -5, -1 })));
+        Assert.assertEquals("+/8=", Codec.base64Original().encode(ByteBuffer.wrap(new byte[] { -5, -1 })));
+
+        for (final String invalid : new String[] { "Zg=", "Zg", "Zh==", "Zg==Zg==", "Z===", "Zm9v\u0100" }) {
+            try {
+                Codec.base64Original().decode(ByteBuffer.allocate(8), invalid);
+                Assert.fail("expected ConstraintViolationException for " + invalid);
+            } catch (ConstraintViolationException ignored) {
+            }
+        }
+        try {
+            Codec.base64OriginalNoPadding().decode(ByteBuffer.allocate(8), "Zg==");
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+        try {
+            Codec.base64Original().decode(ByteBuffer.allocate(2), "Zm9v");
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+    }
+
     @Test
-    public void tv() {
+    public void javaMatchesNative()
+            throws StodiumException {
+        final ByteBuffer src = ByteBuffer.allocate(3 * Codec.JAVA_THRESHOLD);
 
+        new DeterministicRandom(ByteBuffer.allocate(DeterministicRandom.seedBytes())).nextBytes(src);
+
+        for (final Codec codec : CODECS) {
+            for (int length = 0; length < 2 * Codec.JAVA_THRESHOLD + 4; length += length < 8 ? 1 : 61) {
+                final ByteBuffer bin     = ((ByteBuffer) src.duplicate().position(7).limit(7 + length)).slice();
+                final ByteBuffer encoded = ByteBuffer.allocate(codec.encodedLength(length) + 3);
+                final ByteBuffer direct  = ByteBuffer.allocateDirect(codec.encodedLength(length));
+                final ByteBuffer decoded = ByteBuffer.allocate(codec.decodedLengthMax(codec.encodedLength(length)) + 5);
+                final String     str     = codec.encode(bin);
+                final char[]     java    = new char[codec.encodedLength(length)];
+
+                Assert.assertEquals(codec.encodedLength(length), str.length());
+
+                // the String of a long input is encoded natively
+                codec.encode(java, 0, bin);
+                Assert.assertEquals(new String(java), str);
+
+                encoded.position(3);
+                codec.encode(encoded, bin);
+                Assert.assertEquals(3, encoded.position());
+                Assert.assertEquals(str, new Codec.Ascii(encoded).toString());
+                codec.encode(direct, bin);
+                Assert.assertEquals(encoded, direct);
+
+                decoded.position(5);
+                Assert.assertEquals(length, codec.decode(decoded, encoded));
+                Assert.assertEquals(bin, ((ByteBuffer) decoded.duplicate().limit(5 + length)));
+                decoded.clear().position(5);
+                Assert.assertEquals(length, codec.decode(decoded, str));
+                Assert.assertEquals(bin, ((ByteBuffer) decoded.duplicate().limit(5 + length)));
+            }
+        }
     }
 
+    @Test
+    public void longCharSequence()
+            throws StodiumException {
+        final ByteBuffer src = ByteBuffer.allocate(20000);
+
+        new DeterministicRandom(ByteBuffer.allocate(DeterministicRandom.seedBytes())).nextBytes(src);
+        src.flip();
+
+        // decoded in several blocks, into heap and direct buffers
+        for (final Codec codec : CODECS) {
+            final String     str    = codec.encode(src);
+            final ByteBuffer heap   = ByteBuffer.allocate(src.remaining() + 5);
+            final ByteBuffer direct = ByteBuffer.allocateDirect(src.remaining());
+
+            heap.position(5);
+            Assert.assertEquals(src.remaining(), codec.decode(heap, str));
+            Assert.assertEquals(src, ((ByteBuffer) heap.duplicate().limit(5 + src.remaining())));
+            Assert.assertEquals(src.remaining(), codec.decode(direct, str));
+            Assert.assertEquals(src, direct);
+
+            try {
+                codec.decode(ByteBuffer.allocate(src.remaining() - 1), str);
+                Assert.fail("expected ConstraintViolationException");
+            } catch (ConstraintViolationException ignored) {
+            }
+        }
+
+        // padding that ends a block does not end the whole input
+        final String padded = Codec.base64Original().encode((ByteBuffer) src.duplicate().limit(6142));
+        try {
+            Codec.base64Original().decode(ByteBuffer.allocate(8192), padded + "Zm9v");
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+    }
 }
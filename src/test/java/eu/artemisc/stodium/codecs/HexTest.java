@@ -1,14 +1,77 @@
 package eu.artemisc.stodium.codecs;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.DeterministicRandom;
+
 /**
  * @author Jan van de Molengraft [jan@artemisc.eu]
  */
 public class HexTest {
 
     @Test
-    public void tv() {
+    public void tv()
+            throws StodiumException {
+        final ByteBuffer bin = ByteBuffer.wrap(new byte[] { 0x00, 0x1f, (byte) 0xa0, (byte) 0xff });
+        final ByteBuffer dst = ByteBuffer.allocate(4);
+
+        Assert.assertEquals("001fa0ff", Codec.hex().encode(bin));
+        Assert.assertEquals("001fa0ff", Stodium.bin2hex(bin));
+
+        Assert.assertEquals(4, Codec.hex().decode(dst, "001FA0ff"));
+        Assert.assertEquals(bin, dst);
+        Stodium.hex2bin("001fa0ff", dst);
+        Assert.assertEquals(bin, dst);
+
+        for (final String invalid : new String[] { "001fa0f", "001fa0fg", "00 1fa0f", "001fa0f\u0166" }) {
+            try {
+                Codec.hex().decode(dst, invalid);
+                Assert.fail("expected ConstraintViolationException for " + invalid);
+            } catch (ConstraintViolationException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void javaMatchesNative()
+            throws StodiumException {
+        final Codec      hex = Codec.hex();
+        final ByteBuffer src = ByteBuffer.allocate(3 * Codec.JAVA_THRESHOLD);
+
+        new DeterministicRandom(ByteBuffer.allocate(DeterministicRandom.seedBytes())).nextBytes(src);
+
+        for (final int length : new int[] { 1, 15, Codec.JAVA_THRESHOLD - 1,
+                Codec.JAVA_THRESHOLD, 2 * Codec.JAVA_THRESHOLD + 1 }) {
+            final ByteBuffer bin     = ((ByteBuffer) src.duplicate().position(7).limit(7 + length)).slice();
+            final ByteBuffer encoded = ByteBuffer.allocate(hex.encodedLength(length) + 3);
+            final ByteBuffer direct  = ByteBuffer.allocateDirect(hex.encodedLength(length));
+            final ByteBuffer decoded = ByteBuffer.allocate(length + 5);
+            final String     str     = hex.encode(bin);
+            final char[]     java    = new char[hex.encodedLength(length)];
+
+            // the String of a long input is encoded natively
+            hex.encode(java, 0, bin);
+            Assert.assertEquals(new String(java), str);
+
+            encoded.position(3);
+            hex.encode(encoded, bin);
+            Assert.assertEquals(3, encoded.position());
+            Assert.assertEquals(str, new Codec.Ascii(encoded).toString());
+            hex.encode(direct, bin);
+            Assert.assertEquals(encoded, direct);
 
+            decoded.position(5);
+            Assert.assertEquals(length, hex.decode(decoded, encoded));
+            Assert.assertEquals(bin, decoded);
+            decoded.clear().position(5);
+            Assert.assertEquals(length, hex.decode(decoded, str));
+            Assert.assertEquals(bin, decoded);
+        }
     }
 }
@@ -0,0 +1,243 @@
+package eu.artemisc.stodium.codecs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.DeterministicRandom;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class StreamingCodecTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final Codec[] CODECS = new Codec[] {
+            Codec.hex(),
+            Codec.base64Original(),
+            Codec.base64OriginalNoPadding(),
+            Codec.base64UrlSafe(),
+            Codec.base64UrlSafeNoPadding(),
+    };
+
+    private static final int[] CHUNKS = new int[] { 1, 2, 5, 64, 300, 70000 };
+
+    private static ByteBuffer input(final int length)
+            throws StodiumException {
+        final ByteBuffer input = ByteBuffer.allocate(length);
+        new DeterministicRandom(ByteBuffer.allocateDirect(DeterministicRandom.seedBytes()))
+                .nextBytes(input);
+        input.flip();
+        return input;
+    }
+
+    private static ByteBuffer chunk(final ByteBuffer src,
+                                    final int        size) {
+        final ByteBuffer chunk = src.duplicate();
+        chunk.limit(chunk.position() + Math.min(size, src.remaining()));
+        src.position(chunk.limit());
+        return chunk;
+    }
+
+    @Test
+    public void encoder()
+            throws IOException, StodiumException {
+        final ByteBuffer input = input(100000);
+
+        for (final Codec codec : CODECS) {
+            final String expected = codec.encode(input);
+
+            for (final int size : CHUNKS) {
+                final Encoder       ascii   = codec.newEncoder();
+                final Encoder       chars   = codec.newEncoder();
+                final Encoder       builder = codec.newEncoder();
+                final ByteBuffer    asciiDst   = ByteBuffer.allocateDirect(expected.length());
+                final CharBuffer    charsDst   = ByteBuffer.allocateDirect(2 * expected.length()).asCharBuffer();
+                final StringBuilder builderDst = new StringBuilder();
+
+                for (final ByteBuffer src = input.duplicate(); src.hasRemaining(); ) {
+                    final ByteBuffer c = chunk(src, size);
+                    ascii.update(asciiDst, c.duplicate());
+                    // character output from direct input is encoded in place
+                    chars.update(charsDst, direct(c));
+                    builder.update(builderDst, c);
+                }
+                ascii.finish(asciiDst);
+                chars.finish(charsDst);
+                builder.finish(builderDst);
+
+                Assert.assertFalse(asciiDst.hasRemaining());
+                Assert.assertEquals(expected, new Codec.Ascii((ByteBuffer) asciiDst.flip()).toString());
+                Assert.assertEquals(expected, ((CharBuffer) charsDst.flip()).toString());
+                Assert.assertEquals(expected, builderDst.toString());
+            }
+        }
+    }
+
+    @Test
+    public void decoder()
+            throws StodiumException {
+        final ByteBuffer input = input(100000);
+
+        for (final Codec codec : CODECS) {
+            final String     encoded = codec.encode(input);
+            final ByteBuffer ascii   = ByteBuffer.allocateDirect(encoded.length());
+            ascii.put(encoded.getBytes(US_ASCII)).flip();
+
+            for (final int size : CHUNKS) {
+                final Decoder    decoder = codec.newDecoder();
+                final ByteBuffer fromAscii = ByteBuffer.allocateDirect(input.remaining());
+                final ByteBuffer fromChars = ByteBuffer.allocate(input.remaining());
+                int written = 0;
+
+                for (final ByteBuffer src = ascii.duplicate(); src.hasRemaining(); ) {
+                    written += decoder.update(fromAscii, chunk(src, size));
+                }
+                written += decoder.finish(fromAscii);
+                Assert.assertEquals(input.remaining(), written);
+
+                for (int i = 0; i < encoded.length(); i += size) {
+                    decoder.update(fromChars,
+                            encoded.subSequence(i, Math.min(encoded.length(), i + size)));
+                }
+                decoder.finish(fromChars);
+
+                Assert.assertEquals(input, fromAscii.flip());
+                Assert.assertEquals(input, fromChars.flip());
+            }
+        }
+    }
+
+    @Test
+    public void decoderInvalid()
+            throws StodiumException {
+        final ByteBuffer dst = ByteBuffer.allocate(64);
+        final Decoder    hex = Codec.hex().newDecoder();
+        final Decoder    b64 = Codec.base64Original().newDecoder();
+        final Decoder    raw = Codec.base64UrlSafeNoPadding().newDecoder();
+
+        hex.update(dst, "abc");
+        try {
+            hex.finish(dst);
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+        // finish resets the decoder
+        Assert.assertEquals(1, hex.update(dst, "ab"));
+
+        b64.update(dst, "Zg=");
+        Assert.assertEquals(1, b64.update(dst, "="));
+        try {
+            b64.update(dst, "Zm9v");
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+        b64.reset();
+
+        b64.update(dst, "Zm9");
+        try {
+            b64.finish(dst);
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+
+        dst.clear();
+        raw.update(dst, "Zm9vY");
+        Assert.assertEquals(3, dst.position());
+        raw.update(dst, "g");
+        Assert.assertEquals(1, raw.finish(dst));
+        Assert.assertEquals("foob", new String(dst.array(), 0, dst.position(), US_ASCII));
+    }
+
+    @Test
+    public void channels()
+            throws IOException, StodiumException {
+        final ByteBuffer input = input(200000);
+
+        for (final Codec codec : CODECS) {
+            final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            final WritableByteChannel   encoder = codec.encodingChannel(
+                    Channels.newChannel(codec.decodingStream(decoded)));
+            final OutputStream          stream  = codec.encodingStream(encoded);
+
+            for (final int size : CHUNKS) {
+                for (final ByteBuffer src = input.duplicate(); src.hasRemaining(); ) {
+                    final ByteBuffer c = chunk(src, size);
+                    stream.write(c.array(), c.arrayOffset() + c.position(), c.remaining());
+                }
+            }
+            stream.close();
+
+            // the encoding of the concatenated input, whatever the chunks
+            Assert.assertEquals(codec.encode(repeat(input, CHUNKS.length)),
+                    new String(encoded.toByteArray(), US_ASCII));
+
+            for (final ByteBuffer src = input.duplicate(); src.hasRemaining(); ) {
+                Assert.assertEquals(Math.min(777, src.remaining()), encoder.write(chunk(src, 777)));
+            }
+            encoder.close();
+            Assert.assertFalse(encoder.isOpen());
+            Assert.assertEquals(input, ByteBuffer.wrap(decoded.toByteArray()));
+        }
+
+        try {
+            final OutputStream out = Codec.hex().decodingStream(new ByteArrayOutputStream());
+            out.write('a');
+            out.close();
+            Assert.fail("expected IOException");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void channelFailure()
+            throws IOException {
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        final WritableByteChannel   out     = Channels.newChannel(decoded);
+        final WritableByteChannel   channel = Codec.hex().decodingChannel(out);
+
+        Assert.assertEquals(4, channel.write(ByteBuffer.wrap("abcd".getBytes(US_ASCII))));
+        try {
+            channel.write(ByteBuffer.wrap("zz".getBytes(US_ASCII)));
+            Assert.fail("expected IOException");
+        } catch (IOException ignored) {
+        }
+
+        // the channel stays failed, even for valid input
+        try {
+            channel.write(ByteBuffer.wrap("ef".getBytes(US_ASCII)));
+            Assert.fail("expected IOException");
+        } catch (IOException ignored) {
+        }
+        channel.close();
+        Assert.assertFalse(out.isOpen());
+        Assert.assertArrayEquals(new byte[] { (byte) 0xab, (byte) 0xcd }, decoded.toByteArray());
+    }
+
+    private static ByteBuffer direct(final ByteBuffer src) {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(src.remaining());
+        direct.put(src.duplicate()).flip();
+        return direct;
+    }
+
+    private static ByteBuffer repeat(final ByteBuffer src,
+                                     final int        count) {
+        final ByteBuffer dst = ByteBuffer.allocate(count * src.remaining());
+        for (int i = 0; i < count; i++) {
+            dst.put(src.duplicate());
+        }
+        return (ByteBuffer) dst.flip();
+    }
+}
@@ -0,0 +1,132 @@
+package eu.artemisc.stodium.generichash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Multipart;
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.hash.Hash;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class HashContextTest {
+
+    @Test
+    public void contextMatchesOneShot()
+            throws StodiumException {
+        final GenericHash blake;
+        final HashContext context;
+        final ByteBuffer  key, salt, personal, src, expected, actual;
+
+        blake    = GenericHash.blake2bInstance();
+        key      = ByteBuffer.allocateDirect(blake.keyBytes());
+        salt     = ByteBuffer.allocateDirect(blake.saltBytes());
+        personal = ByteBuffer.allocateDirect(blake.personalBytes());
+        src      = ByteBuffer.allocateDirect(100);
+        expected = ByteBuffer.allocateDirect(48);
+        actual   = ByteBuffer.allocateDirect(48);
+        RandomBytes.nextBytes(key);
+        RandomBytes.nextBytes(salt);
+        RandomBytes.nextBytes(personal);
+        RandomBytes.nextBytes(src);
+
+        blake.hash(expected, src, key, salt, personal);
+        context = blake.context(key, 48, salt, personal);
+
+        context.hash(actual, src);
+        Assert.assertTrue(Stodium.isEqual(expected, actual));
+
+        // a second message must start from the same initial state
+        context.hash(actual, src);
+        Assert.assertTrue(Stodium.isEqual(expected, actual));
+        context.release();
+    }
+
+    @Test
+    public void initMatchesOneShot()
+            throws StodiumException {
+        final GenericHash     blake;
+        final Multipart<Hash> multipart;
+        final ByteBuffer      salt, personal, src, expected, actual;
+
+        blake    = GenericHash.blake2bInstance();
+        salt     = ByteBuffer.allocateDirect(blake.saltBytes());
+        personal = ByteBuffer.allocateDirect(blake.personalBytes());
+        src      = ByteBuffer.allocateDirect(300);
+        expected = ByteBuffer.allocateDirect(32);
+        actual   = ByteBuffer.allocateDirect(32);
+        RandomBytes.nextBytes(salt);
+        RandomBytes.nextBytes(src);
+        personal.duplicate().put("test-personal".getBytes());
+
+        blake.hash(expected, src, null, salt, personal);
+
+        multipart = blake.init(null, 32, salt, personal);
+        multipart.update(((ByteBuffer) src.duplicate().limit(150)).slice());
+        multipart.update(((ByteBuffer) src.duplicate().position(150)).slice());
+        multipart.doFinal(actual);
+        multipart.release();
+
+        Assert.assertTrue(Stodium.isEqual(expected, actual));
+    }
+
+    @Test
+    public void contextInitResets()
+            throws StodiumException {
+        final GenericHash     blake;
+        final HashContext     context;
+        final Multipart<Hash> multipart;
+        final ByteBuffer      salt, personal, src, expected, actual;
+
+        blake    = GenericHash.blake2bInstance();
+        salt     = ByteBuffer.allocateDirect(blake.saltBytes());
+        personal = ByteBuffer.allocateDirect(blake.personalBytes());
+        src      = ByteBuffer.allocateDirect(64);
+        expected = ByteBuffer.allocateDirect(32);
+        actual   = ByteBuffer.allocateDirect(32);
+        RandomBytes.nextBytes(src);
+
+        context = blake.context(null, 32, salt, personal);
+        context.hash(expected, src);
+
+        multipart = context.init();
+        multipart.update(personal);
+        multipart.reset();
+        multipart.update(src);
+        multipart.doFinal(actual);
+        multipart.release();
+
+        Assert.assertTrue(Stodium.isEqual(expected, actual));
+    }
+
+    @Test
+    public void contextReleased()
+            throws StodiumException {
+        final GenericHash blake   = GenericHash.blake2bInstance();
+        final ByteBuffer  src     = ByteBuffer.allocateDirect(64);
+        final ByteBuffer  dst     = ByteBuffer.allocateDirect(32);
+        final HashContext context = blake.context(null, 32,
+                ByteBuffer.allocateDirect(blake.saltBytes()),
+                ByteBuffer.allocateDirect(blake.personalBytes()));
+
+        context.release();
+        context.release();
+        try {
+            context.hash(dst, src);
+            Assert.fail("hashed after release");
+        } catch (final IllegalStateException expected) {
+            // ok
+        }
+        try {
+            context.init();
+            Assert.fail("initialized after release");
+        } catch (final IllegalStateException expected) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package eu.artemisc.stodium.generichash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class MerkleTreeTest {
+
+    private static ByteBuffer[] chunks(final int count) {
+        final ByteBuffer[] chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(64 + i);
+            RandomBytes.nextBytes(chunks[i]);
+        }
+        return chunks;
+    }
+
+    @Test
+    public void roundedCapacityBound()
+            throws StodiumException {
+        // rounds up to 2^26 leaves, whose nodes need 2^31 bytes
+        try {
+            new MerkleTree(Integer.MAX_VALUE / 32, 16);
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+    }
+
+    @Test
+    public void setAllMatchesSet()
+            throws StodiumException {
+        final MerkleTree   single, batch;
+        final ByteBuffer[] chunks;
+        final ByteBuffer   a, b;
+        final int[]        indices;
+
+        chunks  = chunks(5);
+        indices = new int[] { 9, 0, 3, 8, 4 };
+        single  = new MerkleTree(10);
+        batch   = new MerkleTree(10);
+
+        for (int i = 0; i < indices.length; i++) {
+            single.set(indices[i], chunks[i]);
+        }
+        batch.setAll(indices, chunks);
+
+        a = ByteBuffer.allocateDirect(32);
+        b = ByteBuffer.allocateDirect(32);
+        single.root(a);
+        batch.root(b);
+
+        Assert.assertEquals(4, single.depth());
+        Assert.assertTrue(Stodium.isEqual(a, b));
+    }
+
+    @Test
+    public void updateChangesRoot()
+            throws StodiumException {
+        final MerkleTree   tree;
+        final ByteBuffer[] chunks;
+        final ByteBuffer   before, after;
+
+        chunks = chunks(2);
+        tree   = new MerkleTree(7, 48);
+        before = ByteBuffer.allocateDirect(48);
+        after  = ByteBuffer.allocateDirect(48);
+
+        tree.set(6, chunks[0]);
+        tree.root(before);
+        tree.set(6, chunks[1]);
+        tree.root(after);
+        Assert.assertFalse(Stodium.isEqual(before, after));
+
+        tree.set(6, chunks[0]);
+        tree.root(after);
+        Assert.assertTrue(Stodium.isEqual(before, after));
+    }
+
+    @Test
+    public void proofVerifies()
+            throws StodiumException {
+        final MerkleTree   tree;
+        final ByteBuffer[] chunks;
+        final ByteBuffer   root, proof;
+
+        chunks = chunks(13);
+        tree   = new MerkleTree(13);
+        for (int i = 0; i < chunks.length; i++) {
+            tree.set(i, chunks[i]);
+        }
+
+        root  = ByteBuffer.allocateDirect(32);
+        proof = ByteBuffer.allocateDirect(tree.depth() * tree.hashBytes());
+        tree.root(root);
+
+        for (int i = 0; i < chunks.length; i++) {
+            tree.proof(i, proof);
+            Assert.assertTrue(MerkleTree.verify(root, i, chunks[i], proof));
+            Assert.assertFalse(MerkleTree.verify(root, i, chunks[(i + 1) % chunks.length], proof));
+            Assert.assertFalse(MerkleTree.verify(root, i ^ 1, chunks[i], proof));
+        }
+    }
+
+    @Test
+    public void tamperedProofFails()
+            throws StodiumException {
+        final MerkleTree   tree;
+        final ByteBuffer[] chunks;
+        final ByteBuffer   root, proof;
+
+        chunks = chunks(4);
+        tree   = new MerkleTree(4);
+        tree.setAll(new int[] { 0, 1, 2, 3 }, chunks);
+
+        root  = ByteBuffer.allocateDirect(32);
+        proof = ByteBuffer.allocateDirect(2 * 32);
+        tree.root(root);
+        tree.proof(2, proof);
+        Assert.assertTrue(MerkleTree.verify(root, 2, chunks[2], proof));
+
+        proof.put(40, (byte) (proof.get(40) ^ 0x01));
+        Assert.assertFalse(MerkleTree.verify(root, 2, chunks[2], proof));
+    }
+}
@@ -0,0 +1,148 @@
+package eu.artemisc.stodium.generichash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class TreeHashTest {
+
+    @Test
+    public void singleThreadMatchesParallel()
+            throws StodiumException {
+        final TreeHash        tree;
+        final ByteBuffer      src, serial, parallel;
+        final ExecutorService single;
+
+        tree     = new TreeHash(1024, 4, 32);
+        src      = ByteBuffer.allocateDirect(1024 * 100 + 17);
+        serial   = ByteBuffer.allocateDirect(32);
+        parallel = ByteBuffer.allocateDirect(32);
+        RandomBytes.nextBytes(src);
+
+        single = Executors.newSingleThreadExecutor();
+        try {
+            tree.hash(serial, src, single);
+        } finally {
+            single.shutdown();
+        }
+        final TreeHash.Report report = tree.hash(parallel, src);
+
+        Assert.assertTrue(Stodium.isEqual(serial, parallel));
+        Assert.assertEquals(101, report.leaves());
+        Assert.assertEquals(src.remaining(), report.bytes());
+    }
+
+    @Test
+    public void fileMatchesBuffer()
+            throws StodiumException, IOException {
+        final TreeHash   tree;
+        final ByteBuffer src, fromBuffer, fromFile;
+        final File       file;
+        final byte[]     data;
+
+        tree       = new TreeHash(4096, 16, 64);
+        data       = new byte[4096 * 40 + 5];
+        src        = ByteBuffer.allocateDirect(data.length);
+        fromBuffer = ByteBuffer.allocateDirect(64);
+        fromFile   = ByteBuffer.allocateDirect(64);
+        RandomBytes.nextBytes(src);
+        src.get(data).clear();
+
+        file = File.createTempFile("treehash", ".bin");
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(data);
+            out.close();
+
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                tree.hash(fromFile, raf.getChannel());
+            } finally {
+                raf.close();
+            }
+        } finally {
+            file.delete();
+        }
+        tree.hash(fromBuffer, src);
+
+        Assert.assertTrue(Stodium.isEqual(fromBuffer, fromFile));
+    }
+
+    @Test
+    public void leafBytesBounds()
+            throws StodiumException {
+        new TreeHash(Integer.MAX_VALUE / TreeHash.WINDOW_LEAVES, 2, 32);
+
+        for (final int leafBytes : new int[] { 0, Integer.MAX_VALUE / TreeHash.WINDOW_LEAVES + 1 }) {
+            try {
+                new TreeHash(leafBytes, 2, 32);
+                Assert.fail("expected ConstraintViolationException for " + leafBytes);
+            } catch (ConstraintViolationException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void structure()
+            throws StodiumException {
+        final TreeHash    tree;
+        final GenericHash blake;
+        final ByteBuffer  src, personal, salt, leaves, expected, actual;
+
+        blake = GenericHash.blake2bInstance();
+        tree  = new TreeHash(4, 2, 32);
+        src   = ByteBuffer.allocateDirect(10);
+        RandomBytes.nextBytes(src);
+
+        personal = ByteBuffer.allocateDirect(16);
+        personal.put(new byte[] { 'S', 'T', 'D', 'M', 'T', 'R', 'E', 'E', 4, 0, 0, 0, 2, 32 }).clear();
+        salt = ByteBuffer.allocateDirect(16).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+
+        // three leaves: [0,4) [4,8) [8,10)
+        leaves = ByteBuffer.allocateDirect(3 * 64);
+        for (int i = 0; i < 3; i++) {
+            salt.putLong(0, i).put(8, (byte) 0).put(9, (byte) 0);
+            blake.hash(slice(leaves, i * 64, 64), slice(src, i * 4, Math.min(4, 10 - i * 4)),
+                    null, salt, personal);
+        }
+
+        // one inner level of two nodes, then the root
+        final ByteBuffer inner = ByteBuffer.allocateDirect(2 * 64);
+        salt.putLong(0, 0).put(8, (byte) 1).put(9, (byte) 0);
+        blake.hash(slice(inner, 0, 64), slice(leaves, 0, 128), null, salt, personal);
+        salt.putLong(0, 1);
+        blake.hash(slice(inner, 64, 64), slice(leaves, 128, 64), null, salt, personal);
+
+        expected = ByteBuffer.allocateDirect(32);
+        salt.putLong(0, 10).put(8, (byte) 2).put(9, (byte) 1);
+        blake.hash(expected, inner, null, salt, personal);
+
+        actual = ByteBuffer.allocateDirect(32);
+        tree.hash(actual, src);
+        Assert.assertTrue(Stodium.isEqual(expected, actual));
+    }
+
+    private static ByteBuffer slice(final ByteBuffer src,
+                                    final int        offset,
+                                    final int        length) {
+        final ByteBuffer dup = src.duplicate();
+        dup.limit(offset + length).position(offset);
+        return dup.slice();
+    }
+}
@@ -0,0 +1,140 @@
+package eu.artemisc.stodium.hash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import eu.artemisc.stodium.Stodium;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.generichash.GenericHash;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class HashBatchTest {
+
+    private static int[] offsets(final int count) {
+        final int[] offsets = new int[count + 1];
+        for (int i = 1; i <= count; i++) {
+            offsets[i] = offsets[i - 1] + 32 + (i * 7) % 97;
+        }
+        return offsets;
+    }
+
+    private static ByteBuffer slice(final ByteBuffer src,
+                                    final int        from,
+                                    final int        to) {
+        final ByteBuffer dup = src.duplicate();
+        dup.limit(to).position(from);
+        return dup.slice();
+    }
+
+    private static void assertBatch(final Hash       hash,
+                                    final int[]      offsets,
+                                    final ByteBuffer src,
+                                    final ByteBuffer batch)
+            throws StodiumException {
+        final ByteBuffer single = ByteBuffer.allocateDirect(hash.bytes());
+        for (int i = 0; i < offsets.length - 1; i++) {
+            hash.hash(single, slice(src, offsets[i], offsets[i + 1]));
+            Assert.assertTrue("input " + i, Stodium.isEqual(single,
+                    slice(batch, i * hash.bytes(), (i + 1) * hash.bytes())));
+        }
+    }
+
+    @Test
+    public void batchMatchesSingle()
+            throws StodiumException {
+        final int[]      offsets;
+        final ByteBuffer src;
+
+        offsets = offsets(50);
+        src     = ByteBuffer.allocateDirect(offsets[50]);
+        RandomBytes.nextBytes(src);
+
+        for (final Hash hash : new Hash[] { Hash.sha256Instance(),
+                Hash.sha512Instance(), GenericHash.blake2bInstance() }) {
+            final ByteBuffer batch = ByteBuffer.allocateDirect(50 * hash.bytes());
+            hash.hashAll(batch, src, offsets);
+            assertBatch(hash, offsets, src, batch);
+        }
+    }
+
+    @Test
+    public void parallelMatchesSingle()
+            throws StodiumException {
+        final int             count;
+        final int[]           offsets;
+        final ByteBuffer      src, batch;
+        final Hash            hash;
+        final ExecutorService executor;
+
+        count   = 3 * Hash.BATCH_SPLIT + 5;
+        offsets = offsets(count);
+        src     = ByteBuffer.allocateDirect(offsets[count]);
+        hash    = Hash.sha256Instance();
+        batch   = ByteBuffer.allocateDirect(count * hash.bytes());
+        RandomBytes.nextBytes(src);
+
+        executor = Executors.newFixedThreadPool(4);
+        try {
+            hash.hashAll(batch, src, offsets, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertBatch(hash, offsets, src, batch);
+    }
+
+    @Test
+    public void parallelHeapDestination()
+            throws StodiumException {
+        final int             count;
+        final int[]           offsets;
+        final ByteBuffer      src, batch;
+        final Hash            hash;
+        final ExecutorService executor;
+
+        count   = 3 * Hash.BATCH_SPLIT + 5;
+        offsets = offsets(count);
+        src     = ByteBuffer.allocate(offsets[count]);
+        hash    = Hash.sha256Instance();
+        batch   = ByteBuffer.allocate(count * hash.bytes());
+        RandomBytes.nextBytes(src);
+
+        // every task hashes into its own range of the same backing array
+        executor = Executors.newFixedThreadPool(4);
+        try {
+            hash.hashAll(batch, src, offsets, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertBatch(hash, offsets, src, batch);
+    }
+
+    @Test
+    public void keyedGenericHash()
+            throws StodiumException {
+        final GenericHash blake;
+        final int[]       offsets;
+        final ByteBuffer  src, key, batch, single;
+
+        blake   = GenericHash.blake2bInstance();
+        offsets = offsets(10);
+        src     = ByteBuffer.allocateDirect(offsets[10]);
+        key     = ByteBuffer.allocateDirect(blake.keyBytes());
+        batch   = ByteBuffer.allocateDirect(10 * 20);
+        single  = ByteBuffer.allocateDirect(20);
+        RandomBytes.nextBytes(src);
+        RandomBytes.nextBytes(key);
+
+        blake.hashAll(batch, src, offsets, key, 20);
+        for (int i = 0; i < 10; i++) {
+            blake.hash(single, slice(src, offsets[i], offsets[i + 1]), key);
+            Assert.assertTrue(Stodium.isEqual(single, slice(batch, i * 20, (i + 1) * 20)));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package eu.artemisc.stodium.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import eu.artemisc.stodium.Multipart;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.hash.Hash;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class DigestsTest {
+
+    private static final Hash hash = Hash.sha256Instance();
+
+    private static byte[] random(final int size) {
+        final byte[] data = new byte[size];
+        RandomBytes.nextBytes(ByteBuffer.wrap(data));
+        return data;
+    }
+
+    private static byte[] expected(final byte[] data)
+            throws StodiumException {
+        final byte[] out = new byte[hash.bytes()];
+        hash.hash(ByteBuffer.wrap(out), ByteBuffer.wrap(data));
+        return out;
+    }
+
+    private static byte[] doFinal(final Multipart<Hash> multipart)
+            throws StodiumException {
+        final byte[] out = new byte[hash.bytes()];
+        multipart.doFinal(ByteBuffer.wrap(out));
+        return out;
+    }
+
+    @Test
+    public void digestChannelAndStream()
+            throws StodiumException, IOException {
+        for (final int size : new int[] { 0, 1, Digests.BLOCK_BYTES, 3 * Digests.BLOCK_BYTES + 17 }) {
+            final byte[] data = random(size);
+            Multipart<Hash> multipart;
+
+            multipart = hash.init();
+            Assert.assertEquals(size, Digests.digest(
+                    Channels.newChannel(new ByteArrayInputStream(data)), multipart));
+            Assert.assertArrayEquals(expected(data), doFinal(multipart));
+
+            multipart = hash.init();
+            Assert.assertEquals(size, Digests.digest(new ByteArrayInputStream(data), multipart));
+            Assert.assertArrayEquals(expected(data), doFinal(multipart));
+        }
+    }
+
+    @Test
+    public void digestFile()
+            throws StodiumException, IOException {
+        // large enough to take the mapped path, with a partial last window
+        final byte[] data = random(Digests.MAP_THRESHOLD + 12345);
+        final File   file = File.createTempFile("stodium", ".bin");
+
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(data);
+            out.close();
+
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                final Multipart<Hash> multipart = hash.init();
+                in.getChannel().position(100);
+                Assert.assertEquals(data.length - 100, Digests.digest(in, multipart));
+                Assert.assertEquals(data.length, in.getChannel().position());
+                Assert.assertArrayEquals(
+                        expected(Arrays.copyOfRange(data, 100, data.length)), doFinal(multipart));
+            } finally {
+                in.close();
+            }
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void transferTees()
+            throws StodiumException, IOException {
+        final byte[]                data = random(2 * Digests.BLOCK_BYTES + 99);
+        final ByteArrayOutputStream out  = new ByteArrayOutputStream();
+        final Multipart<Hash>       multipart = hash.init();
+
+        Assert.assertEquals(data.length, Digests.transfer(
+                Channels.newChannel(new ByteArrayInputStream(data)),
+                Channels.newChannel(out), multipart));
+        Assert.assertArrayEquals(data, out.toByteArray());
+        Assert.assertArrayEquals(expected(data), doFinal(multipart));
+    }
+
+    @Test
+    public void transferForwardsEveryRead()
+            throws StodiumException, IOException {
+        final byte[]                data      = random(1000);
+        final ByteArrayOutputStream out       = new ByteArrayOutputStream();
+        final Multipart<Hash>       multipart = hash.init();
+
+        // a trickling source, that checks everything it returned so far has
+        // been forwarded before it is read again
+        final ReadableByteChannel src = new ReadableByteChannel() {
+            private int position;
+
+            @Override
+            public int read(final ByteBuffer dst) {
+                final int length = Math.min(37, data.length - position);
+                Assert.assertEquals(position, out.size());
+                if (length == 0) {
+                    return -1;
+                }
+                dst.put(data, position, length);
+                position += length;
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        Assert.assertEquals(data.length, Digests.transfer(src, Channels.newChannel(out), multipart));
+        Assert.assertArrayEquals(data, out.toByteArray());
+        Assert.assertArrayEquals(expected(data), doFinal(multipart));
+    }
+
+    @Test
+    public void nonBlockingChannel()
+            throws StodiumException, IOException {
+        final Pipe pipe = Pipe.open();
+
+        pipe.source().configureBlocking(false);
+        try {
+            Digests.digest(pipe.source(), hash.init());
+            Assert.fail("expected IllegalBlockingModeException");
+        } catch (IllegalBlockingModeException ignored) {
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+
+    @Test
+    public void readableChannel()
+            throws StodiumException, IOException {
+        final byte[] data = random(5 * Digests.BLOCK_BYTES + 3);
+
+        // alternate small heap reads with large direct reads
+        final Multipart<Hash>              multipart = hash.init();
+        final DigestingReadableByteChannel channel   = new DigestingReadableByteChannel(
+                Channels.newChannel(new ByteArrayInputStream(data)), multipart);
+        final ByteBuffer heap   = ByteBuffer.allocate(100);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(3 * BlockDigester.DIRECT_THRESHOLD);
+        int total = 0, read;
+
+        for (int i = 0; ; i++) {
+            final ByteBuffer dst = i % 2 == 0 ? heap : direct;
+            dst.clear();
+            dst.position(7);
+            if ((read = channel.read(dst)) < 0) {
+                break;
+            }
+            total += read;
+        }
+        channel.close();
+        Assert.assertEquals(data.length, total);
+        Assert.assertArrayEquals(expected(data), doFinal(multipart));
+    }
+
+    @Test
+    public void writableChannel()
+            throws StodiumException, IOException {
+        final byte[]                       data      = random(Digests.BLOCK_BYTES + 4321);
+        final ByteArrayOutputStream        out       = new ByteArrayOutputStream();
+        final Multipart<Hash>              multipart = hash.init();
+        final DigestingWritableByteChannel channel   = new DigestingWritableByteChannel(
+                Channels.newChannel(out), multipart);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+
+        direct.put(data, 0, 5000).flip();
+        channel.write(direct);
+        channel.write(ByteBuffer.wrap(data, 5000, data.length - 5000));
+        channel.sync();
+
+        Assert.assertArrayEquals(data, out.toByteArray());
+        Assert.assertArrayEquals(expected(data), doFinal(multipart));
+        channel.close();
+    }
+
+    @Test
+    public void streams()
+            throws StodiumException, IOException {
+        final byte[]                data = random(Digests.BLOCK_BYTES + 777);
+        final ByteArrayOutputStream out  = new ByteArrayOutputStream();
+        final Multipart<Hash>       read = hash.init(), written = hash.init();
+
+        final InputStream           in      = new DigestingInputStream(new ByteArrayInputStream(data), read);
+        final DigestingOutputStream tee     = new DigestingOutputStream(out, written);
+        final byte[]                chunk   = new byte[1000];
+        int n;
+
+        tee.write(in.read());
+        Assert.assertEquals(500, in.skip(500));
+        tee.write(data, 1, 500);
+        while ((n = in.read(chunk)) >= 0) {
+            tee.write(chunk, 0, n);
+        }
+        in.close();
+        tee.flush();
+
+        Assert.assertArrayEquals(data, out.toByteArray());
+        Assert.assertArrayEquals(expected(data), doFinal(read));
+        Assert.assertArrayEquals(expected(data), doFinal(written));
+        tee.close();
+    }
+}
@@ -0,0 +1,93 @@
+package eu.artemisc.stodium.kdf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class KdfTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ByteBuffer master(final Kdf kdf) {
+        final ByteBuffer master = ByteBuffer.allocateDirect(kdf.keyBytes());
+        RandomBytes.nextBytes(master);
+        return master;
+    }
+
+    private static ByteBuffer derive(final Kdf        kdf,
+                                     final ByteBuffer master,
+                                     final ByteBuffer context,
+                                     final long       id)
+            throws StodiumException {
+        final ByteBuffer subKey = ByteBuffer.allocateDirect(32);
+        kdf.deriveFromKey(subKey, id, context.duplicate(), master.duplicate());
+        return subKey;
+    }
+
+    @Test
+    public void deriveRange()
+            throws StodiumException {
+        final Kdf        kdf     = Kdf.instance();
+        final ByteBuffer master  = master(kdf);
+        final ByteBuffer context = ByteBuffer.wrap("records_".getBytes(UTF_8));
+        final ByteBuffer dst     = ByteBuffer.allocateDirect(3 + 100 * 32);
+
+        dst.position(3);
+        kdf.deriveRange(master, context, 1000, 100, dst);
+        Assert.assertEquals(3, dst.position());
+
+        for (int i = 0; i < 100; i++) {
+            final ByteBuffer subKey = dst.duplicate();
+            subKey.position(3 + i * 32).limit(3 + (i + 1) * 32);
+            Assert.assertEquals(derive(kdf, master, context, 1000 + i), subKey);
+        }
+    }
+
+    @Test
+    public void subKeyCache()
+            throws StodiumException {
+        final Kdf         kdf     = Kdf.instance();
+        final ByteBuffer  master  = master(kdf);
+        final ByteBuffer  tenant  = ByteBuffer.wrap("tenant__".getBytes(UTF_8));
+        final ByteBuffer  record  = ByteBuffer.wrap("record__".getBytes(UTF_8));
+        final SubKeyCache cache   = new SubKeyCache(kdf, master, 32, 4);
+        final ByteBuffer  dst     = ByteBuffer.allocate(32);
+
+        try {
+            Assert.assertFalse(cache.get(dst, tenant, 1));
+            Assert.assertEquals(derive(kdf, master, tenant, 1), dst);
+            Assert.assertTrue(cache.get(dst, tenant, 1));
+            Assert.assertEquals(derive(kdf, master, tenant, 1), dst);
+
+            Assert.assertFalse(cache.get(dst, record, 1));
+            Assert.assertEquals(derive(kdf, master, record, 1), dst);
+
+            // fill the cache, touching tenant/1 so record/1 is evicted first
+            Assert.assertFalse(cache.get(dst, tenant, 2));
+            Assert.assertFalse(cache.get(dst, tenant, 3));
+            Assert.assertTrue(cache.get(dst, tenant, 1));
+            Assert.assertFalse(cache.get(dst, tenant, 4));
+            Assert.assertEquals(1, cache.evictions());
+            Assert.assertTrue(cache.get(dst, tenant, 1));
+            Assert.assertFalse(cache.get(dst, record, 1));
+            Assert.assertEquals(derive(kdf, master, record, 1), dst);
+
+            Assert.assertEquals(3, cache.hits());
+            Assert.assertEquals(6, cache.misses());
+            Assert.assertEquals(1.0 / 3, cache.hitRate(), 1e-9);
+
+            cache.invalidate();
+            Assert.assertFalse(cache.get(dst, tenant, 1));
+        } finally {
+            cache.close();
+        }
+    }
+}
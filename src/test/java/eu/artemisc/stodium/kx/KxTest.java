@@ -0,0 +1,127 @@
+package eu.artemisc.stodium.kx;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+import eu.artemisc.stodium.secretbox.SecretBox;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class KxTest {
+
+    private static ByteBuffer slice(final ByteBuffer buffer,
+                                    final int        index,
+                                    final int        size) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(index * size).limit((index + 1) * size);
+        return slice.slice();
+    }
+
+    @Test
+    public void serverSessionKeysAll()
+            throws StodiumException {
+        final Kx         kx        = Kx.instance();
+        final int        count     = 9;
+        final ByteBuffer serverPk  = ByteBuffer.allocateDirect(kx.publicKeyBytes());
+        final ByteBuffer serverSk  = ByteBuffer.allocateDirect(kx.secretKeyBytes());
+        final ByteBuffer clientPks = ByteBuffer.allocateDirect(count * kx.publicKeyBytes());
+        final ByteBuffer rx        = ByteBuffer.allocateDirect(count * kx.sessionKeyBytes());
+        final ByteBuffer tx        = ByteBuffer.allocateDirect(count * kx.sessionKeyBytes());
+        final ByteBuffer expected  = ByteBuffer.allocateDirect(2 * kx.sessionKeyBytes());
+
+        kx.keypair(serverPk, serverSk);
+        // the last client keeps the all-zero, low order public key
+        for (int i = 0; i < count - 1; i++) {
+            kx.keypair(slice(clientPks, i, kx.publicKeyBytes()),
+                    ByteBuffer.allocateDirect(kx.secretKeyBytes()));
+        }
+        RandomBytes.nextBytes(rx);
+
+        Assert.assertEquals(1, kx.serverSessionKeysAll(rx, tx, serverPk, serverSk, clientPks));
+
+        for (int i = 0; i < count - 1; i++) {
+            final ByteBuffer expectedRx = slice(expected, 0, kx.sessionKeyBytes());
+            final ByteBuffer expectedTx = slice(expected, 1, kx.sessionKeyBytes());
+            kx.serverSessionKeys(expectedRx, expectedTx, serverPk, serverSk,
+                    slice(clientPks, i, kx.publicKeyBytes()));
+            Assert.assertEquals(expectedRx, slice(rx, i, kx.sessionKeyBytes()));
+            Assert.assertEquals(expectedTx, slice(tx, i, kx.sessionKeyBytes()));
+        }
+        Assert.assertEquals(ByteBuffer.allocate(kx.sessionKeyBytes()),
+                slice(rx, count - 1, kx.sessionKeyBytes()));
+    }
+
+    @Test
+    public void sessionTickets()
+            throws StodiumException {
+        final Kx             kx      = Kx.instance();
+        final SecretBox      box     = SecretBox.xchacha20poly1305Instance();
+        final ByteBuffer     key     = ByteBuffer.allocateDirect(box.keyBytes());
+        final ByteBuffer     rx      = ByteBuffer.allocateDirect(kx.sessionKeyBytes());
+        final ByteBuffer     tx      = ByteBuffer.allocateDirect(kx.sessionKeyBytes());
+        final ByteBuffer     openRx  = ByteBuffer.allocateDirect(kx.sessionKeyBytes());
+        final ByteBuffer     openTx  = ByteBuffer.allocateDirect(kx.sessionKeyBytes());
+        final SessionTickets tickets;
+        final ByteBuffer     ticket;
+
+        RandomBytes.nextBytes(key);
+        RandomBytes.nextBytes(rx);
+        RandomBytes.nextBytes(tx);
+        tickets = new SessionTickets(kx, box, key);
+        ticket  = ByteBuffer.allocate(tickets.ticketBytes());
+
+        try {
+            tickets.seal(ticket, rx, tx, 2000);
+
+            Assert.assertTrue(tickets.open(openRx, openTx, ticket, 1999));
+            Assert.assertEquals(rx, openRx);
+            Assert.assertEquals(tx, openTx);
+
+            Assert.assertFalse(tickets.open(openRx, openTx, ticket, 2000));
+            Assert.assertFalse(tickets.open(openRx, openTx,
+                    (ByteBuffer) ticket.duplicate().limit(ticket.limit() - 1), 0));
+
+            ticket.put(ticket.limit() - 1, (byte) (ticket.get(ticket.limit() - 1) ^ 1));
+            Assert.assertFalse(tickets.open(openRx, openTx, ticket, 0));
+        } finally {
+            tickets.close();
+        }
+    }
+
+    @Test
+    public void sessionTicketsClosed()
+            throws StodiumException {
+        final Kx             kx     = Kx.instance();
+        final SecretBox      box    = SecretBox.xchacha20poly1305Instance();
+        final ByteBuffer     key    = ByteBuffer.allocateDirect(box.keyBytes());
+        final ByteBuffer     rx     = ByteBuffer.allocateDirect(kx.sessionKeyBytes());
+        final ByteBuffer     tx     = ByteBuffer.allocateDirect(kx.sessionKeyBytes());
+        final SessionTickets tickets;
+        final ByteBuffer     ticket;
+
+        RandomBytes.nextBytes(key);
+        tickets = new SessionTickets(kx, box, key);
+        ticket  = ByteBuffer.allocate(tickets.ticketBytes());
+        tickets.seal(ticket, rx, tx, 2000);
+        tickets.close();
+        tickets.close();
+
+        try {
+            tickets.seal(ticket, rx, tx, 2000);
+            Assert.fail("sealed after close");
+        } catch (final IllegalStateException expected) {
+            // ok
+        }
+        try {
+            tickets.open(rx, tx, ticket, 0);
+            Assert.fail("opened after close");
+        } catch (final IllegalStateException expected) {
+            // ok
+        }
+    }
+}
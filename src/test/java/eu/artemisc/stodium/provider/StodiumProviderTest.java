@@ -0,0 +1,273 @@
+package eu.artemisc.stodium.provider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class StodiumProviderTest {
+
+    private static final Provider PROVIDER = new StodiumProvider();
+
+    private static byte[] random(final int length) {
+        final byte[] out = new byte[length];
+        new Random(length).nextBytes(out);
+        return out;
+    }
+
+    @Test
+    public void digestMatchesPlatform()
+            throws Exception {
+        final byte[] message = random(1000);
+
+        for (final String algorithm : new String[] { "SHA-256", "SHA-512" }) {
+            final MessageDigest platform = MessageDigest.getInstance(algorithm);
+            final MessageDigest stodium  = MessageDigest.getInstance(algorithm, PROVIDER);
+
+            stodium.update(message, 0, 10);
+            stodium.update(message[10]);
+            stodium.update(ByteBuffer.wrap(message, 11, message.length - 11));
+            Assert.assertArrayEquals(platform.digest(message), stodium.digest());
+
+            // digest resets the state
+            Assert.assertArrayEquals(platform.digest(message), stodium.digest(message));
+        }
+    }
+
+    @Test
+    public void digestClone()
+            throws Exception {
+        final MessageDigest digest, clone;
+        final byte[]        message = random(300);
+
+        digest = MessageDigest.getInstance("BLAKE2B-256", PROVIDER);
+        digest.update(message, 0, 100);
+        clone = (MessageDigest) digest.clone();
+        clone.update(message, 100, 200);
+        digest.update(message, 100, 200);
+
+        Assert.assertEquals(32, digest.getDigestLength());
+        Assert.assertArrayEquals(digest.digest(), clone.digest());
+    }
+
+    @Test
+    public void macMatchesPlatform()
+            throws Exception {
+        final byte[] message = random(777);
+
+        for (final int keyLength : new int[] { 16, 32, 100 }) {
+            final SecretKeySpec key      = new SecretKeySpec(random(keyLength), "HmacSHA256");
+            final Mac           platform = Mac.getInstance("HmacSHA256");
+            final Mac           stodium  = Mac.getInstance("HmacSHA256", PROVIDER);
+
+            platform.init(key);
+            stodium.init(key);
+            stodium.update(ByteBuffer.wrap(message));
+            Assert.assertArrayEquals(platform.doFinal(message), stodium.doFinal());
+            Assert.assertArrayEquals(platform.doFinal(message), stodium.doFinal(message));
+        }
+    }
+
+    @Test
+    public void cipherRoundTrip()
+            throws Exception {
+        final SecretKeySpec   key;
+        final IvParameterSpec nonce;
+        final Cipher          encrypt, decrypt;
+        final byte[]          plain, aad, sealed;
+
+        key     = new SecretKeySpec(random(32), "ChaCha20");
+        nonce   = new IvParameterSpec(random(12));
+        plain   = random(500);
+        aad     = random(20);
+        encrypt = Cipher.getInstance("ChaCha20-Poly1305", PROVIDER);
+        decrypt = Cipher.getInstance("ChaCha20-Poly1305", PROVIDER);
+
+        encrypt.init(Cipher.ENCRYPT_MODE, key, nonce);
+        encrypt.updateAAD(aad);
+        encrypt.update(plain, 0, 100);
+        sealed = encrypt.doFinal(plain, 100, 400);
+        Assert.assertEquals(plain.length + 16, sealed.length);
+
+        decrypt.init(Cipher.DECRYPT_MODE, key, nonce);
+        decrypt.updateAAD(aad);
+        Assert.assertArrayEquals(plain, decrypt.doFinal(sealed));
+
+        // direct buffers go straight through
+        final ByteBuffer in  = ByteBuffer.allocateDirect(sealed.length);
+        final ByteBuffer out = ByteBuffer.allocateDirect(plain.length);
+        in.put(sealed).flip();
+        decrypt.updateAAD(aad);
+        Assert.assertEquals(plain.length, decrypt.doFinal(in, out));
+        out.flip();
+        final byte[] opened = new byte[plain.length];
+        out.get(opened);
+        Assert.assertArrayEquals(plain, opened);
+
+        sealed[3] ^= 1;
+        decrypt.updateAAD(aad);
+        try {
+            decrypt.doFinal(sealed);
+            Assert.fail("tampered ciphertext accepted");
+        } catch (final BadPaddingException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void cipherMatchesPlatform()
+            throws Exception {
+        final Cipher platform;
+        try {
+            platform = Cipher.getInstance("ChaCha20-Poly1305");
+        } catch (final Exception e) {
+            return; // not available on this runtime
+        }
+        final SecretKeySpec   key   = new SecretKeySpec(random(32), "ChaCha20");
+        final IvParameterSpec nonce = new IvParameterSpec(random(12));
+        final Cipher          stodium = Cipher.getInstance("ChaCha20-Poly1305", PROVIDER);
+
+        platform.init(Cipher.ENCRYPT_MODE, key, nonce);
+        stodium.init(Cipher.ENCRYPT_MODE, key, nonce);
+        Assert.assertArrayEquals(platform.doFinal(random(64)), stodium.doFinal(random(64)));
+    }
+
+    @Test
+    public void cipherRequiresNewNonce()
+            throws Exception {
+        final Cipher cipher = Cipher.getInstance("XChaCha20-Poly1305", PROVIDER);
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(random(32), "XChaCha20"));
+        Assert.assertEquals(24, cipher.getIV().length);
+        cipher.doFinal(random(10));
+        try {
+            cipher.doFinal(random(10));
+            Assert.fail("nonce reused");
+        } catch (final IllegalStateException expected) {
+            // ok
+        }
+
+        // re-initializing with the same key and nonce does not reset it
+        final SecretKeySpec   key   = new SecretKeySpec(random(32), "XChaCha20");
+        final IvParameterSpec nonce = new IvParameterSpec(random(24));
+        cipher.init(Cipher.ENCRYPT_MODE, key, nonce);
+        cipher.doFinal(random(10));
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, nonce);
+            Assert.fail("nonce reused");
+        } catch (final InvalidAlgorithmParameterException expected) {
+            // ok
+        }
+        cipher.init(Cipher.DECRYPT_MODE, key, nonce);
+
+        final byte[] next = random(24);
+        next[0] ^= 1;
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(next));
+        cipher.doFinal(random(10));
+    }
+
+    @Test
+    public void signature()
+            throws Exception {
+        final KeyPair pair;
+        final byte[]  message = random(200);
+
+        pair = KeyPairGenerator.getInstance("Ed25519", PROVIDER).generateKeyPair();
+
+        for (final String algorithm : new String[] { "Ed25519", "Ed25519ph" }) {
+            final Signature signer   = Signature.getInstance(algorithm, PROVIDER);
+            final Signature verifier = Signature.getInstance(algorithm, PROVIDER);
+            final byte[]    signature;
+
+            signer.initSign(pair.getPrivate());
+            signer.update(message, 0, 50);
+            signer.update(ByteBuffer.wrap(message, 50, 150));
+            signature = signer.sign();
+
+            verifier.initVerify(pair.getPublic());
+            verifier.update(message);
+            Assert.assertTrue(algorithm, verifier.verify(signature));
+
+            verifier.update(message, 1, 199);
+            Assert.assertFalse(algorithm, verifier.verify(signature));
+        }
+    }
+
+    @Test
+    public void signatureMatchesPlatform()
+            throws Exception {
+        final Signature platform;
+        try {
+            platform = Signature.getInstance("Ed25519");
+        } catch (final Exception e) {
+            return; // not available on this runtime
+        }
+        final KeyPair   pair    = KeyPairGenerator.getInstance("Ed25519", PROVIDER).generateKeyPair();
+        final Signature stodium = Signature.getInstance("Ed25519", PROVIDER);
+        final byte[]    message = random(64);
+
+        platform.initSign(java.security.KeyFactory.getInstance("Ed25519").generatePrivate(
+                new java.security.spec.PKCS8EncodedKeySpec(pair.getPrivate().getEncoded())));
+        stodium.initSign(pair.getPrivate());
+        platform.update(message);
+        stodium.update(message);
+
+        // Ed25519 signatures are deterministic
+        Assert.assertArrayEquals(platform.sign(), stodium.sign());
+    }
+
+    @Test
+    public void keyAgreement()
+            throws Exception {
+        final KeyPairGenerator generator;
+        final KeyPair          alice, bob;
+        final KeyAgreement     a, b;
+
+        generator = KeyPairGenerator.getInstance("X25519", PROVIDER);
+        alice     = generator.generateKeyPair();
+        bob       = generator.generateKeyPair();
+        a         = KeyAgreement.getInstance("X25519", PROVIDER);
+        b         = KeyAgreement.getInstance("X25519", PROVIDER);
+
+        a.init(alice.getPrivate());
+        a.doPhase(bob.getPublic(), true);
+        b.init(bob.getPrivate());
+        b.doPhase(alice.getPublic(), true);
+
+        final byte[] secret = a.generateSecret();
+        Assert.assertEquals(32, secret.length);
+        Assert.assertFalse(Arrays.equals(new byte[32], secret));
+        Assert.assertArrayEquals(secret, b.generateSecret());
+    }
+
+    @Test
+    public void secureRandom()
+            throws Exception {
+        final SecureRandom random = SecureRandom.getInstance("Sodium", PROVIDER);
+        final byte[]       a      = new byte[32];
+        final byte[]       b      = new byte[32];
+
+        random.nextBytes(a);
+        random.nextBytes(b);
+        Assert.assertFalse(Arrays.equals(a, b));
+        Assert.assertEquals(16, random.generateSeed(16).length);
+    }
+}
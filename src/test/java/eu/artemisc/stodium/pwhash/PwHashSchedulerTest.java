@@ -0,0 +1,88 @@
+package eu.artemisc.stodium.pwhash;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class PwHashSchedulerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long MiB = 1024 * 1024;
+
+    private static ByteBuffer pw(final int i) {
+        return ByteBuffer.wrap(("password-" + i).getBytes(UTF_8));
+    }
+
+    @Test
+    public void memoryBudget()
+            throws StodiumException, InterruptedException, ExecutionException {
+        final PwHash           pwHash    = PwHash.argon2idInstance();
+        final PwHashParameters params    = new PwHashParameters(pwHash, pwHash.opslimitMin(), 8 * MiB);
+        final PwHashScheduler  scheduler = new PwHashScheduler(16 * MiB, 4);
+        final List<Future<String>> hashes = new ArrayList<>();
+        final AtomicInteger    callbacks = new AtomicInteger();
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                hashes.add(scheduler.strHash(params, pw(i), new PwHashScheduler.Callback<String>() {
+                    @Override
+                    public void onSuccess(final @Nullable String result) {
+                        callbacks.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onFailure(final @NotNull Throwable error) {
+                        Assert.fail(error.toString());
+                    }
+                }));
+            }
+            while (!hashes.get(hashes.size() - 1).isDone()) {
+                final PwHashScheduler.Stats stats = scheduler.stats();
+                Assert.assertTrue(stats.reservedBytes() <= 16 * MiB);
+                Assert.assertTrue(stats.running() <= 2);
+                Thread.sleep(1);
+            }
+
+            final List<Future<Boolean>> verified = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                verified.add(scheduler.strVerify(pwHash, hashes.get(i).get(), pw(i), null));
+                verified.add(scheduler.strVerify(pwHash, hashes.get(i).get(), pw(i + 1), null));
+            }
+            for (int i = 0; i < 16; i++) {
+                Assert.assertEquals(i % 2 == 0, verified.get(i).get());
+            }
+
+            final PwHashScheduler.Stats stats = scheduler.stats();
+            Assert.assertEquals(24, stats.started());
+            Assert.assertEquals(0, stats.queueDepth());
+            Assert.assertEquals(0, stats.reservedBytes());
+            Assert.assertTrue(stats.maxWaitNanos() > 0);
+            Assert.assertEquals(8, callbacks.get());
+
+            try {
+                scheduler.strHash(new PwHashParameters(pwHash, pwHash.opslimitMin(), 32 * MiB),
+                        pw(0), null);
+                Assert.fail("expected ConstraintViolationException");
+            } catch (ConstraintViolationException ignored) {
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package eu.artemisc.stodium.pwhash;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class PwHashTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long MiB = 1024 * 1024;
+
+    private static ByteBuffer pw(final String pw) {
+        return ByteBuffer.wrap(pw.getBytes(UTF_8));
+    }
+
+    @Test
+    public void argon2id()
+            throws StodiumException {
+        final PwHash     pwHash = PwHash.argon2idInstance();
+        final ByteBuffer salt   = ByteBuffer.allocate(pwHash.saltBytes());
+        final ByteBuffer a      = ByteBuffer.allocate(32);
+        final ByteBuffer b      = ByteBuffer.allocate(32);
+        final String     str;
+
+        Assert.assertEquals("$argon2id$", pwHash.strPrefix());
+
+        pwHash.hash(a, pw("password"), salt.duplicate(), pwHash.opslimitMin(), 8 * MiB);
+        pwHash.hash(b, pw("password"), salt.duplicate(), pwHash.opslimitMin(), 8 * MiB);
+        Assert.assertEquals(a, b);
+
+        str = pwHash.strHash(pw("password"), pwHash.opslimitInteractive(), 8 * MiB);
+        Assert.assertTrue(str.startsWith(pwHash.strPrefix()));
+        Assert.assertTrue(pwHash.strVerify(str, pw("password")));
+        Assert.assertFalse(pwHash.strVerify(str, pw("passw0rd")));
+    }
+
+    @Test
+    public void calibrate()
+            throws StodiumException {
+        final PwHash           pwHash = PwHash.argon2idInstance();
+        final PwHashParameters params = PwHashCalibrator.calibrate(pwHash, 100, 64 * MiB, 4);
+
+        Assert.assertSame(pwHash, params.pwHash());
+        Assert.assertTrue(params.memLimit() <= 16 * MiB);
+        Assert.assertEquals(params.memLimit(), Long.highestOneBit(params.memLimit()));
+        Assert.assertTrue(params.opsLimit() >= pwHash.opslimitMin());
+        Assert.assertTrue(params.latencyNanos() > 0);
+        Assert.assertTrue(params.toString(), params.latencyNanos() <= 100 * 1000 * 1000);
+
+        try {
+            PwHashCalibrator.calibrate(pwHash, 100, pwHash.memlimitMin() - 1, 1);
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+    }
+
+    @Test
+    public void parametersRange()
+            throws StodiumException {
+        final PwHash pwHash = PwHash.argon2idInstance();
+
+        // any memlimit in range is accepted, not only powers of two
+        Assert.assertEquals(12 * MiB,
+                new PwHashParameters(pwHash, pwHash.opslimitMin(), 12 * MiB).memLimit());
+        try {
+            new PwHashParameters(pwHash, pwHash.opslimitMin(), pwHash.memlimitMin() - 1);
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+    }
+
+    @Test
+    public void strNeedsRehash()
+            throws StodiumException {
+        final PwHash pwHash = PwHash.argon2idInstance();
+        final String str    = pwHash.strHash(pw("password"), pwHash.opslimitMin(), 8 * MiB);
+
+        Assert.assertEquals(-1, str.indexOf('\0'));
+        Assert.assertSame(pwHash, PwHash.instanceFor(str));
+        Assert.assertNull(PwHash.instanceFor("$2y$10$"));
+
+        Assert.assertFalse(pwHash.strNeedsRehash(str, pwHash.opslimitMin(), 8 * MiB));
+        Assert.assertTrue(pwHash.strNeedsRehash(str, pwHash.opslimitMin() + 1, 8 * MiB));
+        Assert.assertTrue(pwHash.strNeedsRehash(str, pwHash.opslimitMin(), 16 * MiB));
+        Assert.assertTrue(PwHash.argon2iInstance().strNeedsRehash(str,
+                PwHash.argon2iInstance().opslimitMin(), 8 * MiB));
+
+        // strings that still carry their NUL padding verify as well
+        final char[] padded = new char[pwHash.strBytes()];
+        str.getChars(0, str.length(), padded, 0);
+        Assert.assertTrue(pwHash.strVerify(new String(padded), pw("password")));
+
+        try {
+            pwHash.strVerify(str + "\u00e9", pw("password"));
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+
+        // a buffer without a NUL byte is not read as a C string
+        final ByteBuffer unterminated = ByteBuffer.allocateDirect(pwHash.strBytes());
+        while (unterminated.hasRemaining()) {
+            unterminated.put((byte) 'a');
+        }
+        unterminated.flip();
+        try {
+            pwHash.strNeedsRehash(unterminated, pwHash.opslimitMin(), 8 * MiB);
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+    }
+
+    @Test
+    public void rehashOnLogin()
+            throws StodiumException, InterruptedException {
+        final PwHash           old       = PwHash.argon2iInstance();
+        final PwHash           pwHash    = PwHash.argon2idInstance();
+        final PwHashParameters target    = new PwHashParameters(pwHash, pwHash.opslimitMin(), 8 * MiB);
+        final PwHashScheduler  scheduler = new PwHashScheduler(64 * MiB, 2);
+        final PwHashRehasher   rehasher  = new PwHashRehasher(target, scheduler);
+        final String[]         upgraded  = new String[1];
+        final CountDownLatch   done      = new CountDownLatch(1);
+        final String           str       = old.strHash(pw("password"), old.opslimitMin(), 8 * MiB);
+        final PwHashScheduler.Callback<String> callback = new PwHashScheduler.Callback<String>() {
+            @Override
+            public void onSuccess(final @Nullable String result) {
+                upgraded[0] = result;
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(final @NotNull Throwable error) {
+                done.countDown();
+            }
+        };
+
+        try {
+            Assert.assertFalse(rehasher.verify(str, pw("passw0rd"), callback));
+            Assert.assertEquals(1, done.getCount());
+
+            Assert.assertTrue(rehasher.verify(str, pw("password"), callback));
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertNotNull(upgraded[0]);
+            Assert.assertTrue(upgraded[0].startsWith(pwHash.strPrefix()));
+            Assert.assertFalse(PwHash.strNeedsRehash(upgraded[0], target));
+            Assert.assertTrue(pwHash.strVerify(upgraded[0], pw("password")));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void rehashCancelledByShutdown()
+            throws StodiumException, InterruptedException {
+        final PwHash           pwHash    = PwHash.argon2idInstance();
+        final PwHashParameters target    = new PwHashParameters(pwHash, pwHash.opslimitMin(), 8 * MiB);
+        final PwHashParameters slow      = new PwHashParameters(pwHash, 40, 8 * MiB);
+        final PwHashScheduler  scheduler = new PwHashScheduler(8 * MiB, 1);
+        final PwHashRehasher   rehasher  = new PwHashRehasher(target, scheduler);
+        final Throwable[]      failure   = new Throwable[1];
+        final String           str       = pwHash.strHash(pw("password"), pwHash.opslimitMin() + 1, 8 * MiB);
+        final PwHashScheduler.Callback<String> callback = new PwHashScheduler.Callback<String>() {
+            @Override
+            public void onSuccess(final @Nullable String result) {
+                Assert.fail("the upgrade should not run");
+            }
+
+            @Override
+            public void onFailure(final @NotNull Throwable error) {
+                failure[0] = error;
+            }
+        };
+
+        // the slow hash holds the whole budget, so the upgrade stays queued
+        scheduler.strHash(slow, pw("blocker"), null);
+        Assert.assertTrue(rehasher.verify(str, pw("password"), callback));
+        Assert.assertEquals(1, scheduler.stats().queueDepth());
+
+        scheduler.shutdown();
+        Assert.assertTrue(failure[0] instanceof CancellationException);
+    }
+}
@@ -0,0 +1,61 @@
+package eu.artemisc.stodium.random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class BufferedRandomTest {
+
+    @Test
+    public void nextBytes() {
+        final Set<ByteBuffer> seen = new HashSet<>();
+
+        // enough 24-byte values to refill the buffer several times
+        for (int i = 0; i < 1000; i++) {
+            final ByteBuffer nonce = ByteBuffer.allocate(24);
+            BufferedRandom.nextBytes(nonce);
+            Assert.assertFalse(nonce.hasRemaining());
+            nonce.flip();
+            Assert.assertTrue(seen.add(nonce));
+        }
+
+        final ByteBuffer large = ByteBuffer.allocateDirect(BufferedRandom.BUFFER_BYTES + 10);
+        large.position(5);
+        BufferedRandom.nextBytes(large);
+        Assert.assertEquals(large.limit(), large.position());
+        large.position(large.limit() - 64);
+        Assert.assertNotEquals(ByteBuffer.allocate(64), large);
+
+        final byte[] bytes = new byte[BufferedRandom.BUFFER_BYTES];
+        BufferedRandom.nextBytes(bytes);
+        Assert.assertNotEquals(ByteBuffer.allocate(64), ByteBuffer.wrap(bytes, bytes.length - 64, 64));
+    }
+
+    @Test
+    public void uniform() {
+        final int[] counts = new int[10];
+
+        for (int i = 0; i < 10000; i++) {
+            counts[BufferedRandom.uniform(10)]++;
+            Assert.assertEquals(0, BufferedRandom.uniform(1));
+            Assert.assertTrue(RandomBytes.uniform(10) < 10);
+        }
+        for (final int count : counts) {
+            Assert.assertTrue(count > 800 && count < 1200);
+        }
+
+        Assert.assertNotEquals(BufferedRandom.nextLong(), BufferedRandom.nextLong());
+
+        try {
+            BufferedRandom.uniform(0);
+            Assert.fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
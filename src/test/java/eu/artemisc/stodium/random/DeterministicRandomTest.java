@@ -0,0 +1,49 @@
+package eu.artemisc.stodium.random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class DeterministicRandomTest {
+
+    @Test
+    public void matchesOneShot()
+            throws StodiumException {
+        final ByteBuffer          seed     = ByteBuffer.allocateDirect(DeterministicRandom.seedBytes());
+        final ByteBuffer          expected = ByteBuffer.allocateDirect(1000);
+        final ByteBuffer          actual   = ByteBuffer.allocate(1000);
+        final DeterministicRandom random;
+
+        RandomBytes.nextBytes(seed);
+        RandomBytes.nextBytesDeterministic(expected, seed);
+        random = new DeterministicRandom(seed);
+
+        // reads that start and end inside, at, and across block boundaries
+        for (final int chunk : new int[] { 1, 63, 64, 65, 200, 607 }) {
+            actual.limit(Math.min(actual.position() + chunk, actual.capacity()));
+            random.nextBytes(actual);
+            Assert.assertFalse(actual.hasRemaining());
+        }
+        Assert.assertEquals(1000, random.position());
+        Assert.assertEquals(expected, actual.flip());
+
+        random.seek(130);
+        Assert.assertEquals(expected.getLong(130), random.nextLong());
+        Assert.assertEquals(expected.getInt(138), random.nextInt());
+        Assert.assertEquals(142, random.position());
+
+        try {
+            random.seek(DeterministicRandom.MAX_BYTES - 4).nextLong();
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+        random.release();
+    }
+}
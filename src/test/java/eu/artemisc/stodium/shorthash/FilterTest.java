@@ -0,0 +1,193 @@
+package eu.artemisc.stodium.shorthash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class FilterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ShortHashKey key(final ShortHash shortHash)
+            throws StodiumException {
+        final ByteBuffer key = ByteBuffer.allocateDirect(shortHash.keyBytes());
+        RandomBytes.nextBytes(key);
+        return shortHash.key(key);
+    }
+
+    private static byte[] item(final int i) {
+        return ("item-" + i).getBytes(UTF_8);
+    }
+
+    @Test
+    public void requiresSiphashx24()
+            throws StodiumException {
+        try {
+            BloomFilter.create(key(ShortHash.siphash24Instance()), 100, 0.01);
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+    }
+
+    @Test
+    public void bloomFilter()
+            throws StodiumException, InterruptedException {
+        final BloomFilter filter = BloomFilter.create(
+                key(ShortHash.siphashx24Instance()), 20000, 0.01);
+        final Thread[]    threads = new Thread[4];
+        int falsePositives = 0;
+
+        for (int t = 0; t < threads.length; t++) {
+            final int first = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = first; i < 20000; i += threads.length) {
+                            filter.put(item(i));
+                        }
+                    } catch (StodiumException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            Assert.assertTrue(filter.mightContain(item(i)));
+        }
+        for (int i = 20000; i < 40000; i++) {
+            if (filter.mightContain(ByteBuffer.wrap(item(i)))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 400);
+    }
+
+    @Test
+    public void bulk()
+            throws StodiumException {
+        final KeyedFilter[] filters = new KeyedFilter[] {
+                BloomFilter.create(key(ShortHash.siphashx24Instance()), 10000, 0.001),
+                CuckooFilter.create(key(ShortHash.siphashx24Instance()), 10000) };
+        final int[]      offsets = new int[10001];
+        final ByteBuffer src     = ByteBuffer.allocate(200000);
+        final boolean[]  found   = new boolean[10000];
+
+        src.position(7);
+        for (int i = 0; i < 10000; i++) {
+            offsets[i] = src.position() - 7;
+            src.put(item(i));
+        }
+        offsets[10000] = src.position() - 7;
+        src.flip().position(7);
+
+        for (final KeyedFilter filter : filters) {
+            Assert.assertTrue(filter.putAll(src, offsets) > 9900);
+            Assert.assertEquals(7, src.position());
+            Assert.assertEquals(10000, filter.mightContainAll(found, src, offsets));
+            for (final boolean b : found) {
+                Assert.assertTrue(b);
+            }
+        }
+    }
+
+    @Test
+    public void cuckooFilterTooLarge()
+            throws StodiumException {
+        // 2^31 items need 2^29 buckets, past the largest table
+        try {
+            CuckooFilter.create(key(ShortHash.siphashx24Instance()), 1L << 31);
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+    }
+
+    @Test
+    public void cuckooFilter()
+            throws StodiumException {
+        final CuckooFilter filter = CuckooFilter.create(
+                key(ShortHash.siphashx24Instance()), 10000);
+        int falsePositives = 0;
+
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.put(item(i)));
+        }
+        Assert.assertEquals(10000, filter.size());
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain(item(i)));
+        }
+        for (int i = 10000; i < 20000; i++) {
+            if (filter.mightContain(item(i))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 100);
+
+        for (int i = 0; i < 10000; i += 2) {
+            Assert.assertTrue(filter.remove(item(i)));
+        }
+        Assert.assertEquals(5000, filter.size());
+        for (int i = 1; i < 10000; i += 2) {
+            Assert.assertTrue(filter.mightContain(item(i)));
+        }
+    }
+
+    @Test
+    public void serialization()
+            throws StodiumException, IOException {
+        final ShortHashKey     key    = key(ShortHash.siphashx24Instance());
+        final BloomFilter      bloom  = BloomFilter.create(key, 1000, 0.01);
+        final CuckooFilter     cuckoo = CuckooFilter.create(key, 1000);
+        final File             file   = File.createTempFile("filter", ".bin");
+        final RandomAccessFile raf    = new RandomAccessFile(file, "rw");
+
+        try {
+            final FileChannel channel = raf.getChannel();
+            for (int i = 0; i < 1000; i++) {
+                bloom.put(item(i));
+                cuckoo.put(item(i));
+            }
+            bloom.writeTo(channel, 0);
+            cuckoo.writeTo(channel, bloom.serializedBytes());
+
+            final BloomFilter  bloom2  = BloomFilter.readFrom(key, channel, 0);
+            final CuckooFilter cuckoo2 = CuckooFilter.readFrom(key, channel,
+                    bloom.serializedBytes());
+
+            Assert.assertEquals(bloom.bitSize(), bloom2.bitSize());
+            Assert.assertEquals(bloom.hashCount(), bloom2.hashCount());
+            Assert.assertEquals(cuckoo.size(), cuckoo2.size());
+            for (int i = 0; i < 2000; i++) {
+                Assert.assertEquals(bloom.mightContain(item(i)), bloom2.mightContain(item(i)));
+                Assert.assertEquals(cuckoo.mightContain(item(i)), cuckoo2.mightContain(item(i)));
+            }
+
+            try {
+                BloomFilter.readFrom(key, channel, bloom.serializedBytes());
+                Assert.fail("expected ConstraintViolationException");
+            } catch (ConstraintViolationException ignored) {
+            }
+        } finally {
+            raf.close();
+            Assert.assertTrue(file.delete());
+        }
+    }
+}
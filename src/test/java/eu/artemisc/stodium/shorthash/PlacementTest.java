@@ -0,0 +1,139 @@
+package eu.artemisc.stodium.shorthash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class PlacementTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int ITEMS = 20000;
+
+    private static ShortHashKey key()
+            throws StodiumException {
+        final ShortHash  shortHash = ShortHash.siphash24Instance();
+        final ByteBuffer key       = ByteBuffer.allocateDirect(shortHash.keyBytes());
+        RandomBytes.nextBytes(key);
+        return shortHash.key(key);
+    }
+
+    private static byte[] node(final int i) {
+        return ("node-" + i).getBytes(UTF_8);
+    }
+
+    private static byte[] item(final int i) {
+        return ("item-" + i).getBytes(UTF_8);
+    }
+
+    private static byte[][] nodes(final int count) {
+        final byte[][] nodes = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = node(i);
+        }
+        return nodes;
+    }
+
+    /**
+     * owners returns the owning node of every item, looked up in bulk, after
+     * checking the bulk lookup against single lookups.
+     */
+    private static String[] owners(final Placement placement)
+            throws StodiumException {
+        final ByteBuffer src     = ByteBuffer.allocate(ITEMS * 16);
+        final int[]      offsets = new int[ITEMS + 1];
+        final int[]      dst     = new int[ITEMS];
+        final String[]   owners  = new String[ITEMS];
+
+        for (int i = 0; i < ITEMS; i++) {
+            offsets[i] = src.position();
+            src.put(item(i));
+        }
+        offsets[ITEMS] = src.position();
+        src.flip();
+
+        placement.lookupAll(dst, src, offsets);
+        for (int i = 0; i < ITEMS; i++) {
+            Assert.assertEquals(placement.lookup(item(i)), dst[i]);
+            owners[i] = new String(placement.node(dst[i]), UTF_8);
+        }
+        return owners;
+    }
+
+    private static void checkMovement(final Placement before,
+                                      final Placement added,
+                                      final Placement removed)
+            throws StodiumException {
+        final String[] b = owners(before);
+        final String[] a = owners(added);
+        final String[] r = owners(removed);
+        final String   newNode = "node-" + before.nodeCount();
+        int moved = 0;
+
+        for (int i = 0; i < ITEMS; i++) {
+            if (!b[i].equals(a[i])) {
+                Assert.assertEquals(newNode, a[i]);
+                moved++;
+            }
+            if (b[i].equals("node-3")) {
+                Assert.assertNotEquals("node-3", r[i]);
+            } else {
+                Assert.assertEquals(b[i], r[i]);
+            }
+        }
+        // one of eleven nodes should claim about 1/11th of the items
+        Assert.assertTrue("moved: " + moved, moved > ITEMS / 22 && moved < ITEMS / 5);
+    }
+
+    @Test
+    public void hashRing()
+            throws StodiumException {
+        final HashRing ring = HashRing.create(key(), nodes(10));
+
+        Assert.assertEquals(10, ring.nodeCount());
+        checkMovement(ring, ring.withNode(node(10)), ring.withoutNode(node(3)));
+
+        // the ring does not depend on the order of membership changes
+        final HashRing other = HashRing.create(ring.key, nodes(11))
+                .withoutNode(node(3)).withNode(node(3));
+        final String[] o = owners(other);
+        final String[] e = owners(ring.withNode(node(10)));
+        for (int i = 0; i < ITEMS; i++) {
+            Assert.assertEquals(e[i], o[i]);
+        }
+    }
+
+    @Test
+    public void rendezvousHash()
+            throws StodiumException {
+        final RendezvousHash hrw = RendezvousHash.create(key(), nodes(10));
+        checkMovement(hrw, hrw.withNode(node(10)), hrw.withoutNode(node(3)));
+    }
+
+    @Test
+    public void membership()
+            throws StodiumException {
+        final HashRing ring = HashRing.create(key(), 4, node(0));
+
+        try {
+            ring.withNode(node(0));
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+        try {
+            ring.withoutNode(node(0));
+            Assert.fail("expected ConstraintViolationException");
+        } catch (ConstraintViolationException ignored) {
+        }
+        Assert.assertEquals(0, ring.lookup(ByteBuffer.wrap(item(1))));
+    }
+}
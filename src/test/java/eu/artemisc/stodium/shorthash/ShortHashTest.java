@@ -0,0 +1,189 @@
+package eu.artemisc.stodium.shorthash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import eu.artemisc.stodium.exceptions.ConstraintViolationException;
+import eu.artemisc.stodium.exceptions.StodiumException;
+import eu.artemisc.stodium.random.RandomBytes;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class ShortHashTest {
+
+    private static ByteBuffer key(final ShortHash shortHash) {
+        final ByteBuffer key = ByteBuffer.allocateDirect(shortHash.keyBytes());
+        RandomBytes.nextBytes(key);
+        return key;
+    }
+
+    private static ByteBuffer hash(final ShortHash  shortHash,
+                                   final byte[]     in,
+                                   final int        off,
+                                   final int        len,
+                                   final ByteBuffer key)
+            throws StodiumException {
+        final ByteBuffer out = ByteBuffer.allocate(shortHash.bytes())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        shortHash.hash(out, ByteBuffer.wrap(in, off, len).slice(), key);
+        return out;
+    }
+
+    @Test
+    public void hash64MatchesHash()
+            throws StodiumException {
+        for (final ShortHash shortHash : new ShortHash[] {
+                ShortHash.siphash24Instance(), ShortHash.siphashx24Instance() }) {
+            final ByteBuffer   key    = key(shortHash);
+            final ShortHashKey pinned = shortHash.key(key);
+
+            for (int len = 0; len < 40; len++) {
+                final byte[] in       = new byte[len + 3];
+                final long   expected;
+
+                RandomBytes.nextBytes(ByteBuffer.wrap(in));
+                expected = hash(shortHash, in, 3, len, key).getLong(0);
+
+                Assert.assertEquals(expected, shortHash.hash64(in, 3, len, key));
+                Assert.assertEquals(expected, shortHash.hash64(ByteBuffer.wrap(in, 3, len).slice(), key));
+                Assert.assertEquals(expected, pinned.hash64(in, 3, len));
+
+                final ByteBuffer direct = ByteBuffer.allocateDirect(len);
+                direct.put(in, 3, len).flip();
+                Assert.assertEquals(expected, pinned.hash64(direct));
+            }
+        }
+    }
+
+    @Test
+    public void hash128MatchesHash()
+            throws StodiumException {
+        final ShortHash    shortHash = ShortHash.siphashx24Instance();
+        final ByteBuffer   key       = key(shortHash);
+        final ShortHashKey pinned    = shortHash.key(key);
+        final long[]       out       = new long[3];
+        final byte[]       in        = new byte[33];
+        final ByteBuffer   expected;
+
+        RandomBytes.nextBytes(ByteBuffer.wrap(in));
+        expected = hash(shortHash, in, 1, 32, key);
+
+        shortHash.hash128(out, 1, in, 1, 32, key);
+        Assert.assertEquals(expected.getLong(0), out[1]);
+        Assert.assertEquals(expected.getLong(8), out[2]);
+
+        pinned.hash128(out, 0, ByteBuffer.wrap(in, 1, 32).slice());
+        Assert.assertEquals(expected.getLong(0), out[0]);
+        Assert.assertEquals(expected.getLong(8), out[1]);
+    }
+
+    @Test
+    public void rejectsBadArguments()
+            throws StodiumException {
+        final ShortHash  shortHash = ShortHash.siphash24Instance();
+        final ByteBuffer key       = key(shortHash);
+
+        try {
+            shortHash.hash64(new byte[4], 2, 3, key);
+            Assert.fail("out of bounds");
+        } catch (final ConstraintViolationException e) {
+            // expected
+        }
+        try {
+            shortHash.hash64(new byte[4], 0, 4, ByteBuffer.allocate(8));
+            Assert.fail("short key");
+        } catch (final ConstraintViolationException e) {
+            // expected
+        }
+        try {
+            shortHash.hash128(new long[2], 0, new byte[4], 0, 4, key);
+            Assert.fail("SipHash24 is 64 bits");
+        } catch (final ConstraintViolationException e) {
+            // expected
+        }
+        try {
+            shortHash.hash128(new long[2], 0, ByteBuffer.allocate(4), key);
+            Assert.fail("SipHash24 is 64 bits");
+        } catch (final ConstraintViolationException e) {
+            // expected
+        }
+        try {
+            shortHash.key(key).hash128(new long[2], 0, ByteBuffer.allocate(4));
+            Assert.fail("SipHash24 is 64 bits");
+        } catch (final ConstraintViolationException e) {
+            // expected
+        }
+        try {
+            shortHash.key(key).hash128(new long[2], 0, new byte[4], 0, 4);
+            Assert.fail("SipHash24 is 64 bits");
+        } catch (final ConstraintViolationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void hashAllMatchesSingle()
+            throws StodiumException {
+        final int        count   = 2 * ShortHash.BATCH_SPLIT + 5;
+        final int[]      offsets = new int[count + 1];
+        final ByteBuffer src;
+
+        for (int i = 1; i <= count; i++) {
+            offsets[i] = offsets[i - 1] + (i * 13) % 41;
+        }
+        src = ByteBuffer.allocateDirect(offsets[count]);
+        RandomBytes.nextBytes(src);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (final ShortHash shortHash : new ShortHash[] {
+                    ShortHash.siphash24Instance(), ShortHash.siphashx24Instance() }) {
+                final ByteBuffer key      = key(shortHash);
+                final int        words    = shortHash.words();
+                final long[]     expected = new long[count * words];
+                final long[]     out      = new long[count * words + 1];
+
+                for (int i = 0; i < count; i++) {
+                    final ByteBuffer in = src.duplicate();
+                    in.limit(offsets[i + 1]).position(offsets[i]);
+                    final ByteBuffer h = ByteBuffer.allocate(shortHash.bytes())
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                    shortHash.hash(h, in.slice(), key);
+                    for (int w = 0; w < words; w++) {
+                        expected[i * words + w] = h.getLong(w * 8);
+                    }
+                }
+
+                shortHash.hashAll(out, 1, src, offsets, key);
+                Assert.assertArrayEquals(expected, Arrays.copyOfRange(out, 1, out.length));
+
+                Arrays.fill(out, 0L);
+                shortHash.key(key).hashAll(out, 1, src, offsets, executor);
+                Assert.assertArrayEquals(expected, Arrays.copyOfRange(out, 1, out.length));
+
+                for (final LongBuffer dst : new LongBuffer[] {
+                        LongBuffer.allocate(expected.length),
+                        ByteBuffer.allocateDirect(expected.length * 8)
+                                .order(ByteOrder.nativeOrder()).asLongBuffer(),
+                        ByteBuffer.allocateDirect(expected.length * 8)
+                                .order(ByteOrder.BIG_ENDIAN).asLongBuffer() }) {
+                    final long[] actual = new long[expected.length];
+                    shortHash.hashAll(dst, src, offsets, key, executor);
+                    Assert.assertEquals(0, dst.position());
+                    dst.get(actual);
+                    Assert.assertArrayEquals(expected, actual);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package eu.artemisc.stodium.shorthash;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Jan van de Molengraft [jan@artemisc.eu]
+ */
+public class SipHashMapTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static byte[] key(final int i) {
+        return ("key-" + i).getBytes(UTF_8);
+    }
+
+    @Test
+    public void matchesHashMap() {
+        final SipHashMap         map   = new SipHashMap();
+        final Map<String, Long>  model = new HashMap<>();
+        final Random             rnd   = new Random(42);
+
+        for (int op = 0; op < 200000; op++) {
+            final int    i = rnd.nextInt(20000);
+            final byte[] k = key(i);
+            final String s = "key-" + i;
+
+            switch (rnd.nextInt(4)) {
+            case 0:
+            case 1:
+                Assert.assertEquals(!model.containsKey(s), map.put(k, op));
+                model.put(s, (long) op);
+                break;
+            case 2:
+                Assert.assertEquals(model.remove(s) != null, map.remove(k));
+                break;
+            default:
+                final Long expected = model.get(s);
+                Assert.assertEquals(expected == null ? -1L : expected, map.get(k, -1L));
+                break;
+            }
+            Assert.assertEquals(model.size(), map.size());
+        }
+
+        final Map<String, Long> seen = new HashMap<>();
+        map.forEach(new SipHashMap.EntryVisitor() {
+            @Override
+            public void visit(final @NotNull ByteBuffer key,
+                              final          long       value) {
+                final byte[] bytes = new byte[key.remaining()];
+                key.get(bytes);
+                Assert.assertNull(seen.put(new String(bytes, UTF_8), value));
+            }
+        });
+        Assert.assertEquals(model, seen);
+    }
+
+    @Test
+    public void growsAndShrinks() {
+        final SipHashMap map = new SipHashMap(4);
+
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertTrue(map.put(key(i), i));
+        }
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertEquals(i, map.get(key(i), -1L));
+        }
+        for (int i = 0; i < 99990; i++) {
+            Assert.assertTrue(map.remove(key(i)));
+        }
+
+        // churn a small working set through the tombstone-heavy table
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 1000; i++) {
+                map.put(key(1000000 + i), round);
+                map.remove(key(1000000 + i));
+            }
+        }
+        Assert.assertEquals(10, map.size());
+        for (int i = 99990; i < 100000; i++) {
+            Assert.assertEquals(i, map.get(ByteBuffer.wrap(key(i)).asReadOnlyBuffer(), -1L));
+        }
+    }
+
+    @Test
+    public void directAndEmptyKeys() {
+        final SipHashMap map    = new SipHashMap();
+        final byte[]     bytes  = key(7);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 2);
+
+        direct.position(2);
+        direct.put(bytes);
+        direct.position(2);
+
+        Assert.assertTrue(map.put(new byte[0], 1));
+        Assert.assertTrue(map.put(direct, 2));
+        Assert.assertEquals(2, direct.position());
+
+        Assert.assertEquals(1, map.get(ByteBuffer.allocate(0), -1L));
+        Assert.assertEquals(2, map.get(bytes, -1L));
+        Assert.assertTrue(map.containsKey(bytes));
+
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertFalse(map.containsKey(bytes));
+    }
+
+    @Test
+    public void maxEntries() {
+        // sizes past MAX_ENTRIES would overflow the slot table offsets
+        try {
+            new SipHashMap(SipHashMap.MAX_ENTRIES + 1);
+            Assert.fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            new SipHashMap(Integer.MAX_VALUE);
+            Assert.fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}